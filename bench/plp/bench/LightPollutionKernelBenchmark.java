@@ -0,0 +1,83 @@
+package plp.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.uber.h3core.util.LatLng;
+
+import plp.filters.BoundingBoxFilter;
+import plp.filters.LightPollutionFilter;
+import plp.location.LocationCell;
+import plp.location.LocationUtils;
+
+/**
+ * LightPollutionFilter as a query runs it, with the scalar kernel and, in a JVM with the Vector API loaded, the vectorised one.
+ * Reads the atlas from data/lightpollution as the application does, so run it from the project directory once the atlas is there.
+ *
+ * process is the whole filter, cell index and pyramid included if they exist. passes is the batch lookup alone,
+ * the part every cell they leave open goes through.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class LightPollutionKernelBenchmark {
+	private LightPollutionFilter filter;
+	private double[] latitudes;
+	private double[] longitudes;
+
+	@Setup
+	public void setUp() {
+		// Half a degree square of desert, the working set of a regional query
+		BoundingBoxFilter box = new BoundingBoxFilter();
+		box.setRequirements(new double[] {34.0, 34.5, -116.5, -116.0});
+		List<LocationCell> cells = box.getValidCells();
+		latitudes = new double[cells.size()];
+		longitudes = new double[cells.size()];
+		for (int i = 0; i < cells.size(); i++) {
+			LatLng coords = LocationUtils.getLatLng(cells.get(i));
+			latitudes[i] = coords.lat;
+			longitudes[i] = coords.lng;
+		}
+		filter = new LightPollutionFilter();
+		filter.setRequirements(21.0);
+		filter.setLocations(cells);
+		filter.process(); // Loads the tiles before measuring
+	}
+
+	@Benchmark
+	@Fork(1)
+	public int processScalar() {
+		return filter.process().size();
+	}
+
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+	public int processVector() {
+		return filter.process().size();
+	}
+
+	@Benchmark
+	@Fork(1)
+	public long[] passesScalar() {
+		return filter.passes(latitudes, longitudes);
+	}
+
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+	public long[] passesVector() {
+		return filter.passes(latitudes, longitudes);
+	}
+}
@@ -0,0 +1,292 @@
+package plp.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One short value per H3 cell at a fixed resolution, precomputed and kept on disk, sorted by H3 index and memory-mapped.
+ *
+ * The index is split into partitions, one file per coarse ancestor cell holding every descendant at the index resolution.
+ * Partitions are built independently and each is moved into place only when complete, so a build can run in parallel,
+ * be stopped at any point, resume where it left off, and be extended to new areas later.
+ * Every partition records a stamp of the data it was computed from, and one with a different stamp is treated as absent.
+ *
+ * Partition layout, little-endian: magic, version, resolution, partition resolution, the partition cell, the stamp,
+ * the number of cells, then every cell's H3 index in ascending order, then every cell's value in the same order.
+ */
+public class CellAttributeIndex {
+	/**
+	 * The value of a cell that has none, which the caller should compute some other way.
+	 */
+	public static final short NO_VALUE = Short.MIN_VALUE;
+
+	private static final int MAGIC = 0x504C5043; // "PLPC"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 4 * Integer.BYTES + 2 * Long.BYTES + Integer.BYTES;
+	private static final long RESOLUTION_MASK = 0xFL << 52;
+	private static final int MAX_PARTITION_DEPTH = 8; // 7^8 cells, about 57 MB, per partition at most
+	private static final Partition ABSENT = new Partition(new long[0], new short[0]);
+
+	/**
+	 * Computes the value of a cell while building.
+	 */
+	@FunctionalInterface
+	public interface CellValues {
+		/**
+		 * @param h3Index A cell at the index resolution
+		 * @return Its value, or {@link #NO_VALUE}
+		 */
+		short valueOf(long h3Index);
+	}
+
+	/**
+	 * Lists the cells of a partition while building.
+	 */
+	@FunctionalInterface
+	public interface PartitionCells {
+		/**
+		 * @param partition A cell at the partition resolution
+		 * @param resolution The index resolution
+		 * @return Every descendant of the partition at the resolution, in any order
+		 */
+		long[] cellsOf(long partition, int resolution);
+	}
+
+	private final Path directory;
+	private final int resolution;
+	private final int partitionResolution;
+	private final long stamp;
+	private final ConcurrentHashMap<Long, Partition> partitions = new ConcurrentHashMap<>();
+
+	/**
+	 * @param directory Where the partitions are kept
+	 * @param resolution The resolution of the indexed cells
+	 * @param partitionResolution The resolution of the ancestors that partition them
+	 * @param stamp Identifies the data the values are computed from, change it to invalidate existing partitions
+	 */
+	public CellAttributeIndex(Path directory, int resolution, int partitionResolution, long stamp) {
+		if (partitionResolution < 0 || partitionResolution > resolution || resolution > 15) {
+			throw new IllegalArgumentException("Partition resolution must be between 0 and the index resolution.");
+		}
+		if (resolution - partitionResolution > MAX_PARTITION_DEPTH) {
+			throw new IllegalArgumentException("Partitions may be at most " + MAX_PARTITION_DEPTH + " resolutions coarser than the index.");
+		}
+		this.directory = directory;
+		this.resolution = resolution;
+		this.partitionResolution = partitionResolution;
+		this.stamp = stamp;
+	}
+
+	public int getResolution() {
+		return resolution;
+	}
+
+	public int getPartitionResolution() {
+		return partitionResolution;
+	}
+
+	/**
+	 * The ancestor of a cell at the partition resolution, found from the bits of its index alone.
+	 * @param h3Index A cell at the index resolution
+	 * @return The partition it belongs to
+	 */
+	public long partitionOf(long h3Index) {
+		long unusedDigits = (1L << (3 * (15 - partitionResolution))) - 1; // Every digit past the resolution is 7
+		return (h3Index & ~RESOLUTION_MASK) | ((long) partitionResolution << 52) | unusedDigits;
+	}
+
+	/**
+	 * Look up many cells at once. The cells are merge-joined with each partition's sorted keys.
+	 * @param sortedCells Cells at the index resolution, in ascending order
+	 * @param values Filled with each cell's value, or {@link #NO_VALUE} if it is not in the index
+	 */
+	public void lookup(long[] sortedCells, short[] values) {
+		int i = 0;
+		while (i < sortedCells.length) {
+			long partitionCell = partitionOf(sortedCells[i]);
+			Partition partition = partitions.computeIfAbsent(partitionCell, this::open);
+			int key = 0;
+			for (; i < sortedCells.length && partitionOf(sortedCells[i]) == partitionCell; i++) {
+				key = partition.seek(sortedCells[i], key);
+				values[i] = key < partition.size() && partition.key(key) == sortedCells[i] ? partition.value(key) : NO_VALUE;
+			}
+		}
+	}
+
+	/**
+	 * @param partition A cell at the partition resolution
+	 * @return Whether the partition has been built from the current data
+	 */
+	public boolean hasPartition(long partition) {
+		return partitions.computeIfAbsent(partition, this::open) != ABSENT;
+	}
+
+	/**
+	 * Build every partition that is missing or stale, several at a time.
+	 * Partitions that are already built are skipped, so this is also how an interrupted build is resumed.
+	 *
+	 * @param toBuild Cells at the partition resolution
+	 * @param cells Lists the cells of each partition
+	 * @param values Computes the value of each cell
+	 * @param parallelism How many partitions to build at once
+	 * @return How many partitions were built
+	 * @throws IOException If a partition cannot be written
+	 */
+	public int build(Collection<Long> toBuild, PartitionCells cells, CellValues values, int parallelism) throws IOException {
+		Files.createDirectories(directory);
+		AtomicInteger built = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (long partition : toBuild) {
+				if (hasPartition(partition)) continue;
+				futures.add(executor.submit(() -> {
+					write(partition, cells.cellsOf(partition, resolution), values);
+					partitions.remove(partition);
+					int count = built.incrementAndGet();
+					if (count % 100 == 0) {
+						System.out.println("Built " + count + " index partitions");
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while building the cell index", e);
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof IOException io ? io : new IOException("Failed to build the cell index", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		System.out.println("Built " + built.get() + " of " + toBuild.size() + " index partitions, the rest were up to date");
+		return built.get();
+	}
+
+	private void write(long partition, long[] cells, CellValues values) throws IOException {
+		long[] sorted = cells.clone();
+		Arrays.sort(sorted);
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + sorted.length * (Long.BYTES + Short.BYTES)).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(resolution).putInt(partitionResolution)
+				.putLong(partition).putLong(stamp).putInt(sorted.length);
+		for (long cell : sorted) {
+			buffer.putLong(cell);
+		}
+		for (long cell : sorted) {
+			buffer.putShort(values.valueOf(cell));
+		}
+		buffer.flip();
+
+		Path destination = fileOf(partition);
+		Path temporary = destination.resolveSibling(destination.getFileName() + ".part");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+		Files.move(temporary, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private Path fileOf(long partition) {
+		return directory.resolve(Long.toHexString(partition) + ".cells");
+	}
+
+	/**
+	 * Map a partition, or return ABSENT if it has not been built from the current data.
+	 */
+	private Partition open(long partition) {
+		Path file = fileOf(partition);
+		if (!Files.exists(file)) return ABSENT;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			mapped.order(ByteOrder.LITTLE_ENDIAN);
+			if (mapped.remaining() < HEADER_BYTES || mapped.getInt() != MAGIC || mapped.getInt() != VERSION
+					|| mapped.getInt() != resolution || mapped.getInt() != partitionResolution
+					|| mapped.getLong() != partition || mapped.getLong() != stamp) {
+				return ABSENT;
+			}
+			int count = mapped.getInt();
+			if (mapped.remaining() != count * (Long.BYTES + Short.BYTES)) return ABSENT;
+			LongBuffer keys = mapped.slice(HEADER_BYTES, count * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+			ShortBuffer values = mapped.slice(HEADER_BYTES + count * Long.BYTES, count * Short.BYTES).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+			return new Partition(keys, values);
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to open cell index partition " + file + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * The sorted keys and values of one partition.
+	 */
+	private static class Partition {
+		private final LongBuffer keys;
+		private final ShortBuffer values;
+
+		Partition(LongBuffer keys, ShortBuffer values) {
+			this.keys = keys;
+			this.values = values;
+		}
+
+		Partition(long[] keys, short[] values) {
+			this(LongBuffer.wrap(keys), ShortBuffer.wrap(values));
+		}
+
+		int size() {
+			return keys.limit();
+		}
+
+		long key(int position) {
+			return keys.get(position);
+		}
+
+		short value(int position) {
+			return values.get(position);
+		}
+
+		/**
+		 * The first position at or after from whose key is not below the cell.
+		 * Gallops ahead first, so a sparse working set skips most of the partition.
+		 */
+		int seek(long cell, int from) {
+			int size = size();
+			int step = 1;
+			int low = from, high = from;
+			while (high < size && keys.get(high) < cell) {
+				low = high + 1;
+				high += step;
+				step <<= 1;
+			}
+			high = Math.min(high, size);
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (keys.get(mid) < cell) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package plp.data;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Maps every 24-bit RGB colour to the percentage of its closest colour on a forecast image's colour bar,
+ * read from a direct table of one byte per colour so that a lookup is a single array read.
+ *
+ * Colours on the bar are filled in when the table is built. Any other colour is matched the first time it is looked up,
+ * with the same nearest-colour search and tie-breaking as scanning the bar from the bottom, and remembered.
+ * Safe to use from several threads: racing threads compute and write the same byte.
+ *
+ * Entries are 0 if not yet matched, 1 + percentage for a colour on the bar, and 0x80 | percentage for one matched to its nearest.
+ */
+public class ColorBarTable {
+	private static final int COLORS = 1 << 24;
+	private static final int RGB_MASK = 0xFFFFFF;
+	private static final byte UNMATCHED = 0;
+	private static final int NEAREST = 0x80;
+
+	private final int[] barColors; // From the bottom of the bar up
+	private final int[] barPercentages;
+	private final byte[] table = new byte[COLORS];
+
+	/**
+	 * @param barColors The RGB of each row of the bar, from the bottom (0%) up
+	 * @param barPercentages The percentage of each row
+	 */
+	public ColorBarTable(int[] barColors, int[] barPercentages) {
+		if (barColors.length == 0 || barColors.length != barPercentages.length) {
+			throw new IllegalArgumentException("The colour bar needs one percentage per colour.");
+		}
+		this.barColors = new int[barColors.length];
+		this.barPercentages = barPercentages.clone();
+		for (int i = 0; i < barColors.length; i++) {
+			this.barColors[i] = barColors[i] & RGB_MASK;
+			if (barPercentages[i] < 0 || barPercentages[i] > 100) {
+				throw new IllegalArgumentException("Percentages must be between 0 and 100.");
+			}
+			table[this.barColors[i]] = (byte) (1 + barPercentages[i]); // A colour repeated on the bar keeps its highest row
+		}
+	}
+
+	/**
+	 * Read a vertical colour bar from an image.
+	 * @param image The forecast image
+	 * @param x The column through the middle of the bar
+	 * @param barStart The bottom row of the bar, 0%
+	 * @param barEnd The top row of the bar, 100%
+	 * @return The table for the bar
+	 */
+	public static ColorBarTable read(BufferedImage image, int x, int barStart, int barEnd) {
+		int rows = barStart - barEnd + 1;
+		int[] colors = new int[rows];
+		int[] percentages = new int[rows];
+		for (int i = 0; i < rows; i++) {
+			int y = barStart - i;
+			colors[i] = image.getRGB(x, y);
+			percentages[i] = (int) ((double) (y - barStart) / (barEnd - barStart) * 100);
+		}
+		return new ColorBarTable(colors, percentages);
+	}
+
+	/**
+	 * @param rgb A colour, any alpha is ignored
+	 * @return Whether the colour is exactly one on the bar
+	 */
+	public boolean isOnBar(int rgb) {
+		int entry = table[rgb & RGB_MASK] & 0xFF;
+		return entry != UNMATCHED && (entry & NEAREST) == 0;
+	}
+
+	/**
+	 * @param rgb A colour, any alpha is ignored
+	 * @return The percentage of the colour on the bar, or of the bar colour closest to it
+	 */
+	public int percentageOf(int rgb) {
+		int color = rgb & RGB_MASK;
+		int entry = table[color] & 0xFF;
+		if (entry == UNMATCHED) {
+			entry = NEAREST | barPercentages[nearest(color)];
+			table[color] = (byte) entry;
+		}
+		return (entry & NEAREST) == 0 ? entry - 1 : entry & ~NEAREST;
+	}
+
+	/**
+	 * @return The first row of the bar, from the bottom, at the smallest distance from the colour
+	 */
+	private int nearest(int color) {
+		int red = color >>> 16, green = (color >>> 8) & 0xFF, blue = color & 0xFF;
+		int closest = 0;
+		int closestDistance = Integer.MAX_VALUE;
+		for (int i = 0; i < barColors.length; i++) {
+			int redDiff = (barColors[i] >>> 16) - red;
+			int greenDiff = ((barColors[i] >>> 8) & 0xFF) - green;
+			int blueDiff = (barColors[i] & 0xFF) - blue;
+			int distance = redDiff * redDiff + greenDiff * greenDiff + blueDiff * blueDiff; // Squared, which orders the same
+			if (distance < closestDistance) {
+				closestDistance = distance;
+				closest = i;
+			}
+		}
+		return closest;
+	}
+}
@@ -0,0 +1,374 @@
+package plp.data;
+
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Copies the files of a dataset from a {@link DatasetSource} into a local directory.
+ *
+ * Files are fetched concurrently on virtual threads, at most a fixed number at a time. A file is written under a temporary
+ * name and only moved into place once it is complete and verified, so a file that exists locally is always whole and
+ * an interrupted run resumes by skipping it. Gzip files are inflated as their bytes arrive, which checks their CRC
+ * without a second pass and hands the content to the caller without reading the file back.
+ * If a manifest of SHA-256 checksums is set, every file is also checked against it, including ones already present.
+ */
+public class DatasetFetcher {
+	private static final int DEFAULT_PARALLELISM = 16;
+	private static final int DEFAULT_MAX_ATTEMPTS = 4;
+	private static final long RETRY_BASE_MILLIS = 500;
+
+	private final DatasetSource source;
+	private final Path directory;
+	private int parallelism = DEFAULT_PARALLELISM;
+	private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+	private Map<String, String> checksums = Map.of();
+
+	/**
+	 * Receives the content of a file, decompressed if it was gzipped.
+	 */
+	@FunctionalInterface
+	public interface ContentHandler {
+		void accept(String fileName, byte[] content) throws IOException;
+	}
+
+	/**
+	 * @param source Where the files are fetched from
+	 * @param directory Where the files are kept locally
+	 */
+	public DatasetFetcher(DatasetSource source, Path directory) {
+		this.source = source;
+		this.directory = directory;
+	}
+
+	/**
+	 * @param parallelism The most files to fetch at once
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException("Parallelism must be at least 1.");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @param maxAttempts How many times to try a file before giving up on it
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		if (maxAttempts <= 0) {
+			throw new IllegalArgumentException("At least one attempt is needed.");
+		}
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * @param checksums The expected lowercase hex SHA-256 of each file, by file name
+	 */
+	public void setChecksums(Map<String, String> checksums) {
+		this.checksums = Map.copyOf(checksums);
+	}
+
+	/**
+	 * Read a manifest in the format written by {@code sha256sum}: one {@code <hex>  <file name>} per line.
+	 * @param manifest The manifest file
+	 * @return The checksums, by file name
+	 * @throws IOException If the manifest cannot be read
+	 */
+	public static Map<String, String> readChecksums(Path manifest) throws IOException {
+		Map<String, String> checksums = new HashMap<>();
+		for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+			line = line.strip();
+			if (line.isEmpty() || line.startsWith("#")) continue;
+			String[] parts = line.split("\\s+", 2);
+			if (parts.length != 2) {
+				throw new IOException("Malformed checksum line: " + line);
+			}
+			String name = parts[1].startsWith("*") ? parts[1].substring(1) : parts[1];
+			checksums.put(name, parts[0].toLowerCase());
+		}
+		return checksums;
+	}
+
+	/**
+	 * Write a manifest of the files present locally, to verify later fetches or mirrors against.
+	 * @param fileNames The files to include, any that are absent are left out
+	 * @param manifest The manifest file to write
+	 * @throws IOException If a file or the manifest cannot be accessed
+	 */
+	public void writeChecksums(Collection<String> fileNames, Path manifest) throws IOException {
+		List<String> lines = new ArrayList<>();
+		for (String fileName : fileNames) {
+			Path file = directory.resolve(fileName);
+			if (Files.exists(file)) {
+				lines.add(sha256(file) + "  " + fileName);
+			}
+		}
+		Files.write(manifest, lines, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Get one file, fetching it only if there is no valid local copy.
+	 * @param fileName The file, relative to the root of the dataset
+	 * @return Its content, decompressed if it is gzipped, or null if the dataset has no such file
+	 * @throws IOException If the file could not be fetched or verified after every attempt
+	 */
+	public byte[] fetch(String fileName) throws IOException {
+		byte[][] content = new byte[1][];
+		Outcome outcome = fetch(fileName, (name, data) -> content[0] = data, true);
+		return outcome == Outcome.MISSING ? null : content[0];
+	}
+
+	/**
+	 * Fetch many files concurrently. Files with a valid local copy are skipped.
+	 * Failures are collected rather than thrown, so one bad file does not stop the rest.
+	 *
+	 * @param fileNames The files, relative to the root of the dataset
+	 * @param handler Receives the content of every file, fetched or already present, or null if it is not needed
+	 * @return What happened to each file
+	 * @throws InterruptedException If interrupted while waiting for the fetches
+	 */
+	public Report fetchAll(Collection<String> fileNames, ContentHandler handler) throws InterruptedException {
+		Report report = new Report();
+		Semaphore permits = new Semaphore(parallelism);
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (String fileName : fileNames) {
+				executor.execute(() -> {
+					try {
+						permits.acquire();
+					} catch (InterruptedException e) {
+						report.failed.put(fileName, new IOException("Interrupted before fetching " + fileName, e));
+						return;
+					}
+					try {
+						report.record(fetch(fileName, handler, handler != null));
+					} catch (IOException e) {
+						report.failed.put(fileName, e);
+					} finally {
+						permits.release();
+					}
+				});
+			}
+		}
+		if (Thread.interrupted()) {
+			throw new InterruptedException("Interrupted while fetching dataset from " + source);
+		}
+		System.out.println("Fetched " + report.getFetched() + ", already present " + report.getPresent()
+				+ ", missing " + report.getMissing() + ", failed " + report.getFailures().size() + " from " + source);
+		return report;
+	}
+
+	private enum Outcome { FETCHED, PRESENT, MISSING }
+
+	private Outcome fetch(String fileName, ContentHandler handler, boolean needContent) throws IOException {
+		Path target = directory.resolve(fileName);
+		String expected = checksums.get(fileName);
+		if (Files.exists(target)) {
+			if (expected == null && !needContent) return Outcome.PRESENT;
+			Download local = null;
+			try (InputStream in = Files.newInputStream(target)) {
+				local = read(fileName, in, null, expected != null, needContent);
+			} catch (IOException e) {
+				// A local copy that cannot be read is fetched again below
+			}
+			if (local != null && (expected == null || expected.equals(local.sha256))) {
+				if (handler != null) handler.accept(fileName, local.content);
+				return Outcome.PRESENT;
+			}
+			System.out.println("Local copy of " + fileName + " is invalid, fetching it again");
+		}
+
+		Files.createDirectories(target.toAbsolutePath().getParent());
+		IOException failure = null;
+		for (int attempt = 0; attempt < maxAttempts; attempt++) {
+			if (attempt > 0) {
+				sleepBeforeRetry(attempt, fileName);
+			}
+			Path partial = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".part");
+			try {
+				Download download;
+				try (InputStream in = source.open(fileName); OutputStream out = Files.newOutputStream(partial)) {
+					download = read(fileName, in, out, expected != null, needContent);
+				}
+				if (expected != null && !expected.equals(download.sha256)) {
+					throw new IOException("Checksum mismatch for " + fileName + ": expected " + expected + ", got " + download.sha256);
+				}
+				Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				if (handler != null) handler.accept(fileName, download.content);
+				return Outcome.FETCHED;
+			} catch (FileNotFoundException e) {
+				return Outcome.MISSING;
+			} catch (IOException e) {
+				failure = e;
+			} finally {
+				Files.deleteIfExists(partial);
+			}
+		}
+		throw new IOException("Failed to fetch " + fileName + " after " + maxAttempts + " attempts", failure);
+	}
+
+	private void sleepBeforeRetry(int attempt, String fileName) throws IOException {
+		try {
+			Thread.sleep(RETRY_BASE_MILLIS << (attempt - 1));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while retrying " + fileName, e);
+		}
+	}
+
+	/**
+	 * Reads a whole stream once, copying it to out if given, hashing it if asked
+	 * and inflating it on the way through if it is gzipped.
+	 */
+	private static Download read(String fileName, InputStream in, OutputStream out, boolean hash, boolean needContent) throws IOException {
+		MessageDigest digest = hash ? newDigest() : null;
+		InputStream raw = out == null ? in : new TeeInputStream(in, out);
+		if (digest != null) {
+			raw = new DigestInputStream(raw, digest);
+		}
+
+		byte[] content = null;
+		if (fileName.endsWith(".gz")) {
+			// Inflating checks the gzip CRC and length, the stream is read exactly as fast as it arrives
+			GZIPInputStream gzip = new GZIPInputStream(raw, 64 * 1024);
+			if (needContent) {
+				content = gzip.readAllBytes();
+			} else {
+				gzip.transferTo(OutputStream.nullOutputStream());
+			}
+		} else if (needContent) {
+			content = raw.readAllBytes();
+		}
+		raw.transferTo(OutputStream.nullOutputStream()); // Anything left after the last gzip member
+
+		return new Download(content, digest == null ? null : HexFormat.of().formatHex(digest.digest()));
+	}
+
+	private static String sha256(Path file) throws IOException {
+		MessageDigest digest = newDigest();
+		try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+			in.transferTo(OutputStream.nullOutputStream());
+		}
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("SHA-256 is not available", e);
+		}
+	}
+
+	private static class Download {
+		private final byte[] content;
+		private final String sha256;
+
+		Download(byte[] content, String sha256) {
+			this.content = content;
+			this.sha256 = sha256;
+		}
+	}
+
+	/**
+	 * Copies everything read through it to another stream.
+	 */
+	private static class TeeInputStream extends FilterInputStream {
+		private final OutputStream copy;
+
+		TeeInputStream(InputStream in, OutputStream copy) {
+			super(in);
+			this.copy = copy;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) copy.write(b);
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			int count = super.read(buffer, offset, length);
+			if (count > 0) copy.write(buffer, offset, count);
+			return count;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			return Math.max(0, read(new byte[(int) Math.min(n, 8192)])); // Skipped bytes must still be copied
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+
+	/**
+	 * What happened to each file of a {@link DatasetFetcher#fetchAll(Collection, ContentHandler)}.
+	 */
+	public static class Report {
+		private final AtomicInteger fetched = new AtomicInteger();
+		private final AtomicInteger present = new AtomicInteger();
+		private final AtomicInteger missing = new AtomicInteger();
+		private final Map<String, IOException> failed = new ConcurrentHashMap<>();
+
+		private void record(Outcome outcome) {
+			switch (outcome) {
+				case FETCHED -> fetched.incrementAndGet();
+				case PRESENT -> present.incrementAndGet();
+				case MISSING -> missing.incrementAndGet();
+			}
+		}
+
+		/**
+		 * @return How many files were fetched from the source
+		 */
+		public int getFetched() {
+			return fetched.get();
+		}
+
+		/**
+		 * @return How many files already had a valid local copy
+		 */
+		public int getPresent() {
+			return present.get();
+		}
+
+		/**
+		 * @return How many files the source does not have
+		 */
+		public int getMissing() {
+			return missing.get();
+		}
+
+		/**
+		 * @return The error of every file that could not be fetched, by file name
+		 */
+		public Map<String, IOException> getFailures() {
+			return failed;
+		}
+	}
+}
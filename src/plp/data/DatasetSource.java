@@ -0,0 +1,51 @@
+package plp.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Instant;
+
+/**
+ * Somewhere the files of a published dataset can be fetched from, such as the upstream host or a local mirror.
+ * Implementations must be safe to use from several threads at once.
+ */
+public interface DatasetSource {
+
+	/**
+	 * @param fileName The name of a file relative to the root of the dataset
+	 * @return A stream of the file's bytes, which the caller closes
+	 * @throws java.io.FileNotFoundException If the dataset has no such file
+	 * @throws IOException If the file could not be fetched
+	 */
+	InputStream open(String fileName) throws IOException;
+
+	/**
+	 * Fetch a file only if it has changed, for refreshing a local copy. By default the file is always fetched.
+	 * @param fileName The name of a file relative to the root of the dataset
+	 * @param since When the local copy was fetched
+	 * @return A stream of the file's bytes, which the caller closes, or null if it has not been modified since then
+	 * @throws java.io.FileNotFoundException If the dataset has no such file
+	 * @throws IOException If the file could not be fetched
+	 */
+	default InputStream openIfModified(String fileName, Instant since) throws IOException {
+		return open(fileName);
+	}
+
+	/**
+	 * @param base The root of the dataset, either a {@code file:} URI of a local mirror or an {@code http(s):} URL
+	 * @return A source reading from that root
+	 */
+	static DatasetSource of(URI base) {
+		String scheme = base.getScheme() == null ? "file" : base.getScheme().toLowerCase();
+		switch (scheme) {
+			case "file":
+				return new FileDatasetSource(base.getScheme() == null ? Path.of(base.getPath()) : Path.of(base));
+			case "http":
+			case "https":
+				return new HttpDatasetSource(base);
+			default:
+				throw new IllegalArgumentException("Unsupported dataset source: " + base);
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package plp.data;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Instant;
+
+/**
+ * A dataset mirrored in a local directory.
+ */
+public class FileDatasetSource implements DatasetSource {
+	private final Path root;
+
+	public FileDatasetSource(Path root) {
+		this.root = root;
+	}
+
+	@Override
+	public InputStream open(String fileName) throws IOException {
+		try {
+			return Files.newInputStream(root.resolve(fileName));
+		} catch (NoSuchFileException e) {
+			throw new FileNotFoundException(root.resolve(fileName).toString());
+		}
+	}
+
+	@Override
+	public InputStream openIfModified(String fileName, Instant since) throws IOException {
+		try {
+			if (!Files.getLastModifiedTime(root.resolve(fileName)).toInstant().isAfter(since)) return null;
+		} catch (NoSuchFileException e) {
+			throw new FileNotFoundException(root.resolve(fileName).toString());
+		}
+		return open(fileName);
+	}
+
+	@Override
+	public String toString() {
+		return root.toUri().toString();
+	}
+}
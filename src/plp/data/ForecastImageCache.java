@@ -0,0 +1,184 @@
+package plp.data;
+
+import java.awt.image.BufferedImage;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Forecast images fetched from a {@link DatasetSource} and kept on disk, one directory per forecast date.
+ *
+ * A cached image checked within the refresh interval is used as is. Otherwise it is refreshed with a conditional fetch,
+ * so an unchanged image is not downloaded again, and if the source cannot be reached it is used anyway.
+ * A cached file is only rewritten when its image changes, so its path and modification time identify the image.
+ * A new forecast date starts a new directory, leaving earlier days' images in place as a record.
+ * Safe to use from several threads at once for different images.
+ */
+public class ForecastImageCache {
+	private static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofMinutes(30);
+
+	private final DatasetSource source;
+	private final Path directory;
+	private final ZoneId forecastZone;
+	private final Map<Path, Instant> lastChecked = new ConcurrentHashMap<>();
+	private Duration refreshInterval = DEFAULT_REFRESH_INTERVAL;
+
+	/**
+	 * @param source Where the images are fetched from
+	 * @param directory Where the images are kept
+	 * @param forecastZone The timezone whose date a forecast is published for
+	 */
+	public ForecastImageCache(DatasetSource source, Path directory, ZoneId forecastZone) {
+		this.source = source;
+		this.directory = directory;
+		this.forecastZone = forecastZone;
+	}
+
+	/**
+	 * @param refreshInterval How long after a cached image was fetched or last checked before the source is asked for a newer one
+	 */
+	public void setRefreshInterval(Duration refreshInterval) {
+		this.refreshInterval = refreshInterval;
+	}
+
+	/**
+	 * @return The date of the forecasts currently published
+	 */
+	public LocalDate getForecastDate() {
+		return LocalDate.now(forecastZone);
+	}
+
+	/**
+	 * @param date A forecast date
+	 * @return The directory that date's images are kept in
+	 */
+	public Path getDirectory(LocalDate date) {
+		return directory.resolve(date.toString());
+	}
+
+	/**
+	 * @return Every forecast date with a directory of images, in order
+	 * @throws IOException If the cache cannot be listed
+	 */
+	public List<LocalDate> getArchivedDates() throws IOException {
+		List<LocalDate> dates = new ArrayList<>();
+		if (!Files.isDirectory(directory)) return dates;
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, Files::isDirectory)) {
+			for (Path entry : entries) {
+				try {
+					dates.add(LocalDate.parse(entry.getFileName().toString()));
+				} catch (DateTimeParseException e) {
+					// Not a day of forecasts
+				}
+			}
+		}
+		Collections.sort(dates);
+		return dates;
+	}
+
+	/**
+	 * Get a current image, from the cache or the source.
+	 * @param fileName The name of the image relative to the root of the source
+	 * @return The image
+	 * @throws FileNotFoundException If the source has no such image
+	 * @throws IOException If the image could not be fetched and there is no cached copy for today
+	 */
+	public BufferedImage load(String fileName) throws IOException {
+		return read(fetch(fileName));
+	}
+
+	/**
+	 * Bring the cached copy of an image up to date, without reading it.
+	 * @param fileName The name of the image relative to the root of the source
+	 * @return The cached file
+	 * @throws FileNotFoundException If the source has no such image
+	 * @throws IOException If the image could not be fetched and there is no cached copy for today
+	 */
+	public Path fetch(String fileName) throws IOException {
+		Path file = getDirectory(getForecastDate()).resolve(fileName);
+		Instant now = Instant.now();
+		if (Files.exists(file)) {
+			Instant fetched = Files.getLastModifiedTime(file).toInstant();
+			Instant checked = lastChecked.getOrDefault(file, fetched);
+			if (checked.plus(refreshInterval).isAfter(now)) {
+				return file;
+			}
+			try {
+				refresh(fileName, file, fetched);
+			} catch (FileNotFoundException e) {
+				throw e;
+			} catch (IOException e) {
+				System.out.println("Could not refresh " + fileName + ", using the copy from " + fetched + ": " + e.getMessage());
+			}
+		} else {
+			refresh(fileName, file, null);
+		}
+		lastChecked.put(file, now);
+		return file;
+	}
+
+	/**
+	 * Get today's cached copy of an image as it is, fetching it only if there is none.
+	 * For processes that share a cache another process keeps up to date.
+	 * @param fileName The name of the image relative to the root of the source
+	 * @return The cached file
+	 * @throws FileNotFoundException If the source has no such image
+	 * @throws IOException If there is no cached copy and the image could not be fetched
+	 */
+	public Path fetchCached(String fileName) throws IOException {
+		Path file = getDirectory(getForecastDate()).resolve(fileName);
+		if (!Files.exists(file)) {
+			refresh(fileName, file, null);
+		}
+		return file;
+	}
+
+	/**
+	 * Fetch an image into the cache unless the source's copy is no newer than the cached one.
+	 */
+	private void refresh(String fileName, Path file, Instant since) throws IOException {
+		try (InputStream in = since == null ? source.open(fileName) : source.openIfModified(fileName, since)) {
+			if (in == null) return; // Unchanged
+			Files.createDirectories(file.getParent());
+			Path temporary = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".part"); // Apart from other processes'
+			try {
+				Files.copy(in, temporary, StandardCopyOption.REPLACE_EXISTING);
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException | RuntimeException e) {
+				Files.deleteIfExists(temporary); // Or failed downloads pile up in the cache
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Read a cached image. One that cannot be decoded is deleted, so it is fetched again next time.
+	 * @param file A file from {@link #fetch(String)}
+	 * @return The image
+	 * @throws IOException If the file cannot be read or decoded
+	 */
+	public static BufferedImage read(Path file) throws IOException {
+		BufferedImage image = ImageIO.read(file.toFile());
+		if (image == null) {
+			Files.deleteIfExists(file); // Fetched again on the next load
+			throw new IOException("Not a readable image: " + file);
+		}
+		return image;
+	}
+}
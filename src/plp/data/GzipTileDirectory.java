@@ -0,0 +1,26 @@
+package plp.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * The atlas as published: one {@code binary_tile_X_Y.dat.gz} file per tile.
+ */
+public class GzipTileDirectory implements LightPollutionTileSource {
+	private final Path directory;
+
+	public GzipTileDirectory(Path directory) {
+		this.directory = directory;
+	}
+
+	public File getTileFile(int tileIndex) {
+		return directory.resolve(LightPollutionTiles.tileFileName(LightPollutionTiles.tileX(tileIndex), LightPollutionTiles.tileY(tileIndex))).toFile();
+	}
+
+	@Override
+	public byte[] readTile(int tileIndex) throws IOException {
+		File file = getTileFile(tileIndex);
+		return file.exists() ? LightPollutionTiles.decompressTile(file) : null;
+	}
+}
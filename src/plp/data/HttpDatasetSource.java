@@ -0,0 +1,77 @@
+package plp.data;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * A dataset served over HTTP, either by its publisher or by a mirror.
+ * One client is shared by every request, so connections are reused across files.
+ */
+public class HttpDatasetSource implements DatasetSource {
+	private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+	private static final Duration REQUEST_TIMEOUT = Duration.ofMinutes(2);
+
+	private final URI base;
+	private final HttpClient client;
+
+	public HttpDatasetSource(URI base) {
+		String root = base.toString();
+		this.base = root.endsWith("/") ? base : URI.create(root + "/");
+		this.client = HttpClient.newBuilder()
+				.connectTimeout(CONNECT_TIMEOUT)
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.build();
+	}
+
+	@Override
+	public InputStream open(String fileName) throws IOException {
+		return send(fileName, null);
+	}
+
+	/**
+	 * Sends If-Modified-Since, so an unchanged file costs a 304 instead of its body.
+	 */
+	@Override
+	public InputStream openIfModified(String fileName, Instant since) throws IOException {
+		return send(fileName, since);
+	}
+
+	private InputStream send(String fileName, Instant since) throws IOException {
+		URI uri = base.resolve(fileName);
+		HttpRequest.Builder builder = HttpRequest.newBuilder(uri).timeout(REQUEST_TIMEOUT).GET();
+		if (since != null) {
+			builder.header("If-Modified-Since", DateTimeFormatter.RFC_1123_DATE_TIME.format(since.atZone(ZoneOffset.UTC)));
+		}
+		HttpRequest request = builder.build();
+		HttpResponse<InputStream> response;
+		try {
+			response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while fetching " + uri, e);
+		}
+
+		int status = response.statusCode();
+		if (status == 200) return response.body();
+		response.body().close();
+		if (status == 304 && since != null) return null;
+		if (status == 404 || status == 410) {
+			throw new FileNotFoundException(uri.toString());
+		}
+		throw new IOException("HTTP " + status + " fetching " + uri);
+	}
+
+	@Override
+	public String toString() {
+		return base.toString();
+	}
+}
@@ -0,0 +1,288 @@
+package plp.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Whether each H3 cell at a fixed resolution is land or water, one bit per cell, memory-mapped.
+ *
+ * Cells are numbered by their base cell and the digits of their index, read as one base-7 number, so the descendants
+ * of any cell are a contiguous run and a cell's bit is found from its index alone. The numbering is split into
+ * partitions, one per ancestor at the partition resolution. A partition that is all land or all water is recorded
+ * as such and takes no space, only partitions across a coast store a block of bits. Partitions never built are unknown.
+ *
+ * Layout, little-endian: magic, version, resolution, partition resolution, number of blocks, then one int per partition
+ * giving its block or whether it is unknown, all water or all land, then every block as longs of bits.
+ */
+public class LandMask {
+	public static final byte WATER = 0;
+	public static final byte LAND = 1;
+	public static final byte UNKNOWN = 2;
+
+	private static final int MAGIC = 0x504C504C; // "PLPL"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 5 * Integer.BYTES;
+	private static final int BASE_CELLS = 122;
+	private static final int MAX_PARTITION_DEPTH = 8; // 7^8 bits, about 720 KB, per block at most
+	private static final int UNKNOWN_PARTITION = -1, WATER_PARTITION = -2, LAND_PARTITION = -3;
+
+	private final int resolution;
+	private final int partitionResolution;
+	private final long cellsPerPartition;
+	private final int longsPerBlock;
+	private final IntBuffer partitions;
+	private final LongBuffer blocks;
+
+	private LandMask(int resolution, int partitionResolution, IntBuffer partitions, LongBuffer blocks) {
+		this.resolution = resolution;
+		this.partitionResolution = partitionResolution;
+		this.cellsPerPartition = power7(resolution - partitionResolution);
+		this.longsPerBlock = (int) ((cellsPerPartition + 63) >>> 6);
+		this.partitions = partitions;
+		this.blocks = blocks;
+	}
+
+	/**
+	 * Map a mask.
+	 * @param file A file written by {@link Builder#write(Path)}
+	 * @return The mask
+	 * @throws IOException If the file cannot be read or is not a land mask
+	 */
+	public static LandMask open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Land mask too large to map: " + file);
+			}
+			MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			data.order(ByteOrder.LITTLE_ENDIAN);
+			if (data.remaining() < HEADER_BYTES || data.getInt() != MAGIC || data.getInt() != VERSION) {
+				throw new IOException("Not a land mask: " + file);
+			}
+			int resolution = data.getInt();
+			int partitionResolution = data.getInt();
+			int blockCount = data.getInt();
+			checkResolutions(resolution, partitionResolution);
+			int partitionCount = (int) (BASE_CELLS * power7(partitionResolution));
+			long longsPerBlock = (power7(resolution - partitionResolution) + 63) >>> 6;
+			if (data.remaining() != (long) partitionCount * Integer.BYTES + blockCount * longsPerBlock * Long.BYTES) {
+				throw new IOException("Truncated land mask: " + file);
+			}
+			int blocksStart = HEADER_BYTES + partitionCount * Integer.BYTES;
+			IntBuffer partitions = data.slice(HEADER_BYTES, partitionCount * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+			LongBuffer blocks = data.slice(blocksStart, data.capacity() - blocksStart).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+			return new LandMask(resolution, partitionResolution, partitions, blocks);
+		}
+	}
+
+	public int getResolution() {
+		return resolution;
+	}
+
+	public int getPartitionResolution() {
+		return partitionResolution;
+	}
+
+	/**
+	 * @param h3Index A cell at the mask resolution or finer, which is judged by its ancestor at the mask resolution
+	 * @return {@link #LAND}, {@link #WATER}, or {@link #UNKNOWN} if its partition was never built or the cell is coarser than the mask
+	 */
+	public byte lookup(long h3Index) {
+		if (resolutionOf(h3Index) < resolution) return UNKNOWN;
+		long ordinal = ordinal(h3Index, resolution);
+		int partition = partitions.get((int) (ordinal / cellsPerPartition));
+		switch (partition) {
+			case UNKNOWN_PARTITION: return UNKNOWN;
+			case WATER_PARTITION: return WATER;
+			case LAND_PARTITION: return LAND;
+			default:
+				long bit = ordinal % cellsPerPartition;
+				long word = blocks.get((int) ((long) partition * longsPerBlock + (bit >>> 6)));
+				return (word & (1L << bit)) != 0 ? LAND : WATER;
+		}
+	}
+
+	/**
+	 * Look up many cells at once.
+	 * @param cells The cells
+	 * @param states Filled with each cell's state, as from {@link #lookup(long)}
+	 */
+	public void lookup(long[] cells, byte[] states) {
+		for (int i = 0; i < cells.length; i++) {
+			states[i] = lookup(cells[i]);
+		}
+	}
+
+	/**
+	 * The position of a cell's ancestor at a resolution in the numbering of every cell at that resolution:
+	 * the base cell, then each digit down to the resolution, as a base-7 number.
+	 */
+	static long ordinal(long h3Index, int resolution) {
+		long ordinal = (h3Index >>> 45) & 0x7F;
+		for (int r = 1; r <= resolution; r++) {
+			ordinal = ordinal * 7 + ((h3Index >>> (3 * (15 - r))) & 0x7);
+		}
+		return ordinal;
+	}
+
+	private static int resolutionOf(long h3Index) {
+		return (int) ((h3Index >>> 52) & 0xF);
+	}
+
+	private static long power7(int exponent) {
+		long power = 1;
+		for (int i = 0; i < exponent; i++) {
+			power *= 7;
+		}
+		return power;
+	}
+
+	private static void checkResolutions(int resolution, int partitionResolution) {
+		if (resolution > 15 || partitionResolution < 0 || partitionResolution > resolution) {
+			throw new IllegalArgumentException("Partition resolution must be between 0 and the mask resolution.");
+		}
+		if (resolution - partitionResolution > MAX_PARTITION_DEPTH) {
+			throw new IllegalArgumentException("Partitions may be at most " + MAX_PARTITION_DEPTH + " resolutions coarser than the mask.");
+		}
+	}
+
+	/**
+	 * Collects the partitions of a mask in memory, to write it. Safe to fill from several threads at once.
+	 */
+	public static class Builder {
+		private final int resolution;
+		private final int partitionResolution;
+		private final long cellsPerPartition;
+		private final int[] partitions;
+		private final long[][] blocks; // By partition, for partitions across a coast
+
+		/**
+		 * @param resolution The resolution of the masked cells
+		 * @param partitionResolution The resolution of the ancestors that partition them
+		 */
+		public Builder(int resolution, int partitionResolution) {
+			checkResolutions(resolution, partitionResolution);
+			this.resolution = resolution;
+			this.partitionResolution = partitionResolution;
+			this.cellsPerPartition = power7(resolution - partitionResolution);
+			this.partitions = new int[(int) (BASE_CELLS * power7(partitionResolution))];
+			this.blocks = new long[partitions.length][];
+			Arrays.fill(partitions, UNKNOWN_PARTITION);
+		}
+
+		/**
+		 * Start from an existing mask, to extend it to more partitions.
+		 * @param mask The mask
+		 * @return A builder holding every partition of the mask
+		 */
+		public static Builder from(LandMask mask) {
+			Builder builder = new Builder(mask.resolution, mask.partitionResolution);
+			for (int partition = 0; partition < builder.partitions.length; partition++) {
+				int state = mask.partitions.get(partition);
+				if (state >= 0) {
+					long[] block = new long[mask.longsPerBlock];
+					mask.blocks.get(state * mask.longsPerBlock, block);
+					builder.blocks[partition] = block;
+				}
+				builder.partitions[partition] = state;
+			}
+			return builder;
+		}
+
+		/**
+		 * @param partition A cell at the partition resolution
+		 * @return Whether the partition has been given
+		 */
+		public synchronized boolean hasPartition(long partition) {
+			return partitions[slotOf(partition)] != UNKNOWN_PARTITION;
+		}
+
+		/**
+		 * Record a partition that is all land or all water.
+		 * @param partition A cell at the partition resolution
+		 * @param land Whether it is land
+		 */
+		public synchronized void setPartition(long partition, boolean land) {
+			int slot = slotOf(partition);
+			partitions[slot] = land ? LAND_PARTITION : WATER_PARTITION;
+			blocks[slot] = null;
+		}
+
+		/**
+		 * Record a partition across a coast, cell by cell.
+		 * @param partition A cell at the partition resolution
+		 * @param landCells Its descendants at the mask resolution that are land, the rest are water
+		 */
+		public void setCells(long partition, long[] landCells) {
+			int slot = slotOf(partition);
+			long first = (long) slot * cellsPerPartition;
+			long[] block = new long[(int) ((cellsPerPartition + 63) >>> 6)];
+			for (long cell : landCells) {
+				long bit = ordinal(cell, resolution) - first;
+				if (bit < 0 || bit >= cellsPerPartition || resolutionOf(cell) != resolution) {
+					throw new IllegalArgumentException("Cell " + Long.toHexString(cell) + " is not a descendant of the partition at the mask resolution.");
+				}
+				block[(int) (bit >>> 6)] |= 1L << bit;
+			}
+			synchronized (this) {
+				partitions[slot] = 0; // Numbered on writing
+				blocks[slot] = block;
+			}
+		}
+
+		/**
+		 * Write the mask next to its destination and move it into place.
+		 * @param file The file to write
+		 * @throws IOException If the file cannot be written
+		 */
+		public synchronized void write(Path file) throws IOException {
+			int longsPerBlock = (int) ((cellsPerPartition + 63) >>> 6);
+			int blockCount = 0;
+			for (long[] block : blocks) {
+				if (block != null) blockCount++;
+			}
+			long size = HEADER_BYTES + (long) partitions.length * Integer.BYTES + (long) blockCount * longsPerBlock * Long.BYTES;
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Land mask too large to map, use a coarser resolution or a smaller region.");
+			}
+			ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(resolution).putInt(partitionResolution).putInt(blockCount);
+			int next = 0;
+			for (int slot = 0; slot < partitions.length; slot++) {
+				buffer.putInt(blocks[slot] != null ? next++ : partitions[slot]);
+			}
+			for (long[] block : blocks) {
+				if (block == null) continue;
+				for (long word : block) {
+					buffer.putLong(word);
+				}
+			}
+			buffer.flip();
+
+			Files.createDirectories(file.toAbsolutePath().getParent());
+			Path temporary = file.resolveSibling(file.getFileName() + ".part");
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+
+		private int slotOf(long partition) {
+			if (resolutionOf(partition) != partitionResolution) {
+				throw new IllegalArgumentException("Partition " + Long.toHexString(partition) + " is not at the partition resolution.");
+			}
+			return (int) ordinal(partition, partitionResolution);
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package plp.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The whole atlas packed into one file, so a cold start opens one file instead of thousands.
+ *
+ * Layout, little-endian: magic, version and tile count, then for every tile its payload offset (-1 if absent),
+ * compressed length, decompressed length and CRC-32 of the decompressed bytes, then the payloads.
+ * Each payload is one tile compressed on its own with raw DEFLATE, so any tile can be inflated straight from the mapped file.
+ * The file is mapped rather than read through a channel, so a reader being interrupted cannot close it for every other reader.
+ */
+public class LightPollutionArchive implements LightPollutionTileSource, Closeable {
+	private static final int MAGIC = 0x504C5041; // "PLPA"
+	private static final int VERSION = 1;
+	private static final int ENTRY_BYTES = Long.BYTES + 3 * Integer.BYTES;
+	private static final int HEADER_BYTES = 3 * Integer.BYTES + LightPollutionTiles.TILE_COUNT * ENTRY_BYTES;
+
+	private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+
+	private final ByteBuffer mapped;
+	private final long[] offsets = new long[LightPollutionTiles.TILE_COUNT];
+	private final int[] compressedLengths = new int[LightPollutionTiles.TILE_COUNT];
+	private final int[] lengths = new int[LightPollutionTiles.TILE_COUNT];
+	private final int[] checksums = new int[LightPollutionTiles.TILE_COUNT];
+
+	private LightPollutionArchive(ByteBuffer mapped) throws IOException {
+		this.mapped = mapped;
+		if (mapped.capacity() < HEADER_BYTES) {
+			throw new IOException("Not a light pollution archive");
+		}
+		ByteBuffer header = mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		if (header.getInt() != MAGIC) {
+			throw new IOException("Not a light pollution archive");
+		}
+		int version = header.getInt();
+		if (version != VERSION || header.getInt() != LightPollutionTiles.TILE_COUNT) {
+			throw new IOException("Unsupported light pollution archive version: " + version);
+		}
+		for (int i = 0; i < LightPollutionTiles.TILE_COUNT; i++) {
+			offsets[i] = header.getLong();
+			compressedLengths[i] = header.getInt();
+			lengths[i] = header.getInt();
+			checksums[i] = header.getInt();
+			if (offsets[i] >= 0 && (offsets[i] < HEADER_BYTES || offsets[i] + compressedLengths[i] > mapped.capacity())) {
+				throw new IOException("Unexpected end of light pollution archive");
+			}
+		}
+	}
+
+	/**
+	 * @param file An archive written by {@link #importTiles(LightPollutionTileSource, Path)}
+	 * @return The open archive, which must be closed
+	 * @throws IOException If the file cannot be read or is not an archive
+	 */
+	public static LightPollutionArchive open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) { // Far more than the whole atlas uncompressed
+				throw new IOException("Not a light pollution archive: " + file);
+			}
+			return new LightPollutionArchive(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())); // Stays mapped once closed
+		}
+	}
+
+	@Override
+	public byte[] readTile(int tileIndex) throws IOException {
+		if (offsets[tileIndex] < 0) return null;
+
+		ByteBuffer compressed = mapped.slice((int) offsets[tileIndex], compressedLengths[tileIndex]); // A view of its own for this thread
+		byte[] tile = new byte[lengths[tileIndex]];
+		Inflater inflater = INFLATERS.get();
+		inflater.reset();
+		inflater.setInput(compressed);
+		try {
+			int inflated = 0;
+			while (inflated < tile.length && !inflater.finished()) {
+				int count = inflater.inflate(tile, inflated, tile.length - inflated);
+				if (count == 0 && inflater.needsInput()) break;
+				inflated += count;
+			}
+			if (inflated != tile.length) {
+				throw new IOException("Truncated tile " + tileIndex + " in light pollution archive");
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt tile " + tileIndex + " in light pollution archive", e);
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(tile);
+		if ((int) crc.getValue() != checksums[tileIndex]) {
+			throw new IOException("Checksum mismatch for tile " + tileIndex + " in light pollution archive");
+		}
+		return tile;
+	}
+
+	/**
+	 * Nothing to release: the mapping is dropped once the archive is no longer referenced.
+	 */
+	@Override
+	public void close() throws IOException {}
+
+	/**
+	 * Pack every tile of a source into an archive.
+	 * The archive is written next to its destination and only moved into place once its {@link LightPollutionPyramid}
+	 * is written beside it, so a published archive always has its pyramid. A failed import leaves nothing behind.
+	 *
+	 * @param source The tiles to pack, such as a {@link GzipTileDirectory}
+	 * @param destination The archive to write
+	 * @throws IOException If a tile cannot be read or the archive cannot be written
+	 */
+	public static void importTiles(LightPollutionTileSource source, Path destination) throws IOException {
+		Path temporary = destination.resolveSibling(destination.getFileName() + ".part");
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putInt(LightPollutionTiles.TILE_COUNT);
+
+		LightPollutionPyramid pyramid = new LightPollutionPyramid();
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+		try {
+			writeTiles(source, temporary, header, pyramid, deflater);
+			pyramid.write(LightPollutionPyramid.pathFor(destination));
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temporary);
+			throw e;
+		} finally {
+			deflater.end();
+		}
+		Files.move(temporary, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void writeTiles(LightPollutionTileSource source, Path temporary, ByteBuffer header, LightPollutionPyramid pyramid,
+			Deflater deflater) throws IOException {
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			long position = HEADER_BYTES;
+			for (int tileIndex = 0; tileIndex < LightPollutionTiles.TILE_COUNT; tileIndex++) {
+				byte[] tile = source.readTile(tileIndex);
+				if (tile == null) {
+					header.putLong(-1).putInt(0).putInt(0).putInt(0);
+					continue;
+				}
+
+				pyramid.addTile(tileIndex, LightPollutionTiles.decodeTile(tile));
+				CRC32 crc = new CRC32();
+				crc.update(tile);
+				ByteBuffer compressed = deflate(deflater, tile);
+				int compressedLength = compressed.remaining();
+				while (compressed.hasRemaining()) {
+					position += channel.write(compressed, position);
+				}
+				header.putLong(position - compressedLength).putInt(compressedLength).putInt(tile.length).putInt((int) crc.getValue());
+			}
+
+			header.flip();
+			long headerPosition = 0;
+			while (header.hasRemaining()) {
+				headerPosition += channel.write(header, headerPosition);
+			}
+		}
+	}
+
+	private static ByteBuffer deflate(Deflater deflater, byte[] data) {
+		deflater.reset();
+		deflater.setInput(data);
+		deflater.finish();
+		byte[] buffer = new byte[Math.max(1024, data.length / 2)];
+		int length = 0;
+		while (!deflater.finished()) {
+			if (length == buffer.length) {
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			}
+			length += deflater.deflate(buffer, length, buffer.length - length);
+		}
+		return ByteBuffer.wrap(buffer, 0, length);
+	}
+
+	/**
+	 * Import the published gzip tiles from the command line.
+	 * @param args The tile directory and the archive to write
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: LightPollutionArchive <tile directory> <archive>");
+			System.exit(2);
+		}
+		importTiles(new GzipTileDirectory(Path.of(args[0])), Path.of(args[1]));
+	}
+}
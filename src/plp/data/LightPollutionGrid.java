@@ -0,0 +1,19 @@
+package plp.data;
+
+/**
+ * Decoded Light Pollution Atlas values, addressed by tile and pixel as laid out in {@link LightPollutionTiles}.
+ * Implementations must be safe to read from several threads at once.
+ */
+public interface LightPollutionGrid {
+	/**
+	 * Returned for pixels of tiles the grid does not have.
+	 */
+	int MISSING = Integer.MIN_VALUE;
+
+	/**
+	 * @param tileIndex The tile, from {@link LightPollutionTiles#tileIndex(int, int)}
+	 * @param pixel The pixel, from {@link LightPollutionTiles#pixelIndex(int, int)}
+	 * @return The compressed brightness value, or {@link #MISSING}
+	 */
+	int getCompressed(int tileIndex, int pixel);
+}
@@ -0,0 +1,43 @@
+package plp.data;
+
+/**
+ * The arithmetic of a batch of light pollution lookups, kept apart from the gather in between
+ * so that it can run on SIMD lanes where the JDK offers them.
+ */
+public interface LightPollutionKernel {
+
+	/**
+	 * Find the tile and pixel each location is looked up in, exactly as a single lookup would.
+	 * @param latitudes The latitudes of the locations
+	 * @param longitudes The longitudes of the locations
+	 * @param count How many locations to place
+	 * @param tiles Filled with each location's tile index, or -1 if it is outside the atlas or needs the scalar path
+	 * @param pixels Filled with each location's pixel index within its tile
+	 */
+	void locate(double[] latitudes, double[] longitudes, int count, int[] tiles, int[] pixels);
+
+	/**
+	 * Compare compressed brightness against a threshold.
+	 * @param compressed The compressed brightness of each location
+	 * @param count How many locations to compare
+	 * @param maxCompressed The brightest value that passes
+	 * @param mask Receives bit i%64 of word i/64 set for every location i that passes, and clear for the rest
+	 */
+	void select(int[] compressed, int count, int maxCompressed, long[] mask);
+
+	/**
+	 * @return The vectorised kernel if it was built, with the vector profile, and the jdk.incubator.vector module is loaded,
+	 * otherwise the scalar one
+	 */
+	static LightPollutionKernel best() {
+		if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+			try {
+				// Loaded by name so that this class never links against the incubator module when it is absent
+				return (LightPollutionKernel) Class.forName("plp.data.VectorLightPollutionKernel").getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError e) {
+				System.out.println("Vector kernel unavailable, using the scalar one: " + e);
+			}
+		}
+		return new ScalarLightPollutionKernel();
+	}
+}
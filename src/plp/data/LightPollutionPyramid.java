@@ -0,0 +1,319 @@
+package plp.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The minimum and maximum compressed brightness of every block of the atlas, at a few block sizes,
+ * so that whether any pixel of an area can meet a threshold is answered without touching the pixels.
+ *
+ * Each tile is summarised as one whole-tile block, then 5x5 blocks of 120 pixels, then 30x30 blocks of 20 pixels.
+ * A query walks down from the coarsest level and only descends into blocks the area partly covers.
+ * The whole pyramid is about 7 MB and is held on the heap.
+ *
+ * Layout, little-endian: magic, version, tile size, tile count, one byte per tile that is 1 if the tile is present,
+ * then for every present tile the minimum and maximum of each block as shorts, level by level.
+ */
+public class LightPollutionPyramid {
+	private static final int MAGIC = 0x504C5059; // "PLPY"
+	private static final int VERSION = 1;
+	private static final int[] BLOCK_SIZES = {600, 120, 20}; // Each divides the one before it and the tile size
+	private static final int[] LEVEL_OFFSETS = new int[BLOCK_SIZES.length];
+	private static final int BLOCKS_PER_TILE;
+
+	static {
+		int offset = 0;
+		for (int level = 0; level < BLOCK_SIZES.length; level++) {
+			LEVEL_OFFSETS[level] = offset;
+			int perSide = LightPollutionTiles.TILE_SIZE / BLOCK_SIZES[level];
+			offset += perSide * perSide;
+		}
+		BLOCKS_PER_TILE = offset;
+	}
+
+	/**
+	 * Whether every pixel of an area meets a threshold.
+	 */
+	public enum Coverage { ALL, NONE, SOME }
+
+	private final short[][] minimums = new short[LightPollutionTiles.TILE_COUNT][];
+	private final short[][] maximums = new short[LightPollutionTiles.TILE_COUNT][];
+
+	/**
+	 * An empty pyramid, filled tile by tile with {@link #addTile(int, short[])}.
+	 */
+	public LightPollutionPyramid() {
+	}
+
+	/**
+	 * The file a pyramid is kept in beside a store of the atlas.
+	 * @param store A tile archive or converted store
+	 * @return The pyramid file next to it
+	 */
+	public static Path pathFor(Path store) {
+		return store.resolveSibling(store.getFileName() + ".minmax");
+	}
+
+	/**
+	 * Summarise one decoded tile.
+	 * @param tileIndex The tile, from {@link LightPollutionTiles#tileIndex(int, int)}
+	 * @param tile The decoded tile
+	 */
+	public void addTile(int tileIndex, short[] tile) {
+		short[] min = new short[BLOCKS_PER_TILE];
+		short[] max = new short[BLOCKS_PER_TILE];
+		int finest = BLOCK_SIZES.length - 1;
+		int finestSize = BLOCK_SIZES[finest];
+		int finestPerSide = LightPollutionTiles.TILE_SIZE / finestSize;
+
+		// The finest level is read from the pixels, every coarser level from the level below it
+		for (int by = 0; by < finestPerSide; by++) {
+			for (int bx = 0; bx < finestPerSide; bx++) {
+				short low = Short.MAX_VALUE, high = Short.MIN_VALUE;
+				for (int y = by * finestSize; y < (by + 1) * finestSize; y++) {
+					int row = y * LightPollutionTiles.TILE_SIZE;
+					for (int x = bx * finestSize; x < (bx + 1) * finestSize; x++) {
+						short value = tile[row + x];
+						if (value < low) low = value;
+						if (value > high) high = value;
+					}
+				}
+				int block = LEVEL_OFFSETS[finest] + by * finestPerSide + bx;
+				min[block] = low;
+				max[block] = high;
+			}
+		}
+		for (int level = finest - 1; level >= 0; level--) {
+			int perSide = LightPollutionTiles.TILE_SIZE / BLOCK_SIZES[level];
+			int childPerSide = LightPollutionTiles.TILE_SIZE / BLOCK_SIZES[level + 1];
+			int ratio = childPerSide / perSide;
+			for (int by = 0; by < perSide; by++) {
+				for (int bx = 0; bx < perSide; bx++) {
+					short low = Short.MAX_VALUE, high = Short.MIN_VALUE;
+					for (int cy = by * ratio; cy < (by + 1) * ratio; cy++) {
+						for (int cx = bx * ratio; cx < (bx + 1) * ratio; cx++) {
+							int child = LEVEL_OFFSETS[level + 1] + cy * childPerSide + cx;
+							if (min[child] < low) low = min[child];
+							if (max[child] > high) high = max[child];
+						}
+					}
+					int block = LEVEL_OFFSETS[level] + by * perSide + bx;
+					min[block] = low;
+					max[block] = high;
+				}
+			}
+		}
+		minimums[tileIndex] = min;
+		maximums[tileIndex] = max;
+	}
+
+	/**
+	 * Whether every pixel in a range meets a maximum compressed value.
+	 * Pixel coordinates are global, counted from 0 at the date line and 65S, and the range is clamped to the atlas.
+	 * A range touching a tile that is not in the atlas, or a negative value, is always {@link Coverage#SOME},
+	 * so that the pixels are looked at one by one and fail the way they would without the pyramid.
+	 *
+	 * @param minX The westernmost pixel column, inclusive
+	 * @param maxX The easternmost pixel column, inclusive
+	 * @param minY The southernmost pixel row, inclusive
+	 * @param maxY The northernmost pixel row, inclusive
+	 * @param maxCompressed The largest compressed value that meets the threshold
+	 * @return Whether all, none or only some of the pixels meet it
+	 */
+	public Coverage classify(int minX, int maxX, int minY, int maxY, int maxCompressed) {
+		int size = LightPollutionTiles.TILE_SIZE;
+		minX = Math.max(0, minX);
+		minY = Math.max(0, minY);
+		maxX = Math.min(LightPollutionTiles.TILES_X * size - 1, maxX);
+		maxY = Math.min(LightPollutionTiles.TILES_Y * size - 1, maxY);
+		if (minX > maxX || minY > maxY) return Coverage.SOME;
+
+		boolean anyPass = false, anyFail = false;
+		for (int tileX = minX / size; tileX <= maxX / size; tileX++) {
+			for (int tileY = minY / size; tileY <= maxY / size; tileY++) {
+				int tileIndex = LightPollutionTiles.tileIndex(tileX + 1, tileY + 1);
+				if (minimums[tileIndex] == null) return Coverage.SOME;
+				int x0 = Math.max(minX - tileX * size, 0), x1 = Math.min(maxX - tileX * size, size - 1);
+				int y0 = Math.max(minY - tileY * size, 0), y1 = Math.min(maxY - tileY * size, size - 1);
+				int result = classifyBlock(tileIndex, 0, 0, 0, x0, x1, y0, y1, maxCompressed);
+				if (result < 0) return Coverage.SOME;
+				anyPass |= (result & 1) != 0;
+				anyFail |= (result & 2) != 0;
+				if (anyPass && anyFail) return Coverage.SOME;
+			}
+		}
+		return anyFail ? Coverage.NONE : Coverage.ALL;
+	}
+
+	/**
+	 * @return -1 if a pixel is negative, otherwise bit 1 set if some pixel passes and bit 2 if some pixel fails
+	 */
+	private int classifyBlock(int tileIndex, int level, int bx, int by, int x0, int x1, int y0, int y1, int maxCompressed) {
+		int blockSize = BLOCK_SIZES[level];
+		int perSide = LightPollutionTiles.TILE_SIZE / blockSize;
+		int block = LEVEL_OFFSETS[level] + by * perSide + bx;
+		short min = minimums[tileIndex][block];
+		short max = maximums[tileIndex][block];
+		if (min < 0) return -1;
+		if (max <= maxCompressed) return 1;
+		if (min > maxCompressed) return 2;
+
+		boolean covered = x0 <= bx * blockSize && x1 >= (bx + 1) * blockSize - 1
+				&& y0 <= by * blockSize && y1 >= (by + 1) * blockSize - 1;
+		if (covered || level == BLOCK_SIZES.length - 1) return 3;
+
+		int childSize = BLOCK_SIZES[level + 1];
+		int result = 0;
+		for (int cy = Math.max(y0, by * blockSize) / childSize; cy <= Math.min(y1, (by + 1) * blockSize - 1) / childSize; cy++) {
+			for (int cx = Math.max(x0, bx * blockSize) / childSize; cx <= Math.min(x1, (bx + 1) * blockSize - 1) / childSize; cx++) {
+				int child = classifyBlock(tileIndex, level + 1, cx, cy, x0, x1, y0, y1, maxCompressed);
+				if (child < 0) return -1;
+				result |= child;
+				if (result == 3) return 3;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The smallest compressed value in a range, a bound on how dark anywhere in it can be.
+	 * @return The minimum, or {@link LightPollutionGrid#MISSING} if the range touches a tile that is not in the atlas
+	 * @see #classify(int, int, int, int, int)
+	 */
+	public int getMinimum(int minX, int maxX, int minY, int maxY) {
+		int size = LightPollutionTiles.TILE_SIZE;
+		minX = Math.max(0, minX);
+		minY = Math.max(0, minY);
+		maxX = Math.min(LightPollutionTiles.TILES_X * size - 1, maxX);
+		maxY = Math.min(LightPollutionTiles.TILES_Y * size - 1, maxY);
+		int minimum = Integer.MAX_VALUE;
+		int finest = BLOCK_SIZES.length - 1;
+		int blockSize = BLOCK_SIZES[finest];
+		int perSide = size / blockSize;
+		for (int tileX = minX / size; tileX <= maxX / size; tileX++) {
+			for (int tileY = minY / size; tileY <= maxY / size; tileY++) {
+				int tileIndex = LightPollutionTiles.tileIndex(tileX + 1, tileY + 1);
+				if (minimums[tileIndex] == null) return LightPollutionGrid.MISSING;
+				int x0 = Math.max(minX - tileX * size, 0), x1 = Math.min(maxX - tileX * size, size - 1);
+				int y0 = Math.max(minY - tileY * size, 0), y1 = Math.min(maxY - tileY * size, size - 1);
+				for (int by = y0 / blockSize; by <= y1 / blockSize; by++) {
+					for (int bx = x0 / blockSize; bx <= x1 / blockSize; bx++) {
+						minimum = Math.min(minimum, minimums[tileIndex][LEVEL_OFFSETS[finest] + by * perSide + bx]);
+					}
+				}
+			}
+		}
+		return minimum == Integer.MAX_VALUE ? LightPollutionGrid.MISSING : minimum;
+	}
+
+	/**
+	 * Build the pyramid of every tile of a source.
+	 * @param source The tiles to summarise
+	 * @return The pyramid
+	 * @throws IOException If a tile cannot be read
+	 */
+	public static LightPollutionPyramid build(LightPollutionTileSource source) throws IOException {
+		LightPollutionPyramid pyramid = new LightPollutionPyramid();
+		for (int tileIndex = 0; tileIndex < LightPollutionTiles.TILE_COUNT; tileIndex++) {
+			short[] tile = source.loadTile(tileIndex);
+			if (tile != null) {
+				pyramid.addTile(tileIndex, tile);
+			}
+		}
+		return pyramid;
+	}
+
+	/**
+	 * Write the pyramid, next to its destination first and then moved into place.
+	 * @param destination The file to write
+	 * @throws IOException If the file cannot be written
+	 */
+	public void write(Path destination) throws IOException {
+		int present = 0;
+		for (short[] min : minimums) {
+			if (min != null) present++;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(4 * Integer.BYTES + LightPollutionTiles.TILE_COUNT
+				+ present * BLOCKS_PER_TILE * 2 * Short.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(LightPollutionTiles.TILE_SIZE).putInt(LightPollutionTiles.TILE_COUNT);
+		for (short[] min : minimums) {
+			buffer.put((byte) (min == null ? 0 : 1));
+		}
+		for (int tileIndex = 0; tileIndex < LightPollutionTiles.TILE_COUNT; tileIndex++) {
+			if (minimums[tileIndex] == null) continue;
+			buffer.asShortBuffer().put(minimums[tileIndex]).put(maximums[tileIndex]);
+			buffer.position(buffer.position() + BLOCKS_PER_TILE * 2 * Short.BYTES);
+		}
+		buffer.flip();
+
+		Path temporary = Files.createTempFile(destination.toAbsolutePath().getParent(), destination.getFileName().toString(), ".part");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+		Files.move(temporary, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @param file A file written by {@link #write(Path)}
+	 * @return The pyramid
+	 * @throws IOException If the file cannot be read or is not a pyramid
+	 */
+	public static LightPollutionPyramid read(Path file) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.remaining() < 4 * Integer.BYTES + LightPollutionTiles.TILE_COUNT || buffer.getInt() != MAGIC) {
+			throw new IOException("Not a light pollution pyramid: " + file);
+		}
+		int version = buffer.getInt();
+		if (version != VERSION || buffer.getInt() != LightPollutionTiles.TILE_SIZE || buffer.getInt() != LightPollutionTiles.TILE_COUNT) {
+			throw new IOException("Unsupported light pollution pyramid layout: " + file);
+		}
+		boolean[] present = new boolean[LightPollutionTiles.TILE_COUNT];
+		int presentCount = 0;
+		for (int i = 0; i < present.length; i++) {
+			present[i] = buffer.get() != 0;
+			if (present[i]) presentCount++;
+		}
+		if (buffer.remaining() != presentCount * BLOCKS_PER_TILE * 2 * Short.BYTES) {
+			throw new IOException("Truncated light pollution pyramid: " + file);
+		}
+
+		LightPollutionPyramid pyramid = new LightPollutionPyramid();
+		for (int tileIndex = 0; tileIndex < LightPollutionTiles.TILE_COUNT; tileIndex++) {
+			if (!present[tileIndex]) continue;
+			short[] min = new short[BLOCKS_PER_TILE];
+			short[] max = new short[BLOCKS_PER_TILE];
+			buffer.asShortBuffer().get(min).get(max);
+			buffer.position(buffer.position() + BLOCKS_PER_TILE * 2 * Short.BYTES);
+			pyramid.minimums[tileIndex] = min;
+			pyramid.maximums[tileIndex] = max;
+		}
+		return pyramid;
+	}
+
+	/**
+	 * Build the pyramid for an existing store from the command line.
+	 * @param args The tile directory or packed archive, and the pyramid file to write
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: LightPollutionPyramid <tile directory | archive> <destination>");
+			System.exit(2);
+		}
+		Path source = Path.of(args[0]);
+		if (Files.isDirectory(source)) {
+			build(new GzipTileDirectory(source)).write(Path.of(args[1]));
+		} else {
+			try (LightPollutionArchive archive = LightPollutionArchive.open(source)) {
+				build(archive).write(Path.of(args[1]));
+			}
+		}
+	}
+}
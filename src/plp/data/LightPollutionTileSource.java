@@ -0,0 +1,27 @@
+package plp.data;
+
+import java.io.IOException;
+
+/**
+ * Somewhere the delta-encoded Light Pollution Atlas tiles can be read from.
+ * Implementations must be safe to read from several threads at once.
+ */
+public interface LightPollutionTileSource {
+
+	/**
+	 * @param tileIndex The tile, from {@link LightPollutionTiles#tileIndex(int, int)}
+	 * @return The decompressed, still delta-encoded tile, or null if the source has no such tile
+	 * @throws IOException If the tile exists but cannot be read
+	 */
+	byte[] readTile(int tileIndex) throws IOException;
+
+	/**
+	 * @param tileIndex The tile, from {@link LightPollutionTiles#tileIndex(int, int)}
+	 * @return The decoded tile, or null if the source has no such tile
+	 * @throws IOException If the tile exists but cannot be read
+	 */
+	default short[] loadTile(int tileIndex) throws IOException {
+		byte[] data = readTile(tileIndex);
+		return data == null ? null : LightPollutionTiles.decodeTile(data);
+	}
+}
@@ -0,0 +1,96 @@
+package plp.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Layout and encoding of the Light Pollution Atlas 2022 binary tiles.
+ * The atlas covers 65S to 75N in 5x5 degree tiles of 600x600 pixels, numbered from 1 starting at the date line and 65S.
+ */
+public class LightPollutionTiles {
+	public static final int TILE_SIZE = 600;
+	public static final int TILES_X = 72; // 5 degrees of longitude each
+	public static final int TILES_Y = 28; // 5 degrees of latitude each, from 65S to 75N
+	public static final int TILE_COUNT = TILES_X * TILES_Y;
+	public static final int TILE_PIXELS = TILE_SIZE * TILE_SIZE;
+
+	private LightPollutionTiles() {}
+
+	/**
+	 * @return The position of a tile in arrays of every tile
+	 */
+	public static int tileIndex(int tileX, int tileY) {
+		return (tileX - 1) * TILES_Y + (tileY - 1);
+	}
+
+	public static int tileX(int tileIndex) {
+		return tileIndex / TILES_Y + 1;
+	}
+
+	public static int tileY(int tileIndex) {
+		return tileIndex % TILES_Y + 1;
+	}
+
+	/**
+	 * @return The position of a pixel within a decoded tile, for grid indices from 1 to TILE_SIZE
+	 */
+	public static int pixelIndex(int ix, int iy) {
+		return TILE_SIZE * (iy - 1) + ix - 1;
+	}
+
+	public static String tileFileName(int tileX, int tileY) {
+		return "binary_tile_" + tileX + "_" + tileY + ".dat.gz";
+	}
+
+	/**
+	 * Decompresses a GZIP file and returns its byte data.
+	 */
+	public static byte[] decompressTile(File file) throws IOException {
+		try (InputStream fileStream = new FileInputStream(file);
+				GZIPInputStream gzipStream = new GZIPInputStream(fileStream);
+				ByteArrayOutputStream buffer = new ByteArrayOutputStream()) {
+
+			byte[] temp = new byte[1024];
+			int bytesRead;
+			while ((bytesRead = gzipStream.read(temp)) != -1) {
+				buffer.write(temp, 0, bytesRead);
+			}
+			return buffer.toByteArray();
+		}
+	}
+
+	/**
+	 * Resolves the delta encoding of a tile into absolute compressed values.
+	 * The first two bytes hold the value of the first pixel, then the first byte of each row holds the change
+	 * from the previous row's first pixel and the rest of the row holds the change from the pixel to its left.
+	 *
+	 * @param data The decompressed tile
+	 * @return The compressed value of every pixel, row by row from the south-west corner
+	 */
+	public static short[] decodeTile(byte[] data) {
+		if (data.length < TILE_SIZE * (TILE_SIZE - 1) + TILE_SIZE + 1) {
+			throw new IllegalArgumentException("Truncated light pollution tile: " + data.length + " bytes");
+		}
+		short[] decoded = new short[TILE_PIXELS];
+		int rowStart = 128 * data[0] + data[1];
+		for (int iy = 1; iy <= TILE_SIZE; iy++) {
+			if (iy > 1) {
+				rowStart += data[TILE_SIZE * (iy - 1) + 1];
+			}
+			int value = rowStart;
+			int rowOffset = TILE_SIZE * (iy - 1) + 1;
+			for (int ix = 1; ix <= TILE_SIZE; ix++) {
+				if (ix > 1) {
+					value += data[rowOffset + ix - 1];
+				}
+				// Negative values are kept so that lookups can still reject them
+				decoded[pixelIndex(ix, iy)] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+			}
+		}
+		return decoded;
+	}
+}
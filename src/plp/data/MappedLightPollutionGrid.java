@@ -0,0 +1,156 @@
+package plp.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The whole decoded atlas in one file, memory-mapped and read in place.
+ *
+ * Only the pages a query touches are ever read from disk, they live in the OS page cache rather than on the heap,
+ * and every JVM on the host that maps the same file shares them. Opening the file only reads its header.
+ *
+ * Layout, little-endian: a header of magic, version, tile size and tile count, then one int per tile
+ * giving its slot (or -1 if the atlas has no such tile), then every present tile as TILE_SIZE x TILE_SIZE shorts.
+ */
+public class MappedLightPollutionGrid implements LightPollutionGrid {
+	private static final int MAGIC = 0x504C504D; // "PLPM"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 4 * Integer.BYTES + LightPollutionTiles.TILE_COUNT * Integer.BYTES;
+	private static final long TILE_BYTES = (long) LightPollutionTiles.TILE_PIXELS * Short.BYTES;
+	private static final int TILES_PER_MAPPING = 1024; // Keeps every mapping under the 2 GB limit of a buffer
+
+	private final int[] slots;
+	private final MappedByteBuffer[] mappings;
+
+	private MappedLightPollutionGrid(int[] slots, MappedByteBuffer[] mappings) {
+		this.slots = slots;
+		this.mappings = mappings;
+	}
+
+	/**
+	 * Map a converted atlas.
+	 * @param file A file written by {@link #convert(Path, Path)}
+	 * @return The mapped grid
+	 * @throws IOException If the file cannot be read or is not a converted atlas
+	 */
+	public static MappedLightPollutionGrid open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining() && channel.read(header) >= 0) {}
+			header.flip();
+			if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+				throw new IOException("Not a converted light pollution atlas: " + file);
+			}
+			int version = header.getInt();
+			if (version != VERSION || header.getInt() != LightPollutionTiles.TILE_SIZE || header.getInt() != LightPollutionTiles.TILE_COUNT) {
+				throw new IOException("Unsupported light pollution atlas layout: " + file);
+			}
+			int[] slots = new int[LightPollutionTiles.TILE_COUNT];
+			int present = 0;
+			for (int i = 0; i < slots.length; i++) {
+				slots[i] = header.getInt();
+				if (slots[i] >= 0) present++;
+			}
+
+			MappedByteBuffer[] mappings = new MappedByteBuffer[(present + TILES_PER_MAPPING - 1) / TILES_PER_MAPPING];
+			for (int m = 0; m < mappings.length; m++) {
+				int tiles = Math.min(TILES_PER_MAPPING, present - m * TILES_PER_MAPPING);
+				long offset = HEADER_BYTES + m * TILES_PER_MAPPING * TILE_BYTES;
+				mappings[m] = channel.map(FileChannel.MapMode.READ_ONLY, offset, tiles * TILE_BYTES);
+				mappings[m].order(ByteOrder.LITTLE_ENDIAN);
+			}
+			return new MappedLightPollutionGrid(slots, mappings);
+		}
+	}
+
+	@Override
+	public int getCompressed(int tileIndex, int pixel) {
+		int slot = slots[tileIndex];
+		if (slot < 0) return MISSING;
+		long offset = (slot % TILES_PER_MAPPING) * TILE_BYTES + (long) pixel * Short.BYTES;
+		return mappings[slot / TILES_PER_MAPPING].getShort((int) offset);
+	}
+
+	/**
+	 * Decode every tile of a source into one mappable file. Tiles are converted one at a time,
+	 * so the heap only ever holds a single tile. The file is written to a temporary file of its own next to its destination
+	 * and only moved into place once every tile is in it, after its {@link LightPollutionPyramid} is written beside it,
+	 * so a reader never maps a partial atlas and two conversions cannot write over each other.
+	 * This is the only way a store is made: the filter maps one if it exists and never converts on its own.
+	 *
+	 * @param source The tiles to decode, such as a {@link GzipTileDirectory} or {@link LightPollutionArchive}
+	 * @param destination The file to write
+	 * @throws IOException If a tile is missing or cannot be read, or the file cannot be written
+	 */
+	public static void convert(LightPollutionTileSource source, Path destination) throws IOException {
+		int[] slots = new int[LightPollutionTiles.TILE_COUNT];
+		Arrays.fill(slots, -1);
+		Path temporary = Files.createTempFile(destination.toAbsolutePath().getParent(), destination.getFileName().toString(), ".part");
+		LightPollutionPyramid pyramid = new LightPollutionPyramid();
+
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			channel.position(HEADER_BYTES);
+			ByteBuffer tileBuffer = ByteBuffer.allocate((int) TILE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			int slot = 0;
+			for (int tileIndex = 0; tileIndex < LightPollutionTiles.TILE_COUNT; tileIndex++) {
+				short[] tile = source.loadTile(tileIndex);
+				if (tile == null) {
+					throw new IOException("Tile " + LightPollutionTiles.tileFileName(LightPollutionTiles.tileX(tileIndex), LightPollutionTiles.tileY(tileIndex))
+							+ " is missing, download the whole atlas before converting it");
+				}
+				pyramid.addTile(tileIndex, tile);
+
+				tileBuffer.clear();
+				tileBuffer.asShortBuffer().put(tile);
+				tileBuffer.limit((int) TILE_BYTES);
+				while (tileBuffer.hasRemaining()) {
+					channel.write(tileBuffer);
+				}
+				slots[tileIndex] = slot++;
+			}
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(LightPollutionTiles.TILE_SIZE).putInt(LightPollutionTiles.TILE_COUNT);
+			for (int s : slots) {
+				header.putInt(s);
+			}
+			header.flip();
+			channel.position(0);
+			while (header.hasRemaining()) {
+				channel.write(header);
+			}
+			pyramid.write(LightPollutionPyramid.pathFor(destination));
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temporary);
+			throw e;
+		}
+		Files.move(temporary, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Convert the atlas from the command line.
+	 * @param args The tile directory or packed archive, and the destination file
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: MappedLightPollutionGrid <tile directory | archive> <destination>");
+			System.exit(2);
+		}
+		Path source = Path.of(args[0]);
+		if (Files.isDirectory(source)) {
+			convert(new GzipTileDirectory(source), Path.of(args[1]));
+		} else {
+			try (LightPollutionArchive archive = LightPollutionArchive.open(source)) {
+				convert(archive, Path.of(args[1]));
+			}
+		}
+	}
+}
@@ -0,0 +1,390 @@
+package plp.data;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The locations of a set of point features, such as road access points or cities, read from a local file.
+ *
+ * A .csv file has one feature per line. If the first line names its columns, the latitude is read from a column
+ * named lat, latitude or y and the longitude from one named lng, lon, long, longitude or x; otherwise every line is
+ * latitude then longitude. Fields may be quoted, and blank lines and lines starting with # are skipped.
+ *
+ * A .geojson or .json file may hold a FeatureCollection, a Feature, a GeometryCollection or a bare geometry.
+ * Every Point and MultiPoint is read, other geometries are skipped. Properties are not kept.
+ */
+public class PointFeatures {
+	private static final String[] LATITUDE_COLUMNS = {"lat", "latitude", "y"};
+	private static final String[] LONGITUDE_COLUMNS = {"lng", "lon", "long", "longitude", "x"};
+
+	private double[] latitudes;
+	private double[] longitudes;
+	private int count;
+	private int skipped;
+
+	private PointFeatures() {
+		latitudes = new double[1024];
+		longitudes = new double[1024];
+	}
+
+	/**
+	 * Read the features of a file, by its extension.
+	 * @param file A .csv, .geojson or .json file
+	 * @return The features
+	 * @throws IOException If the file cannot be read or is malformed
+	 */
+	public static PointFeatures read(Path file) throws IOException {
+		String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+		PointFeatures features = new PointFeatures();
+		if (name.endsWith(".csv")) {
+			features.readCsv(file);
+		} else if (name.endsWith(".geojson") || name.endsWith(".json")) {
+			new GeoJsonReader(Files.readString(file), file, features).readGeometries();
+		} else {
+			throw new IOException("Point features must be a .csv, .geojson or .json file: " + file);
+		}
+		if (features.skipped > 0) {
+			System.out.println("Skipped " + features.skipped + " features that are not points in " + file);
+		}
+		return features;
+	}
+
+	/**
+	 * @return The number of features
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @param feature The feature, from 0
+	 * @return Its latitude in degrees
+	 */
+	public double getLatitude(int feature) {
+		return latitudes[feature];
+	}
+
+	/**
+	 * @param feature The feature, from 0
+	 * @return Its longitude in degrees
+	 */
+	public double getLongitude(int feature) {
+		return longitudes[feature];
+	}
+
+	private void add(double latitude, double longitude, Path file) throws IOException {
+		if (!(latitude >= -90.0 && latitude <= 90.0) || !(longitude >= -180.0 && longitude <= 180.0)) {
+			throw new IOException("Feature " + (count + 1) + " is not a location (" + latitude + ", " + longitude + ") in " + file);
+		}
+		if (count == latitudes.length) {
+			latitudes = Arrays.copyOf(latitudes, count * 2);
+			longitudes = Arrays.copyOf(longitudes, count * 2);
+		}
+		latitudes[count] = latitude;
+		longitudes[count] = longitude;
+		count++;
+	}
+
+	private void readCsv(Path file) throws IOException {
+		List<String> lines = Files.readAllLines(file);
+		int latitudeColumn = 0, longitudeColumn = 1;
+		boolean header = true;
+		for (int i = 0; i < lines.size(); i++) {
+			String line = lines.get(i).strip();
+			if (line.isEmpty() || line.startsWith("#")) continue;
+			List<String> fields = splitCsv(line);
+			if (header) {
+				header = false;
+				int namedLatitude = columnOf(fields, LATITUDE_COLUMNS);
+				int namedLongitude = columnOf(fields, LONGITUDE_COLUMNS);
+				if (namedLatitude >= 0 && namedLongitude >= 0) {
+					latitudeColumn = namedLatitude;
+					longitudeColumn = namedLongitude;
+					continue;
+				}
+			}
+			if (fields.size() <= Math.max(latitudeColumn, longitudeColumn)) {
+				throw new IOException("Line " + (i + 1) + " has no location in " + file);
+			}
+			try {
+				add(Double.parseDouble(fields.get(latitudeColumn)), Double.parseDouble(fields.get(longitudeColumn)), file);
+			} catch (NumberFormatException e) {
+				throw new IOException("Line " + (i + 1) + " has no location in " + file + ": " + e.getMessage());
+			}
+		}
+	}
+
+	private static int columnOf(List<String> header, String[] names) {
+		for (int column = 0; column < header.size(); column++) {
+			for (String name : names) {
+				if (header.get(column).equalsIgnoreCase(name)) return column;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Split a line on commas outside double quotes, unquoting and trimming each field.
+	 */
+	private static List<String> splitCsv(String line) {
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '"') {
+				if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					field.append('"'); // An escaped quote
+					i++;
+				} else {
+					quoted = !quoted;
+				}
+			} else if (c == ',' && !quoted) {
+				fields.add(field.toString().strip());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString().strip());
+		return fields;
+	}
+
+	/**
+	 * Reads just enough JSON to find the points of a GeoJSON document, skipping everything else without keeping it.
+	 */
+	private static class GeoJsonReader {
+		private final String text;
+		private final Path file;
+		private final PointFeatures features;
+		private int position;
+
+		GeoJsonReader(String text, Path file, PointFeatures features) {
+			this.text = text;
+			this.file = file;
+			this.features = features;
+		}
+
+		void readGeometries() throws IOException {
+			readObject();
+			skipWhitespace();
+			if (position < text.length()) throw error("Unexpected content after the document");
+		}
+
+		/**
+		 * Read an object, adding its points if it is a Point or MultiPoint, and reading on into any features or geometries.
+		 */
+		private void readObject() throws IOException {
+			expect('{');
+			String type = null;
+			List<double[]> coordinates = null;
+			skipWhitespace();
+			if (peek() == '}') {
+				position++;
+				return;
+			}
+			while (true) {
+				String key = readString();
+				expect(':');
+				skipWhitespace();
+				switch (key) {
+					case "type" -> type = readString();
+					case "coordinates" -> coordinates = readCoordinates();
+					case "geometry" -> {
+						if (peek() == '{') readObject();
+						else skipValue(); // A null geometry
+					}
+					case "features", "geometries" -> readObjects();
+					default -> skipValue();
+				}
+				skipWhitespace();
+				if (peek() == ',') {
+					position++;
+					skipWhitespace();
+				} else {
+					expect('}');
+					break;
+				}
+			}
+			if (coordinates == null) return;
+			if ("Point".equals(type) || "MultiPoint".equals(type)) {
+				for (double[] point : coordinates) {
+					features.add(point[1], point[0], file); // GeoJSON positions are longitude first
+				}
+			} else {
+				features.skipped++;
+			}
+		}
+
+		private void readObjects() throws IOException {
+			expect('[');
+			skipWhitespace();
+			if (peek() == ']') {
+				position++;
+				return;
+			}
+			while (true) {
+				skipWhitespace();
+				readObject();
+				skipWhitespace();
+				if (peek() == ',') {
+					position++;
+				} else {
+					expect(']');
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Read the coordinates of any geometry, keeping only the positions of a Point or MultiPoint.
+		 * @return One position for a Point, its positions for a MultiPoint, or an empty list for deeper nesting
+		 */
+		private List<double[]> readCoordinates() throws IOException {
+			List<double[]> positions = new ArrayList<>();
+			int start = position;
+			expect('[');
+			skipWhitespace();
+			if (peek() == ']') {
+				position++;
+				return positions; // An empty geometry
+			}
+			if (peek() != '[') {
+				position = start;
+				positions.add(readPosition());
+				return positions;
+			}
+			int nested = position;
+			position++;
+			skipWhitespace();
+			boolean deeper = peek() == '[';
+			position = nested;
+			if (deeper) {
+				position = start;
+				skipValue(); // A line or polygon
+				positions.clear();
+				return positions;
+			}
+			while (true) {
+				skipWhitespace();
+				positions.add(readPosition());
+				skipWhitespace();
+				if (peek() == ',') {
+					position++;
+				} else {
+					expect(']');
+					return positions;
+				}
+			}
+		}
+
+		private double[] readPosition() throws IOException {
+			expect('[');
+			double longitude = readNumber();
+			expect(',');
+			double latitude = readNumber();
+			skipWhitespace();
+			while (peek() == ',') { // An altitude or other ordinates
+				position++;
+				readNumber();
+				skipWhitespace();
+			}
+			expect(']');
+			return new double[]{longitude, latitude};
+		}
+
+		private double readNumber() throws IOException {
+			skipWhitespace();
+			int start = position;
+			while (position < text.length() && "+-.0123456789eE".indexOf(text.charAt(position)) >= 0) {
+				position++;
+			}
+			try {
+				return Double.parseDouble(text.substring(start, position));
+			} catch (NumberFormatException e) {
+				throw error("Expected a number");
+			}
+		}
+
+		private String readString() throws IOException {
+			skipWhitespace();
+			expect('"');
+			StringBuilder value = new StringBuilder();
+			while (position < text.length()) {
+				char c = text.charAt(position++);
+				if (c == '"') return value.toString();
+				if (c == '\\') {
+					if (position >= text.length()) break;
+					char escaped = text.charAt(position++);
+					if (escaped == 'u') {
+						if (position + 4 > text.length()) break;
+						value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+						position += 4;
+					} else {
+						value.append(switch (escaped) {
+							case 'n' -> '\n';
+							case 't' -> '\t';
+							case 'r' -> '\r';
+							case 'b' -> '\b';
+							case 'f' -> '\f';
+							default -> escaped;
+						});
+					}
+				} else {
+					value.append(c);
+				}
+			}
+			throw error("Unterminated string");
+		}
+
+		private void skipValue() throws IOException {
+			skipWhitespace();
+			char c = peek();
+			if (c == '"') {
+				readString();
+			} else if (c == '{' || c == '[') {
+				int depth = 0;
+				do {
+					c = peek();
+					if (c == '"') {
+						readString();
+						continue;
+					}
+					if (c == '{' || c == '[') depth++;
+					else if (c == '}' || c == ']') depth--;
+					position++;
+				} while (depth > 0);
+			} else {
+				while (position < text.length() && ",}] \t\r\n".indexOf(text.charAt(position)) < 0) {
+					position++; // A number, true, false or null
+				}
+			}
+		}
+
+		private void expect(char c) throws IOException {
+			skipWhitespace();
+			if (peek() != c) throw error("Expected '" + c + "'");
+			position++;
+		}
+
+		private char peek() throws IOException {
+			if (position >= text.length()) throw error("Unexpected end of the document");
+			return text.charAt(position);
+		}
+
+		private void skipWhitespace() {
+			while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+				position++;
+			}
+		}
+
+		private IOException error(String message) {
+			return new IOException(message + " at character " + position + " of " + file);
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package plp.data;
+
+/**
+ * One location at a time, for JVMs without the Vector API and for the tails of vector loops.
+ */
+public class ScalarLightPollutionKernel implements LightPollutionKernel {
+	static final double DEGREES_PER_TILE = 5.0;
+	static final double PIXELS_PER_DEGREE = 120.0;
+	static final double HALF_PIXEL = 1.0 / 240.0;
+
+	@Override
+	public void locate(double[] latitudes, double[] longitudes, int count, int[] tiles, int[] pixels) {
+		locate(latitudes, longitudes, 0, count, tiles, pixels);
+	}
+
+	static void locate(double[] latitudes, double[] longitudes, int from, int to, int[] tiles, int[] pixels) {
+		for (int i = from; i < to; i++) {
+			double lonFromDateLine = ((longitudes[i] + 180.0) % 360.0 + 360.0) % 360.0;
+			double latFromStart = latitudes[i] + 65.0;
+			int tileX = (int) Math.floor(lonFromDateLine / DEGREES_PER_TILE) + 1;
+			int tileY = (int) Math.floor(latFromStart / DEGREES_PER_TILE) + 1;
+			int ix = (int) Math.round(PIXELS_PER_DEGREE * (lonFromDateLine - DEGREES_PER_TILE * (tileX - 1) + HALF_PIXEL));
+			int iy = (int) Math.round(PIXELS_PER_DEGREE * (latFromStart - DEGREES_PER_TILE * (tileY - 1) + HALF_PIXEL));
+			if (tileY < 1 || tileY > LightPollutionTiles.TILES_Y
+					|| ix < 1 || ix > LightPollutionTiles.TILE_SIZE || iy < 1 || iy > LightPollutionTiles.TILE_SIZE) {
+				tiles[i] = -1;
+				continue;
+			}
+			tiles[i] = LightPollutionTiles.tileIndex(tileX, tileY);
+			pixels[i] = LightPollutionTiles.pixelIndex(ix, iy);
+		}
+	}
+
+	@Override
+	public void select(int[] compressed, int count, int maxCompressed, long[] mask) {
+		select(compressed, 0, count, maxCompressed, mask);
+	}
+
+	static void select(int[] compressed, int from, int to, int maxCompressed, long[] mask) {
+		for (int i = from; i < to; i++) {
+			if (compressed[i] <= maxCompressed) {
+				mask[i >>> 6] |= 1L << i;
+			} else {
+				mask[i >>> 6] &= ~(1L << i);
+			}
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package plp.data;
+
+import java.time.Instant;
+
+/**
+ * Low-precision positions of the Sun and Moon, after the Astronomical Almanac's approximate formulas.
+ * The Sun is good to about 0.01 degrees and the Moon to about 0.3 degrees between 1950 and 2050,
+ * far closer than rise and set times need. Angles are returned in radians, right ascension and declination
+ * being geocentric and referred to the equinox of date.
+ */
+public final class SkyEphemeris {
+	private static final double J2000 = 2451545.0;
+	private static final double EPOCH_JULIAN_DAY = 2440587.5; // 1970-01-01T00:00Z
+	private static final double SECONDS_PER_DAY = 86400.0;
+
+	private SkyEphemeris() {}
+
+	/**
+	 * @return The Julian day of an instant, in UT
+	 */
+	public static double julianDay(Instant instant) {
+		return EPOCH_JULIAN_DAY + (instant.getEpochSecond() + instant.getNano() / 1e9) / SECONDS_PER_DAY;
+	}
+
+	/**
+	 * @param julianDay The Julian day, in UT
+	 * @return Greenwich mean sidereal time
+	 */
+	public static double greenwichSiderealTime(double julianDay) {
+		return Math.toRadians(normalize(280.46061837 + 360.98564736629 * (julianDay - J2000)));
+	}
+
+	/**
+	 * @param julianDay The Julian day, in UT
+	 * @param position Receives the right ascension then the declination
+	 */
+	public static void sun(double julianDay, double[] position) {
+		double n = julianDay - J2000;
+		double meanLongitude = 280.460 + 0.9856474 * n;
+		double meanAnomaly = Math.toRadians(357.528 + 0.9856003 * n);
+		double longitude = Math.toRadians(meanLongitude + 1.915 * Math.sin(meanAnomaly) + 0.020 * Math.sin(2 * meanAnomaly));
+		double obliquity = Math.toRadians(23.439 - 0.0000004 * n);
+		position[0] = Math.atan2(Math.cos(obliquity) * Math.sin(longitude), Math.cos(longitude));
+		position[1] = Math.asin(Math.sin(obliquity) * Math.sin(longitude));
+	}
+
+	/**
+	 * @param julianDay The Julian day, in UT
+	 * @param position Receives the right ascension, the declination, then the horizontal parallax
+	 */
+	public static void moon(double julianDay, double[] position) {
+		double t = (julianDay - J2000) / 36525.0;
+		double longitude = 218.32 + 481267.881 * t
+				+ 6.29 * sin(135.0 + 477198.87 * t) - 1.27 * sin(259.3 - 413335.36 * t)
+				+ 0.66 * sin(235.7 + 890534.22 * t) + 0.21 * sin(269.9 + 954397.74 * t)
+				- 0.19 * sin(357.5 + 35999.05 * t) - 0.11 * sin(186.5 + 966404.03 * t);
+		double latitude = 5.13 * sin(93.3 + 483202.02 * t) + 0.28 * sin(228.2 + 960400.89 * t)
+				- 0.28 * sin(318.3 + 6003.15 * t) - 0.17 * sin(217.6 - 407332.21 * t);
+		double parallax = 0.9508 + 0.0518 * cos(134.9 + 477198.85 * t) + 0.0095 * cos(259.2 - 413335.38 * t)
+				+ 0.0078 * cos(235.7 + 890534.23 * t) + 0.0028 * cos(269.9 + 954397.70 * t);
+
+		// Ecliptic to equatorial, with the obliquity of J2000
+		double lambda = Math.toRadians(longitude), beta = Math.toRadians(latitude);
+		double l = Math.cos(beta) * Math.cos(lambda);
+		double m = 0.9175 * Math.cos(beta) * Math.sin(lambda) - 0.3978 * Math.sin(beta);
+		double n = 0.3978 * Math.cos(beta) * Math.sin(lambda) + 0.9175 * Math.sin(beta);
+		position[0] = Math.atan2(m, l);
+		position[1] = Math.asin(n);
+		position[2] = Math.toRadians(parallax);
+	}
+
+	private static double sin(double degrees) {
+		return Math.sin(Math.toRadians(degrees));
+	}
+
+	private static double cos(double degrees) {
+		return Math.cos(Math.toRadians(degrees));
+	}
+
+	private static double normalize(double degrees) {
+		return ((degrees % 360.0) + 360.0) % 360.0;
+	}
+}
@@ -0,0 +1,91 @@
+package plp.data;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The kernel on SIMD lanes, through the incubating Vector API. Needs {@code --add-modules jdk.incubator.vector}
+ * at compile and run time, so it is only compiled by the vector profile, and is only ever loaded by {@link LightPollutionKernel#best()}.
+ *
+ * Every step performs the same IEEE operations as {@link ScalarLightPollutionKernel}, so both place every location
+ * in the same pixel. Longitudes that need more than one wrap around the date line are left to the scalar path.
+ */
+class VectorLightPollutionKernel implements LightPollutionKernel {
+	private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+	// Ints with as many lanes as DOUBLES, to narrow indexes into
+	private static final VectorSpecies<Integer> NARROW_INTS = VectorSpecies.of(int.class, VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+	private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+	@Override
+	public void locate(double[] latitudes, double[] longitudes, int count, int[] tiles, int[] pixels) {
+		int bound = DOUBLES.loopBound(count);
+		for (int i = 0; i < bound; i += DOUBLES.length()) {
+			// ((x % 360) + 360) % 360 as the scalar path computes it, including the rounding of the + 360
+			DoubleVector x = DoubleVector.fromArray(DOUBLES, longitudes, i).add(180.0);
+			VectorMask<Double> wrapsOnce = x.compare(VectorOperators.GE, -360.0).and(x.compare(VectorOperators.LT, 720.0));
+			DoubleVector remainder = x.sub(360.0, x.compare(VectorOperators.GE, 360.0));
+			DoubleVector lon = remainder.add(360.0);
+			lon = lon.sub(360.0, remainder.compare(VectorOperators.GE, 0.0));
+			DoubleVector lat = DoubleVector.fromArray(DOUBLES, latitudes, i).add(65.0);
+
+			// Both are non-negative wherever the result is used, so truncating is flooring
+			DoubleVector tileX = truncate(lon.div(ScalarLightPollutionKernel.DEGREES_PER_TILE));
+			DoubleVector tileY = truncate(lat.div(ScalarLightPollutionKernel.DEGREES_PER_TILE));
+			DoubleVector ix = round(lon.sub(tileX.mul(ScalarLightPollutionKernel.DEGREES_PER_TILE))
+					.add(ScalarLightPollutionKernel.HALF_PIXEL).mul(ScalarLightPollutionKernel.PIXELS_PER_DEGREE));
+			DoubleVector iy = round(lat.sub(tileY.mul(ScalarLightPollutionKernel.DEGREES_PER_TILE))
+					.add(ScalarLightPollutionKernel.HALF_PIXEL).mul(ScalarLightPollutionKernel.PIXELS_PER_DEGREE));
+
+			VectorMask<Double> valid = wrapsOnce
+					.and(lat.compare(VectorOperators.GE, 0.0))
+					.and(tileY.compare(VectorOperators.LT, LightPollutionTiles.TILES_Y))
+					.and(ix.compare(VectorOperators.GE, 1.0))
+					.and(ix.compare(VectorOperators.LE, LightPollutionTiles.TILE_SIZE))
+					.and(iy.compare(VectorOperators.GE, 1.0))
+					.and(iy.compare(VectorOperators.LE, LightPollutionTiles.TILE_SIZE));
+
+			DoubleVector tile = tileX.mul(LightPollutionTiles.TILES_Y).add(tileY).blend(-1.0, valid.not());
+			DoubleVector pixel = iy.sub(1.0).mul(LightPollutionTiles.TILE_SIZE).add(ix).sub(1.0).blend(0.0, valid.not());
+			((IntVector) tile.convertShape(VectorOperators.D2I, NARROW_INTS, 0)).intoArray(tiles, i);
+			((IntVector) pixel.convertShape(VectorOperators.D2I, NARROW_INTS, 0)).intoArray(pixels, i);
+
+			// Anything the single-wrap arithmetic could not place is redone exactly
+			if (!valid.allTrue()) {
+				for (int lane = 0; lane < DOUBLES.length(); lane++) {
+					if (!valid.laneIsSet(lane)) {
+						ScalarLightPollutionKernel.locate(latitudes, longitudes, i + lane, i + lane + 1, tiles, pixels);
+					}
+				}
+			}
+		}
+		ScalarLightPollutionKernel.locate(latitudes, longitudes, bound, count, tiles, pixels);
+	}
+
+	@Override
+	public void select(int[] compressed, int count, int maxCompressed, long[] mask) {
+		int bound = INTS.loopBound(count);
+		for (int i = 0; i < bound; i += INTS.length()) {
+			long bits = IntVector.fromArray(INTS, compressed, i).compare(VectorOperators.LE, maxCompressed).toLong();
+			long laneMask = INTS.length() == 64 ? -1L : ((1L << INTS.length()) - 1);
+			int shift = i & 63; // Lane counts divide 64, so a vector never straddles two words
+			mask[i >>> 6] = (mask[i >>> 6] & ~(laneMask << shift)) | (bits << shift);
+		}
+		ScalarLightPollutionKernel.select(compressed, bound, count, maxCompressed, mask);
+	}
+
+	private static DoubleVector truncate(DoubleVector v) {
+		return (DoubleVector) v.convert(VectorOperators.D2L, 0).convert(VectorOperators.L2D, 0);
+	}
+
+	/**
+	 * Math.round for non-negative values: floor(x + 0.5), corrected where adding 0.5 itself rounded up.
+	 */
+	private static DoubleVector round(DoubleVector v) {
+		DoubleVector rounded = truncate(v.add(0.5));
+		return rounded.sub(1.0, rounded.sub(v).compare(VectorOperators.GT, 0.5));
+	}
+}
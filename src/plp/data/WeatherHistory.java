@@ -0,0 +1,226 @@
+package plp.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Running statistics of the forecast quality of every pixel of one timezone's images, over every archived day added to it.
+ * Each pixel keeps the sum of its qualities and, for every multiple of THRESHOLD_STEP, the number of days at or above it,
+ * so adding a day reads only that day's image, and queries never touch the archive.
+ *
+ * Layout, little-endian: magic, version, first column, width, height, number of days, each day as an epoch day in
+ * ascending order, then every pixel's sum row by row, then every pixel's day counts, one per threshold.
+ */
+public class WeatherHistory {
+	/**
+	 * Qualities are counted against every multiple of this, so frequencies are only known at these thresholds.
+	 * Every percentage up to 100 would take ten times the space for a precision the forecasts' colour bar hardly has.
+	 */
+	public static final int THRESHOLD_STEP = 10;
+
+	private static final int THRESHOLDS = 100 / THRESHOLD_STEP; // THRESHOLD_STEP, 2 * THRESHOLD_STEP, ... 100
+	private static final int MAGIC = 0x504C5048; // "PLPH"
+	private static final int VERSION = 3; // 2 had no sums of qualities
+
+	private final int firstColumn;
+	private final int width;
+	private final int height;
+	private long[] days;
+	private final IntBuffer sums;
+	private final ShortBuffer daysAtLeast;
+
+	private WeatherHistory(int firstColumn, int width, int height, long[] days, IntBuffer sums, ShortBuffer daysAtLeast) {
+		this.firstColumn = firstColumn;
+		this.width = width;
+		this.height = height;
+		this.days = days;
+		this.sums = sums;
+		this.daysAtLeast = daysAtLeast;
+	}
+
+	/**
+	 * @return A history of no days, for the columns of a timezone
+	 */
+	public static WeatherHistory empty(int firstColumn, int width, int height) {
+		int pixels = width * height;
+		return new WeatherHistory(firstColumn, width, height, new long[0], IntBuffer.allocate(pixels), ShortBuffer.allocate(pixels * THRESHOLDS));
+	}
+
+	/**
+	 * Read a history into the heap, to add days to it.
+	 * @param file A file written by {@link #write(Path)}
+	 * @return The history
+	 * @throws IOException If the file cannot be read or is not a history of this version
+	 */
+	public static WeatherHistory read(Path file) throws IOException {
+		return parse(ByteBuffer.wrap(Files.readAllBytes(file)), file);
+	}
+
+	/**
+	 * Map a history read only, for queries.
+	 * @param file A file written by {@link #write(Path)}
+	 * @return The history
+	 * @throws IOException If the file cannot be read or is not a history
+	 */
+	public static WeatherHistory map(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return parse(mapped, file);
+		}
+	}
+
+	private static WeatherHistory parse(ByteBuffer data, Path file) throws IOException {
+		data.order(ByteOrder.LITTLE_ENDIAN);
+		if (data.remaining() < 6 * Integer.BYTES || data.getInt() != MAGIC || data.getInt() != VERSION) {
+			throw new IOException("Not a sun weather history: " + file);
+		}
+		int firstColumn = data.getInt();
+		int width = data.getInt();
+		int height = data.getInt();
+		int dayCount = data.getInt();
+		long pixels = (long) width * height;
+		if (dayCount < 0 || data.remaining() != dayCount * (long) Long.BYTES + pixels * (Integer.BYTES + THRESHOLDS * Short.BYTES)) {
+			throw new IOException("Truncated sun weather history: " + file);
+		}
+		long[] days = new long[dayCount];
+		for (int i = 0; i < dayCount; i++) {
+			days[i] = data.getLong();
+		}
+		int sumsStart = data.position();
+		int countsStart = sumsStart + (int) pixels * Integer.BYTES;
+		IntBuffer sums = data.slice(sumsStart, (int) pixels * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+		ShortBuffer daysAtLeast = data.slice(countsStart, (int) pixels * THRESHOLDS * Short.BYTES).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+		return new WeatherHistory(firstColumn, width, height, days, sums, daysAtLeast);
+	}
+
+	/**
+	 * Write the history next to its destination and move it into place.
+	 * @param file The file to write
+	 * @throws IOException If the file cannot be written
+	 */
+	public void write(Path file) throws IOException {
+		int pixels = width * height;
+		ByteBuffer buffer = ByteBuffer.allocate(6 * Integer.BYTES + days.length * Long.BYTES + pixels * (Integer.BYTES + THRESHOLDS * Short.BYTES))
+				.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(firstColumn).putInt(width).putInt(height).putInt(days.length);
+		for (long day : days) {
+			buffer.putLong(day);
+		}
+		for (int i = 0; i < pixels; i++) {
+			buffer.putInt(sums.get(i));
+		}
+		for (int i = 0; i < pixels * THRESHOLDS; i++) {
+			buffer.putShort(daysAtLeast.get(i));
+		}
+		buffer.flip();
+
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		Path temporary = file.resolveSibling(file.getFileName() + ".part");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Add one day's image to the statistics of every pixel.
+	 * @param day The forecast date of the image
+	 * @param zone The day's image of the timezone this history is of, converted
+	 * @return Whether the day was added, false if it already had been
+	 * @throws IllegalArgumentException If the day's image does not cover the same pixels as the history
+	 */
+	public boolean add(LocalDate day, WeatherQualityMosaic.Zone zone) {
+		if (contains(day)) return false;
+		if (zone.getFirstColumn() != firstColumn || zone.getWidth() != width || zone.getHeight() != height) {
+			throw new IllegalArgumentException("The image of " + day + " does not match the layout of the history.");
+		}
+		for (int y = 0; y < height; y++) {
+			for (int column = 0; column < width; column++) {
+				int pixel = y * width + column;
+				int quality = zone.getPercentage(firstColumn + column, y);
+				sums.put(pixel, sums.get(pixel) + quality);
+				for (int threshold = 0; threshold < quality / THRESHOLD_STEP; threshold++) {
+					int count = pixel * THRESHOLDS + threshold;
+					daysAtLeast.put(count, (short) (daysAtLeast.get(count) + 1));
+				}
+			}
+		}
+		long[] added = Arrays.copyOf(days, days.length + 1);
+		added[days.length] = day.toEpochDay();
+		Arrays.sort(added);
+		days = added;
+		return true;
+	}
+
+	/**
+	 * @return Whether a day has been added
+	 */
+	public boolean contains(LocalDate day) {
+		return Arrays.binarySearch(days, day.toEpochDay()) >= 0;
+	}
+
+	/**
+	 * @return The number of days added
+	 */
+	public int getDayCount() {
+		return days.length;
+	}
+
+	/**
+	 * @param x An image column
+	 * @param y An image row
+	 * @return Whether the history has statistics for the pixel
+	 */
+	public boolean covers(int x, int y) {
+		int column = x - firstColumn;
+		return column >= 0 && column < width && y >= 0 && y < height;
+	}
+
+	/**
+	 * @param x The image column, within the timezone
+	 * @param y The image row
+	 * @return The mean quality percentage of the pixel, or 0 if no days have been added
+	 */
+	public double getMeanQuality(int x, int y) {
+		if (days.length == 0) return 0;
+		return (double) sums.get(pixelOf(x, y)) / days.length;
+	}
+
+	/**
+	 * @param x The image column, within the timezone
+	 * @param y The image row
+	 * @param percentage The quality, a multiple of THRESHOLD_STEP
+	 * @return The fraction of days the pixel was at or above the quality, or 0 if no days have been added
+	 * @throws IllegalArgumentException If the percentage is not a multiple of THRESHOLD_STEP from 0 to 100
+	 */
+	public double getFractionAtLeast(int x, int y, int percentage) {
+		if (percentage < 0 || percentage > 100 || percentage % THRESHOLD_STEP != 0) {
+			throw new IllegalArgumentException("Percentage must be a multiple of " + THRESHOLD_STEP + " between 0 and 100.");
+		}
+		if (days.length == 0) return 0;
+		int pixel = pixelOf(x, y);
+		int threshold = percentage / THRESHOLD_STEP;
+		if (threshold == 0) return 1;
+		return (double) daysAtLeast.get(pixel * THRESHOLDS + threshold - 1) / days.length;
+	}
+
+	private int pixelOf(int x, int y) {
+		if (!covers(x, y)) {
+			throw new ArrayIndexOutOfBoundsException("Coordinate out of bounds!");
+		}
+		return y * width + x - firstColumn;
+	}
+}
@@ -0,0 +1,152 @@
+package plp.data;
+
+import java.awt.image.BufferedImage;
+import java.util.stream.IntStream;
+
+/**
+ * The forecast quality of every pixel of a set of timezone forecast images, one byte of percentage per pixel.
+ *
+ * The images share one map projection, and each timezone only covers a range of its columns, so the mosaic keeps
+ * just those columns of each image side by side. Neighbouring timezones meet inside a column, which both keep.
+ * Each timezone is converted on request from its image and the colour bar, with border and dither pixels replaced
+ * by the average of their neighbours on the colour bar, so a lookup is a single array read. Conversions are not kept:
+ * SunWeatherFilter's forecast raster serves each zone as one tile of the shared raster tile cache, which loads it once
+ * however many threads ask.
+ */
+public class WeatherQualityMosaic {
+	/**
+	 * Produces the forecast image of a timezone.
+	 */
+	@FunctionalInterface
+	public interface ZoneImages {
+		/**
+		 * @param zone The timezone, from 0
+		 * @return Its image
+		 */
+		BufferedImage load(int zone);
+	}
+
+	private final ZoneImages images;
+	private final ColorBarTable colorBar;
+	private final int[] firstColumns;
+	private final int[] lastColumns;
+
+	/**
+	 * @param images Produces the image of each timezone
+	 * @param colorBar The colour bar of the images
+	 * @param firstColumns The first image column each timezone covers
+	 * @param lastColumns The last image column each timezone covers, clamped to the image width
+	 */
+	public WeatherQualityMosaic(ZoneImages images, ColorBarTable colorBar, int[] firstColumns, int[] lastColumns) {
+		if (firstColumns.length != lastColumns.length) {
+			throw new IllegalArgumentException("Every timezone needs a first and last column.");
+		}
+		this.images = images;
+		this.colorBar = colorBar;
+		this.firstColumns = firstColumns.clone();
+		this.lastColumns = lastColumns.clone();
+	}
+
+	/**
+	 * Load and convert the image of a timezone.
+	 * @param zone The timezone, from 0
+	 * @return Its columns
+	 */
+	public Zone convert(int zone) {
+		return convert(images.load(zone), firstColumns[zone], lastColumns[zone]);
+	}
+
+	private Zone convert(BufferedImage image, int firstColumn, int lastColumn) {
+		int first = Math.max(0, firstColumn);
+		int last = Math.min(image.getWidth() - 1, lastColumn);
+		int width = Math.max(0, last - first + 1);
+		int height = image.getHeight();
+		byte[] percentages = new byte[width * height];
+		IntStream.range(0, height).parallel().forEach(y -> {
+			for (int x = first; x <= last; x++) {
+				int rgb = image.getRGB(x, y) & 0xFFFFFF;
+				if (!colorBar.isOnBar(rgb)) {
+					rgb = averageOfNeighbors(image, x, y);
+				}
+				percentages[y * width + x - first] = (byte) colorBar.percentageOf(rgb);
+			}
+		});
+		return new Zone(first, width, height, percentages);
+	}
+
+	/**
+	 * Averages the pixels around a border or dither pixel that are on the colour bar.
+	 * @return The average RGB, or black if none of them are on the bar
+	 */
+	private int averageOfNeighbors(BufferedImage image, int x, int y) {
+		int r = 0, g = 0, b = 0, count = 0;
+		for (int dx = -1; dx <= 1; dx++) {
+			for (int dy = -1; dy <= 1; dy++) {
+				int nx = x + dx;
+				int ny = y + dy;
+				if (nx >= 0 && nx < image.getWidth() && ny >= 0 && ny < image.getHeight()) {
+					int neighbor = image.getRGB(nx, ny);
+					if (colorBar.isOnBar(neighbor)) {
+						r += (neighbor >> 16) & 0xFF;
+						g += (neighbor >> 8) & 0xFF;
+						b += neighbor & 0xFF;
+						count++;
+					}
+				}
+			}
+		}
+		return count > 0 ? (r / count) << 16 | (g / count) << 8 | (b / count) : 0;
+	}
+
+	/**
+	 * The converted columns of one timezone, row by row.
+	 */
+	public static class Zone {
+		private final int firstColumn;
+		private final int width;
+		private final int height;
+		private final byte[] percentages;
+
+		Zone(int firstColumn, int width, int height, byte[] percentages) {
+			this.firstColumn = firstColumn;
+			this.width = width;
+			this.height = height;
+			this.percentages = percentages;
+		}
+
+		/**
+		 * @return The first image column the timezone covers, within the image
+		 */
+		public int getFirstColumn() {
+			return firstColumn;
+		}
+
+		/**
+		 * @return The number of image columns the timezone covers, within the image
+		 */
+		public int getWidth() {
+			return width;
+		}
+
+		/**
+		 * @return The number of image rows
+		 */
+		public int getHeight() {
+			return height;
+		}
+
+		/**
+		 * @param x The image column
+		 * @param y The image row
+		 * @return The quality percentage of the pixel
+		 * @throws ArrayIndexOutOfBoundsException If the pixel is outside the columns of the timezone or the image
+		 */
+		public int getPercentage(int x, int y) {
+			int column = x - firstColumn;
+			if (column < 0 || column >= width || y < 0 || y >= height) {
+				throw new ArrayIndexOutOfBoundsException("Coordinate out of bounds!");
+			}
+			return percentages[y * width + column];
+		}
+	}
+}
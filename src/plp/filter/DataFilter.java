@@ -1,28 +1,197 @@
 package plp.filter;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
+import org.locationtech.jts.geom.Envelope;
 
-import plp.filters.BoundingBoxFilter;
 import plp.location.LocationCell;
+import plp.location.ScoredCell;
+import plp.location.SpillingCellSet;
 
 public class DataFilter {
     private final FilterManager filterManager = new FilterManager();
-    private final List<LocationCell> allCells;
+    private final InitialFilter initialFilter;
+    private MemoryBudget memoryBudget = MemoryBudget.fromHeap();
+    private final List<CompletableFuture<Void>> prefetches = new ArrayList<>(); // Not yet waited for
 
     public DataFilter(InitialFilter initialFilter) {
-        allCells = initialFilter.getValidCells();
-        if (allCells.isEmpty()) {
+        this.initialFilter = initialFilter;
+        if (initialFilter.getValidCellIndexes().findAny().isEmpty()) {
         	throw new IllegalArgumentException("Zero cells in the initialFilter: " + initialFilter.getClass().getSimpleName());
         }
     }
     
+    /**
+     * Limit how many cells the pipeline may hold in memory at once.
+     * Regions larger than the budget are streamed through the filters in chunks and their results spilled to disk.
+     * @param memoryBudget The budget, {@link MemoryBudget#fromHeap()} by default
+     */
+    public void setMemoryBudget(MemoryBudget memoryBudget) {
+    	this.memoryBudget = memoryBudget;
+    }
 
+    /**
+     * Add a filter to the end of the pipeline. It is told the bounds of the region straight away,
+     * so it can load its data in the background while the rest of the pipeline is set up and the region is filled.
+     * @param filter The filter
+     */
     public void addFilter(Filter filter) {
         filterManager.addFilter(filter);
+        prefetch(filter);
+    }
+
+    private void prefetch(Filter filter) {
+    	Envelope bounds = initialFilter.getBounds();
+    	if (bounds == null || bounds.isNull()) return;
+    	CompletableFuture<Void> done = new CompletableFuture<>();
+    	Thread.ofVirtual().name("prefetch-" + filter.getClass().getSimpleName()).start(() -> {
+    		try {
+    			filter.prefetch(bounds);
+    			done.complete(null);
+    		} catch (RuntimeException e) {
+    			done.completeExceptionally(new RuntimeException("Prefetch for " + filter.getClass().getSimpleName() + " failed: " + e.getMessage(), e));
+    		}
+    	});
+    	prefetches.add(done);
+    }
+
+    /**
+     * Wait for the filters' prefetches before a run, so that data which could not be loaded stops the run with the
+     * reason it failed. A failed prefetch is only reported once, the filter retries the load on the next run.
+     */
+    private void awaitPrefetches() {
+    	while (!prefetches.isEmpty()) {
+    		CompletableFuture<Void> prefetch = prefetches.remove(0);
+    		try {
+    			prefetch.join();
+    		} catch (CompletionException e) {
+    			throw (RuntimeException) e.getCause();
+    		}
+    	}
     }
 
+    /**
+     * Run the pipeline and return its result as one list.
+     * A region larger than the memory budget is streamed through the pipeline, and its result is returned as long as
+     * it fits in the budget, which a selective pipeline's usually does.
+     * @return The matching cells, in H3 index order
+     * @throws IllegalStateException If the result does not fit in the memory budget, use {@link #filterLocations(Consumer)} then
+     */
     public List<LocationCell> filterLocations() {
-        return filterManager.applyFilters(allCells);
+    	awaitPrefetches();
+    	if (memoryBudget.fits(initialFilter.getValidCellIndexes().count())) {
+    		return filterManager.applyFilters(initialFilter.getValidCells());
+    	}
+    	try (SpillingCellSet result = filterLocationsToSet()) {
+    		if (result.isSpilled()) {
+    			throw new IllegalStateException("The result exceeds the memory budget of " + memoryBudget + ", stream it with filterLocations(Consumer)");
+    		}
+    		return result.toList();
+    	}
+    }
+
+    /**
+     * Run the pipeline and hand its result over in chunks of at most the memory budget, so that a result of any size
+     * can be written out without being held at once.
+     * @param sink Receives the matching cells, chunk by chunk, in H3 index order
+     */
+    public void filterLocations(Consumer<List<LocationCell>> sink) {
+    	int chunkSize = memoryBudget.getMaxCells();
+    	try (SpillingCellSet result = filterLocationsToSet()) {
+    		PrimitiveIterator.OfLong cells = result.iterator();
+    		while (cells.hasNext()) {
+    			List<LocationCell> chunk = new ArrayList<>(Math.min(chunkSize, 1 << 16));
+    			while (cells.hasNext() && chunk.size() < chunkSize) {
+    				chunk.add(new LocationCell(cells.nextLong()));
+    			}
+    			sink.accept(chunk);
+    		}
+    	}
+    }
+
+    /**
+     * Estimate the size of every stage's output from a sample of the region, without running the whole pipeline.
+     * @param timeBudget How long to spend sampling
+     * @return The per-stage estimates, with confidence intervals
+     */
+    public SelectivityEstimate estimate(Duration timeBudget) {
+    	awaitPrefetches();
+    	SelectivityEstimator estimator = new SelectivityEstimator(initialFilter, filterManager.getFilters(), System.nanoTime());
+    	SelectivityEstimate estimate = estimator.estimate(timeBudget);
+    	System.out.println(estimate);
+    	return estimate;
+    }
+
+    /**
+     * Reorder the filters from a sampled estimate so that cheap filters that reject many cells run first.
+     * Filters are ranked by their cost per cell divided by the fraction of cells they reject.
+     * @param timeBudget How long to spend sampling
+     * @return The estimate the order was chosen from
+     */
+    public SelectivityEstimate planFilterOrder(Duration timeBudget) {
+    	SelectivityEstimate estimate = estimate(timeBudget);
+    	Map<Filter, Double> rank = new HashMap<>();
+    	for (SelectivityEstimate.StageEstimate stage : estimate.getStages()) {
+    		double rejected = 1.0 - stage.getSelectivity();
+    		rank.put(stage.getFilter(), rejected <= 0 ? Double.MAX_VALUE : stage.getNanosPerCell() / rejected);
+    	}
+    	filterManager.reorder((a, b) -> Double.compare(rank.get(a), rank.get(b)));
+    	return estimate;
+    }
+
+    /**
+     * Run the pipeline, then evaluate many thresholds of one more filter over its result in a single pass.
+     * @param filter The filter to sweep, which is not added to the pipeline
+     * @param thresholds The candidate minimum values
+     * @param collectResults Whether to keep the surviving cells for each threshold
+     * @return The value distribution over the pipeline's result
+     */
+    public ThresholdSweep sweep(SweepableFilter filter, double[] thresholds, boolean collectResults) {
+    	prefetch(filter);
+    	filter.setLocations(filterLocations());
+    	ThresholdSweep sweep = filter.sweep(thresholds, collectResults);
+    	System.out.println("Sweep of " + filter.getClass().getSimpleName() + ": " + sweep);
+    	return sweep;
+    }
+
+    /**
+     * Rank the cells that pass the pipeline and keep only the best ones.
+     * The pipeline is streamed in chunks straight into the query, so the full passing set is never held at once.
+     * @param query The ranking to apply
+     * @return The best cells, best first
+     */
+    public List<ScoredCell> topK(TopKQuery query) {
+    	awaitPrefetches();
+    	filterManager.applyFilters(initialFilter.getValidCellIndexes().iterator(), memoryBudget.getMaxCells(), query::offer);
+    	System.out.println("Ranked " + query.getScoredCells() + " cells, pruned " + query.getPrunedCells() + " without scoring.");
+    	return query.getResults();
+    }
+
+    /**
+     * Run the pipeline within the memory budget, keeping the result on disk once it outgrows the budget.
+     * The caller must close the returned set.
+     * @return The matching cells, iterable in H3 index order
+     */
+    public SpillingCellSet filterLocationsToSet() {
+    	awaitPrefetches();
+    	SpillingCellSet result = new SpillingCellSet(memoryBudget.getMaxCells());
+    	try {
+    		filterManager.applyFilters(initialFilter.getValidCellIndexes().iterator(), memoryBudget.getMaxCells(), result::addAll);
+    	} catch (RuntimeException e) {
+    		result.close();
+    		throw e;
+    	}
+    	if (result.isSpilled()) {
+    		System.out.println("Result exceeded the memory budget of " + memoryBudget + " and was spilled to disk.");
+    	}
+    	return result;
     }
-}
\ No newline at end of file
+}
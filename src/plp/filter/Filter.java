@@ -1,5 +1,6 @@
 package plp.filter;
 
+import java.io.Serializable;
 import java.util.Arrays;
 import java.util.List;
 
@@ -7,9 +8,15 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
 
+import org.locationtech.jts.geom.Envelope;
+
 import plp.location.LocationCell;
 
-public interface Filter {
+/**
+ * Filters are {@link Serializable} so that a configured pipeline can be shipped to shard workers.
+ * Working state such as the current locations should be kept in transient fields.
+ */
+public interface Filter extends Serializable {
 	
 	/**
 	 * Set the requirements from the CLI or other source.
@@ -34,10 +41,27 @@ public interface Filter {
     /**
      * The action of filtering the locations.
      * Should handle loading data in and caching, if necessary.
+     * Whether a cell matches must not depend on the other cells, so that large regions can be processed in chunks.
      * @return All matching {@link plp.location.LocationCell LocationCells}
      */
     List<LocationCell> process(); // Action of filtering the locations
     
+    /**
+     * Learn the area the filter is about to run over before its locations arrive, to start loading the data it will need.
+     * Called on a background thread while the pipeline is still being set up or run, so it must be safe to run alongside
+     * {@link #process()}. Loads should be shared with process rather than duplicated. Does nothing by default.
+     * @param region The bounds of the initial region, longitude as x and latitude as y
+     */
+    default void prefetch(Envelope region) {}
+    
+    /**
+     * Bring the data the filter fetches over the network up to date for a region, before a sharded run ships it to workers.
+     * Called once, in the coordinator, so that the workers only read what is already on disk instead of each fetching it.
+     * Does nothing by default.
+     * @param region The bounds of the initial region, longitude as x and latitude as y
+     */
+    default void stage(Envelope region) {}
+    
     /**
      * Accept requirements from the Parameter Panel that this filter provides
      * @param modifiedParameterPanel The panel from {@link #getParameterPanel(int, int) getParameterPanel}, modified with the user's input.
@@ -1,19 +1,55 @@
 package plp.filter;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.function.Consumer;
 
+import plp.location.LocalityOrder;
 import plp.location.LocationCell;
 
 public class FilterManager {
     private final List<Filter> filters = new ArrayList<>();
+    private boolean localityOrdering = true;
 
     public void addFilter(Filter filter) {
         filters.add(filter);
     }
 
+    /**
+     * @return The filters, in the order they are applied
+     */
+    public List<Filter> getFilters() {
+        return Collections.unmodifiableList(filters);
+    }
+
+    /**
+     * Change the order the filters are applied in. Since every filter keeps or drops each cell on its own, any order gives the same result.
+     * @param order Compares the filters, the smallest is applied first
+     */
+    public void reorder(Comparator<Filter> order) {
+        filters.sort(order);
+    }
+
+    /**
+     * @param localityOrdering Whether to sort cells by location before filtering, see {@link LocalityOrder}.
+     * Either way the result is in ascending H3 index order.
+     */
+    public void setLocalityOrdering(boolean localityOrdering) {
+        this.localityOrdering = localityOrdering;
+    }
+
+    /**
+     * Puts the cells in the order the filters should see them in.
+     */
+    private List<LocationCell> prepare(List<LocationCell> locations) {
+        return localityOrdering && !filters.isEmpty() ? LocalityOrder.sort(locations) : locations;
+    }
+
     public List<LocationCell> applyFilters(List<LocationCell> locations) {
-        List<LocationCell> filteredLocations = locations;
+        List<LocationCell> filteredLocations = prepare(locations);
         System.out.println("Inital bounds: " + filteredLocations.size());
 
         for (Filter filter : filters) {
@@ -22,6 +58,40 @@ public class FilterManager {
             System.out.println("After " + filter.getClass().getSimpleName() + ": " + filteredLocations.size());
         }
 
-        return filteredLocations;
+        return LocalityOrder.canonicalize(filteredLocations);
+    }
+
+    /**
+     * Streams the cells through the filters in chunks, so that no stage ever holds more than {@code chunkSize} cells.
+     * Valid because every {@link Filter} decides on each cell independently of the others.
+     * @param cells The H3 indexes to filter
+     * @param chunkSize The number of cells to push through the pipeline at once
+     * @param sink Receives the surviving cells of each chunk
+     */
+    public void applyFilters(PrimitiveIterator.OfLong cells, int chunkSize, Consumer<List<LocationCell>> sink) {
+        long total = 0;
+        long[] survivors = new long[filters.size()];
+
+        while (cells.hasNext()) {
+            List<LocationCell> chunk = new ArrayList<>(Math.min(chunkSize, 1 << 16));
+            while (cells.hasNext() && chunk.size() < chunkSize) {
+                chunk.add(new LocationCell(cells.nextLong()));
+            }
+            total += chunk.size();
+
+            List<LocationCell> filteredLocations = prepare(chunk);
+            for (int i = 0; i < filters.size() && !filteredLocations.isEmpty(); i++) {
+                Filter filter = filters.get(i);
+                filter.setLocations(filteredLocations);
+                filteredLocations = filter.process();
+                survivors[i] += filteredLocations.size();
+            }
+            sink.accept(LocalityOrder.canonicalize(filteredLocations));
+        }
+
+        System.out.println("Inital bounds: " + total + " (streamed in chunks of " + chunkSize + ")");
+        for (int i = 0; i < filters.size(); i++) {
+            System.out.println("After " + filters.get(i).getClass().getSimpleName() + ": " + survivors[i]);
+        }
     }
 }
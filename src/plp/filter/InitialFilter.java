@@ -1,8 +1,16 @@
 package plp.filter;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.LongStream;
 
+import org.locationtech.jts.geom.Envelope;
+
+import plp.location.CellStratum;
 import plp.location.LocationCell;
+import plp.location.LocationUtils;
 
 /*
  * This type of filter can be used at the beginning of a sequence to get points from nothing.
@@ -15,4 +23,39 @@ public interface InitialFilter extends Filter {
      * @return List of Cell h3 indexes
      */
     List<LocationCell> getValidCells();
+    
+    /**
+     * Get the H3 indexes of the valid cells without wrapping each one in a {@link plp.location.LocationCell LocationCell}.
+     * Used when the region is too large to hold as cells at once, so implementations should produce them lazily,
+     * as the bounding filters do through {@link plp.location.PolygonFill PolygonFill}.
+     * @return Stream of Cell h3 indexes, in ascending order for the bounding filters
+     */
+    default LongStream getValidCellIndexes() {
+    	return getValidCells().stream().mapToLong(LocationCell::getH3Index);
+    }
+    
+    /**
+     * Split the region's cells by their ancestors at a coarser resolution, so that it can be sampled without streaming it.
+     * By default the whole region is streamed once and each ancestor's cells are kept, which only suits small regions,
+     * so regions that can tell the ancestors wholly inside them from the rest without producing their cells should override it,
+     * as the bounding filters do through {@link plp.location.PolygonFill PolygonFill}.
+     * @param resolution The resolution of the ancestors
+     * @return The strata, in ascending order of ancestor
+     */
+    default List<CellStratum> getStrata(int resolution) {
+    	Map<Long, LongStream.Builder> builders = new TreeMap<>();
+    	getValidCellIndexes().forEach(cell ->
+    			builders.computeIfAbsent(LocationUtils.getParent(cell, resolution), ancestor -> LongStream.builder()).add(cell));
+    	List<CellStratum> strata = new ArrayList<>();
+    	builders.forEach((ancestor, cells) -> strata.add(CellStratum.of(ancestor, cells.build().toArray())));
+    	return strata;
+    }
+    
+    /**
+     * Get the bounds of the region, which are handed to every filter after it so that they can prefetch their data.
+     * @return The bounds, longitude as x and latitude as y, or null if they are not known
+     */
+    default Envelope getBounds() {
+    	return null;
+    }
 }
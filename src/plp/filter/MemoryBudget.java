@@ -0,0 +1,66 @@
+package plp.filter;
+
+/**
+ * The amount of working set the pipeline may hold on the heap at once.
+ * Expressed in cells, since that is what every stage actually holds.
+ */
+public class MemoryBudget {
+	/**
+	 * Rough heap cost of one cell while it travels through the pipeline, with compressed references:
+	 * the {@link plp.location.LocationCell LocationCell} (24 bytes), its boxed index (24), its cached centre (32, filled in
+	 * by the first filter that needs it and then kept), a slot in each of the two lists a stage holds at once (8),
+	 * and an entry in each of the two transient hash sets the set operations build (about 36 each, sharing the boxed index).
+	 */
+	public static final int BYTES_PER_CELL = 160;
+	private static final double HEAP_FRACTION = 0.5;
+
+	private final int maxCells;
+
+	private MemoryBudget(int maxCells) {
+		if (maxCells <= 0) {
+			throw new IllegalArgumentException("Memory budget must allow at least one cell.");
+		}
+		this.maxCells = maxCells;
+	}
+
+	/**
+	 * @param maxCells The largest working set to keep in memory
+	 * @return A budget limited to that many cells
+	 */
+	public static MemoryBudget ofCells(int maxCells) {
+		return new MemoryBudget(maxCells);
+	}
+
+	/**
+	 * @param bytes Heap bytes the pipeline may use for its working set
+	 * @return A budget of as many cells as fit in those bytes
+	 */
+	public static MemoryBudget ofBytes(long bytes) {
+		return new MemoryBudget((int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, bytes / BYTES_PER_CELL)));
+	}
+
+	/**
+	 * A budget of half of the maximum heap of this JVM.
+	 * @return The default budget for the pipeline
+	 */
+	public static MemoryBudget fromHeap() {
+		return ofBytes((long) (Runtime.getRuntime().maxMemory() * HEAP_FRACTION));
+	}
+
+	public int getMaxCells() {
+		return maxCells;
+	}
+
+	/**
+	 * @param cellCount The size of a working set
+	 * @return Whether that working set can be held in memory in one piece
+	 */
+	public boolean fits(long cellCount) {
+		return cellCount <= maxCells;
+	}
+
+	@Override
+	public String toString() {
+		return maxCells + " cells";
+	}
+}
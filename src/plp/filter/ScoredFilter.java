@@ -0,0 +1,26 @@
+package plp.filter;
+
+import plp.location.LocationCell;
+
+/**
+ * A filter that can also grade each cell, so results can be ranked instead of only accepted or rejected.
+ */
+public interface ScoredFilter extends Filter {
+
+	/**
+	 * How good a cell is for this filter. Must be safe to call from several threads at once.
+	 * @param cell The cell to grade
+	 * @return A score between 0 (worst) and 1 (best)
+	 */
+	double getScore(LocationCell cell);
+
+	/**
+	 * An upper bound on {@link #getScore(LocationCell) getScore} for every cell under a coarser cell.
+	 * Filters that know their data's extremes per region can return less than 1 so whole regions can be skipped.
+	 * @param h3Index The H3 index of the coarse cell
+	 * @return The highest score any descendant of that cell could get
+	 */
+	default double getScoreUpperBound(long h3Index) {
+		return 1.0;
+	}
+}
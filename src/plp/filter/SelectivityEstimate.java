@@ -0,0 +1,140 @@
+package plp.filter;
+
+import java.util.List;
+
+import plp.Config;
+
+/**
+ * What a {@link SelectivityEstimator} learned about a pipeline from a sample of its region.
+ */
+public class SelectivityEstimate {
+	private final long regionCells;
+	private final long sampledCells;
+	private final List<StageEstimate> stages;
+
+	SelectivityEstimate(long regionCells, long sampledCells, List<StageEstimate> stages) {
+		this.regionCells = regionCells;
+		this.sampledCells = sampledCells;
+		this.stages = List.copyOf(stages);
+	}
+
+	public long getRegionCells() {
+		return regionCells;
+	}
+
+	public long getSampledCells() {
+		return sampledCells;
+	}
+
+	/**
+	 * @return One estimate per filter, in pipeline order
+	 */
+	public List<StageEstimate> getStages() {
+		return stages;
+	}
+
+	/**
+	 * @return The estimate for the whole pipeline's output, the whole region exactly if the pipeline has no filters
+	 */
+	public StageEstimate getOutput() {
+		return stages.isEmpty() ? new StageEstimate(null, 1.0, 0, regionCells, regionCells, regionCells) : stages.getLast();
+	}
+
+	/**
+	 * The finest resolution whose estimated output stays within a target.
+	 * Every step finer multiplies the number of cells by about 7.
+	 * @param targetCells The largest acceptable output
+	 * @return A resolution between 0 and 15
+	 */
+	public int suggestResolution(long targetCells) {
+		double estimated = Math.max(1.0, getOutput().getEstimatedCount());
+		int resolution = Config.H3_RESOLUTION;
+		while (resolution < 15 && estimated * 7 <= targetCells) {
+			estimated *= 7;
+			resolution++;
+		}
+		while (resolution > 0 && estimated > targetCells) {
+			estimated /= 7;
+			resolution--;
+		}
+		return resolution;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("Region: " + regionCells + " cells, sampled " + sampledCells);
+		for (StageEstimate stage : stages) {
+			builder.append("\n  ").append(stage);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * The estimate for one stage of the pipeline.
+	 */
+	public static class StageEstimate {
+		private final Filter filter;
+		private final double selectivity;
+		private final double nanosPerCell;
+		private final double estimatedCount;
+		private final double lowerCount;
+		private final double upperCount;
+
+		StageEstimate(Filter filter, double selectivity, double nanosPerCell, double estimatedCount, double lowerCount, double upperCount) {
+			this.filter = filter;
+			this.selectivity = selectivity;
+			this.nanosPerCell = nanosPerCell;
+			this.estimatedCount = estimatedCount;
+			this.lowerCount = lowerCount;
+			this.upperCount = upperCount;
+		}
+
+		/**
+		 * @return The filter of this stage, or null for the region of an empty pipeline
+		 */
+		public Filter getFilter() {
+			return filter;
+		}
+
+		/**
+		 * @return The fraction of sampled cells this filter accepts on its own
+		 */
+		public double getSelectivity() {
+			return selectivity;
+		}
+
+		/**
+		 * @return The measured cost of the filter per cell
+		 */
+		public double getNanosPerCell() {
+			return nanosPerCell;
+		}
+
+		/**
+		 * @return The estimated number of cells left after this stage and every stage before it
+		 */
+		public double getEstimatedCount() {
+			return estimatedCount;
+		}
+
+		/**
+		 * @return The lower end of the 95% confidence interval of {@link #getEstimatedCount()}
+		 */
+		public double getLowerCount() {
+			return lowerCount;
+		}
+
+		/**
+		 * @return The upper end of the 95% confidence interval of {@link #getEstimatedCount()}
+		 */
+		public double getUpperCount() {
+			return upperCount;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("After %s: ~%.0f [%.0f, %.0f], selectivity %.3f, %.0f ns/cell",
+					filter == null ? "region" : filter.getClass().getSimpleName(), estimatedCount, lowerCount, upperCount, selectivity, nanosPerCell);
+		}
+	}
+}
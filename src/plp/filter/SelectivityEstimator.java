@@ -0,0 +1,243 @@
+package plp.filter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+import plp.Config;
+import plp.location.CellStratum;
+import plp.location.LocationCell;
+
+/**
+ * Estimates how many cells each stage of a pipeline will return by running the filters on a random sample of the region.
+ *
+ * The region is split into strata by coarse ancestor cell and sampled from every stratum, so that a small sample still
+ * covers the whole area. A stratum always gives at least one cell, so small strata are sampled more densely than large ones,
+ * and each stratum's proportion is weighted by its share of the region to keep the estimate unbiased.
+ * Sampling continues in growing rounds while the time budget lasts.
+ * Every filter is run on the whole sample, which gives both its own selectivity and cost (for ordering) and, by intersecting
+ * the results in pipeline order, the count after each stage.
+ */
+public class SelectivityEstimator {
+	private static final double Z_95 = 1.96;
+	private static final int FIRST_ROUND_CELLS = 1000;
+
+	private final InitialFilter initialFilter;
+	private final List<Filter> filters;
+	private final Random random;
+	private LongSupplier clock = System::nanoTime;
+	private int stratumResolution = Math.max(0, Config.H3_RESOLUTION - 4);
+
+	/**
+	 * @param initialFilter The region to sample
+	 * @param filters The pipeline, in order
+	 * @param seed The seed of the sample
+	 */
+	public SelectivityEstimator(InitialFilter initialFilter, List<Filter> filters, long seed) {
+		this.initialFilter = initialFilter;
+		this.filters = List.copyOf(filters);
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * @param stratumResolution The resolution of the ancestor cells that define the strata
+	 */
+	public void setStratumResolution(int stratumResolution) {
+		if (stratumResolution < 0 || stratumResolution > Config.H3_RESOLUTION) {
+			throw new IllegalArgumentException("Stratum resolution must be between 0 and " + Config.H3_RESOLUTION + ".");
+		}
+		this.stratumResolution = stratumResolution;
+	}
+
+	/**
+	 * @param clock The time in nanoseconds the budget is measured by, System::nanoTime by default
+	 */
+	void setClock(LongSupplier clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * Sample the region while the time budget lasts or until every cell has been sampled.
+	 * Only the strata are held, with the cells sampled from them, and the budget is checked between strata, counting
+	 * those the region's edge clips included. Strata are visited in a random order, so a round the budget cuts short is
+	 * still spread over the region, and the estimate is weighted over the strata sampled so far.
+	 * With no time to count the strata and sample at least one of them, every stage is estimated to keep the whole region,
+	 * with an interval from none to all of it, and strata never counted are taken to hold every descendant of their ancestor.
+	 * @param timeBudget How long to spend sampling
+	 * @return The per-stage estimates
+	 */
+	public SelectivityEstimate estimate(Duration timeBudget) {
+		long deadline = clock.getAsLong() + timeBudget.toNanos();
+		List<CellStratum> strata = initialFilter.getStrata(stratumResolution);
+		long[] sizes = new long[strata.size()];
+		long regionCells = 0;
+		boolean counted = true;
+		for (int s = 0; s < strata.size(); s++) {
+			CellStratum stratum = strata.get(s);
+			if (counted && !stratum.isCounted() && clock.getAsLong() >= deadline) counted = false;
+			sizes[s] = counted ? stratum.size() : stratum.getMaxSize();
+			regionCells += sizes[s];
+		}
+		int[] order = shuffledOrder(strata.size());
+
+		long[] taken = new long[strata.size()];
+		StratumSample[] samples = new StratumSample[strata.size()];
+		long sampled = 0;
+		long[][] accepted = new long[strata.size()][filters.size()];
+		long[][] survived = new long[strata.size()][filters.size()];
+		long[] nanos = new long[filters.size()];
+
+		double fraction = Math.min(1.0, (double) FIRST_ROUND_CELLS / Math.max(1, regionCells));
+		while (counted && sampled < regionCells && clock.getAsLong() < deadline) {
+			List<LocationCell> round = new ArrayList<>();
+			Map<Long, Integer> stratumOf = new HashMap<>();
+			for (int s : order) {
+				if (clock.getAsLong() >= deadline) break;
+				long target = (long) Math.min(sizes[s], Math.ceil(sizes[s] * fraction));
+				if (taken[s] < target && samples[s] == null) samples[s] = new StratumSample(sizes[s]);
+				for (; taken[s] < target; taken[s]++) {
+					long cell = strata.get(s).get(samples[s].next(random));
+					round.add(new LocationCell(cell));
+					stratumOf.put(cell, s);
+				}
+			}
+			if (round.isEmpty()) break;
+
+			long roundStart = clock.getAsLong();
+			runRound(round, stratumOf, accepted, survived, nanos);
+			sampled += round.size();
+			long roundNanos = clock.getAsLong() - roundStart;
+
+			// Only start another round if one twice this size still fits in the budget
+			if (clock.getAsLong() + 2 * roundNanos > deadline) break;
+			fraction = Math.min(1.0, fraction * 2);
+		}
+
+		List<SelectivityEstimate.StageEstimate> stages = new ArrayList<>();
+		for (int i = 0; i < filters.size(); i++) {
+			if (sampled == 0) {
+				stages.add(new SelectivityEstimate.StageEstimate(filters.get(i), 1.0, 0, regionCells, 0, regionCells));
+				continue;
+			}
+			double[] interval = stratifiedInterval(sizes, taken, survived, i, sampled);
+			stages.add(new SelectivityEstimate.StageEstimate(filters.get(i),
+					stratifiedInterval(sizes, taken, accepted, i, sampled)[0],
+					(double) nanos[i] / sampled,
+					interval[0] * regionCells, interval[1] * regionCells, interval[2] * regionCells));
+		}
+		return new SelectivityEstimate(regionCells, sampled, stages);
+	}
+
+	/**
+	 * Run every filter over the round on its own, then intersect in pipeline order, counting by stratum.
+	 */
+	private void runRound(List<LocationCell> round, Map<Long, Integer> stratumOf, long[][] accepted, long[][] survived, long[] nanos) {
+		Set<Long> surviving = null;
+		for (int i = 0; i < filters.size(); i++) {
+			Filter filter = filters.get(i);
+			long start = clock.getAsLong();
+			filter.setLocations(round);
+			List<LocationCell> result = filter.process();
+			nanos[i] += clock.getAsLong() - start;
+
+			Set<Long> passed = new HashSet<>();
+			for (LocationCell cell : result) {
+				if (passed.add(cell.getH3Index())) accepted[stratumOf.get(cell.getH3Index())][i]++;
+			}
+			if (surviving == null) {
+				surviving = passed;
+			} else {
+				surviving.retainAll(passed);
+			}
+			for (long cell : surviving) {
+				survived[stratumOf.get(cell)][i]++;
+			}
+		}
+	}
+
+	private int[] shuffledOrder(int count) {
+		int[] order = new int[count];
+		for (int i = 0; i < count; i++) {
+			order[i] = i;
+		}
+		for (int i = count - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = order[i];
+			order[i] = order[j];
+			order[j] = swap;
+		}
+		return order;
+	}
+
+	/**
+	 * The stratified estimate of the proportion of the region one stage keeps: each sampled stratum's proportion weighted
+	 * by the stratum's share of the strata sampled. Its interval is the Wilson interval at the effective sample size, the number of
+	 * simple random draws whose variance matches the stratified one.
+	 * @param counts Per stratum and stage, how many sampled cells were kept
+	 * @return The estimated, lower and upper proportion
+	 */
+	private static double[] stratifiedInterval(long[] sizes, long[] taken, long[][] counts, int stage, long sampled) {
+		long population = 0;
+		for (int s = 0; s < sizes.length; s++) {
+			if (taken[s] > 0) population += sizes[s];
+		}
+		double p = 0, variance = 0;
+		for (int s = 0; s < sizes.length; s++) {
+			if (taken[s] == 0) continue;
+			double weight = (double) sizes[s] / population;
+			double stratumP = (double) counts[s][stage] / taken[s];
+			p += weight * stratumP;
+			if (taken[s] > 1) variance += weight * weight * stratumP * (1 - stratumP) / (taken[s] - 1);
+		}
+		double effectiveTrials = variance > 0 ? Math.min(sampled, p * (1 - p) / variance) : sampled;
+		double[] interval = wilsonInterval(p, effectiveTrials, sampled, population);
+		return new double[]{p, interval[0], interval[1]};
+	}
+
+	/**
+	 * Positions drawn from a stratum without replacement, by a Fisher-Yates shuffle that only remembers the positions it moved,
+	 * so drawing from a stratum of millions of cells holds about as much as was drawn.
+	 */
+	private static class StratumSample {
+		private final long size;
+		private final Map<Long, Long> moved = new HashMap<>();
+		private long drawn;
+
+		StratumSample(long size) {
+			this.size = size;
+		}
+
+		long next(Random random) {
+			long pick = drawn + random.nextLong(size - drawn);
+			long position = moved.getOrDefault(pick, pick);
+			moved.put(pick, moved.getOrDefault(drawn, drawn));
+			moved.remove(drawn);
+			drawn++;
+			return position;
+		}
+	}
+
+	/**
+	 * The 95% Wilson score interval of a proportion, narrowed by the finite population correction
+	 * so that it collapses onto the exact proportion once the whole region has been sampled.
+	 * @param trials The sample size the interval is computed for
+	 * @param sampled The number of cells actually sampled, for the correction
+	 * @return The lower and upper proportion
+	 */
+	private static double[] wilsonInterval(double p, double trials, long sampled, long population) {
+		double z2 = Z_95 * Z_95;
+		double denominator = 1 + z2 / trials;
+		double center = (p + z2 / (2.0 * trials)) / denominator;
+		double halfWidth = Z_95 * Math.sqrt(p * (1 - p) / trials + z2 / (4.0 * trials * trials)) / denominator;
+		double correction = population > 1 ? Math.sqrt((double) (population - sampled) / (population - 1)) : 0;
+		double lower = p - (p - Math.max(0, center - halfWidth)) * correction;
+		double upper = p + (Math.min(1, center + halfWidth) - p) * correction;
+		return new double[]{lower, upper};
+	}
+}
@@ -0,0 +1,24 @@
+package plp.filter;
+
+import plp.location.LocationCell;
+
+/**
+ * A filter that keeps cells whose value reaches a threshold, and that can evaluate many thresholds in one pass.
+ */
+public interface SweepableFilter extends Filter {
+
+	/**
+	 * The value this filter compares against its threshold.
+	 * @param cell The cell to evaluate
+	 * @return The cell's value, such as its SQM
+	 */
+	double getCellValue(LocationCell cell);
+
+	/**
+	 * Evaluate every cell of the current locations once and report how many would survive each threshold.
+	 * @param thresholds The candidate minimum values
+	 * @param collectResults Whether to also keep the surviving cells for each threshold
+	 * @return The value distribution over the locations set by {@link #setLocations(java.util.List) setLocations}
+	 */
+	ThresholdSweep sweep(double[] thresholds, boolean collectResults);
+}
@@ -0,0 +1,188 @@
+package plp.filter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+import plp.location.LocationCell;
+
+/**
+ * The distribution of a {@link SweepableFilter}'s value over a working set, computed from a single pass over the data.
+ * Holds a histogram, the number of cells that survive each candidate threshold and, optionally, the surviving cells themselves.
+ * Since a higher threshold keeps a subset of a lower one, the result sets are nested: the cells are held once,
+ * ordered by the highest threshold they reach, and each threshold's result is a prefix of them.
+ */
+public class ThresholdSweep {
+	private final double histogramMin;
+	private final double binWidth;
+	private final long[] histogram;
+	private final long[] cumulative;
+	private final double[] thresholds;
+	private final long[] survivingCounts;
+	private final List<LocationCell> results; // Highest threshold reached first, or null if not collected
+
+	private ThresholdSweep(double histogramMin, double binWidth, long[] histogram, double[] thresholds,
+			long[] survivingCounts, List<LocationCell> results) {
+		this.histogramMin = histogramMin;
+		this.binWidth = binWidth;
+		this.histogram = histogram;
+		this.thresholds = thresholds;
+		this.survivingCounts = survivingCounts;
+		this.results = results;
+
+		cumulative = new long[histogram.length];
+		long running = 0;
+		for (int i = histogram.length - 1; i >= 0; i--) {
+			running += histogram[i];
+			cumulative[i] = running;
+		}
+	}
+
+	/**
+	 * Evaluate every cell once and build the sweep.
+	 * Values outside [histogramMin, histogramMax) are counted in the first or last bin, and NaN values, of cells
+	 * without data, in none.
+	 *
+	 * @param cells The working set
+	 * @param value The per-cell value, evaluated exactly once per cell
+	 * @param histogramMin The lower edge of the first bin
+	 * @param histogramMax The upper edge of the last bin
+	 * @param bins The number of histogram bins
+	 * @param thresholds The candidate minimum values
+	 * @param collectResults Whether to keep the surviving cells for each threshold
+	 * @return The sweep
+	 */
+	public static ThresholdSweep compute(List<LocationCell> cells, ToDoubleFunction<LocationCell> value,
+			double histogramMin, double histogramMax, int bins, double[] thresholds, boolean collectResults) {
+		return compute(cells, cells.stream().mapToDouble(value).toArray(), histogramMin, histogramMax, bins, thresholds, collectResults);
+	}
+
+	/**
+	 * Build the sweep from values already computed, such as by a batch lookup.
+	 *
+	 * @param cells The working set
+	 * @param values The value of each cell, in the same order. A NaN value reaches no threshold and is left out of the histogram.
+	 * @see #compute(List, ToDoubleFunction, double, double, int, double[], boolean)
+	 */
+	public static ThresholdSweep compute(List<LocationCell> cells, double[] values,
+			double histogramMin, double histogramMax, int bins, double[] thresholds, boolean collectResults) {
+		if (values.length != cells.size()) {
+			throw new IllegalArgumentException("There must be one value per cell.");
+		}
+		if (bins <= 0 || histogramMax <= histogramMin) {
+			throw new IllegalArgumentException("Invalid histogram range or bin count.");
+		}
+		double binWidth = (histogramMax - histogramMin) / bins;
+		double[] sortedThresholds = thresholds.clone();
+		Arrays.sort(sortedThresholds);
+
+		// Each cell lands in the bucket of the highest threshold it reaches
+		long[] histogram = new long[bins];
+		long[] bucketCounts = new long[sortedThresholds.length];
+		int[] reachedBy = collectResults ? new int[values.length] : null;
+		for (int i = 0; i < values.length; i++) {
+			double cellValue = values[i];
+			if (Double.isNaN(cellValue)) continue; // No data, and would floor into the first bin
+			int bin = (int) Math.floor((cellValue - histogramMin) / binWidth);
+			histogram[Math.max(0, Math.min(bins - 1, bin))]++;
+
+			int reached = upperBound(sortedThresholds, cellValue);
+			if (reached > 0) bucketCounts[reached - 1]++;
+			if (collectResults) reachedBy[i] = reached;
+		}
+
+		long[] survivingCounts = new long[sortedThresholds.length];
+		long running = 0;
+		for (int t = sortedThresholds.length - 1; t >= 0; t--) {
+			running += bucketCounts[t];
+			survivingCounts[t] = running;
+		}
+
+		List<LocationCell> results = null;
+		if (collectResults) {
+			// Place the cells by bucket, the highest first, keeping their order within a bucket
+			LocationCell[] ordered = new LocationCell[(int) running];
+			int[] next = new int[sortedThresholds.length];
+			for (int t = 0; t < next.length; t++) {
+				next[t] = (int) (survivingCounts[t] - bucketCounts[t]); // The cells of the higher buckets
+			}
+			for (int i = 0; i < values.length; i++) {
+				if (reachedBy[i] > 0) ordered[next[reachedBy[i] - 1]++] = cells.get(i);
+			}
+			results = Collections.unmodifiableList(Arrays.asList(ordered));
+		}
+
+		return new ThresholdSweep(histogramMin, binWidth, histogram, sortedThresholds, survivingCounts, results);
+	}
+
+	/**
+	 * @return The number of sorted values that are <= key
+	 */
+	private static int upperBound(double[] sorted, double key) {
+		int low = 0, high = sorted.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sorted[mid] <= key) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	public long[] getHistogram() {
+		return histogram.clone();
+	}
+
+	/**
+	 * @param bin A histogram bin
+	 * @return The lowest value counted in that bin
+	 */
+	public double getBinLowerBound(int bin) {
+		return histogramMin + bin * binWidth;
+	}
+
+	/**
+	 * @return For each bin, how many cells have a value at or above the bin's lower bound
+	 */
+	public long[] getCumulativeCounts() {
+		return cumulative.clone();
+	}
+
+	/**
+	 * @return The candidate thresholds, in ascending order
+	 */
+	public double[] getThresholds() {
+		return thresholds.clone();
+	}
+
+	/**
+	 * @return For each threshold of {@link #getThresholds()}, how many cells reach it
+	 */
+	public long[] getSurvivingCounts() {
+		return survivingCounts.clone();
+	}
+
+	/**
+	 * @param thresholdIndex An index into {@link #getThresholds()}
+	 * @return The cells that reach that threshold, a read-only view shared with the lower thresholds' results
+	 * @throws IllegalStateException If the sweep did not collect results
+	 */
+	public List<LocationCell> getResults(int thresholdIndex) {
+		if (results == null) {
+			throw new IllegalStateException("Sweep was run without collecting results.");
+		}
+		return results.subList(0, (int) survivingCounts[thresholdIndex]);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (int t = 0; t < thresholds.length; t++) {
+			builder.append(thresholds[t]).append(" -> ").append(survivingCounts[t]).append(t + 1 < thresholds.length ? ", " : "");
+		}
+		return builder.toString();
+	}
+}
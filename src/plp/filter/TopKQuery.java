@@ -0,0 +1,183 @@
+package plp.filter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import plp.Config;
+import plp.location.LocationCell;
+import plp.location.LocationUtils;
+import plp.location.ScoredCell;
+
+/**
+ * Finds the K best cells by a weighted sum of {@link ScoredFilter} scores, without keeping every candidate.
+ *
+ * Cells are grouped by a coarse ancestor and the groups are scored in parallel, each worker keeping its own bounded heap.
+ * Once any worker's heap is full, its K-th best score is a lower bound on the final K-th best, and every group whose
+ * {@link ScoredFilter#getScoreUpperBound(long) upper bound} cannot beat it is skipped without scoring a single cell.
+ * Only groups and cells strictly below the bound are cut, and cells with equal scores rank by H3 index, lowest first,
+ * so ties with the K-th best resolve the same way whatever order the chunks and workers offer them in.
+ */
+public class TopKQuery {
+	private final int k;
+	private final List<ScoredFilter> scoredFilters = new ArrayList<>();
+	private final List<Double> weights = new ArrayList<>();
+	private int pruneResolution = Math.max(0, Config.H3_RESOLUTION - 3);
+
+	private final AtomicLong kthBestBits = new AtomicLong(Double.doubleToLongBits(Double.NEGATIVE_INFINITY));
+	private PriorityQueue<ScoredCell> best;
+	private long scoredCells;
+	private long prunedCells;
+
+	/**
+	 * @param k The number of cells to keep
+	 */
+	public TopKQuery(int k) {
+		if (k <= 0) {
+			throw new IllegalArgumentException("K must be positive.");
+		}
+		this.k = k;
+		this.best = new PriorityQueue<>(k + 1);
+	}
+
+	/**
+	 * Add a score to the ranking.
+	 * @param filter The filter that grades the cells
+	 * @param weight The weight of its score, must not be negative
+	 */
+	public void addScore(ScoredFilter filter, double weight) {
+		if (weight < 0) {
+			throw new IllegalArgumentException("Score weights must not be negative.");
+		}
+		scoredFilters.add(filter);
+		weights.add(weight);
+	}
+
+	/**
+	 * @param pruneResolution The resolution of the coarse cells that are pruned as a whole
+	 */
+	public void setPruneResolution(int pruneResolution) {
+		if (pruneResolution < 0 || pruneResolution > Config.H3_RESOLUTION) {
+			throw new IllegalArgumentException("Prune resolution must be between 0 and " + Config.H3_RESOLUTION + ".");
+		}
+		this.pruneResolution = pruneResolution;
+	}
+
+	/**
+	 * Score a batch of candidates and keep the best of them.
+	 * May be called repeatedly, such as once per chunk of a streamed pipeline.
+	 * @param cells Cells that passed every other filter
+	 */
+	public void offer(List<LocationCell> cells) {
+		if (scoredFilters.isEmpty()) {
+			throw new IllegalStateException("A ranked query needs at least one score.");
+		}
+
+		Map<Long, List<LocationCell>> groups = new HashMap<>();
+		for (LocationCell cell : cells) {
+			groups.computeIfAbsent(LocationUtils.getParent(cell.getH3Index(), pruneResolution), parent -> new ArrayList<>()).add(cell);
+		}
+
+		Worker merged = groups.entrySet().parallelStream().collect(
+				Worker::new,
+				(worker, group) -> worker.score(group.getKey(), group.getValue()),
+				Worker::merge);
+		merged.merge(best);
+		best = merged.heap;
+		scoredCells += merged.scored;
+		prunedCells += merged.pruned;
+	}
+
+	/**
+	 * @return The best cells offered so far, best first
+	 */
+	public List<ScoredCell> getResults() {
+		List<ScoredCell> results = new ArrayList<>(best);
+		results.sort((a, b) -> b.compareTo(a));
+		return results;
+	}
+
+	public long getScoredCells() {
+		return scoredCells;
+	}
+
+	public long getPrunedCells() {
+		return prunedCells;
+	}
+
+	private double kthBest() {
+		return Double.longBitsToDouble(kthBestBits.get());
+	}
+
+	/**
+	 * Raise the shared K-th best bound if a full heap proves a higher one.
+	 */
+	private void raiseKthBest(double score) {
+		kthBestBits.accumulateAndGet(Double.doubleToLongBits(score),
+				(current, candidate) -> Double.longBitsToDouble(candidate) > Double.longBitsToDouble(current) ? candidate : current);
+	}
+
+	/**
+	 * The bounded heap of one parallel worker.
+	 */
+	private class Worker {
+		private final PriorityQueue<ScoredCell> heap = new PriorityQueue<>(k + 1);
+		private long scored;
+		private long pruned;
+
+		void score(long parent, List<LocationCell> cells) {
+			double[] weightedBounds = new double[scoredFilters.size()];
+			double bound = 0;
+			for (int i = 0; i < scoredFilters.size(); i++) {
+				weightedBounds[i] = weights.get(i) * scoredFilters.get(i).getScoreUpperBound(parent);
+				bound += weightedBounds[i];
+			}
+			if (bound < kthBest()) {
+				pruned += cells.size();
+				return;
+			}
+
+			for (LocationCell cell : cells) {
+				// Stop scoring a cell once even perfect remaining scores could not beat the K-th best
+				double score = 0;
+				double remaining = bound;
+				boolean beaten = false;
+				for (int i = 0; i < scoredFilters.size() && !beaten; i++) {
+					score += weights.get(i) * scoredFilters.get(i).getScore(cell);
+					remaining -= weightedBounds[i];
+					beaten = score + remaining < kthBest();
+				}
+				scored++;
+				if (!beaten) {
+					offer(new ScoredCell(cell, score));
+				}
+			}
+		}
+
+		private void offer(ScoredCell candidate) {
+			heap.add(candidate);
+			if (heap.size() > k) {
+				heap.poll();
+			}
+			if (heap.size() == k) {
+				raiseKthBest(heap.peek().getScore());
+			}
+		}
+
+		void merge(Worker other) {
+			merge(other.heap);
+			scored += other.scored;
+			pruned += other.pruned;
+		}
+
+		void merge(Collection<ScoredCell> cells) {
+			for (ScoredCell cell : cells) {
+				offer(cell);
+			}
+		}
+	}
+}
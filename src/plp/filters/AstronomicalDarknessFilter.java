@@ -0,0 +1,383 @@
+package plp.filters;
+
+import java.awt.GridLayout;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.swing.JCheckBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+
+import org.locationtech.jts.geom.Envelope;
+
+import plp.data.SkyEphemeris;
+import plp.filter.ThresholdSweep;
+import plp.filters.raster.CachedRasterSource;
+import plp.filters.raster.RasterFilter;
+import plp.filters.raster.RasterLayer;
+import plp.filters.raster.RasterSampling;
+import plp.filters.raster.RasterTile;
+import plp.filters.raster.RasterTileCache;
+import plp.location.LocationCell;
+
+/**
+ * Keeps cells with enough hours of astronomical darkness per night, the Sun more than 18 degrees below the horizon,
+ * and optionally the Moon down as well, averaged over a run of nights. Each night runs from local solar noon to the next.
+ *
+ * Positions come from {@link SkyEphemeris}, so nothing is downloaded. Darkness changes slowly with place, so it is
+ * computed on a grid of nodes every NODE_DEGREES, a block of nodes at a time as cells first need them, and interpolated
+ * between nodes. Blocks are kept in the shared raster tile cache, so later runs over the same nights reuse them.
+ */
+public class AstronomicalDarknessFilter extends RasterFilter {
+	private static final long serialVersionUID = 1L;
+	private static final int MAX_NIGHTS = 366;
+	private static final double SWEEP_MAX_HOURS = 24.0;
+	private static final int SWEEP_BINS = 96; // 15 minutes per bin
+	private static final Map<String, RasterLayer> layers = new ConcurrentHashMap<>(); // By nights and moon condition
+	private LocalDate firstNight;
+	private int nights = 1;
+	private double minHours;
+	private boolean moonDown = true;
+
+	public AstronomicalDarknessFilter() {}
+
+	@Override
+	protected RasterLayer getLayer() {
+		if (firstNight == null) {
+			throw new IllegalStateException("No nights have been set.");
+		}
+		DarknessRaster source = new DarknessRaster(firstNight, nights, moonDown);
+		return layers.computeIfAbsent(source.getName(), name -> new RasterLayer(source, RasterTileCache.shared(), RasterSampling.BILINEAR));
+	}
+
+	/**
+	 * @param value Mean hours of darkness per night
+	 */
+	@Override
+	protected boolean accepts(double value) {
+		return value >= minHours;
+	}
+
+	/**
+	 * @param sample Mean tenths of a minute of darkness per night
+	 * @return Mean hours of darkness per night
+	 */
+	@Override
+	protected double toCellValue(double sample) {
+		return sample / DarknessRaster.UNITS_PER_HOUR;
+	}
+
+	@Override
+	public ThresholdSweep sweep(double[] thresholds, boolean collectResults) {
+		return sweep(0, SWEEP_MAX_HOURS, SWEEP_BINS, thresholds, collectResults);
+	}
+
+	/**
+	 * Darker is better: the share of the day that is dark, so a full polar night scores 1.
+	 */
+	@Override
+	public double getScore(LocationCell cell) {
+		double hours = getCellValue(cell);
+		return Double.isNaN(hours) ? 0.0 : Math.max(0.0, Math.min(1.0, hours / SWEEP_MAX_HOURS));
+	}
+
+	@Override
+	public void setRequirements(JPanel modifiedParameterPanel) throws IllegalArgumentException {
+		JTextField[] fields = (JTextField[]) modifiedParameterPanel.getClientProperty("fields");
+		JCheckBox moonBox = (JCheckBox) modifiedParameterPanel.getClientProperty("moonDownBox");
+		if (fields == null || moonBox == null) {
+			throw new IllegalArgumentException("Parameters are missing in the panel.");
+		}
+		try {
+			setRequirements(new DarknessRequirements(LocalDate.parse(fields[0].getText().trim()), Integer.parseInt(fields[1].getText().trim()),
+					Double.parseDouble(fields[2].getText().trim()), moonBox.isSelected()));
+		} catch (DateTimeParseException | NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid input: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @param requirements A {@link DarknessRequirements}, or a String "FirstNight,Nights,MinHours[,MoonDown]"
+	 * such as "2025-08-20,7,4.5,true"
+	 */
+	@Override
+	public void setRequirements(Object requirements) throws IllegalArgumentException {
+		DarknessRequirements darkness;
+		if (requirements instanceof DarknessRequirements dr) {
+			darkness = dr;
+		} else if (requirements instanceof String stringRequirement) {
+			String[] parts = stringRequirement.split(",");
+			if (parts.length != 3 && parts.length != 4) {
+				throw new IllegalArgumentException("Invalid string format. Expected 'FirstNight,Nights,MinHours[,MoonDown]'.");
+			}
+			try {
+				darkness = new DarknessRequirements(LocalDate.parse(parts[0].trim()), Integer.parseInt(parts[1].trim()),
+						Double.parseDouble(parts[2].trim()), parts.length == 3 || Boolean.parseBoolean(parts[3].trim()));
+			} catch (DateTimeParseException | NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid date or number: " + e.getMessage());
+			}
+		} else {
+			throw new IllegalArgumentException("Invalid requirement type for AstronomicalDarknessFilter");
+		}
+		if (darkness.getNights() < 1 || darkness.getNights() > MAX_NIGHTS) {
+			throw new IllegalArgumentException("Nights must be between 1 and " + MAX_NIGHTS + ".");
+		}
+		if (darkness.getMinHours() < 0 || darkness.getMinHours() > 24) {
+			throw new IllegalArgumentException("Hours must be between 0 and 24.");
+		}
+		this.firstNight = darkness.getFirstNight();
+		this.nights = darkness.getNights();
+		this.minHours = darkness.getMinHours();
+		this.moonDown = darkness.isMoonDown();
+	}
+
+	@Override
+	public String getRequirements() {
+		return minHours + " h of darkness" + (moonDown ? " with the Moon down" : "") + " per night, " + nights + " nights from " + firstNight;
+	}
+
+	@Override
+	public JPanel getParameterPanel() {
+		JPanel panel = new JPanel(new GridLayout(0, 2));
+		panel.add(new JLabel("First Night (yyyy-mm-dd):"));
+		JTextField firstNightField = new JTextField(String.valueOf(firstNight == null ? LocalDate.now() : firstNight));
+		panel.add(firstNightField);
+		panel.add(new JLabel("Nights:"));
+		JTextField nightsField = new JTextField(String.valueOf(nights));
+		panel.add(nightsField);
+		panel.add(new JLabel("Min Dark Hours per Night:"));
+		JTextField minHoursField = new JTextField(String.valueOf(minHours == 0 ? 4.0 : minHours));
+		panel.add(minHoursField);
+		panel.add(new JLabel("Moon Must Be Down:"));
+		JCheckBox moonDownBox = new JCheckBox("", moonDown);
+		panel.add(moonDownBox);
+		panel.putClientProperty("fields", new JTextField[]{firstNightField, nightsField, minHoursField});
+		panel.putClientProperty("moonDownBox", moonDownBox);
+		return panel;
+	}
+
+	/**
+	 * Mean darkness per night over a run of nights, on a grid of nodes every NODE_DEGREES, one tile per block of
+	 * BLOCK_NODES x BLOCK_NODES nodes. Values are tenths of a minute.
+	 *
+	 * The Sun's and Moon's positions only depend on time, so they are computed once per time step for the whole grid,
+	 * and each node's altitudes then take a few multiplications per step: with A the sidereal time less the right
+	 * ascension, the hour angle at longitude L is A + L, and sin(altitude) = sin(lat) sin(dec) + cos(lat) cos(dec) cos(A + L).
+	 */
+	static class DarknessRaster implements CachedRasterSource {
+		private static final double UNITS_PER_HOUR = 600.0;
+		private static final double NODE_DEGREES = 0.25;
+		private static final int NODE_ROWS = (int) (180 / NODE_DEGREES) + 1; // Both poles
+		private static final int NODE_COLUMNS = (int) (360 / NODE_DEGREES); // Wraps at the date line
+		private static final int BLOCK_NODES = 20;
+		private static final int BLOCK_ROWS = (NODE_ROWS + BLOCK_NODES - 1) / BLOCK_NODES;
+		private static final int BLOCK_COLUMNS = NODE_COLUMNS / BLOCK_NODES;
+		private static final int STEP_MINUTES = 10;
+		private static final int STEPS_PER_DAY = 24 * 60 / STEP_MINUTES;
+		private static final double SIN_ASTRONOMICAL_TWILIGHT = Math.sin(Math.toRadians(-18.0));
+		private static final double MOON_SEMIDIAMETER_AND_REFRACTION = Math.toRadians(34.0 / 60.0);
+
+		private final String name;
+		private final LocalDate firstNight;
+		private final int nights;
+		private final boolean moonDown;
+		private volatile Sky sky; // Computed on the first tile
+
+		DarknessRaster(LocalDate firstNight, int nights, boolean moonDown) {
+			this.name = "darkness:" + firstNight + "+" + nights + (moonDown ? ":moon" : "");
+			this.firstNight = firstNight;
+			this.nights = nights;
+			this.moonDown = moonDown;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public void locate(double[] latitudes, double[] longitudes, int count, int[] tiles, int[] columns, int[] rows) {
+			for (int i = 0; i < count; i++) {
+				int row = Math.max(0, Math.min(NODE_ROWS - 1, (int) Math.round((latitudes[i] + 90.0) / NODE_DEGREES)));
+				int column = Math.floorMod((int) Math.round((longitudes[i] + 180.0) / NODE_DEGREES), NODE_COLUMNS);
+				place(row, column, i, tiles, columns, rows);
+			}
+		}
+
+		@Override
+		public void locateBilinear(double[] latitudes, double[] longitudes, int count, int[] tiles, int[] columns, int[] rows, double[] weights) {
+			for (int i = 0; i < count; i++) {
+				double y = Math.max(0, Math.min(NODE_ROWS - 1, (latitudes[i] + 90.0) / NODE_DEGREES));
+				double x = (longitudes[i] + 180.0) / NODE_DEGREES;
+				int row = Math.min(NODE_ROWS - 2, (int) Math.floor(y)), column = (int) Math.floor(x);
+				double fx = x - column, fy = y - row;
+				for (int corner = 0; corner < 4; corner++) {
+					int j = 4 * i + corner;
+					place(row + (corner >> 1), Math.floorMod(column + (corner & 1), NODE_COLUMNS), j, tiles, columns, rows);
+					weights[j] = ((corner & 1) == 0 ? 1 - fx : fx) * ((corner >> 1) == 0 ? 1 - fy : fy);
+				}
+			}
+		}
+
+		private static void place(int row, int column, int i, int[] tiles, int[] columns, int[] rows) {
+			tiles[i] = (row / BLOCK_NODES) * BLOCK_COLUMNS + column / BLOCK_NODES;
+			columns[i] = column % BLOCK_NODES;
+			rows[i] = row % BLOCK_NODES;
+		}
+
+		@Override
+		public RasterTile loadTile(int tile) {
+			Sky positions = sky();
+			int firstRow = (tile / BLOCK_COLUMNS) * BLOCK_NODES, firstColumn = (tile % BLOCK_COLUMNS) * BLOCK_NODES;
+			int height = Math.min(BLOCK_NODES, NODE_ROWS - firstRow);
+			short[] values = new short[BLOCK_NODES * height];
+			for (int row = 0; row < height; row++) {
+				double latitude = Math.toRadians(-90.0 + (firstRow + row) * NODE_DEGREES);
+				for (int column = 0; column < BLOCK_NODES; column++) {
+					double longitude = -180.0 + (firstColumn + column) * NODE_DEGREES;
+					double minutes = (double) positions.darkSteps(latitude, longitude, nights, moonDown) * STEP_MINUTES / nights;
+					values[row * BLOCK_NODES + column] = (short) Math.round(minutes * UNITS_PER_HOUR / 60.0);
+				}
+			}
+			return new RasterTile(values, BLOCK_NODES, height);
+		}
+
+		/**
+		 * @return The blocks under the region, with a node of margin for interpolation
+		 */
+		@Override
+		public int[] tilesIn(Envelope region) {
+			int minRow = Math.max(0, (int) Math.floor((region.getMinY() + 90.0) / NODE_DEGREES)) / BLOCK_NODES;
+			int maxRow = Math.min(NODE_ROWS - 1, (int) Math.ceil((region.getMaxY() + 90.0) / NODE_DEGREES)) / BLOCK_NODES;
+			int minBlock = Math.floorDiv((int) Math.floor((region.getMinX() + 180.0) / NODE_DEGREES), BLOCK_NODES);
+			int maxBlock = Math.floorDiv((int) Math.ceil((region.getMaxX() + 180.0) / NODE_DEGREES), BLOCK_NODES);
+			maxBlock = Math.min(maxBlock, minBlock + BLOCK_COLUMNS - 1); // Each block once, even for a region wider than the globe
+			List<Integer> tiles = new ArrayList<>();
+			for (int blockRow = minRow; blockRow <= maxRow; blockRow++) {
+				for (int block = minBlock; block <= maxBlock; block++) {
+					tiles.add(blockRow * BLOCK_COLUMNS + Math.floorMod(block, BLOCK_COLUMNS));
+				}
+			}
+			return tiles.stream().mapToInt(Integer::intValue).toArray();
+		}
+
+		private Sky sky() {
+			Sky current = sky;
+			if (current != null) return current;
+			synchronized (this) {
+				if (sky == null) {
+					sky = new Sky(firstNight, nights);
+				}
+				return sky;
+			}
+		}
+	}
+
+	/**
+	 * The Sun and Moon every STEP_MINUTES, from midnight UT before the first night until every longitude's last night
+	 * has ended, sampled at the middle of each step.
+	 */
+	static class Sky {
+		private final double[] sunSinDec, sunCosDec, sunCosA, sunSinA;
+		private final double[] moonSinDec, moonCosDec, moonCosA, moonSinA, moonSinHorizon;
+
+		Sky(LocalDate firstNight, int nights) {
+			int steps = (nights + 1) * DarknessRaster.STEPS_PER_DAY;
+			sunSinDec = new double[steps];
+			sunCosDec = new double[steps];
+			sunCosA = new double[steps];
+			sunSinA = new double[steps];
+			moonSinDec = new double[steps];
+			moonCosDec = new double[steps];
+			moonCosA = new double[steps];
+			moonSinA = new double[steps];
+			moonSinHorizon = new double[steps];
+			double start = SkyEphemeris.julianDay(firstNight.atStartOfDay(ZoneOffset.UTC).toInstant());
+			double[] position = new double[3];
+			for (int i = 0; i < steps; i++) {
+				double julianDay = start + (i + 0.5) / DarknessRaster.STEPS_PER_DAY;
+				double siderealTime = SkyEphemeris.greenwichSiderealTime(julianDay);
+				SkyEphemeris.sun(julianDay, position);
+				sunSinDec[i] = Math.sin(position[1]);
+				sunCosDec[i] = Math.cos(position[1]);
+				sunCosA[i] = Math.cos(siderealTime - position[0]);
+				sunSinA[i] = Math.sin(siderealTime - position[0]);
+				SkyEphemeris.moon(julianDay, position);
+				moonSinDec[i] = Math.sin(position[1]);
+				moonCosDec[i] = Math.cos(position[1]);
+				moonCosA[i] = Math.cos(siderealTime - position[0]);
+				moonSinA[i] = Math.sin(siderealTime - position[0]);
+				// The geocentric altitude at which the Moon's upper limb rises, allowing for parallax
+				moonSinHorizon[i] = Math.sin(0.7275 * position[2] - DarknessRaster.MOON_SEMIDIAMETER_AND_REFRACTION);
+			}
+		}
+
+		/**
+		 * @param latitude The latitude, in radians
+		 * @param longitude The longitude, in degrees
+		 * @return How many steps of the nights at a place are astronomically dark, and have the Moon down if asked
+		 */
+		int darkSteps(double latitude, double longitude, int nights, boolean moonDown) {
+			double sinLat = Math.sin(latitude), cosLat = Math.cos(latitude);
+			double cosLng = Math.cos(Math.toRadians(longitude)), sinLng = Math.sin(Math.toRadians(longitude));
+			int first = (int) Math.round((12.0 - longitude / 15.0) * DarknessRaster.STEPS_PER_DAY / 24.0); // Local solar noon
+			int last = first + nights * DarknessRaster.STEPS_PER_DAY;
+			int dark = 0;
+			for (int i = first; i < last; i++) {
+				double sunSinAlt = sinLat * sunSinDec[i] + cosLat * sunCosDec[i] * (sunCosA[i] * cosLng - sunSinA[i] * sinLng);
+				if (sunSinAlt >= DarknessRaster.SIN_ASTRONOMICAL_TWILIGHT) continue;
+				if (moonDown) {
+					double moonSinAlt = sinLat * moonSinDec[i] + cosLat * moonCosDec[i] * (moonCosA[i] * cosLng - moonSinA[i] * sinLng);
+					if (moonSinAlt >= moonSinHorizon[i]) continue;
+				}
+				dark++;
+			}
+			return dark;
+		}
+	}
+
+	/**
+	 * DarknessRequirements - Helper class for structured input.
+	 */
+	public static class DarknessRequirements {
+		private final LocalDate firstNight;
+		private final int nights;
+		private final double minHours;
+		private final boolean moonDown;
+
+		/**
+		 * @param firstNight The date the first night starts on
+		 * @param nights How many nights to average over
+		 * @param minHours The fewest mean hours of darkness per night that pass
+		 * @param moonDown Whether darkness also needs the Moon below the horizon
+		 */
+		public DarknessRequirements(LocalDate firstNight, int nights, double minHours, boolean moonDown) {
+			this.firstNight = firstNight;
+			this.nights = nights;
+			this.minHours = minHours;
+			this.moonDown = moonDown;
+		}
+
+		public LocalDate getFirstNight() {
+			return firstNight;
+		}
+
+		public int getNights() {
+			return nights;
+		}
+
+		public double getMinHours() {
+			return minHours;
+		}
+
+		public boolean isMoonDown() {
+			return moonDown;
+		}
+	}
+}
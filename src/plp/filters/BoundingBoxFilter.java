@@ -1,37 +1,37 @@
 package plp.filters;
 
 import java.awt.GridLayout;
-import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.stream.LongStream;
 
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
 
-import com.uber.h3core.H3Core;
+import org.locationtech.jts.geom.Envelope;
+
 import com.uber.h3core.util.LatLng;
 
 import plp.Config;
 import plp.filter.InitialFilter;
+import plp.location.CellStratum;
 import plp.location.LocationCell;
+import plp.location.LocationUtils;
+import plp.location.PolygonFill;
 
 public class BoundingBoxFilter implements InitialFilter {
+	private static final long serialVersionUID = 1L;
     private double minLatitude;
     private double maxLatitude;
     private double minLongitude;
     private double maxLongitude;
-    private List<Long> validCells;
-    private List<LocationCell> locations;
-    private H3Core h3;
+    private PolygonFill region; // Streamed on demand, the cells of a large box do not fit on the heap
+    private transient List<LocationCell> locations;
 
     public BoundingBoxFilter() {
-        try {
-            h3 = H3Core.newInstance();
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to initialize H3 library", e);
-        }
+        LocationUtils.initialize();
     }
     
 	@Override
@@ -68,12 +68,11 @@ public class BoundingBoxFilter implements InitialFilter {
                 this.minLongitude = bounds[2];
                 this.maxLongitude = bounds[3];
                 
-                validCells = h3.polygonToCells(Arrays.asList(
+                region = new PolygonFill(Arrays.asList(
                 		new LatLng(minLatitude, minLongitude),
                 		new LatLng(minLatitude, maxLongitude),
             			new LatLng(maxLatitude, maxLongitude),
-        				new LatLng(maxLatitude, minLongitude)),
-                        null, Config.H3_RESOLUTION);
+        				new LatLng(maxLatitude, minLongitude)));
             } else {
                 throw new IllegalArgumentException("Bounding box requires exactly 4 values: [minLat, maxLat, minLon, maxLon]");
             }
@@ -119,18 +118,31 @@ public class BoundingBoxFilter implements InitialFilter {
     @Override
     public List<LocationCell> process() {
         return locations.stream()
-                .filter(cell -> validCells.contains(cell.getH3Index()))
+                .filter(cell -> region.contains(LocationUtils.getLatLng(cell)))
                 .toList();
     }
     
     /**
      * Get the valid cells of the bounding box
-     * @return List of Cell h3 indexes
+     * @return List of Cell h3 indexes, ascending
      */
     public List<LocationCell> getValidCells() {
-    	return validCells.stream()
-                .map(LocationCell::new)
-                .toList();
+    	return getValidCellIndexes().mapToObj(LocationCell::new).toList();
+    }
+
+    @Override
+    public Envelope getBounds() {
+        return new Envelope(minLongitude, maxLongitude, minLatitude, maxLatitude);
+    }
+
+    @Override
+    public LongStream getValidCellIndexes() {
+        return region.cells(Config.H3_RESOLUTION);
+    }
+
+    @Override
+    public List<CellStratum> getStrata(int resolution) {
+        return region.strata(resolution, Config.H3_RESOLUTION);
     }
     
     @Override
@@ -8,13 +8,17 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.LongStream;
 
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.SwingConstants;
 
+import org.locationtech.jts.geom.Envelope;
 import org.openstreetmap.gui.jmapviewer.Coordinate;
 import org.openstreetmap.gui.jmapviewer.JMapViewer;
 import org.openstreetmap.gui.jmapviewer.MapMarkerDot;
@@ -24,28 +28,27 @@ import org.openstreetmap.gui.jmapviewer.interfaces.ICoordinate;
 import org.openstreetmap.gui.jmapviewer.interfaces.MapMarker;
 import org.openstreetmap.gui.jmapviewer.interfaces.MapPolygon;
 
-import com.uber.h3core.H3Core;
 import com.uber.h3core.util.LatLng;
 
 import plp.Config;
 import plp.filter.InitialFilter;
+import plp.location.CellStratum;
 import plp.location.LocationCell;
+import plp.location.LocationUtils;
+import plp.location.PolygonFill;
 
 public class BoundingEllipseFilter implements InitialFilter {
-    private LatLng center;
+	private static final long serialVersionUID = 1L;
+    private transient LatLng center; // LatLng is not serializable, written by writeObject
     private double majorAxis;
     private double minorAxis;
     private double rotation;
-    private List<Long> validCells;
-    private List<LocationCell> locations;
-    private H3Core h3;
+    private PolygonFill region; // Streamed on demand, the cells of a large ellipse do not fit on the heap
+    private Envelope bounds;
+    private transient List<LocationCell> locations;
 
     public BoundingEllipseFilter() {
-        try {
-            h3 = H3Core.newInstance();
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to initialize H3 library", e);
-        }
+        LocationUtils.initialize();
         center = null; // Center is not initialized until user interaction
         majorAxis = 1.0; // Default major axis length in degrees
         minorAxis = 1.0; // Default minor axis length in degrees
@@ -65,7 +68,23 @@ public class BoundingEllipseFilter implements InitialFilter {
         rotation = mapPanel.getRotation();
 
         // Generate H3 indexes within the ellipse boundary
-        validCells = h3.polygonToCells(getEllipseBoundary(), null, Config.H3_RESOLUTION);
+        List<LatLng> boundary = getEllipseBoundary();
+        bounds = LocationUtils.getBounds(boundary);
+        region = new PolygonFill(boundary);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+    	out.defaultWriteObject();
+    	out.writeBoolean(center != null);
+    	if (center != null) {
+    		out.writeDouble(center.lat);
+    		out.writeDouble(center.lng);
+    	}
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    	in.defaultReadObject();
+    	center = in.readBoolean() ? new LatLng(in.readDouble(), in.readDouble()) : null;
     }
 
     @Override
@@ -78,7 +97,9 @@ public class BoundingEllipseFilter implements InitialFilter {
             this.rotation = req.rotation;
 
             // Generate H3 indexes within the ellipse boundary
-            validCells = h3.polygonToCells(getEllipseBoundary(), null, Config.H3_RESOLUTION);
+            List<LatLng> boundary = getEllipseBoundary();
+            bounds = LocationUtils.getBounds(boundary);
+            region = new PolygonFill(boundary);
         } else {
             throw new IllegalArgumentException("Invalid requirement type for BoundingEllipseFilter");
         }
@@ -112,15 +133,28 @@ public class BoundingEllipseFilter implements InitialFilter {
     @Override
     public List<LocationCell> process() {
         return locations.stream()
-                .filter(cell -> validCells.contains(cell.getH3Index()))
+                .filter(cell -> region.contains(LocationUtils.getLatLng(cell)))
                 .toList();
     }
     
     @Override
     public List<LocationCell> getValidCells() {
-        return validCells.stream()
-                .map(LocationCell::new)
-                .toList();
+        return getValidCellIndexes().mapToObj(LocationCell::new).toList();
+    }
+
+    @Override
+    public Envelope getBounds() {
+        return bounds;
+    }
+
+    @Override
+    public LongStream getValidCellIndexes() {
+        return region.cells(Config.H3_RESOLUTION);
+    }
+
+    @Override
+    public List<CellStratum> getStrata(int resolution) {
+        return region.strata(resolution, Config.H3_RESOLUTION);
     }
 
     @Override
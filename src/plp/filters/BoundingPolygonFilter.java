@@ -8,7 +8,9 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
 import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.List;
+import java.util.stream.LongStream;
 import java.util.ArrayList;
 
 import javax.swing.JPanel;
@@ -16,6 +18,7 @@ import javax.swing.SwingConstants;
 import javax.swing.JButton;
 import javax.swing.JLabel;
 
+import org.locationtech.jts.geom.Envelope;
 import org.openstreetmap.gui.jmapviewer.Coordinate;
 import org.openstreetmap.gui.jmapviewer.JMapViewer;
 import org.openstreetmap.gui.jmapviewer.MapMarkerDot;
@@ -25,29 +28,33 @@ import org.openstreetmap.gui.jmapviewer.interfaces.ICoordinate;
 import org.openstreetmap.gui.jmapviewer.interfaces.MapMarker;
 import org.openstreetmap.gui.jmapviewer.interfaces.MapPolygon;
 
-import com.uber.h3core.H3Core;
 import com.uber.h3core.util.LatLng;
 
 import plp.Config;
 import plp.filter.InitialFilter;
+import plp.location.CellStratum;
 import plp.location.LocationCell;
+import plp.location.LocationUtils;
+import plp.location.PolygonFill;
 
 public class BoundingPolygonFilter implements InitialFilter {
 
-	private List<LatLng> boundaryPoints;
-    private List<Long> validCells;
-    private List<LocationCell> locations;
-    private H3Core h3;
+	private static final long serialVersionUID = 1L;
+	private transient List<LatLng> boundaryPoints; // LatLng is not serializable, rebuilt from region
+    private PolygonFill region; // Streamed on demand, the cells of a large polygon do not fit on the heap
+    private Envelope bounds;
+    private transient List<LocationCell> locations;
 
     public BoundingPolygonFilter() {
-        try {
-            h3 = H3Core.newInstance();
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to initialize H3 library", e);
-        }
+        LocationUtils.initialize();
         boundaryPoints = new ArrayList<>();
     }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    	in.defaultReadObject();
+    	boundaryPoints = region == null ? new ArrayList<>() : region.getBoundary();
+    }
+
     @Override
     public void setRequirements(JPanel modifiedParameterPanel) {
         MapPanel mapPanel = (MapPanel) modifiedParameterPanel.getClientProperty("mapPanel");
@@ -60,9 +67,9 @@ public class BoundingPolygonFilter implements InitialFilter {
             throw new IllegalArgumentException("At least 3 points are required to define a bounding polygon.");
         }
 
-        boundaryPoints.clear();
         boundaryPoints = points;
-        validCells = h3.polygonToCells(boundaryPoints, null, Config.H3_RESOLUTION);
+        bounds = LocationUtils.getBounds(boundaryPoints);
+        region = new PolygonFill(boundaryPoints);
     }
 
     @SuppressWarnings("unchecked")
@@ -77,7 +84,8 @@ public class BoundingPolygonFilter implements InitialFilter {
                 throw new IllegalArgumentException("Must be an array of LatLng.");
             }
             boundaryPoints = (List<LatLng>) points;
-            validCells = h3.polygonToCells(boundaryPoints, null, Config.H3_RESOLUTION);
+            bounds = LocationUtils.getBounds(boundaryPoints);
+            region = new PolygonFill(boundaryPoints);
         } else {
             throw new IllegalArgumentException("Invalid requirement type for BoundingBoxFilter");
         }
@@ -96,14 +104,27 @@ public class BoundingPolygonFilter implements InitialFilter {
     @Override
     public List<LocationCell> process() {
         return locations.stream()
-                .filter(cell -> validCells.contains(cell.getH3Index()))
+                .filter(cell -> region.contains(LocationUtils.getLatLng(cell)))
                 .toList();
     }
 
     public List<LocationCell> getValidCells() {
-        return validCells.stream()
-                .map(LocationCell::new)
-                .toList();
+        return getValidCellIndexes().mapToObj(LocationCell::new).toList();
+    }
+
+    @Override
+    public Envelope getBounds() {
+        return bounds;
+    }
+
+    @Override
+    public LongStream getValidCellIndexes() {
+        return region.cells(Config.H3_RESOLUTION);
+    }
+
+    @Override
+    public List<CellStratum> getStrata(int resolution) {
+        return region.strata(resolution, Config.H3_RESOLUTION);
     }
 
     @Override
@@ -0,0 +1,140 @@
+package plp.filters;
+
+import java.awt.GridLayout;
+import java.nio.file.Path;
+import java.util.List;
+
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+
+import plp.filter.ThresholdSweep;
+import plp.filters.raster.HgtRasterSource;
+import plp.filters.raster.RasterFilter;
+import plp.filters.raster.RasterLayer;
+import plp.filters.raster.RasterSampling;
+import plp.filters.raster.RasterTileCache;
+import plp.location.LocationCell;
+
+/**
+ * Keeps cells whose altitude lies between a minimum and a maximum, read from SRTM .hgt tiles in TILE_PATH.
+ * Tiles are memory-mapped as cells first fall in them, and cells with no tile or a void fail.
+ */
+public class ElevationFilter extends RasterFilter {
+	private static final long serialVersionUID = 1L;
+	private static final String TILE_PATH = "data/elevation/hgt/";
+	private static final double SWEEP_MIN_METERS = -500.0;
+	private static final double SWEEP_MAX_METERS = 9000.0;
+	private static final int SWEEP_BINS = 95; // 100 m per bin
+	private static volatile RasterLayer layer; // Resolved on first use
+	private double minAltitude = Double.NEGATIVE_INFINITY;
+	private double maxAltitude = Double.POSITIVE_INFINITY;
+
+	public ElevationFilter() {}
+
+	private static RasterLayer layer() {
+		RasterLayer current = layer;
+		if (current != null) return current;
+		synchronized (ElevationFilter.class) {
+			if (layer == null) {
+				layer = new RasterLayer(new HgtRasterSource(Path.of(TILE_PATH)), RasterTileCache.shared(), RasterSampling.BILINEAR);
+			}
+			return layer;
+		}
+	}
+
+	@Override
+	protected RasterLayer getLayer() {
+		return layer();
+	}
+
+	@Override
+	protected boolean accepts(double value) {
+		return value >= minAltitude && value <= maxAltitude;
+	}
+
+	/**
+	 * Sweeps the minimum altitude, the maximum still applies.
+	 */
+	@Override
+	public ThresholdSweep sweep(double[] thresholds, boolean collectResults) {
+		List<LocationCell> cells = locations;
+		double[] values = getCellValues(cells);
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] > maxAltitude) values[i] = Double.NaN; // Reaches no threshold
+		}
+		return ThresholdSweep.compute(cells, values, SWEEP_MIN_METERS, SWEEP_MAX_METERS, SWEEP_BINS, thresholds, collectResults);
+	}
+
+	/**
+	 * Higher is better, within the allowed range: the altitude scaled from the minimum onto [0, 1].
+	 */
+	@Override
+	public double getScore(LocationCell cell) {
+		double altitude = getCellValue(cell);
+		if (Double.isNaN(altitude)) return 0.0;
+		double low = Double.isInfinite(minAltitude) ? SWEEP_MIN_METERS : minAltitude;
+		double high = Double.isInfinite(maxAltitude) ? SWEEP_MAX_METERS : maxAltitude;
+		if (high <= low) return altitude >= low ? 1.0 : 0.0;
+		return Math.max(0.0, Math.min(1.0, (altitude - low) / (high - low)));
+	}
+
+	@Override
+	public void setRequirements(JPanel modifiedParameterPanel) throws IllegalArgumentException {
+		JTextField[] fields = (JTextField[]) modifiedParameterPanel.getClientProperty("fields");
+		setRequirements(new double[]{parseAltitude(fields[0].getText(), Double.NEGATIVE_INFINITY),
+				parseAltitude(fields[1].getText(), Double.POSITIVE_INFINITY)});
+	}
+
+	private static double parseAltitude(String text, double unbounded) {
+		return text.trim().isEmpty() ? unbounded : Double.parseDouble(text.trim());
+	}
+
+	/**
+	 * @param requirements The minimum and maximum altitude in metres as a double[2], either of which may be infinite,
+	 * or a String "min,max" where either may be left blank
+	 */
+	@Override
+	public void setRequirements(Object requirements) throws IllegalArgumentException {
+		double[] range;
+		if (requirements instanceof double[] values && values.length == 2) {
+			range = values;
+		} else if (requirements instanceof String stringRequirement) {
+			String[] parts = stringRequirement.split(",", -1);
+			if (parts.length != 2) {
+				throw new IllegalArgumentException("Invalid string format. Expected 'MinAltitude,MaxAltitude'.");
+			}
+			try {
+				range = new double[]{parseAltitude(parts[0], Double.NEGATIVE_INFINITY), parseAltitude(parts[1], Double.POSITIVE_INFINITY)};
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid altitude: " + e.getMessage());
+			}
+		} else {
+			throw new IllegalArgumentException("Invalid requirement type for ElevationFilter");
+		}
+		if (Double.isNaN(range[0]) || Double.isNaN(range[1]) || range[0] > range[1]) {
+			throw new IllegalArgumentException("The minimum altitude must be at most the maximum.");
+		}
+		this.minAltitude = range[0];
+		this.maxAltitude = range[1];
+	}
+
+	@Override
+	public String getRequirements() {
+		return "Altitude: " + (Double.isInfinite(minAltitude) ? "any" : minAltitude + " m") + " -> "
+				+ (Double.isInfinite(maxAltitude) ? "any" : maxAltitude + " m");
+	}
+
+	@Override
+	public JPanel getParameterPanel() {
+		JPanel panel = new JPanel(new GridLayout(0, 2));
+		panel.add(new JLabel("Min Altitude (m, blank for none):"));
+		JTextField minField = new JTextField(Double.isInfinite(minAltitude) ? "" : String.valueOf(minAltitude));
+		panel.add(minField);
+		panel.add(new JLabel("Max Altitude (m, blank for none):"));
+		JTextField maxField = new JTextField(Double.isInfinite(maxAltitude) ? "" : String.valueOf(maxAltitude));
+		panel.add(maxField);
+		panel.putClientProperty("fields", new JTextField[]{minField, maxField});
+		return panel;
+	}
+}
@@ -0,0 +1,399 @@
+package plp.filters;
+
+import java.awt.GridLayout;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+
+import org.locationtech.jts.geom.Envelope;
+
+import com.uber.h3core.util.LatLng;
+
+import plp.Config;
+import plp.data.PointFeatures;
+import plp.filter.Filter;
+import plp.location.LocationCell;
+import plp.location.LocationUtils;
+
+/**
+ * Keeps cells within a distance of any point feature read from a local file, or only those at least that far from all of them.
+ * See {@link PointFeatures} for the files it reads.
+ *
+ * Rather than measuring every cell against every feature, the features' cells are expanded ring by ring over H3 neighbours,
+ * all at once. Each cell reached keeps the feature nearest its centre of those offered by its neighbours, and passes it on
+ * while within the distance, so a cell never reached is farther than the distance from every feature, and a cell reached
+ * is measured once, against its feature. Only features near the cells being filtered are expanded, and a cell only passes
+ * its feature on while the distance from the feature to the cell plus that from the cell to the filtered cells' bounds
+ * is within the distance, so nothing spreads away from the cells being filtered.
+ * Large distances are expanded at a coarser resolution to bound the number of rings, so where two features are about
+ * as near, a cell can be measured against the farther one, off by up to about one cell of the expansion resolution.
+ */
+public class FeatureDistanceFilter implements Filter {
+	private static final long serialVersionUID = 1L;
+	private static final int MAX_RINGS = 32;
+	private static final double KM_PER_DEGREE = 111.195; // Of latitude
+	private String featurePath;
+	private double distanceKm;
+	private boolean beyond;
+	private transient List<LocationCell> locations;
+	private transient PointFeatures features; // Of loadedPath
+	private transient String loadedPath;
+	private transient long[] featureCells; // Of each feature, at featureCellsResolution
+	private transient int featureCellsResolution = -1;
+
+	public FeatureDistanceFilter() {
+		LocationUtils.initialize();
+	}
+
+	private synchronized PointFeatures features() {
+		if (featurePath == null) {
+			throw new IllegalStateException("No point features have been set.");
+		}
+		if (features == null || !featurePath.equals(loadedPath)) {
+			try {
+				features = PointFeatures.read(Path.of(featurePath));
+			} catch (IOException e) {
+				throw new RuntimeException("Failed to read point features: " + e.getMessage(), e);
+			}
+			loadedPath = featurePath;
+			featureCells = null;
+		}
+		return features;
+	}
+
+	private synchronized long[] featureCells(PointFeatures features, int resolution) {
+		if (featureCells == null || featureCellsResolution != resolution) {
+			long[] cells = new long[features.getCount()];
+			for (int i = 0; i < cells.length; i++) {
+				cells[i] = LocationUtils.getCell(features.getLatitude(i), features.getLongitude(i), resolution);
+			}
+			featureCells = cells;
+			featureCellsResolution = resolution;
+		}
+		return featureCells;
+	}
+
+	/**
+	 * Reads the features in the background.
+	 */
+	@Override
+	public void prefetch(Envelope region) {
+		if (featurePath != null) features();
+	}
+
+	@Override
+	public void setLocations(List<LocationCell> locations) {
+		this.locations = locations;
+	}
+
+	@Override
+	public List<LocationCell> process() {
+		PointFeatures features = features();
+		int resolution = expansionResolution(distanceKm);
+
+		long[] expansionCells = new long[locations.size()];
+		Envelope reach = new Envelope();
+		for (int i = 0; i < expansionCells.length; i++) {
+			LocationCell cell = locations.get(i);
+			expansionCells[i] = resolution == Config.H3_RESOLUTION ? cell.getH3Index() : LocationUtils.getParent(cell.getH3Index(), resolution);
+			LatLng centre = LocationUtils.getLatLng(cell);
+			reach.expandToInclude(centre.lng, centre.lat);
+		}
+		CellLabels labels = expand(features, resolution, reach);
+
+		List<LocationCell> kept = new ArrayList<>();
+		for (int i = 0; i < expansionCells.length; i++) {
+			LocationCell cell = locations.get(i);
+			int slot = labels.find(expansionCells[i]);
+			boolean within = false;
+			if (slot >= 0) {
+				int feature = labels.getFeature(slot);
+				LatLng centre = LocationUtils.getLatLng(cell);
+				within = LocationUtils.getDistance(centre.lat, centre.lng, features.getLatitude(feature), features.getLongitude(feature)) <= distanceKm;
+			}
+			if (within != beyond) kept.add(cell);
+		}
+		return kept;
+	}
+
+	/**
+	 * The multi-source breadth-first expansion, from every feature that could be within the distance of the region.
+	 * A cell whose feature changes is expanded again, so better features keep spreading until no cell within reach improves.
+	 * @return The nearest feature found for each cell reached
+	 */
+	private CellLabels expand(PointFeatures features, int resolution, Envelope reach) {
+		CellLabels labels = new CellLabels();
+		if (reach.isNull()) return labels;
+		// A cell on the way from a feature to a filtered cell is up to about an edge off the line between them
+		double limit = distanceKm + 2 * LocationUtils.getEdgeLength(resolution);
+		double latitudeMargin = limit / KM_PER_DEGREE;
+		double minLatitude = reach.getMinY() - latitudeMargin;
+		double maxLatitude = reach.getMaxY() + latitudeMargin;
+		double widest = Math.max(Math.abs(minLatitude), Math.abs(maxLatitude));
+		double longitudeMargin = widest >= 89.0 ? 360.0 : latitudeMargin / Math.cos(Math.toRadians(widest));
+		boolean anyLongitude = reach.getMinX() - longitudeMargin < -180.0 || reach.getMaxX() + longitudeMargin > 180.0; // Wraps
+		Envelope target = anyLongitude ? new Envelope(-180.0, 180.0, reach.getMinY(), reach.getMaxY()) : reach;
+
+		long[] seeds = featureCells(features, resolution);
+		long[] frontier = new long[64];
+		int frontierSize = 0;
+		for (int feature = 0; feature < seeds.length; feature++) {
+			double latitude = features.getLatitude(feature);
+			double longitude = features.getLongitude(feature);
+			if (latitude < minLatitude || latitude > maxLatitude) continue;
+			if (!anyLongitude && (longitude < reach.getMinX() - longitudeMargin || longitude > reach.getMaxX() + longitudeMargin)) continue;
+			if (offer(labels, seeds[feature], feature, features, limit, target, 0)) {
+				if (frontierSize == frontier.length) frontier = Arrays.copyOf(frontier, frontierSize * 2);
+				frontier[frontierSize++] = seeds[feature];
+			}
+		}
+
+		int ring = 0;
+		long[] next = new long[frontier.length];
+		while (frontierSize > 0) {
+			ring++;
+			int nextSize = 0;
+			for (int i = 0; i < frontierSize; i++) {
+				int feature = labels.getFeature(labels.find(frontier[i]));
+				for (long neighbour : LocationUtils.getDisk(frontier[i], 1)) {
+					if (!offer(labels, neighbour, feature, features, limit, target, ring)) continue;
+					if (nextSize == next.length) next = Arrays.copyOf(next, nextSize * 2);
+					next[nextSize++] = neighbour;
+				}
+			}
+			long[] swap = frontier;
+			frontier = next;
+			next = swap;
+			frontierSize = nextSize;
+		}
+		return labels;
+	}
+
+	/**
+	 * Offer a feature to a cell, which keeps it if it is nearer than the one it has.
+	 * @return Whether the cell took the feature, is within the limit on the way to the target and is not yet in this ring's
+	 * frontier, so should be expanded
+	 */
+	private static boolean offer(CellLabels labels, long cell, int feature, PointFeatures features, double limit, Envelope target, int ring) {
+		int slot = labels.find(cell);
+		if (slot < 0) {
+			LatLng centre = LocationUtils.getLatLng(new LocationCell(cell));
+			slot = labels.insert(cell, centre.lat, centre.lng, distanceTo(target, centre.lat, centre.lng));
+		}
+		double distance = LocationUtils.getDistance(labels.getLatitude(slot), labels.getLongitude(slot),
+				features.getLatitude(feature), features.getLongitude(feature));
+		if (labels.getFeature(slot) >= 0 && distance >= labels.getDistance(slot)) return false;
+		labels.setFeature(slot, feature, distance);
+		return distance + labels.getTargetDistance(slot) <= limit && labels.markExpanded(slot, ring);
+	}
+
+	/**
+	 * @return At most the distance from a point to the nearest point of an area, 0 inside it
+	 */
+	private static double distanceTo(Envelope area, double latitude, double longitude) {
+		double latitudeGap = Math.max(0.0, Math.max(area.getMinY() - latitude, latitude - area.getMaxY()));
+		double longitudeGap = Math.max(0.0, Math.max(area.getMinX() - longitude, longitude - area.getMaxX()));
+		longitudeGap = Math.min(Math.min(longitudeGap, 360.0 - longitudeGap), 90.0);
+		// Outside the area's meridians, the point is at least as far as the great circle of the nearer one
+		double acrossMeridians = Math.toDegrees(Math.asin(Math.sin(Math.toRadians(longitudeGap)) * Math.cos(Math.toRadians(latitude))));
+		return Math.max(latitudeGap, acrossMeridians) * KM_PER_DEGREE;
+	}
+
+	/**
+	 * @return The finest resolution, no finer than the cells', at which the distance is at most MAX_RINGS rings
+	 */
+	private static int expansionResolution(double distanceKm) {
+		int resolution = Config.H3_RESOLUTION;
+		while (resolution > 0 && distanceKm / (Math.sqrt(3.0) * LocationUtils.getEdgeLength(resolution)) > MAX_RINGS) {
+			resolution--; // Neighbouring centres are about sqrt(3) edges apart
+		}
+		return resolution;
+	}
+
+	@Override
+	public void setRequirements(JPanel modifiedParameterPanel) throws IllegalArgumentException {
+		JTextField[] fields = (JTextField[]) modifiedParameterPanel.getClientProperty("fields");
+		JComboBox<String> modeBox = (JComboBox<String>) modifiedParameterPanel.getClientProperty("modeComboBox");
+		if (fields == null || fields.length != 2 || modeBox == null) {
+			throw new IllegalArgumentException("Parameters are missing in the panel.");
+		}
+		setRequirements(fields[0].getText().trim() + "," + fields[1].getText().trim() + "," + modeBox.getSelectedItem());
+	}
+
+	/**
+	 * @param requirements A String "path,km,mode", the file of point features, the distance in kilometres,
+	 * and "within" to keep cells within the distance of a feature or "beyond" to keep those at least that far from every one
+	 */
+	@Override
+	public void setRequirements(Object requirements) throws IllegalArgumentException {
+		if (!(requirements instanceof String stringRequirement)) {
+			throw new IllegalArgumentException("Invalid requirement type for FeatureDistanceFilter");
+		}
+		// The path may itself hold commas
+		int modeComma = stringRequirement.lastIndexOf(',');
+		int distanceComma = modeComma > 0 ? stringRequirement.lastIndexOf(',', modeComma - 1) : -1;
+		if (distanceComma <= 0) {
+			throw new IllegalArgumentException("Invalid string format. Expected 'Path,DistanceKm,Within|Beyond'.");
+		}
+		String path = stringRequirement.substring(0, distanceComma).trim();
+		String mode = stringRequirement.substring(modeComma + 1).trim();
+		double distance;
+		try {
+			distance = Double.parseDouble(stringRequirement.substring(distanceComma + 1, modeComma).trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid distance: " + e.getMessage());
+		}
+		if (!(distance > 0) || Double.isInfinite(distance)) {
+			throw new IllegalArgumentException("The distance must be a positive number of kilometres.");
+		}
+		if (!mode.equalsIgnoreCase("Within") && !mode.equalsIgnoreCase("Beyond")) {
+			throw new IllegalArgumentException("The mode must be 'Within' or 'Beyond'.");
+		}
+		if (!Files.isRegularFile(Path.of(path))) {
+			throw new IllegalArgumentException("No point features file at " + path);
+		}
+		this.featurePath = path;
+		this.distanceKm = distance;
+		this.beyond = mode.equalsIgnoreCase("Beyond");
+	}
+
+	@Override
+	public String getRequirements() {
+		if (featurePath == null) return "No features";
+		return (beyond ? "At least " + distanceKm + " km from" : "Within " + distanceKm + " km of") + " the features in " + featurePath;
+	}
+
+	@Override
+	public JPanel getParameterPanel() {
+		JPanel panel = new JPanel(new GridLayout(0, 2));
+		panel.add(new JLabel("Features File (.csv, .geojson):"));
+		JTextField pathField = new JTextField(featurePath == null ? "" : featurePath);
+		panel.add(pathField);
+		panel.add(new JLabel("Distance (km):"));
+		JTextField distanceField = new JTextField(distanceKm > 0 ? String.valueOf(distanceKm) : "");
+		panel.add(distanceField);
+		panel.add(new JLabel("Keep Cells:"));
+		JComboBox<String> modeComboBox = new JComboBox<>(new String[]{"Within", "Beyond"});
+		modeComboBox.setSelectedItem(beyond ? "Beyond" : "Within");
+		panel.add(modeComboBox);
+		panel.putClientProperty("fields", new JTextField[]{pathField, distanceField});
+		panel.putClientProperty("modeComboBox", modeComboBox);
+		return panel;
+	}
+
+	/**
+	 * The nearest feature found for each cell reached, in open addressing so millions of cells are not boxed.
+	 * Slots stay valid until the next insert.
+	 */
+	private static class CellLabels {
+		private long[] cells = new long[1 << 12]; // 0 is never an H3 index, so marks an empty slot
+		private double[] latitudes = new double[1 << 12]; // Of the cell's centre
+		private double[] longitudes = new double[1 << 12];
+		private int[] features = new int[1 << 12];
+		private double[] distances = new double[1 << 12]; // From the centre to the feature
+		private double[] targetDistances = new double[1 << 12]; // From the centre to the cells being filtered, at most
+		private int[] expandedRings = new int[1 << 12]; // The last ring whose frontier the cell joined
+		private int size;
+
+		/**
+		 * @return The cell's slot, or -1 if it has not been reached
+		 */
+		int find(long cell) {
+			int slot = slotOf(cell);
+			return cells[slot] == cell ? slot : -1;
+		}
+
+		/**
+		 * Add a cell with no feature yet.
+		 * @return Its slot
+		 */
+		int insert(long cell, double latitude, double longitude, double targetDistance) {
+			if ((size + 1) * 2 > cells.length) grow();
+			int slot = slotOf(cell);
+			cells[slot] = cell;
+			latitudes[slot] = latitude;
+			longitudes[slot] = longitude;
+			targetDistances[slot] = targetDistance;
+			features[slot] = -1;
+			expandedRings[slot] = -1;
+			size++;
+			return slot;
+		}
+
+		int getFeature(int slot) {
+			return features[slot];
+		}
+
+		double getDistance(int slot) {
+			return distances[slot];
+		}
+
+		double getTargetDistance(int slot) {
+			return targetDistances[slot];
+		}
+
+		double getLatitude(int slot) {
+			return latitudes[slot];
+		}
+
+		double getLongitude(int slot) {
+			return longitudes[slot];
+		}
+
+		void setFeature(int slot, int feature, double distance) {
+			features[slot] = feature;
+			distances[slot] = distance;
+		}
+
+		/**
+		 * @return Whether the cell was not yet in the ring's frontier, and now is
+		 */
+		boolean markExpanded(int slot, int ring) {
+			if (expandedRings[slot] == ring) return false;
+			expandedRings[slot] = ring;
+			return true;
+		}
+
+		private int slotOf(long cell) {
+			int mask = cells.length - 1;
+			int slot = (int) ((cell * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+			while (cells[slot] != 0 && cells[slot] != cell) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		private void grow() {
+			long[] oldCells = cells;
+			double[] oldLatitudes = latitudes, oldLongitudes = longitudes, oldDistances = distances, oldTargetDistances = targetDistances;
+			int[] oldFeatures = features, oldRings = expandedRings;
+			int capacity = oldCells.length * 2;
+			cells = new long[capacity];
+			latitudes = new double[capacity];
+			longitudes = new double[capacity];
+			features = new int[capacity];
+			distances = new double[capacity];
+			targetDistances = new double[capacity];
+			expandedRings = new int[capacity];
+			for (int i = 0; i < oldCells.length; i++) {
+				if (oldCells[i] == 0) continue;
+				int slot = slotOf(oldCells[i]);
+				cells[slot] = oldCells[i];
+				latitudes[slot] = oldLatitudes[i];
+				longitudes[slot] = oldLongitudes[i];
+				features[slot] = oldFeatures[i];
+				distances[slot] = oldDistances[i];
+				targetDistances[slot] = oldTargetDistances[i];
+				expandedRings[slot] = oldRings[i];
+			}
+		}
+	}
+}
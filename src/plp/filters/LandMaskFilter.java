@@ -0,0 +1,236 @@
+package plp.filters;
+
+import java.awt.GridLayout;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKTReader;
+
+import com.uber.h3core.util.LatLng;
+
+import plp.Config;
+import plp.data.LandMask;
+import plp.filter.Filter;
+import plp.filter.InitialFilter;
+import plp.location.LocationCell;
+import plp.location.LocationUtils;
+
+/**
+ * Keeps only land cells, or only water cells, looked up in a {@link LandMask} built ahead of time with
+ * {@link #buildLandMask(InitialFilter, Path, int)}. A lookup is a bit test on the mapped mask, so add it before the
+ * costlier filters, or let {@link plp.filter.DataFilter#planFilterOrder} place it by its measured cost.
+ * Cells the mask was never built for are kept.
+ */
+public class LandMaskFilter implements Filter {
+	private static final long serialVersionUID = 1L;
+	private static final String MASK_PATH = "data/landmask/";
+	private static final int PARTITION_DEPTH = 6; // 7^6 cells, about 14 KB of bits, per coastal partition
+	private static volatile LandMask mask; // Mapped on first use
+	private boolean keepWater;
+	private transient List<LocationCell> locations;
+
+	public LandMaskFilter() {}
+
+	private static Path maskPath() {
+		return Path.of(MASK_PATH, "r" + Config.H3_RESOLUTION + ".mask");
+	}
+
+	private static LandMask mask() {
+		LandMask current = builtMask();
+		if (current == null) {
+			throw new RuntimeException("No land mask at " + maskPath() + ", build one with LandMaskFilter.buildLandMask");
+		}
+		return current;
+	}
+
+	/**
+	 * @return The land mask at the configured resolution, or null if none has been built
+	 */
+	static LandMask builtMask() {
+		LandMask current = mask;
+		if (current != null) return current;
+		synchronized (LandMaskFilter.class) {
+			if (mask == null) {
+				Path file = maskPath();
+				if (!Files.exists(file)) return null;
+				try {
+					mask = LandMask.open(file);
+				} catch (IOException e) {
+					throw new RuntimeException("Failed to open the land mask: " + e.getMessage(), e);
+				}
+			}
+			return mask;
+		}
+	}
+
+	@Override
+	public void setLocations(List<LocationCell> locations) {
+		this.locations = locations;
+	}
+
+	@Override
+	public List<LocationCell> process() {
+		LandMask landMask = mask();
+		byte wanted = keepWater ? LandMask.WATER : LandMask.LAND;
+		List<LocationCell> kept = new ArrayList<>();
+		int unknown = 0;
+		for (LocationCell cell : locations) {
+			byte state = landMask.lookup(cell.getH3Index());
+			if (state == LandMask.UNKNOWN) unknown++;
+			if (state == wanted || state == LandMask.UNKNOWN) kept.add(cell);
+		}
+		if (unknown > 0) {
+			System.out.println("Kept " + unknown + " cells the land mask does not cover, extend it with LandMaskFilter <minLat> <maxLat> <minLon> <maxLon> <coastline.wkt>");
+		}
+		return kept;
+	}
+
+	/**
+	 * Build the land mask over a region from a coastline, or extend the existing mask to it.
+	 * Partitions that are already in the mask are kept as they are, so a build over a new region only adds to it.
+	 * A partition wholly on land or at sea is recorded without looking at its cells, the rest have each cell's centre
+	 * tested against the land.
+	 *
+	 * @param region The region to cover
+	 * @param coastline A WKT file of the land, such as a MULTIPOLYGON of every continent and island, longitude as x and latitude as y
+	 * @param parallelism How many partitions to build at once
+	 * @return How many partitions were built
+	 * @throws IOException If the coastline cannot be read or the mask cannot be written
+	 */
+	public static int buildLandMask(InitialFilter region, Path coastline, int parallelism) throws IOException {
+		LocationUtils.initialize();
+		Geometry land;
+		try {
+			land = new WKTReader().read(Files.readString(coastline));
+		} catch (ParseException e) {
+			throw new IOException("Not a WKT coastline: " + coastline + ": " + e.getMessage(), e);
+		}
+		PreparedGeometry preparedLand = PreparedGeometryFactory.prepare(land);
+		GeometryFactory geometries = new GeometryFactory();
+
+		int partitionResolution = Math.max(0, Config.H3_RESOLUTION - PARTITION_DEPTH);
+		Path file = maskPath();
+		LandMask.Builder builder = Files.exists(file) ? LandMask.Builder.from(LandMask.open(file))
+				: new LandMask.Builder(Config.H3_RESOLUTION, partitionResolution);
+		Set<Long> partitions = new HashSet<>();
+		region.getValidCellIndexes().forEach(cell -> partitions.add(LocationUtils.getParent(cell, partitionResolution)));
+		partitions.removeIf(builder::hasPartition);
+
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (long partition : partitions) {
+				futures.add(executor.submit(() -> {
+					buildPartition(builder, partition, preparedLand, geometries);
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while building the land mask", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Failed to build the land mask", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		builder.write(file);
+		synchronized (LandMaskFilter.class) {
+			mask = null; // Remapped with the new partitions on next use
+		}
+		System.out.println("Built " + partitions.size() + " land mask partitions");
+		return partitions.size();
+	}
+
+	private static void buildPartition(LandMask.Builder builder, long partition, PreparedGeometry land, GeometryFactory geometries) {
+		Envelope bounds = LocationUtils.getDescendantBounds(partition);
+		Geometry outline = bounds == null ? null : geometries.toGeometry(bounds);
+		if (outline != null && land.containsProperly(outline)) {
+			builder.setPartition(partition, true);
+		} else if (outline != null && land.disjoint(outline)) {
+			builder.setPartition(partition, false);
+		} else {
+			List<Long> cells = LocationUtils.getChildren(partition, Config.H3_RESOLUTION);
+			long[] landCells = cells.stream().mapToLong(Long::longValue).filter(cell -> {
+				LatLng centre = LocationUtils.getLatLng(new LocationCell(cell));
+				return land.contains(geometries.createPoint(new Coordinate(centre.lng, centre.lat)));
+			}).toArray();
+			builder.setCells(partition, landCells);
+		}
+	}
+
+	/**
+	 * Build or extend the land mask over a latitude and longitude box from the command line.
+	 * @param args The box as minimum and maximum latitude then longitude, the coastline WKT file, and optionally how many partitions to build at once
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 5 && args.length != 6) {
+			System.err.println("Usage: LandMaskFilter <minLat> <maxLat> <minLon> <maxLon> <coastline.wkt> [parallelism]");
+			System.exit(2);
+		}
+		BoundingBoxFilter region = new BoundingBoxFilter();
+		region.setRequirements(new double[] {Double.parseDouble(args[0]), Double.parseDouble(args[1]),
+				Double.parseDouble(args[2]), Double.parseDouble(args[3])});
+		int parallelism = args.length == 6 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+		buildLandMask(region, Path.of(args[4]), parallelism);
+	}
+
+	@Override
+	public void setRequirements(JPanel modifiedParameterPanel) throws IllegalArgumentException {
+		JComboBox<String> keepBox = (JComboBox<String>) modifiedParameterPanel.getClientProperty("keepComboBox");
+		if (keepBox == null) {
+			throw new IllegalArgumentException("Parameters are missing in the panel.");
+		}
+		setRequirements(keepBox.getSelectedItem());
+	}
+
+	/**
+	 * @param requirements "Land" or "Water", the cells to keep
+	 */
+	@Override
+	public void setRequirements(Object requirements) throws IllegalArgumentException {
+		if (requirements instanceof String keep && (keep.trim().equalsIgnoreCase("Land") || keep.trim().equalsIgnoreCase("Water"))) {
+			this.keepWater = keep.trim().equalsIgnoreCase("Water");
+		} else {
+			throw new IllegalArgumentException("Invalid requirement type for LandMaskFilter, expected 'Land' or 'Water'");
+		}
+	}
+
+	@Override
+	public String getRequirements() {
+		return keepWater ? "Water only" : "Land only";
+	}
+
+	@Override
+	public JPanel getParameterPanel() {
+		JPanel panel = new JPanel(new GridLayout(1, 2));
+		panel.add(new JLabel("Keep:"));
+		JComboBox<String> keepComboBox = new JComboBox<>(new String[]{"Land", "Water"});
+		keepComboBox.setSelectedItem(keepWater ? "Water" : "Land");
+		panel.add(keepComboBox);
+		panel.putClientProperty("keepComboBox", keepComboBox);
+		return panel;
+	}
+}
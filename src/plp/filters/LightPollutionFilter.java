@@ -1,119 +1,218 @@
 package plp.filters;
 
 import java.awt.GridLayout;
-import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
 import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
-import java.io.FileInputStream;
-import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.zip.GZIPInputStream;
+import java.util.Set;
 
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
 
+import org.locationtech.jts.geom.Envelope;
+
 import com.uber.h3core.util.LatLng;
 
-import plp.filter.Filter;
+import plp.Config;
+import plp.data.CellAttributeIndex;
+import plp.data.LandMask;
+import plp.data.DatasetFetcher;
+import plp.data.DatasetSource;
+import plp.data.GzipTileDirectory;
+import plp.data.LightPollutionArchive;
+import plp.data.LightPollutionKernel;
+import plp.data.LightPollutionPyramid;
+import plp.data.LightPollutionTileSource;
+import plp.data.LightPollutionTiles;
+import plp.data.MappedLightPollutionGrid;
+import plp.filter.InitialFilter;
+import plp.filter.ThresholdSweep;
+import plp.filters.raster.CachedRasterSource;
+import plp.filters.raster.MappedRasterSource;
+import plp.filters.raster.RasterFilter;
+import plp.filters.raster.RasterLayer;
+import plp.filters.raster.RasterSource;
+import plp.filters.raster.RasterTile;
 import plp.location.LocationCell;
 import plp.location.LocationUtils;
 
-public class LightPollutionFilter implements Filter {
+public class LightPollutionFilter extends RasterFilter {
+	private static final long serialVersionUID = 1L;
     private double minSQM;
-    private List<LocationCell> locations;
+    private int maxCompressed = Integer.MAX_VALUE; // The brightest compressed value that still meets minSQM, any until it is set
     private static final String TILE_PATH = "data/lightpollution/binary_tiles/2022/";
     private static final String TILE_URL_BASE = "https://github.com/djlorenz/djlorenz.github.io/raw/refs/heads/master/astronomy/binary_tiles/2022/";
-    private static final Map<String, byte[]> tileDataCache = new HashMap<>(); // Cache for decompressed tiles
-    private static final int TILE_SIZE = 600; 
+    private static final String TILE_MIRROR_PROPERTY = "plp.lightpollution.mirror"; // A file: or http: root to fetch tiles from instead of TILE_URL_BASE
+    private static final String TILE_CHECKSUMS = "SHA256SUMS"; // Manifest in TILE_PATH, required when a mirror is configured
+    private static final String STORE_PATH = "data/lightpollution/decoded_2022.bin";
+    private static final String ARCHIVE_PATH = "data/lightpollution/atlas_2022.plpa";
+    private static volatile RasterLayer layer; // Decoded atlas, resolved on first use
+    private static volatile LightPollutionPyramid pyramid; // Block bounds of the atlas if it has them, set before layer
+    private static final String TILE_PYRAMID = "pyramid.minmax"; // Optional pyramid in TILE_PATH
+    private static final int PRUNE_RESOLUTION = Math.max(0, Config.H3_RESOLUTION - 4);
+    private static final double PIXELS_PER_DEGREE = 120.0;
+    private static final String CELL_INDEX_PATH = "data/lightpollution/cells_2022/"; // Optional per-cell index, see buildCellIndex
+    private static final long CELL_INDEX_STAMP = 2022; // The atlas edition the index was computed from
+    private static final int CELL_INDEX_PARTITION_DEPTH = 6; // About 118 thousand cells per partition
+    private static volatile CellAttributeIndex cellIndex;
+    private static final LightPollutionKernel KERNEL = LightPollutionKernel.best();
+    private static final byte UNDECIDED = 0, PASS = 1, FAIL = 2;
+    private static final double[] SQM_BY_COMPRESSED = new double[Short.MAX_VALUE + 1];
+    private static final double SWEEP_MIN_SQM = 14.0;
+    private static final double SWEEP_MAX_SQM = 22.0;
+    private static final int SWEEP_BINS = 80; // 0.1 SQM per bin
+
+    static {
+        for (int compressed = 0; compressed < SQM_BY_COMPRESSED.length; compressed++) {
+            double brightnessRatio = compressed2full(compressed);
+            SQM_BY_COMPRESSED[compressed] = 22.0 - 5.0 * Math.log10(1.0 + brightnessRatio) / Math.log10(100.0);
+        }
+    }
 
     public LightPollutionFilter() {
     	LocationUtils.initialize();
-    	ensureLightPollutionTilesExist();
-    	preloadTiles();
     }
     
     /**
-     * Ensures the light pollution tiles are downloaded and available in TILE_PATH.
+     * Resolves where the atlas is read from on first use, so constructing the filter costs nothing.
+     * A converted store from {@link MappedLightPollutionGrid} is mapped if there is one,
+     * otherwise tiles are decoded on first touch into the shared raster tile cache, from the packed {@link LightPollutionArchive}
+     * if there is one or else from the tile directory, downloading any tiles that are missing.
+     * Whichever is used, its {@link LightPollutionPyramid} is loaded too if it has one.
      */
-    private void ensureLightPollutionTilesExist() {
-        File tileDirectory = new File(TILE_PATH);
-        if (!tileDirectory.exists() || tileDirectory.list().length == 0) {
-            System.out.println("Light pollution tiles not found. Downloading...");
-            tileDirectory.mkdirs();
-            downloadLightPollutionTiles();
-        }
+    private static RasterLayer layer() {
+    	RasterLayer current = layer;
+    	if (current != null) return current;
+    	synchronized (LightPollutionFilter.class) {
+    		if (layer == null) {
+    			Path store = Path.of(STORE_PATH);
+    			Path archive = Path.of(ARCHIVE_PATH);
+    			try {
+    				Path pyramidFile;
+    				RasterSource source;
+    				if (Files.exists(store)) {
+    					pyramidFile = LightPollutionPyramid.pathFor(store);
+    					source = new MappedAtlas(MappedLightPollutionGrid.open(store));
+    				} else if (Files.exists(archive)) {
+    					pyramidFile = LightPollutionPyramid.pathFor(archive);
+    					source = new DecodedAtlas(ARCHIVE_PATH, LightPollutionArchive.open(archive)); // Kept open for the life of the JVM
+    				} else {
+    					pyramidFile = Path.of(TILE_PATH, TILE_PYRAMID);
+    					DatasetFetcher fetcher = tileFetcher();
+    					source = new DecodedAtlas(TILE_PATH, tileIndex -> fetcher.fetch(
+    							LightPollutionTiles.tileFileName(LightPollutionTiles.tileX(tileIndex), LightPollutionTiles.tileY(tileIndex))));
+    				}
+    				if (Files.exists(pyramidFile)) {
+    					pyramid = LightPollutionPyramid.read(pyramidFile); // Before the layer, so whoever sees the layer sees it too
+    				} else {
+    					System.out.println("No light pollution pyramid at " + pyramidFile + ", so regions are not pruned. "
+    							+ "Downloading the whole atlas, archiving it or converting it writes one.");
+    				}
+    				layer = new RasterLayer(source);
+    			} catch (IOException e) {
+    				throw new RuntimeException("Failed to open light pollution data: " + e.getMessage(), e);
+    			}
+    		}
+    		return layer;
+    	}
     }
 
     /**
-     * Downloads light pollution tiles from the specified GitHub URL and saves them locally.
+     * Fetches tiles into TILE_PATH from the mirror named by the plp.lightpollution.mirror property, or from GitHub.
+     * Tiles are checked against TILE_PATH/SHA256SUMS if it exists. A mirror is only used with the manifest,
+     * so that its tiles are never trusted unverified.
+     * @throws IOException If a mirror is configured without a manifest, or the manifest cannot be read
      */
-    private void downloadLightPollutionTiles() {
-        try {
-            for (int x = 1; x <= 72; x++) { // 72 tiles in longitude (5 degrees each)
-                for (int y = 1; y <= 28; y++) { // 28 tiles in latitude
-                    String fileName = "binary_tile_" + x + "_" + y + ".dat.gz";
-                    URL fileUrl = new URI(TILE_URL_BASE + fileName).toURL();
-                    Path localFilePath = Path.of(TILE_PATH, fileName);
-
-                    System.out.println("Downloading: " + fileUrl);
-                    try (InputStream in = fileUrl.openStream()) {
-                        Files.copy(in, localFilePath, StandardCopyOption.REPLACE_EXISTING);
-                    }
-                }
-            }
-            System.out.println("Light pollution data downloaded successfully.");
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to download light pollution tiles: " + e.getMessage(), e);
-        } catch (URISyntaxException e) {
-            throw new RuntimeException("Failed to download light pollution tiles: " + e.getMessage(), e);
-		}
+    private static DatasetFetcher tileFetcher() throws IOException {
+    	String mirror = System.getProperty(TILE_MIRROR_PROPERTY);
+    	Path checksums = Path.of(TILE_PATH, TILE_CHECKSUMS);
+    	if (mirror != null && !Files.exists(checksums)) {
+    		throw new IOException("Light pollution tiles from the mirror " + mirror + " cannot be verified without " + checksums
+    				+ ", write it from tiles downloaded from GitHub with writeLightPollutionChecksums()");
+    	}
+    	DatasetSource source = DatasetSource.of(URI.create(mirror != null ? mirror : TILE_URL_BASE));
+    	DatasetFetcher fetcher = new DatasetFetcher(source, Path.of(TILE_PATH));
+    	if (Files.exists(checksums)) {
+    		fetcher.setChecksums(DatasetFetcher.readChecksums(checksums));
+    	}
+    	return fetcher;
     }
-    
+
     /**
-     * Preloads all binary tiles into memory to optimize access.
+     * Writes TILE_PATH/SHA256SUMS from the tiles in TILE_PATH, to verify a mirror against.
+     * Only run it on tiles downloaded from GitHub or otherwise trusted.
+     * @return The manifest
      */
-    private static void preloadTiles() {
-    	if (!tileDataCache.isEmpty()) return;
-        File dir = new File(TILE_PATH);
-        File[] files = dir.listFiles((d, name) -> name.endsWith(".dat.gz"));
-        if (files == null) {
-            throw new RuntimeException("Light pollution data folder is empty or invalid: " + TILE_PATH);
-        }
+    public static Path writeLightPollutionChecksums() throws IOException {
+    	Path manifest = Path.of(TILE_PATH, TILE_CHECKSUMS);
+    	new DatasetFetcher(DatasetSource.of(URI.create(TILE_URL_BASE)), Path.of(TILE_PATH)).writeChecksums(tileFileNames(), manifest);
+    	return manifest;
+    }
 
-        for (File file : files) {
-            try {
-                String tileKey = file.getName().replace(".dat.gz", "").replace("binary_tile_", "");
-                tileDataCache.put(tileKey, decompressTile(file));
-            } catch (IOException e) {
-                System.err.println("Failed to load tile: " + file.getName());
-            }
-        }
+    private static List<String> tileFileNames() {
+    	List<String> fileNames = new ArrayList<>(LightPollutionTiles.TILE_COUNT);
+    	for (int tileIndex = 0; tileIndex < LightPollutionTiles.TILE_COUNT; tileIndex++) {
+    		fileNames.add(LightPollutionTiles.tileFileName(LightPollutionTiles.tileX(tileIndex), LightPollutionTiles.tileY(tileIndex)));
+    	}
+    	return fileNames;
     }
 
     /**
-     * Decompresses a GZIP file and returns its byte data.
+     * Downloads every tile of the atlas that is not already in TILE_PATH, several at a time, then writes the pyramid
+     * of the tiles if there is none. Safe to run again after an interruption: only missing or invalid tiles are fetched.
+     * @return What happened to each tile
      */
-    private static byte[] decompressTile(File file) throws IOException {
-        try (InputStream fileStream = new FileInputStream(file);
-             GZIPInputStream gzipStream = new GZIPInputStream(fileStream);
-             ByteArrayOutputStream buffer = new ByteArrayOutputStream()) {
-
-            byte[] temp = new byte[1024];
-            int bytesRead;
-            while ((bytesRead = gzipStream.read(temp)) != -1) {
-                buffer.write(temp, 0, bytesRead);
-            }
-            return buffer.toByteArray();
-        }
+    public static DatasetFetcher.Report downloadLightPollutionTiles() throws IOException, InterruptedException {
+    	DatasetFetcher.Report report = tileFetcher().fetchAll(tileFileNames(), null);
+    	if (!report.getFailures().isEmpty()) {
+    		throw new IOException("Failed to download " + report.getFailures().size() + " light pollution tiles, run again to resume",
+    				report.getFailures().values().iterator().next());
+    	}
+    	Path pyramidFile = Path.of(TILE_PATH, TILE_PYRAMID);
+    	if (!Files.exists(pyramidFile)) {
+    		// The tile directory is the one source without a conversion step to write its pyramid
+    		LightPollutionPyramid built = new LightPollutionPyramid();
+    		GzipTileDirectory tiles = new GzipTileDirectory(Path.of(TILE_PATH));
+    		for (int tileIndex = 0; tileIndex < LightPollutionTiles.TILE_COUNT; tileIndex++) {
+    			short[] tile = tiles.loadTile(tileIndex);
+    			if (tile != null) built.addTile(tileIndex, tile);
+    		}
+    		built.write(pyramidFile);
+    		System.out.println("Wrote the light pollution pyramid to " + pyramidFile + ", used from the next run");
+    	}
+    	return report;
+    }
+    
+    /**
+     * Downloads the missing tiles under the region when the atlas is read from the tile directory, so shard workers find them on disk.
+     */
+    @Override
+    public void stage(Envelope region) {
+    	if (Files.exists(Path.of(STORE_PATH)) || Files.exists(Path.of(ARCHIVE_PATH))) return; // Nothing to download
+    	List<String> fileNames = new ArrayList<>();
+    	for (int tileIndex : layer().getSource().tilesIn(region)) {
+    		fileNames.add(LightPollutionTiles.tileFileName(LightPollutionTiles.tileX(tileIndex), LightPollutionTiles.tileY(tileIndex)));
+    	}
+    	try {
+    		DatasetFetcher.Report report = tileFetcher().fetchAll(fileNames, null);
+    		if (!report.getFailures().isEmpty()) {
+    			throw new IOException("Failed to download " + report.getFailures().size() + " light pollution tiles",
+    					report.getFailures().values().iterator().next());
+    		}
+    	} catch (IOException e) {
+    		throw new RuntimeException("Failed to stage light pollution tiles: " + e.getMessage(), e);
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		throw new RuntimeException("Interrupted while staging light pollution tiles", e);
+    	}
     }
     
 	@Override
@@ -127,23 +226,285 @@ public class LightPollutionFilter implements Filter {
     public void setRequirements(Object requirements) throws IllegalArgumentException {
         if (requirements instanceof Double) {
             this.minSQM = (Double) requirements;
+            this.maxCompressed = maxCompressedFor(minSQM);
             System.out.println(this.minSQM);
         } else {
             throw new IllegalArgumentException("Invalid requirement type for LightPollutionFilter");
         }
     }
 
-	@Override
-    public void setLocations(List<LocationCell> locations) {
-        this.locations = locations;
+    @Override
+    protected RasterLayer getLayer() {
+    	return layer();
     }
 
+    /**
+     * @param value The SQM of a cell
+     */
+    @Override
+    protected boolean accepts(double value) {
+    	return value >= minSQM;
+    }
+
+    /**
+     * @param sample The compressed brightness of a cell
+     * @return Its SQM
+     */
+    @Override
+    protected double toCellValue(double sample) {
+    	return sample < 0 ? Double.NaN : SQM_BY_COMPRESSED[(int) sample];
+    }
+
+    /**
+     * Cells are decided in three passes, each over only the cells the passes before it left open:
+     * the cell index if there is one, then the pyramid by coarse ancestor, then a batch lookup in the atlas.
+     */
     @Override
     public List<LocationCell> process() {
-        // Simulate filtering locations based on light pollution
-        return locations.stream()
-                .filter(cell -> getSQM(LocationUtils.getLatLng(cell)) >= minSQM)
-                .toList();
+    	byte[] decisions = new byte[locations.size()];
+    	decideFromIndex(decisions);
+    	decideFromPyramid(decisions);
+    	decideFromAtlas(decisions);
+
+    	List<LocationCell> passed = new ArrayList<>();
+    	for (int i = 0; i < decisions.length; i++) {
+    		if (decisions[i] == PASS) passed.add(locations.get(i));
+    	}
+    	return passed;
+    }
+    
+    /**
+     * Looks every cell up in the cell index at once, merge-joining the sorted working set against it.
+     */
+    private void decideFromIndex(byte[] decisions) {
+    	CellAttributeIndex index = cellIndex();
+    	if (index == null) return;
+
+    	long[] keys = locations.stream().mapToLong(LocationCell::getH3Index).sorted().distinct().toArray();
+    	short[] values = new short[keys.length];
+    	index.lookup(keys, values);
+    	for (int i = 0; i < decisions.length; i++) {
+    		short compressed = values[Arrays.binarySearch(keys, locations.get(i).getH3Index())];
+    		if (compressed != CellAttributeIndex.NO_VALUE) {
+    			decisions[i] = compressed <= maxCompressed ? PASS : FAIL;
+    		}
+    	}
+    }
+    
+    /**
+     * Groups the open cells by a coarse ancestor, and if the pyramid shows that every pixel under the ancestor passes
+     * or that none does, decides the whole group without looking any of its cells up.
+     */
+    private void decideFromPyramid(byte[] decisions) {
+    	layer();
+    	LightPollutionPyramid bounds = pyramid;
+    	if (bounds == null) return;
+
+    	Map<Long, LightPollutionPyramid.Coverage> coverages = new HashMap<>();
+    	for (int i = 0; i < decisions.length; i++) {
+    		if (decisions[i] != UNDECIDED) continue;
+    		LightPollutionPyramid.Coverage coverage = coverages.computeIfAbsent(
+    				LocationUtils.getParent(locations.get(i).getH3Index(), PRUNE_RESOLUTION), parent -> classify(bounds, parent));
+    		if (coverage == LightPollutionPyramid.Coverage.ALL) {
+    			decisions[i] = PASS;
+    		} else if (coverage == LightPollutionPyramid.Coverage.NONE) {
+    			decisions[i] = FAIL;
+    		}
+    	}
+    }
+    
+    /**
+     * Samples every open cell from the atlas in one batch.
+     */
+    private void decideFromAtlas(byte[] decisions) {
+    	int[] open = new int[decisions.length];
+    	int count = 0;
+    	for (int i = 0; i < decisions.length; i++) {
+    		if (decisions[i] == UNDECIDED) open[count++] = i;
+    	}
+    	if (count == 0) return;
+
+    	double[] latitudes = new double[count];
+    	double[] longitudes = new double[count];
+    	for (int j = 0; j < count; j++) {
+    		LatLng coords = LocationUtils.getLatLng(locations.get(open[j]));
+    		latitudes[j] = coords.lat;
+    		longitudes[j] = coords.lng;
+    	}
+    	long[] mask = passes(latitudes, longitudes);
+    	for (int j = 0; j < count; j++) {
+    		decisions[open[j]] = (mask[j >>> 6] & (1L << j)) != 0 ? PASS : FAIL;
+    	}
+    }
+    
+    /**
+     * Test many locations against the minimum SQM at once. Placing the locations in the atlas and comparing
+     * their brightness run on SIMD lanes when the jdk.incubator.vector module is loaded, and one at a time otherwise.
+     *
+     * @param latitudes The latitudes of the locations
+     * @param longitudes The longitudes of the locations, as many as latitudes
+     * @return Bit i%64 of word i/64 is set if location i meets the minimum SQM
+     */
+    public long[] passes(double[] latitudes, double[] longitudes) {
+    	if (latitudes.length != longitudes.length) {
+    		throw new IllegalArgumentException("There must be as many latitudes as longitudes.");
+    	}
+    	int count = latitudes.length;
+    	int[] compressed = new int[count];
+    	layer().sampleNearest(latitudes, longitudes, count, compressed);
+    	for (int i = 0; i < count; i++) {
+    		// Anything that cannot be looked up goes through the single lookup, which reports why
+    		if (compressed[i] < 0) compressed[i] = getCompressed(latitudes[i], longitudes[i]);
+    	}
+
+    	long[] mask = new long[(count + 63) >>> 6];
+    	KERNEL.select(compressed, count, maxCompressed, mask);
+    	return mask;
+    }
+    
+    /**
+     * The cell index at the configured resolution, if one has been built.
+     */
+    private static CellAttributeIndex cellIndex() {
+    	CellAttributeIndex current = cellIndex;
+    	if (current == null && Files.isDirectory(Path.of(CELL_INDEX_PATH))) {
+    		synchronized (LightPollutionFilter.class) {
+    			if (cellIndex == null) {
+    				cellIndex = openCellIndex();
+    			}
+    			current = cellIndex;
+    		}
+    	}
+    	return current;
+    }
+    
+    private static CellAttributeIndex openCellIndex() {
+    	return new CellAttributeIndex(Path.of(CELL_INDEX_PATH, "r" + Config.H3_RESOLUTION),
+    			Config.H3_RESOLUTION, Math.max(0, Config.H3_RESOLUTION - CELL_INDEX_PARTITION_DEPTH), CELL_INDEX_STAMP);
+    }
+    
+    /**
+     * Precompute the compressed brightness of every land cell of a region at the configured resolution into the cell index,
+     * so later runs over the region look cells up instead of sampling the atlas.
+     * Land is judged by the {@link LandMaskFilter land mask}: cells it marks as water are left out, and are sampled from the
+     * atlas like any other cell missing from the index if a query reaches them. Without a mask, every cell is indexed.
+     * Only partitions that are not already built are computed, so the build can be interrupted and resumed,
+     * and running it over a new region extends the index.
+     *
+     * @param region The region to index
+     * @param parallelism How many partitions to build at once
+     * @return How many partitions were built
+     */
+    public static int buildCellIndex(InitialFilter region, int parallelism) throws IOException {
+    	LocationUtils.initialize();
+    	CellAttributeIndex index = openCellIndex();
+    	Set<Long> partitions = new HashSet<>();
+    	region.getValidCellIndexes().forEach(cell -> partitions.add(index.partitionOf(cell)));
+    	LandMask landMask = LandMaskFilter.builtMask();
+    	if (landMask == null) {
+    		System.out.println("No land mask, indexing water cells too");
+    	}
+
+    	int built = index.build(partitions,
+    			(partition, resolution) -> LocationUtils.getChildren(partition, resolution).stream().mapToLong(Long::longValue)
+    					.filter(cell -> landMask == null || landMask.lookup(cell) != LandMask.WATER).toArray(),
+    			cell -> {
+    				try {
+    					int compressed = getCompressed(LocationUtils.getLatLng(new LocationCell(cell)));
+    					return (short) compressed;
+    				} catch (RuntimeException e) {
+    					return CellAttributeIndex.NO_VALUE; // Left to the atlas, which reports the problem when the cell is queried
+    				}
+    			},
+    			parallelism);
+    	synchronized (LightPollutionFilter.class) {
+    		cellIndex = null; // Reopened with the new partitions on next use
+    	}
+    	return built;
+    }
+    
+    /**
+     * Whether every pixel near a cell meets the threshold, none does, or only some.
+     */
+    private LightPollutionPyramid.Coverage classify(LightPollutionPyramid bounds, long h3Index) {
+    	int[] range = pixelRange(h3Index);
+    	if (range == null) return LightPollutionPyramid.Coverage.SOME;
+    	return bounds.classify(range[0], range[1], range[2], range[3], maxCompressed);
+    }
+    
+    /**
+     * The global pixels any descendant of a cell could be looked up in, from {@link LocationUtils#getDescendantBounds(long)}.
+     * @return The western, eastern, southern and northern pixel, or null if the cell crosses the date line or leaves the atlas
+     */
+    private static int[] pixelRange(long h3Index) {
+    	Envelope bounds = LocationUtils.getDescendantBounds(h3Index);
+    	if (bounds == null || bounds.getMinY() < -65.0 || bounds.getMaxY() > 75.0 || bounds.getMaxX() >= 180.0) return null;
+    	
+    	// One extra pixel on each side covers the rounding in getCompressed
+    	return new int[]{
+    			(int) Math.floor(PIXELS_PER_DEGREE * (bounds.getMinX() + 180.0)) - 1,
+    			(int) Math.ceil(PIXELS_PER_DEGREE * (bounds.getMaxX() + 180.0)) + 1,
+    			(int) Math.floor(PIXELS_PER_DEGREE * (bounds.getMinY() + 65.0)) - 1,
+    			(int) Math.ceil(PIXELS_PER_DEGREE * (bounds.getMaxY() + 65.0)) + 1};
+    }
+    
+    private static int getCompressed(LatLng coords) {
+    	return getCompressed(coords.lat, coords.lng);
+    }
+    
+    /**
+     * SQM falls as the compressed brightness rises, so a minimum SQM is a maximum compressed value.
+     * @param minSQM The minimum SQM
+     * @return The largest compressed value whose SQM is at least minSQM, or -1 if there is none
+     */
+    private static int maxCompressedFor(double minSQM) {
+    	int low = 0, high = SQM_BY_COMPRESSED.length; // Find the first compressed value below minSQM
+    	while (low < high) {
+    		int mid = (low + high) >>> 1;
+    		if (SQM_BY_COMPRESSED[mid] >= minSQM) {
+    			low = mid + 1;
+    		} else {
+    			high = mid;
+    		}
+    	}
+    	return low - 1;
+    }
+    
+    @Override
+    public double getCellValue(LocationCell cell) {
+    	return getSQM(cell);
+    }
+    
+    /**
+     * Samples the working set in one batch, leaving cells outside the atlas out of the counts.
+     */
+    @Override
+    public ThresholdSweep sweep(double[] thresholds, boolean collectResults) {
+    	return sweep(SWEEP_MIN_SQM, SWEEP_MAX_SQM, SWEEP_BINS, thresholds, collectResults);
+    }
+    
+    /**
+     * Darker is better: the SQM scaled from the sweep range onto [0, 1].
+     */
+    @Override
+    public double getScore(LocationCell cell) {
+    	double scaled = (getSQM(cell) - SWEEP_MIN_SQM) / (SWEEP_MAX_SQM - SWEEP_MIN_SQM);
+    	return Math.max(0.0, Math.min(1.0, scaled));
+    }
+    
+    /**
+     * The darkest pixel near a cell bounds the score of every cell under it.
+     */
+    @Override
+    public double getScoreUpperBound(long h3Index) {
+    	layer();
+    	LightPollutionPyramid bounds = pyramid;
+    	int[] range = bounds == null ? null : pixelRange(h3Index);
+    	if (range == null) return 1.0;
+    	int darkest = bounds.getMinimum(range[0], range[1], range[2], range[3]);
+    	if (darkest < 0) return 1.0;
+    	double scaled = (SQM_BY_COMPRESSED[darkest] - SWEEP_MIN_SQM) / (SWEEP_MAX_SQM - SWEEP_MIN_SQM);
+    	return Math.max(0.0, Math.min(1.0, scaled));
     }
     
     @Override
@@ -177,6 +538,17 @@ public class LightPollutionFilter implements Filter {
      * @return The mean SQM value for the location.
      */
     private double getSQM(double latitude, double longitude) {
+    	return SQM_BY_COMPRESSED[getCompressed(latitude, longitude)];
+    }
+    
+	/**
+     * Looks up the compressed brightness for a location in the decoded Light Pollution Atlas tiles.
+     *
+     * @param latitude  The latitude of the location.
+     * @param longitude The longitude of the location.
+     * @return The compressed brightness value for the location.
+     */
+    private static int getCompressed(double latitude, double longitude) {
 
         // Convert latitude and longitude to tile and grid indices
         double lonFromDateLine = mod(longitude + 180.0, 360.0);
@@ -189,40 +561,25 @@ public class LightPollutionFilter implements Filter {
             throw new IllegalArgumentException("Location out of bounds (65S to 75N latitude).");
         }
 
-        String tileKey = tileX + "_" + tileY;
-        byte[] data = tileDataCache.get(tileKey);
-        if (data == null) {
-            throw new RuntimeException("Tile not found in cache: " + tileKey);
-        }
 
         int ix = (int) Math.round(120.0 * (lonFromDateLine - 5.0 * (tileX - 1) + 1.0 / 240.0));
         int iy = (int) Math.round(120.0 * (latFromStart - 5.0 * (tileY - 1) + 1.0 / 240.0));
     	
     	// Ensure indices are within bounds
-        if (ix < 0 || ix > 600 || iy < 0 || iy > 600) {
+        if (ix < 1 || ix > LightPollutionTiles.TILE_SIZE || iy < 1 || iy > LightPollutionTiles.TILE_SIZE) {
             throw new RuntimeException("Grid indices out of bounds: ix=" + ix + ", iy=" + iy);
         }
 
-        int firstNumber = 128 * data[0] + data[1];
-        int change = 0;
-
-        for (int i = 1; i < iy; i++) {
-            change += data[TILE_SIZE * i + 1];
-        }
-
-        for (int i = 1; i < ix; i++) {
-            change += data[TILE_SIZE * (iy - 1) + 1 + i];
+        int compressed = layer().getValue(LightPollutionTiles.tileIndex(tileX, tileY), ix - 1, iy - 1);
+        if (compressed == RasterSource.MISSING) {
+            throw new RuntimeException("Tile not found in cache: " + tileX + "_" + tileY);
         }
-
-        int compressed = firstNumber + change;
         
         // Ensure compressed value is valid
         if (compressed < 0) {
             throw new RuntimeException("Invalid compressed value: " + compressed);
         }
-        
-        double brightnessRatio = compressed2full(compressed);
-        return 22.0 - 5.0 * Math.log10(1.0 + brightnessRatio) / Math.log10(100.0);
+        return compressed;
     }
 
     /**
@@ -244,4 +601,126 @@ public class LightPollutionFilter implements Filter {
     private static double compressed2full(int compressed) {
     	return (5.0/195.0) * ( Math.exp(0.0195*compressed) - 1.0);
     }
+
+    /**
+     * The atlas as a raster: a location is placed exactly as {@link #getCompressed(double, double)} places it,
+     * with columns and rows counted from 0 within each tile.
+     */
+    private abstract static class AtlasSource implements RasterSource {
+    	private static final int GLOBAL_COLUMNS = LightPollutionTiles.TILES_X * LightPollutionTiles.TILE_SIZE;
+    	private static final int GLOBAL_ROWS = LightPollutionTiles.TILES_Y * LightPollutionTiles.TILE_SIZE;
+
+    	@Override
+    	public void locate(double[] latitudes, double[] longitudes, int count, int[] tiles, int[] columns, int[] rows) {
+    		int[] pixels = new int[count];
+    		KERNEL.locate(latitudes, longitudes, count, tiles, pixels);
+    		for (int i = 0; i < count; i++) {
+    			columns[i] = pixels[i] % LightPollutionTiles.TILE_SIZE;
+    			rows[i] = pixels[i] / LightPollutionTiles.TILE_SIZE;
+    		}
+    	}
+
+    	/**
+    	 * Pixel centres lie on a global grid of PIXELS_PER_DEGREE per degree, wrapping at the date line.
+    	 */
+    	@Override
+    	public void locateBilinear(double[] latitudes, double[] longitudes, int count, int[] tiles, int[] columns, int[] rows, double[] weights) {
+    		for (int i = 0; i < count; i++) {
+    			double x = PIXELS_PER_DEGREE * mod(longitudes[i] + 180.0, 360.0) - 0.5;
+    			double y = PIXELS_PER_DEGREE * (latitudes[i] + 65.0) - 0.5;
+    			int column = (int) Math.floor(x), row = (int) Math.floor(y);
+    			double fx = x - column, fy = y - row;
+    			for (int corner = 0; corner < 4; corner++) {
+    				int j = 4 * i + corner;
+    				int globalColumn = Math.floorMod(column + (corner & 1), GLOBAL_COLUMNS);
+    				int globalRow = row + (corner >> 1);
+    				weights[j] = ((corner & 1) == 0 ? 1 - fx : fx) * ((corner >> 1) == 0 ? 1 - fy : fy);
+    				if (globalRow < 0 || globalRow >= GLOBAL_ROWS) {
+    					tiles[j] = -1;
+    					continue;
+    				}
+    				tiles[j] = LightPollutionTiles.tileIndex(globalColumn / LightPollutionTiles.TILE_SIZE + 1, globalRow / LightPollutionTiles.TILE_SIZE + 1);
+    				columns[j] = globalColumn % LightPollutionTiles.TILE_SIZE;
+    				rows[j] = globalRow % LightPollutionTiles.TILE_SIZE;
+    			}
+    		}
+    	}
+
+    	/**
+    	 * @return The tiles under the region, nearest its centre first
+    	 */
+    	@Override
+    	public int[] tilesIn(Envelope region) {
+    		if (region.getMaxY() < -65.0 || region.getMinY() >= 75.0) return new int[0]; // Outside the atlas
+    		int minTileX = tileOf(region.getMinX() + 180.0, LightPollutionTiles.TILES_X);
+    		int maxTileX = tileOf(region.getMaxX() + 180.0, LightPollutionTiles.TILES_X);
+    		int minTileY = tileOf(region.getMinY() + 65.0, LightPollutionTiles.TILES_Y);
+    		int maxTileY = tileOf(region.getMaxY() + 65.0, LightPollutionTiles.TILES_Y);
+    		double centreX = (minTileX + maxTileX) / 2.0, centreY = (minTileY + maxTileY) / 2.0;
+
+    		List<Integer> tiles = new ArrayList<>();
+    		for (int tileX = minTileX; tileX <= maxTileX; tileX++) {
+    			for (int tileY = minTileY; tileY <= maxTileY; tileY++) {
+    				tiles.add(LightPollutionTiles.tileIndex(tileX, tileY));
+    			}
+    		}
+    		tiles.sort((a, b) -> Double.compare(
+    				Math.hypot(LightPollutionTiles.tileX(a) - centreX, LightPollutionTiles.tileY(a) - centreY),
+    				Math.hypot(LightPollutionTiles.tileX(b) - centreX, LightPollutionTiles.tileY(b) - centreY)));
+    		return tiles.stream().mapToInt(Integer::intValue).toArray();
+    	}
+
+    	/**
+    	 * @return The 1-based tile containing a number of degrees from the atlas origin, clamped to the atlas
+    	 */
+    	private static int tileOf(double degreesFromOrigin, int tiles) {
+    		return Math.max(1, Math.min(tiles, (int) Math.floor(degreesFromOrigin / 5.0) + 1));
+    	}
+    }
+
+    /**
+     * Tiles decoded from the delta-encoded atlas, kept in the shared tile cache.
+     */
+    private static class DecodedAtlas extends AtlasSource implements CachedRasterSource {
+    	private final String name;
+    	private final LightPollutionTileSource tiles;
+
+    	DecodedAtlas(String name, LightPollutionTileSource tiles) {
+    		this.name = "lightpollution:" + name;
+    		this.tiles = tiles;
+    	}
+
+    	@Override
+    	public String getName() {
+    		return name;
+    	}
+
+    	@Override
+    	public RasterTile loadTile(int tile) throws IOException {
+    		short[] values = tiles.loadTile(tile);
+    		return values == null ? null : new RasterTile(values, LightPollutionTiles.TILE_SIZE, LightPollutionTiles.TILE_SIZE);
+    	}
+    }
+
+    /**
+     * The converted store, read in place.
+     */
+    private static class MappedAtlas extends AtlasSource implements MappedRasterSource {
+    	private final MappedLightPollutionGrid grid;
+
+    	MappedAtlas(MappedLightPollutionGrid grid) {
+    		this.grid = grid;
+    	}
+
+    	@Override
+    	public String getName() {
+    		return "lightpollution:" + STORE_PATH;
+    	}
+
+    	@Override
+    	public int getValue(int tile, int column, int row) {
+    		if (column < 0 || column >= LightPollutionTiles.TILE_SIZE || row < 0 || row >= LightPollutionTiles.TILE_SIZE) return MISSING;
+    		return grid.getCompressed(tile, row * LightPollutionTiles.TILE_SIZE + column);
+    	}
+    }
 }
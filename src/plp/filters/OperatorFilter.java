@@ -13,9 +13,10 @@ import plp.operator.LogicalOperator;
 import plp.operator.OperatorFactory;
 
 public class OperatorFilter implements Filter {
+	private static final long serialVersionUID = 1L;
 	private LogicalOperator operator;
     private final List<Filter> subFilters = new ArrayList<>();
-    private List<LocationCell> locations;
+    private transient List<LocationCell> locations;
 
     public OperatorFilter() {}
 
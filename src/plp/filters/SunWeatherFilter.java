@@ -6,108 +6,186 @@ import java.awt.Graphics2D;
 import java.awt.GridLayout;
 import java.awt.image.BufferedImage;
 import java.net.URI;
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
-import javax.imageio.ImageIO;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JSlider;
+import javax.swing.JTextField;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.plaf.basic.BasicSliderUI;
 
+import org.locationtech.jts.geom.Envelope;
+
 import com.uber.h3core.util.LatLng;
 
-import plp.filter.Filter;
+import plp.data.ColorBarTable;
+import plp.data.DatasetSource;
+import plp.data.ForecastImageCache;
+import plp.data.WeatherHistory;
+import plp.data.WeatherQualityMosaic;
+import plp.filter.ThresholdSweep;
+import plp.filters.raster.CachedRasterSource;
+import plp.filters.raster.RasterFilter;
+import plp.filters.raster.RasterLayer;
+import plp.filters.raster.RasterTile;
+import plp.filters.raster.RasterTileCache;
 import plp.location.LocationCell;
 import plp.location.LocationUtils;
-
-public class SunWeatherFilter implements Filter {
-
-    private List<LocationCell> locations;
-    private static final Map<String, BufferedImage> sunriseImages = new HashMap<>();
-    private static final Map<String, BufferedImage> sunsetImages = new HashMap<>();
-    private static final Map<Color, Integer> sunriseColorToPercentageCache = new HashMap<>();
-    private static final Map<Color, Integer> sunsetColorToPercentageCache = new HashMap<>();
+import plp.shard.ShardWorker;
+
+public class SunWeatherFilter extends RasterFilter {
+	private static final long serialVersionUID = 1L;
+
+    private static final String[] ZONES = {"PT", "MT", "CT", "ET"}; // West to east
+    private static final double[] ZONE_EAST_EDGES = {-113, -98, -83}; // Longitude where each zone but the last ends
+    private static final String COLOR_BAR_ZONE = "ET"; // Assuming all color bars are the same
+    private static final String IMAGE_URL_BASE = "https://sunsetwx.com/";
+    private static final String IMAGE_SOURCE_PROPERTY = "plp.sunweather.source"; // A file: or http: root to fetch images from instead of IMAGE_URL_BASE
+    private static final String IMAGE_CACHE_PATH = "data/sunweather/";
+    private static final ZoneId FORECAST_ZONE = ZoneId.of("America/New_York"); // Forecasts roll over with the eastern date
+    private static volatile ForecastImageCache imageCache; // Resolved on first use
+    private static final Map<String, String> imageVersions = new ConcurrentHashMap<>(); // The version of each loaded image
+    private static final String HISTORY_PATH = "data/sunweather/history/";
+    private static final String MEAN_OF_DAYS = "mean"; // In place of a percentage of days, judges cells on their mean quality over the history
+    private static final Map<String, CompletableFuture<WeatherHistory[]>> histories = new ConcurrentHashMap<>(); // Mapped per timezone, by sun type
+    private static final Executor imageLoader = Executors.newVirtualThreadPerTaskExecutor();
+    private static final Map<String, CompletableFuture<BufferedImage>> weatherImages = new ConcurrentHashMap<>();
+    private static final Map<String, CompletableFuture<ColorBarTable>> colorBars = new ConcurrentHashMap<>();
+    private static final Map<String, RasterLayer> layers = new ConcurrentHashMap<>(); // Of the current forecast, by sun type
+    private static final AtomicLong forecastGenerations = new AtomicLong(); // Names each forecast's raster apart
     private static final int barEnd = 197;
     private static final int barStart = 886;
-    private Map<Integer, Map<Integer, Color>> colorCache = new HashMap<>();
     private SunType selectedSunType;
     private int percentage = -1;
-    
-    static {
-        try {
-            // Preload all sunrise images
-            sunriseImages.put("PT", ImageIO.read(new URI("https://sunsetwx.com/sunrise/sunrise_pt.png").toURL()));
-            sunriseImages.put("MT", ImageIO.read(new URI("https://sunsetwx.com/sunrise/sunrise_mt.png").toURL()));
-            sunriseImages.put("CT", ImageIO.read(new URI("https://sunsetwx.com/sunrise/sunrise_ct.png").toURL()));
-            sunriseImages.put("ET", ImageIO.read(new URI("https://sunsetwx.com/sunrise/sunrise_et.png").toURL()));
-
-            // Preload all sunset images
-            sunsetImages.put("PT", ImageIO.read(new URI("https://sunsetwx.com/sunset/sunset_pt.png").toURL()));
-            sunsetImages.put("MT", ImageIO.read(new URI("https://sunsetwx.com/sunset/sunset_mt.png").toURL()));
-            sunsetImages.put("CT", ImageIO.read(new URI("https://sunsetwx.com/sunset/sunset_ct.png").toURL()));
-            sunsetImages.put("ET", ImageIO.read(new URI("https://sunsetwx.com/sunset/sunset_et.png").toURL()));
-            
-            // Create color to percentage maps
-            BufferedImage referenceImage = sunriseImages.get("ET"); // Assuming all color bars are the same
-            for (int y = barStart; y >= barEnd; y--) {
-                Color barColor = new Color(referenceImage.getRGB(1350, y));
-                int percentage = (int) ((double) (y-barStart) / (barEnd-barStart) * 100);
-                sunriseColorToPercentageCache.put(barColor, percentage);
-            }
-
-            referenceImage = sunsetImages.get("ET"); // Assuming all color bars are the same
-            for (int y = barStart; y >= barEnd; y--) {
-                Color barColor = new Color(referenceImage.getRGB(1350, y));
-                int percentage = (int) ((double) (y-barStart) / (barEnd-barStart) * 100);
-                sunsetColorToPercentageCache.put(barColor, percentage);
-            }
-            
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to preload weather images: " + e.getMessage(), e);
-        }
-    }
+    private int minDaysPercentage = -1; // Judged on the archived history instead of today's forecast if set
+    private boolean meanOfDays; // Judged on the mean archived quality instead of today's forecast if set
     
 	public SunWeatherFilter() {}
 	
     @Override
     public String getRequirements() {
+        if (minDaysPercentage >= 0) {
+            return selectedSunType + ", Min Quality: " + percentage + "% on " + minDaysPercentage + "% of days";
+        }
+        if (meanOfDays) {
+            return selectedSunType + ", Min Mean Quality: " + percentage + "% over past days";
+        }
         return selectedSunType + ", Min Quality: " + percentage + "%";
     }
 
-	@Override
-	public void setLocations(List<LocationCell> locations) {
-        this.locations = locations;
-	}
-
+	/**
+	 * In forecast mode the working set is sampled from the forecast raster in one batch, and cells outside the images fail.
+	 */
 	@Override
 	public List<LocationCell> process() {
-		colorCache = new HashMap<>();
+		prepare();
+		if (!againstHistory()) return super.process();
+		double minimum = meanOfDays ? percentage : minDaysPercentage;
 		return locations.stream()
-                .filter(cell -> getPercentageFromColor(getColorAt(LocationUtils.getLatLng(cell))) >= percentage)
+                .filter(cell -> getCellValue(cell) >= minimum)
                 .toList();
 	}
 	
+	/**
+	 * In forecast mode, the percentage at the cell. In history mode, the percentage of archived days it met the minimum quality,
+	 * or its mean quality over them in mean mode. NaN outside the images in every mode.
+	 */
+	@Override
+	public double getCellValue(LocationCell cell) {
+		if (!againstHistory()) return super.getCellValue(cell);
+		LatLng location = LocationUtils.getLatLng(cell);
+		return meanOfDays ? getMeanQualityAt(location) : getDaysPercentageAt(location);
+	}
+
+	@Override
+	protected RasterLayer getLayer() {
+		return layers.computeIfAbsent(kindOf(selectedSunType), kind -> new RasterLayer(new ForecastRaster(kind, forecastGenerations.incrementAndGet())));
+	}
+
+	@Override
+	protected boolean accepts(double value) {
+		return value >= percentage;
+	}
+	
+	/**
+	 * @return Whether cells are judged on the archived history rather than today's forecast
+	 */
+	private boolean againstHistory() {
+		return minDaysPercentage >= 0 || meanOfDays;
+	}
+
+	/**
+	 * Brings the forecast images, or the history, up to date before a run.
+	 */
+	private void prepare() {
+		if (ShardWorker.isWorker()) return; // Staged by the coordinator
+		if (!againstHistory()) {
+			refreshImages(kindOf(selectedSunType));
+			return;
+		}
+		try {
+			updateHistory(selectedSunType);
+		} catch (IOException e) {
+			System.out.println("Could not update the sun weather history, using it as it is: " + e.getMessage());
+		}
+	}
+	
+	@Override
+	public ThresholdSweep sweep(double[] thresholds, boolean collectResults) {
+		prepare();
+		if (!againstHistory()) return sweep(0, 101, 101, thresholds, collectResults); // One bin per percent
+		return ThresholdSweep.compute(locations, this::getCellValue, 0, 101, 101, thresholds, collectResults);
+	}
+	
+	@Override
+	public double getScore(LocationCell cell) {
+		double value = getCellValue(cell);
+		return Double.isNaN(value) ? 0 : value / 100.0;
+	}
+	
 	@Override
     public void setRequirements(JPanel modifiedParameterPanel) throws IllegalArgumentException {
         JComboBox<SunType> comboBox = (JComboBox<SunType>) modifiedParameterPanel.getClientProperty("sunTypeComboBox");
         JSlider slider = (JSlider) modifiedParameterPanel.getClientProperty("percentageSlider");
+        JTextField minDaysField = (JTextField) modifiedParameterPanel.getClientProperty("minDaysField");
 
-        if (comboBox == null || slider == null) {
+        if (comboBox == null || slider == null || minDaysField == null) {
             throw new IllegalArgumentException("Parameters are missing in the panel.");
         }
         
-        setRequirements(new SunWeatherRequirements((SunType) comboBox.getSelectedItem(), slider.getValue()));
+        String minDays = minDaysField.getText().trim();
+        SunType sunType = (SunType) comboBox.getSelectedItem();
+        if (minDays.equalsIgnoreCase(MEAN_OF_DAYS)) {
+            setRequirements(SunWeatherRequirements.ofMean(sunType, slider.getValue()));
+        } else {
+            setRequirements(new SunWeatherRequirements(sunType, slider.getValue(), minDays.isEmpty() ? -1 : Integer.parseInt(minDays)));
+        }
     }
 
 	@Override
     public void setRequirements(Object requirements) throws IllegalArgumentException {
         if (requirements instanceof String stringRequirement) {
             String[] parts = stringRequirement.split(",");
-            if (parts.length != 2) {
-                throw new IllegalArgumentException("Invalid string format. Expected 'SunType,Percentage'.");
+            if (parts.length != 2 && parts.length != 3) {
+                throw new IllegalArgumentException("Invalid string format. Expected 'SunType,Percentage[,MinDaysPercentage|mean]'.");
             }
 
             try {
@@ -116,24 +194,45 @@ public class SunWeatherFilter implements Filter {
                 if (this.percentage < 0 || this.percentage > 100) {
                     throw new IllegalArgumentException("Percentage must be between 0 and 100.");
                 }
+                this.meanOfDays = parts.length == 3 && parts[2].trim().equalsIgnoreCase(MEAN_OF_DAYS);
+                this.minDaysPercentage = parts.length == 3 && !meanOfDays ? Integer.parseInt(parts[2].trim()) : -1;
+                if (this.minDaysPercentage > 100) {
+                    throw new IllegalArgumentException("Percentage of days must be at most 100.");
+                }
+                checkHistoryPercentage();
             } catch (IllegalArgumentException e) {
                 throw new IllegalArgumentException("Invalid SunType or Percentage: " + e.getMessage());
             }
         } else if (requirements instanceof SunWeatherRequirements swr) {
             this.selectedSunType = swr.getSunType();
             this.percentage = swr.getPercentage();
+            this.minDaysPercentage = swr.getMinDaysPercentage();
+            this.meanOfDays = swr.isMeanOfDays();
             if (this.percentage < 0 || this.percentage > 100) {
                 throw new IllegalArgumentException("Percentage must be between 0 and 100.");
             }
+            if (this.minDaysPercentage > 100) {
+                throw new IllegalArgumentException("Percentage of days must be at most 100.");
+            }
+            checkHistoryPercentage();
         } else {
             throw new IllegalArgumentException("Unsupported requirements type: " + requirements.getClass().getName());
         }
     }
 
+    /**
+     * The history only knows how often each multiple of WeatherHistory.THRESHOLD_STEP was met.
+     */
+    private void checkHistoryPercentage() {
+        if (minDaysPercentage >= 0 && percentage % WeatherHistory.THRESHOLD_STEP != 0) {
+            throw new IllegalArgumentException("Against past days the quality percentage must be a multiple of " + WeatherHistory.THRESHOLD_STEP + ".");
+        }
+    }
+
     @Override
     public JPanel getParameterPanel() {
         JPanel panel = new JPanel();
-        panel.setLayout(new GridLayout(2, 2));
+        panel.setLayout(new GridLayout(3, 2));
 
         JLabel sunTypeLabel = new JLabel("Sun Event:");
         JComboBox<SunType> sunTypeComboBox = new JComboBox<>(SunType.values());
@@ -155,199 +254,544 @@ public class SunWeatherFilter implements Filter {
 
         panel.add(percentageLabel);
         panel.add(percentageSlider);
+
+        JLabel minDaysLabel = new JLabel("Min % of Past Days (blank for today, \"" + MEAN_OF_DAYS + "\" for their mean):");
+        JTextField minDaysField = new JTextField(meanOfDays ? MEAN_OF_DAYS : minDaysPercentage < 0 ? "" : String.valueOf(minDaysPercentage));
+        panel.add(minDaysLabel);
+        panel.add(minDaysField);
+
+        // Against past days the slider snaps to the thresholds the history keeps
+        percentageSlider.setMinorTickSpacing(WeatherHistory.THRESHOLD_STEP);
+        Runnable snap = () -> {
+            String minDays = minDaysField.getText().trim();
+            boolean againstHistory = !minDays.isEmpty() && !minDays.equalsIgnoreCase(MEAN_OF_DAYS); // Means are kept to the percent
+            percentageSlider.setSnapToTicks(againstHistory);
+            if (againstHistory) {
+                int step = WeatherHistory.THRESHOLD_STEP;
+                percentageSlider.setValue((percentageSlider.getValue() + step / 2) / step * step);
+            }
+        };
+        minDaysField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                snap.run();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                snap.run();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                snap.run();
+            }
+        });
+        snap.run();
         
         panel.putClientProperty("sunTypeComboBox", sunTypeComboBox);
         panel.putClientProperty("percentageSlider", percentageSlider);
+        panel.putClientProperty("minDaysField", minDaysField);
 
         return panel;
     }
     
     /**
-     * Gets the appropriate weather image based on the longitude and selected sun type.
+     * Gets how often the archived forecasts at a location met the minimum quality.
      *
-     * @param longitude The longitude of the location.
-     * @return The corresponding BufferedImage.
+     * @param location The location.
+     * @return The percentage of archived days (0-100), 0 if none are archived for its timezone, or NaN outside the images.
      */
-    private BufferedImage getWeatherImage(double longitude) {
-        Map<String, BufferedImage> imageMap = selectedSunType == SunType.Sunrise ? sunriseImages : sunsetImages;
-        if (longitude <= -113) {
-            return imageMap.get("PT");
-        } else if (longitude <= -98) {
-            return imageMap.get("MT");
-        } else if (longitude <= -83) {
-            return imageMap.get("CT");
-        } else {
-            return imageMap.get("ET");
+    private double getDaysPercentageAt(LatLng location) {
+        WeatherHistory history = getHistory(kindOf(selectedSunType))[zoneOf(location.lng)];
+        if (history == null) return 0;
+        int x = columnOf(location.lng);
+        int y = rowOf(location.lat);
+        if (!history.covers(x, y)) return Double.NaN;
+        return 100.0 * history.getFractionAtLeast(x, y, percentage);
+    }
+
+    /**
+     * Gets the mean quality of the archived forecasts at a location.
+     *
+     * @param location The location.
+     * @return The mean quality percentage (0-100), 0 if none are archived for its timezone, or NaN outside the images.
+     */
+    private double getMeanQualityAt(LatLng location) {
+        WeatherHistory history = getHistory(kindOf(selectedSunType))[zoneOf(location.lng)];
+        if (history == null) return 0;
+        int x = columnOf(location.lng);
+        int y = rowOf(location.lat);
+        if (!history.covers(x, y)) return Double.NaN;
+        return history.getMeanQuality(x, y);
+    }
+
+    private static int columnOf(double longitude) {
+        return (int) (21.2182 * longitude + 2726.27);
+    }
+
+    private static int rowOf(double latitude) {
+        return (int) (-25.4166 * latitude + 1504.25);
+    }
+
+    /**
+     * @return The position in ZONES of the timezone image covering a longitude
+     */
+    private static int zoneOf(double longitude) {
+        int zone = 0;
+        while (zone < ZONE_EAST_EDGES.length && longitude > ZONE_EAST_EDGES[zone]) {
+            zone++;
         }
+        return zone;
     }
-    
+
+    private static int[] firstColumns() {
+        int[] firstColumns = new int[ZONES.length];
+        for (int zone = 1; zone < ZONES.length; zone++) {
+            firstColumns[zone] = columnOf(ZONE_EAST_EDGES[zone - 1]);
+        }
+        return firstColumns;
+    }
+
+    private static int[] lastColumns() {
+        int[] lastColumns = new int[ZONES.length];
+        for (int zone = 0; zone < ZONES.length; zone++) {
+            lastColumns[zone] = zone == ZONES.length - 1 ? Integer.MAX_VALUE : columnOf(ZONE_EAST_EDGES[zone]);
+        }
+        return lastColumns;
+    }
+
     /**
-     * Gets the color of the weather image at the specified coordinates.
-     * 
-     * @param x The x-coordinate of the pixel.
-     * @param y The y-coordinate of the pixel.
-     * @return The Color of the pixel at the given coordinates.
+     * @return The path of a timezone's image relative to the root of the image source
      */
-    private Color getColorAt(LatLng location) {
-        BufferedImage weatherImage = getWeatherImage(location.lng);
-        int x = (int) (21.2182 * location.lng + 2726.27);
-        int y = (int) (-25.4166 * location.lat + 1504.25);
-        return getColorAt(weatherImage, x, y);
+    private static String imageName(String kind, int zone) {
+        return kind + "/" + kind + "_" + ZONES[zone].toLowerCase() + ".png";
     }
-	
+
     /**
-     * Gets the color of the weather image at the specified coordinates.
+     * Adds every archived day missing from the history of a sun type, from the daily images kept by the image cache.
+     * Today is left out, as its forecast may still change. Each day only reads its own images however long the history is,
+     * and a timezone is added for every day it was downloaded on, whether or not the others were.
      *
-     * @param image The BufferedImage to analyze.
-     * @param x The x-coordinate of the pixel.
-     * @param y The y-coordinate of the pixel.
-     * @return The Color of the pixel at the given coordinates, adjusted for border effects.
+     * @param sunType The sun type.
+     * @return The number of timezone images added.
+     * @throws IOException If the archive cannot be read or the history cannot be written.
      */
-    private Color getColorAt(BufferedImage image, int x, int y) {
-        if (image == null) {
-            throw new IllegalStateException("Weather image not initialized.");
+    public static synchronized int updateHistory(SunType sunType) throws IOException {
+        String kind = kindOf(sunType);
+        ForecastImageCache cache = imageCache();
+        LocalDate today = cache.getForecastDate();
+        List<LocalDate> days = cache.getArchivedDates();
+        int added = 0;
+        for (int zone = 0; zone < ZONES.length; zone++) {
+            Path file = Path.of(HISTORY_PATH, kind + "_" + ZONES[zone].toLowerCase() + ".hist");
+            WeatherHistory history = null;
+            if (Files.exists(file)) {
+                try {
+                    history = WeatherHistory.read(file);
+                } catch (IOException e) {
+                    // Every day it held is still in the image cache
+                    System.out.println("Rebuilding " + file + ": " + e.getMessage());
+                }
+            }
+            int addedBefore = added;
+            for (LocalDate day : days) {
+                Path image = cache.getDirectory(day).resolve(imageName(kind, zone));
+                if (!day.isBefore(today) || !Files.exists(image) || (history != null && history.contains(day))) continue;
+                WeatherQualityMosaic.Zone converted = archivedMosaic(cache.getDirectory(day), kind).convert(zone);
+                if (history == null) {
+                    history = WeatherHistory.empty(converted.getFirstColumn(), converted.getWidth(), converted.getHeight());
+                }
+                try {
+                    history.add(day, converted);
+                    added++;
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Skipping " + image + ": " + e.getMessage());
+                }
+            }
+            if (added > addedBefore) {
+                history.write(file);
+            }
         }
-        if (colorCache.containsKey(x) && colorCache.get(x).containsKey(y)) {
-        	return colorCache.get(x).get(y);
+        histories.remove(kind);
+        if (added > 0) {
+            System.out.println("Added " + added + " " + kind + " images to the history");
         }
-        int rgb = image.getRGB(x, y);
-        Color color = new Color(rgb);
+        return added;
+    }
 
-        // Adjust for potential border dithering
-        if (!isOnCurrentColorbar(color)) {
-            color = adjustForBorder(image, x, y);
+    /**
+     * Fetches today's images of every sun type and timezone into the image cache, then adds every earlier archived day
+     * missing from the histories. A day only reaches the history if its images were fetched that day, by this or by a query,
+     * so run it daily, after the forecasts are published, from cron or any other scheduler.
+     *
+     * @return The number of timezone images added to the histories.
+     * @throws IOException If any of today's images could not be fetched, after the rest have been, or a history cannot be updated.
+     */
+    public static int archiveForecasts() throws IOException {
+        IOException failure = null;
+        for (SunType sunType : SunType.values()) {
+            for (int zone = 0; zone < ZONES.length; zone++) {
+                String fileName = imageName(kindOf(sunType), zone);
+                try {
+                    imageCache().fetch(fileName);
+                } catch (IOException e) {
+                    System.out.println("Could not archive " + fileName + ": " + e.getMessage());
+                    if (failure == null) failure = e;
+                }
+            }
+        }
+        int added = 0;
+        for (SunType sunType : SunType.values()) {
+            added += updateHistory(sunType);
         }
+        if (failure != null) {
+            throw new IOException("Some of today's sun weather images were not archived", failure);
+        }
+        return added;
+    }
 
-        colorCache.putIfAbsent(x, new HashMap<Integer, Color>());
-        colorCache.get(x).put(y, color);
-        return color;
+    /**
+     * Archive today's forecasts from the command line, see {@link #archiveForecasts()}.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 0) {
+            System.err.println("Usage: SunWeatherFilter");
+            System.exit(2);
+        }
+        archiveForecasts();
     }
 
     /**
-     * Adjusts the color by averaging nearby pixels to mitigate border effects.
+     * Gets the quality mosaic of one archived day. The color bar is shared with the current forecast's.
+     */
+    private static WeatherQualityMosaic archivedMosaic(Path directory, String kind) {
+        ColorBarTable colorBar = loadOnce(colorBars, kind, () -> {
+            Path reference = directory.resolve(imageName(kind, ZONES.length - 1)); // The COLOR_BAR_ZONE image, if archived
+            return ColorBarTable.read(Files.exists(reference) ? readArchived(reference) : getImage(kind, COLOR_BAR_ZONE), 1350, barStart, barEnd);
+        });
+        return new WeatherQualityMosaic(zone -> readArchived(directory.resolve(imageName(kind, zone))), colorBar, firstColumns(), lastColumns());
+    }
+
+    private static BufferedImage readArchived(Path file) {
+        try {
+            return ForecastImageCache.read(file);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read archived weather image " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Gets the history of each timezone of a sun type, or null for timezones with none, mapped on first use.
+     */
+    private static WeatherHistory[] getHistory(String kind) {
+        return loadOnce(histories, kind, () -> {
+            WeatherHistory[] zones = new WeatherHistory[ZONES.length];
+            for (int zone = 0; zone < ZONES.length; zone++) {
+                Path file = Path.of(HISTORY_PATH, kind + "_" + ZONES[zone].toLowerCase() + ".hist");
+                if (!Files.exists(file)) continue;
+                try {
+                    zones[zone] = WeatherHistory.map(file);
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to open sun weather history " + file + ": " + e.getMessage(), e);
+                }
+            }
+            return zones;
+        });
+    }
+
+    private static String kindOf(SunType sunType) {
+        return sunType == SunType.Sunrise ? "sunrise" : "sunset";
+    }
+
+    /**
+     * Starts downloading a weather image unless it already has been. Every caller shares the one download.
      *
-     * @param image The image being analyzed.
-     * @param x The x-coordinate of the pixel.
-     * @param y The y-coordinate of the pixel.
-     * @return The adjusted color.
+     * @param kind sunrise or sunset
+     * @param zone One of ZONES
+     * @return The image, once downloaded
      */
-    private Color adjustForBorder(BufferedImage image, int x, int y) {
-        int sampleRadius = 1; // Check neighboring pixels within this radius
-        int r = 0, g = 0, b = 0, count = 0;
-
-        for (int dx = -sampleRadius; dx <= sampleRadius; dx++) {
-            for (int dy = -sampleRadius; dy <= sampleRadius; dy++) {
-                int nx = x + dx;
-                int ny = y + dy;
-
-                if (nx >= 0 && nx < image.getWidth() && ny >= 0 && ny < image.getHeight()) {
-                    Color neighborColor = new Color(image.getRGB(nx, ny));
-                    if (isOnCurrentColorbar(neighborColor)) { // Only use valid colors
-                        r += neighborColor.getRed();
-                        g += neighborColor.getGreen();
-                        b += neighborColor.getBlue();
-                        count++;
-                    }
+    private static CompletableFuture<BufferedImage> loadImage(String kind, String zone) {
+        String name = kind + "_" + zone.toLowerCase();
+        CompletableFuture<BufferedImage> image = weatherImages.get(name);
+        if (image != null) return image;
+        CompletableFuture<BufferedImage> started = new CompletableFuture<>();
+        image = weatherImages.putIfAbsent(name, started);
+        if (image != null) return image;
+        // Started only once the future is in the map, so the download never runs inside it
+        imageLoader.execute(() -> {
+            try {
+                started.complete(downloadImage(kind, name));
+            } catch (RuntimeException e) {
+                started.completeExceptionally(e);
+            }
+        });
+        return started;
+    }
+
+    /**
+     * Gets a value from a map of loads, loading it on this thread unless another caller already is, in which case it waits for that load.
+     * The load runs outside the map, so it never holds up other keys. A failed load is forgotten so the next call retries it.
+     */
+    private static <T> T loadOnce(Map<String, CompletableFuture<T>> loads, String key, Supplier<T> loader) {
+        CompletableFuture<T> load = loads.get(key);
+        if (load == null) {
+            CompletableFuture<T> started = new CompletableFuture<>();
+            load = loads.putIfAbsent(key, started);
+            if (load == null) {
+                load = started;
+                try {
+                    started.complete(loader.get());
+                } catch (RuntimeException e) {
+                    started.completeExceptionally(e);
                 }
             }
         }
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            loads.remove(key, load);
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    /**
+     * Gets a weather image, waiting for it to download if needed. A failed download is forgotten so the next call retries it.
+     */
+    private static BufferedImage getImage(String kind, String zone) {
+        CompletableFuture<BufferedImage> image = loadImage(kind, zone);
+        try {
+            return image.join();
+        } catch (CompletionException e) {
+            weatherImages.remove(kind + "_" + zone.toLowerCase(), image);
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
 
-        if (count > 0) {
-            return new Color(r / count, g / count, b / count);
-        } else {
-            return new Color(0, 0, 0); // Fallback to black if all neighbors are borders
+    private static BufferedImage downloadImage(String kind, String name) {
+        try {
+            String fileName = kind + "/" + name + ".png";
+            // Also archives it under today's date. A shard worker uses the copy its coordinator staged.
+            Path file = ShardWorker.isWorker() ? imageCache().fetchCached(fileName) : imageCache().fetch(fileName);
+            String version = versionOf(file);
+            BufferedImage image = ForecastImageCache.read(file);
+            imageVersions.put(name, version);
+            return image;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load weather image " + name + ": " + e.getMessage(), e);
         }
     }
-    
+
     /**
-     * Matches a given color to a percentage based on a predefined color bar.
-     * The pink end represents 0%, and the red end represents 100%.
-     *
-     * @param inputColor The input color to match.
-     * @return The corresponding percentage (0100).
+     * @return The forecast date and modification time of a cached image, which change whenever the image does
      */
-    private int getPercentageFromColor(Color inputColor) {
-    	
-    	// Check cache for exact match first
-        if (selectedSunType == SunType.Sunrise) {
-	        if (sunriseColorToPercentageCache.containsKey(inputColor)) {
-	            return sunriseColorToPercentageCache.get(inputColor);
-	        }
-        } else {
-	        if (sunsetColorToPercentageCache.containsKey(inputColor)) {
-	            return sunsetColorToPercentageCache.get(inputColor);
-	        }
+    private static String versionOf(Path file) throws IOException {
+        return file + "@" + Files.getLastModifiedTime(file).toMillis();
+    }
+
+    /**
+     * Forgets the images of a sun type whose forecast has changed since they were loaded, along with everything converted
+     * from them, so the next lookup uses the new forecast. Otherwise converted images stay in the shared raster tile cache
+     * until evicted, shared by every instance of the filter. Checking costs nothing but a file lookup until the cache's refresh interval is up.
+     */
+    private static void refreshImages(String kind) {
+        boolean changed = false;
+        for (String zone : ZONES) {
+            String name = kind + "_" + zone.toLowerCase();
+            String loaded = imageVersions.get(name);
+            if (loaded == null) continue; // Not loaded yet
+            try {
+                if (loaded.equals(versionOf(imageCache().fetch(kind + "/" + name + ".png")))) continue;
+            } catch (IOException e) {
+                continue; // Keep using the image already loaded
+            }
+            imageVersions.remove(name, loaded);
+            weatherImages.remove(name);
+            changed = true;
         }
-        
-        // Fallback
-        BufferedImage referenceImage = selectedSunType == SunType.Sunrise ? sunriseImages.get("ET") : sunsetImages.get("ET");
-        
-        int barEnd = 197;
-        int barStart = 886;
-        int closestY = -1;
-        double closestDistance = Double.MAX_VALUE;
-
-        for (int y = barStart; y >= barEnd; y--) { // Traverse the color bar from bottom to top
-            Color barColor = new Color(referenceImage.getRGB(1350, y)); // 1350 is the middle of the colorbar in the image
-            double distance = calculateColorDistance(barColor, inputColor);
-
-            if (distance < closestDistance) {
-                closestDistance = distance;
-                closestY = y;
+        if (changed) {
+            RasterLayer stale = layers.remove(kind);
+            if (stale != null) RasterTileCache.shared().evict(stale.getSource());
+            colorBars.remove(kind);
+        }
+    }
+
+    /**
+     * Resolves where images come from on first use, so loading the class never touches the network.
+     * Images are fetched from the source named by the plp.sunweather.source property, a file: or http: root laid out
+     * like sunsetwx.com, or else from sunsetwx.com, and kept in IMAGE_CACHE_PATH by forecast date.
+     */
+    private static ForecastImageCache imageCache() {
+        ForecastImageCache current = imageCache;
+        if (current != null) return current;
+        synchronized (SunWeatherFilter.class) {
+            if (imageCache == null) {
+                DatasetSource source = DatasetSource.of(URI.create(System.getProperty(IMAGE_SOURCE_PROPERTY, IMAGE_URL_BASE)));
+                imageCache = new ForecastImageCache(source, Path.of(IMAGE_CACHE_PATH), FORECAST_ZONE);
             }
+            return imageCache;
         }
+    }
 
-        return (int) ((double) (closestY-barStart) / (barEnd-barStart) * 100);
+    /**
+     * Gets the color to percentage table of a color bar, read from its reference image the first time it is needed.
+     */
+    private static ColorBarTable getColorBar(String kind) {
+        return loadOnce(colorBars, kind, () -> ColorBarTable.read(getImage(kind, COLOR_BAR_ZONE), 1350, barStart, barEnd)); // 1350 is the middle of the colorbar in the image
     }
-    
+
     /**
-     * Determine if the current color is one from the colorbar.
-     *
-     * @param inputColor The input color to check.
-     * @return Whether the color has a perfect match.
+     * Downloads and converts only the timezone images the region overlaps, for the selected sun type.
      */
-    private boolean isOnCurrentColorbar(Color inputColor) {
-    	
-    	// Check cache for exact match first
-        if (selectedSunType == SunType.Sunrise) {
-	        if (sunriseColorToPercentageCache.containsKey(inputColor)) {
-	            return true;
-	        }
-        } else {
-	        if (sunsetColorToPercentageCache.containsKey(inputColor)) {
-	            return true;
-	        }
+    @Override
+    public void prefetch(Envelope region) {
+        SunType sunType = selectedSunType;
+        if (sunType == null || againstHistory()) return;
+        String kind = kindOf(sunType);
+        for (int zone = zoneOf(region.getMinX()); zone <= zoneOf(region.getMaxX()); zone++) {
+            loadImage(kind, ZONES[zone]); // Downloads them all at once
         }
-
-        return false;
+        super.prefetch(region);
     }
 
     /**
-     * Calculates the distance between two colors in RGB space.
-     *
-     * @param c1 The first color.
-     * @param c2 The second color.
-     * @return The distance between the two colors.
+     * Brings the history up to date in history mode, and otherwise fetches today's images of the timezones the region overlaps
+     * and the one the color bar is read from, without reading them.
      */
-    private double calculateColorDistance(Color c1, Color c2) {
-        int redDiff = c1.getRed() - c2.getRed();
-        int greenDiff = c1.getGreen() - c2.getGreen();
-        int blueDiff = c1.getBlue() - c2.getBlue();
-        return Math.sqrt(redDiff * redDiff + greenDiff * greenDiff + blueDiff * blueDiff);
+    @Override
+    public void stage(Envelope region) {
+        SunType sunType = selectedSunType;
+        if (sunType == null) return;
+        if (againstHistory()) {
+            prepare();
+            return;
+        }
+        String kind = kindOf(sunType);
+        Set<String> zones = new TreeSet<>(List.of(COLOR_BAR_ZONE));
+        for (int zone = zoneOf(region.getMinX()); zone <= zoneOf(region.getMaxX()); zone++) {
+            zones.add(ZONES[zone]);
+        }
+        for (String zone : zones) {
+            String fileName = kind + "/" + kind + "_" + zone.toLowerCase() + ".png";
+            try {
+                imageCache().fetch(fileName);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to stage weather image " + fileName + ": " + e.getMessage(), e);
+            }
+        }
     }
 
+    /**
+     * One forecast of a sun type as a raster, with a tile per timezone holding the columns of its image the timezone covers.
+     * Locations outside a timezone's columns or the image have no value.
+     */
+    private static class ForecastRaster implements CachedRasterSource {
+        private final String kind;
+        private final String name;
+        private final int[] firstColumns = firstColumns();
+
+        ForecastRaster(String kind, long generation) {
+            this.kind = kind;
+            this.name = "sunweather:" + kind + "#" + generation;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void locate(double[] latitudes, double[] longitudes, int count, int[] tiles, int[] columns, int[] rows) {
+            for (int i = 0; i < count; i++) {
+                int zone = zoneOf(longitudes[i]);
+                tiles[i] = zone;
+                columns[i] = columnOf(longitudes[i]) - firstColumns[zone];
+                rows[i] = rowOf(latitudes[i]);
+            }
+        }
+
+        /**
+         * Pixel centres lie half a pixel in from the positions columnOf and rowOf truncate.
+         */
+        @Override
+        public void locateBilinear(double[] latitudes, double[] longitudes, int count, int[] tiles, int[] columns, int[] rows, double[] weights) {
+            for (int i = 0; i < count; i++) {
+                int zone = zoneOf(longitudes[i]);
+                double x = 21.2182 * longitudes[i] + 2726.27 - 0.5;
+                double y = -25.4166 * latitudes[i] + 1504.25 - 0.5;
+                int column = (int) Math.floor(x), row = (int) Math.floor(y);
+                double fx = x - column, fy = y - row;
+                for (int corner = 0; corner < 4; corner++) {
+                    int j = 4 * i + corner;
+                    tiles[j] = zone;
+                    columns[j] = column + (corner & 1) - firstColumns[zone];
+                    rows[j] = row + (corner >> 1);
+                    weights[j] = ((corner & 1) == 0 ? 1 - fx : fx) * ((corner >> 1) == 0 ? 1 - fy : fy);
+                }
+            }
+        }
+
+        @Override
+        public RasterTile loadTile(int zone) {
+            WeatherQualityMosaic.Zone converted = new WeatherQualityMosaic(z -> getImage(kind, ZONES[z]), getColorBar(kind),
+                    firstColumns, lastColumns()).convert(zone);
+            int width = converted.getWidth(), height = converted.getHeight();
+            short[] values = new short[width * height];
+            for (int y = 0; y < height; y++) {
+                for (int column = 0; column < width; column++) {
+                    values[y * width + column] = (short) converted.getPercentage(converted.getFirstColumn() + column, y);
+                }
+            }
+            return new RasterTile(values, width, height);
+        }
+
+        @Override
+        public int[] tilesIn(Envelope region) {
+            int firstZone = zoneOf(region.getMinX());
+            int[] zones = new int[zoneOf(region.getMaxX()) - firstZone + 1];
+            for (int i = 0; i < zones.length; i++) {
+                zones[i] = firstZone + i;
+            }
+            return zones;
+        }
+    }
+    
     /**
      * SunWeatherRequirements - Helper class for structured input.
      */
     public static class SunWeatherRequirements {
         private final SunType sunType;
         private final int percentage;
+        private final int minDaysPercentage;
+        private final boolean meanOfDays;
 
         public SunWeatherRequirements(SunType sunType, int percentage) {
+            this(sunType, percentage, -1);
+        }
+
+        /**
+         * @param minDaysPercentage The percentage of archived days the quality must have been met on, or -1 to use today's forecast
+         */
+        public SunWeatherRequirements(SunType sunType, int percentage, int minDaysPercentage) {
+            this(sunType, percentage, minDaysPercentage, false);
+        }
+
+        private SunWeatherRequirements(SunType sunType, int percentage, int minDaysPercentage, boolean meanOfDays) {
             this.sunType = sunType;
             this.percentage = percentage;
+            this.minDaysPercentage = minDaysPercentage;
+            this.meanOfDays = meanOfDays;
+        }
+
+        /**
+         * @param percentage The minimum mean quality over the archived days
+         * @return Requirements judged on each cell's mean quality over the archived days
+         */
+        public static SunWeatherRequirements ofMean(SunType sunType, int percentage) {
+            return new SunWeatherRequirements(sunType, percentage, -1, true);
         }
 
+
         public SunType getSunType() {
             return sunType;
         }
@@ -355,9 +799,17 @@ public class SunWeatherFilter implements Filter {
         public int getPercentage() {
             return percentage;
         }
+
+        public int getMinDaysPercentage() {
+            return minDaysPercentage;
+        }
+
+        public boolean isMeanOfDays() {
+            return meanOfDays;
+        }
     }
 
-    enum SunType {
+    public enum SunType {
     	Sunrise, Sunset
     }
     
@@ -387,8 +839,13 @@ public class SunWeatherFilter implements Filter {
             @Override
             public void paintTrack(Graphics grphcs) {
                 Graphics2D g2 = (Graphics2D) grphcs.create();
-                BufferedImage referenceImage = ((ColorBarSlider) slider).sunType == SunType.Sunset
-                		? sunsetImages.get("ET") : sunriseImages.get("ET");
+                // Painted once the image has downloaded rather than holding up the UI for it
+                CompletableFuture<BufferedImage> image = loadImage(((ColorBarSlider) slider).sunType == SunType.Sunset
+                		? "sunset" : "sunrise", COLOR_BAR_ZONE);
+                BufferedImage referenceImage = image.isDone() && !image.isCompletedExceptionally() ? image.join() : null;
+                if (!image.isDone()) {
+                    image.thenRun(slider::repaint);
+                }
 
                 if (referenceImage != null) {
                     int trackWidth = trackRect.width;
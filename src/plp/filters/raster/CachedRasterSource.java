@@ -0,0 +1,15 @@
+package plp.filters.raster;
+
+import java.io.IOException;
+
+/**
+ * A raster whose tiles are decoded whole onto the heap, and kept in a {@link RasterTileCache} between lookups.
+ */
+public interface CachedRasterSource extends RasterSource {
+	/**
+	 * @param tile A tile from {@link #locate}
+	 * @return The tile, or null if the raster has no such tile
+	 * @throws IOException If the tile exists but cannot be read
+	 */
+	RasterTile loadTile(int tile) throws IOException;
+}
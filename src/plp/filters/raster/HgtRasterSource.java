@@ -0,0 +1,159 @@
+package plp.filters.raster;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A directory of SRTM-style .hgt elevation tiles, memory-mapped and read in place.
+ *
+ * Each file covers one degree square and is named after its south-west corner, such as N37W122.hgt.
+ * It holds SAMPLES x SAMPLES big-endian 16-bit heights in metres, row by row from the north edge, where SAMPLES is
+ * 1201 (3 arc seconds) or 3601 (1 arc second). Samples lie on the edges of the square, so neighbouring files share
+ * their edge rows and columns, and -32768 marks a void. A file is only opened the first time a location falls in it.
+ */
+public class HgtRasterSource implements MappedRasterSource {
+	private static final short VOID = Short.MIN_VALUE;
+	private static final int SAMPLES_3_ARC_SECONDS = 1201;
+	private static final int SAMPLES_1_ARC_SECOND = 3601;
+	private static final int TILES_X = 360;
+	private static final int TILES_Y = 180;
+
+	private final Path directory;
+	private final AtomicReferenceArray<HgtTile> tiles = new AtomicReferenceArray<>(TILES_X * TILES_Y);
+
+	/**
+	 * @param directory The directory holding the .hgt files
+	 */
+	public HgtRasterSource(Path directory) {
+		this.directory = directory;
+	}
+
+	@Override
+	public String getName() {
+		return "hgt:" + directory.toAbsolutePath();
+	}
+
+	@Override
+	public void locate(double[] latitudes, double[] longitudes, int count, int[] tiles, int[] columns, int[] rows) {
+		for (int i = 0; i < count; i++) {
+			int tile = tileOf(latitudes[i], longitudes[i]);
+			HgtTile hgt = tile < 0 ? null : tile(tile);
+			if (hgt == null) {
+				tiles[i] = -1;
+				continue;
+			}
+			int intervals = hgt.samples - 1;
+			tiles[i] = tile;
+			columns[i] = (int) Math.round((longitudes[i] - westOf(tile)) * intervals);
+			rows[i] = (int) Math.round((southOf(tile) + 1 - latitudes[i]) * intervals);
+		}
+	}
+
+	/**
+	 * The four samples around a location always lie in the file of its square, as the files share their edges.
+	 */
+	@Override
+	public void locateBilinear(double[] latitudes, double[] longitudes, int count, int[] tiles, int[] columns, int[] rows, double[] weights) {
+		for (int i = 0; i < count; i++) {
+			int tile = tileOf(latitudes[i], longitudes[i]);
+			HgtTile hgt = tile < 0 ? null : tile(tile);
+			int intervals = hgt == null ? 0 : hgt.samples - 1;
+			double x = (longitudes[i] - (tile < 0 ? 0 : westOf(tile))) * intervals;
+			double y = ((tile < 0 ? 0 : southOf(tile)) + 1 - latitudes[i]) * intervals;
+			int column = Math.min(intervals - 1, (int) Math.floor(x)), row = Math.min(intervals - 1, (int) Math.floor(y));
+			double fx = x - column, fy = y - row;
+			for (int corner = 0; corner < 4; corner++) {
+				int j = 4 * i + corner;
+				tiles[j] = hgt == null ? -1 : tile;
+				columns[j] = column + (corner & 1);
+				rows[j] = row + (corner >> 1);
+				weights[j] = ((corner & 1) == 0 ? 1 - fx : fx) * ((corner >> 1) == 0 ? 1 - fy : fy);
+			}
+		}
+	}
+
+	@Override
+	public int getValue(int tile, int column, int row) {
+		HgtTile hgt = tile(tile);
+		if (hgt == null || column < 0 || column >= hgt.samples || row < 0 || row >= hgt.samples) return MISSING;
+		short height = hgt.heights.getShort((row * hgt.samples + column) * Short.BYTES);
+		return height == VOID ? MISSING : height;
+	}
+
+	/**
+	 * @return The name of the file covering the square with a south-west corner, such as N37W122.hgt
+	 */
+	public static String fileName(int south, int west) {
+		return String.format("%s%02d%s%03d.hgt", south < 0 ? "S" : "N", Math.abs(south), west < 0 ? "W" : "E", Math.abs(west));
+	}
+
+	private static int tileOf(double latitude, double longitude) {
+		int south = (int) Math.floor(latitude);
+		int west = (int) Math.floor(longitude);
+		if (south < -90 || south >= 90 || west < -180 || west >= 180) return -1;
+		return (south + 90) * TILES_X + west + 180;
+	}
+
+	private static int southOf(int tile) {
+		return tile / TILES_X - 90;
+	}
+
+	private static int westOf(int tile) {
+		return tile % TILES_X - 180;
+	}
+
+	/**
+	 * @return The mapped file of a square, or null if the directory has none
+	 */
+	private HgtTile tile(int tile) {
+		HgtTile hgt = tiles.get(tile);
+		if (hgt == null) {
+			hgt = open(directory.resolve(fileName(southOf(tile), westOf(tile))));
+			if (!tiles.compareAndSet(tile, null, hgt)) hgt = tiles.get(tile); // Mapped twice at worst, one is dropped
+		}
+		return hgt == HgtTile.ABSENT ? null : hgt;
+	}
+
+	private static HgtTile open(Path file) {
+		if (!Files.exists(file)) return HgtTile.ABSENT;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			int samples;
+			if (size == bytesOf(SAMPLES_3_ARC_SECONDS)) {
+				samples = SAMPLES_3_ARC_SECONDS;
+			} else if (size == bytesOf(SAMPLES_1_ARC_SECOND)) {
+				samples = SAMPLES_1_ARC_SECOND;
+			} else {
+				throw new IOException("Not an .hgt elevation tile of 1201 x 1201 or 3601 x 3601 samples, " + size + " bytes: " + file);
+			}
+			MappedByteBuffer heights = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			heights.order(ByteOrder.BIG_ENDIAN);
+			return new HgtTile(samples, heights);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to open elevation tile " + file, e);
+		}
+	}
+
+	private static long bytesOf(int samples) {
+		return (long) samples * samples * Short.BYTES;
+	}
+
+	private static final class HgtTile {
+		private static final HgtTile ABSENT = new HgtTile(0, null);
+
+		private final int samples;
+		private final MappedByteBuffer heights;
+
+		HgtTile(int samples, MappedByteBuffer heights) {
+			this.samples = samples;
+			this.heights = heights;
+		}
+	}
+}
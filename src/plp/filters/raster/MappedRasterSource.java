@@ -0,0 +1,15 @@
+package plp.filters.raster;
+
+/**
+ * A raster read in place from memory-mapped files. Its pages live in the OS page cache,
+ * so a {@link RasterLayer} reads it directly instead of copying its tiles into a {@link RasterTileCache}.
+ */
+public interface MappedRasterSource extends RasterSource {
+	/**
+	 * @param tile A tile from {@link #locate}
+	 * @param column The column within the tile
+	 * @param row The row within the tile
+	 * @return The value, or {@link #MISSING} if the raster has no such tile or pixel
+	 */
+	int getValue(int tile, int column, int row);
+}
@@ -0,0 +1,106 @@
+package plp.filters.raster;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.locationtech.jts.geom.Envelope;
+
+import com.uber.h3core.util.LatLng;
+
+import plp.filter.ScoredFilter;
+import plp.filter.SweepableFilter;
+import plp.filter.ThresholdSweep;
+import plp.location.LocationCell;
+import plp.location.LocationUtils;
+
+/**
+ * A filter that keeps cells by the value of a raster at their centres. The whole working set is sampled in one batch
+ * through the filter's {@link RasterLayer}, and the layer's tiles are loaded ahead for the region being searched.
+ * Cells the raster has no value for never pass.
+ */
+public abstract class RasterFilter implements SweepableFilter, ScoredFilter {
+	private static final long serialVersionUID = 1L;
+	protected transient List<LocationCell> locations;
+
+	/**
+	 * @return The raster the filter samples
+	 */
+	protected abstract RasterLayer getLayer();
+
+	/**
+	 * @param value A cell's value, from {@link #toCellValue(double)}, never NaN
+	 * @return Whether the cell passes
+	 */
+	protected abstract boolean accepts(double value);
+
+	/**
+	 * Turn a sample of the raster into the value a cell is judged on. The sample itself by default.
+	 * @param sample The sample, never NaN
+	 */
+	protected double toCellValue(double sample) {
+		return sample;
+	}
+
+	@Override
+	public void setLocations(List<LocationCell> locations) {
+		this.locations = locations;
+	}
+
+	@Override
+	public List<LocationCell> process() {
+		double[] values = getCellValues(locations);
+		List<LocationCell> passed = new ArrayList<>();
+		for (int i = 0; i < values.length; i++) {
+			if (!Double.isNaN(values[i]) && accepts(values[i])) passed.add(locations.get(i));
+		}
+		return passed;
+	}
+
+	/**
+	 * @return The value of a cell, or NaN if the raster has none there
+	 */
+	@Override
+	public double getCellValue(LocationCell cell) {
+		LatLng coords = LocationUtils.getLatLng(cell);
+		double sample = getLayer().sample(coords.lat, coords.lng);
+		return Double.isNaN(sample) ? sample : toCellValue(sample);
+	}
+
+	/**
+	 * Sample many cells in one batch.
+	 * @param cells The cells
+	 * @return The value of each cell, or NaN where the raster has none
+	 */
+	protected double[] getCellValues(List<LocationCell> cells) {
+		int count = cells.size();
+		double[] latitudes = new double[count];
+		double[] longitudes = new double[count];
+		for (int i = 0; i < count; i++) {
+			LatLng coords = LocationUtils.getLatLng(cells.get(i));
+			latitudes[i] = coords.lat;
+			longitudes[i] = coords.lng;
+		}
+		double[] values = new double[count];
+		getLayer().sample(latitudes, longitudes, count, values);
+		for (int i = 0; i < count; i++) {
+			if (!Double.isNaN(values[i])) values[i] = toCellValue(values[i]);
+		}
+		return values;
+	}
+
+	/**
+	 * Sweep the working set from one batch of samples.
+	 * @see ThresholdSweep#compute(List, double[], double, double, int, double[], boolean)
+	 */
+	protected ThresholdSweep sweep(double histogramMin, double histogramMax, int bins, double[] thresholds, boolean collectResults) {
+		return ThresholdSweep.compute(locations, getCellValues(locations), histogramMin, histogramMax, bins, thresholds, collectResults);
+	}
+
+	/**
+	 * Loads the layer's tiles under the region.
+	 */
+	@Override
+	public void prefetch(Envelope region) {
+		getLayer().prefetch(region);
+	}
+}
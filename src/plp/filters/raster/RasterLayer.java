@@ -0,0 +1,157 @@
+package plp.filters.raster;
+
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * Samples a {@link RasterSource} at batches of locations, through a {@link RasterTileCache} unless the source is
+ * memory-mapped. Locations are placed in one pass and gathered in another, and the gather only goes back to the cache
+ * when the tile changes, so a working set in locality order touches the cache about once per tile.
+ * Safe to use from several threads at once.
+ */
+public class RasterLayer {
+	private final RasterSource source;
+	private final MappedRasterSource mapped; // If the source is read in place
+	private final RasterTileCache cache;
+	private final RasterTileCache.View view; // If the source is cached
+	private final RasterSampling sampling;
+
+	/**
+	 * A layer sampled at the nearest pixel, through the shared cache.
+	 * @param source The raster
+	 */
+	public RasterLayer(RasterSource source) {
+		this(source, RasterTileCache.shared(), RasterSampling.NEAREST);
+	}
+
+	/**
+	 * @param source The raster
+	 * @param cache Where its tiles are kept, unused if the source is a {@link MappedRasterSource}
+	 * @param sampling How a location is sampled
+	 * @throws IllegalArgumentException If the source is neither a {@link CachedRasterSource} nor a {@link MappedRasterSource}
+	 */
+	public RasterLayer(RasterSource source, RasterTileCache cache, RasterSampling sampling) {
+		this.source = source;
+		this.cache = cache;
+		this.sampling = sampling;
+		if (source instanceof MappedRasterSource mappedSource) {
+			mapped = mappedSource;
+			view = null;
+		} else if (source instanceof CachedRasterSource cachedSource) {
+			mapped = null;
+			view = cache.view(cachedSource);
+		} else {
+			throw new IllegalArgumentException(source.getName() + " is neither cached nor mapped.");
+		}
+	}
+
+	public RasterSource getSource() {
+		return source;
+	}
+
+	public RasterSampling getSampling() {
+		return sampling;
+	}
+
+	/**
+	 * Read the raw value of the pixel nearest each location, whatever the layer's sampling.
+	 * @param latitudes The latitudes of the locations
+	 * @param longitudes The longitudes of the locations
+	 * @param count How many locations to sample
+	 * @param values Filled with each value, or {@link RasterSource#MISSING}
+	 */
+	public void sampleNearest(double[] latitudes, double[] longitudes, int count, int[] values) {
+		int[] tiles = new int[count];
+		int[] columns = new int[count];
+		int[] rows = new int[count];
+		source.locate(latitudes, longitudes, count, tiles, columns, rows);
+		gather(tiles, columns, rows, count, values);
+	}
+
+	/**
+	 * Sample many locations at once.
+	 * @param latitudes The latitudes of the locations
+	 * @param longitudes The longitudes of the locations
+	 * @param count How many locations to sample
+	 * @param values Filled with each value, or NaN where the raster has none
+	 */
+	public void sample(double[] latitudes, double[] longitudes, int count, double[] values) {
+		if (sampling == RasterSampling.NEAREST) {
+			int[] raw = new int[count];
+			sampleNearest(latitudes, longitudes, count, raw);
+			for (int i = 0; i < count; i++) {
+				values[i] = raw[i] == RasterSource.MISSING ? Double.NaN : raw[i];
+			}
+			return;
+		}
+
+		int[] tiles = new int[4 * count];
+		int[] columns = new int[4 * count];
+		int[] rows = new int[4 * count];
+		double[] weights = new double[4 * count];
+		source.locateBilinear(latitudes, longitudes, count, tiles, columns, rows, weights);
+		int[] raw = new int[4 * count];
+		gather(tiles, columns, rows, 4 * count, raw);
+		for (int i = 0; i < count; i++) {
+			double sum = 0, weight = 0;
+			for (int j = 4 * i; j < 4 * i + 4; j++) {
+				if (raw[j] == RasterSource.MISSING || weights[j] == 0) continue;
+				sum += weights[j] * raw[j];
+				weight += weights[j];
+			}
+			values[i] = weight > 0 ? sum / weight : Double.NaN; // Reweighted over the pixels that have values
+		}
+	}
+
+	/**
+	 * @return The value at one location, or NaN where the raster has none
+	 */
+	public double sample(double latitude, double longitude) {
+		double[] value = new double[1];
+		sample(new double[]{latitude}, new double[]{longitude}, 1, value);
+		return value[0];
+	}
+
+	/**
+	 * @param tile A tile from the source
+	 * @param column The column within the tile
+	 * @param row The row within the tile
+	 * @return The raw value of the pixel, or {@link RasterSource#MISSING}
+	 */
+	public int getValue(int tile, int column, int row) {
+		if (tile < 0) return RasterSource.MISSING;
+		if (mapped != null) return mapped.getValue(tile, column, row);
+		RasterTile loaded = view.get(tile);
+		return loaded == null ? RasterSource.MISSING : loaded.getValue(column, row);
+	}
+
+	/**
+	 * Load the tiles under a region into the cache. Does nothing for a mapped source, which the OS pages in as it is read.
+	 */
+	public void prefetch(Envelope region) {
+		if (mapped != null) return;
+		cache.prefetch(view.getSource(), source.tilesIn(region));
+	}
+
+	private void gather(int[] tiles, int[] columns, int[] rows, int count, int[] values) {
+		if (mapped != null) {
+			for (int i = 0; i < count; i++) {
+				values[i] = tiles[i] < 0 ? RasterSource.MISSING : mapped.getValue(tiles[i], columns[i], rows[i]);
+			}
+			return;
+		}
+		int currentTile = -1;
+		RasterTile current = null;
+		for (int i = 0; i < count; i++) {
+			int tile = tiles[i];
+			if (tile < 0) {
+				values[i] = RasterSource.MISSING;
+				continue;
+			}
+			if (tile != currentTile) {
+				current = view.get(tile);
+				currentTile = tile;
+			}
+			values[i] = current == null ? RasterSource.MISSING : current.getValue(columns[i], rows[i]);
+		}
+	}
+}
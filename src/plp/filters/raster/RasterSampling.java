@@ -0,0 +1,15 @@
+package plp.filters.raster;
+
+/**
+ * How a {@link RasterLayer} turns the pixels around a location into one value.
+ */
+public enum RasterSampling {
+	/**
+	 * The value of the pixel the location falls in.
+	 */
+	NEAREST,
+	/**
+	 * The four pixels around the location, weighted by distance. Pixels without a value are left out.
+	 */
+	BILINEAR
+}
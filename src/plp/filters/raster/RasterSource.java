@@ -0,0 +1,67 @@
+package plp.filters.raster;
+
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * A raster on local disk or behind a local cache, split into tiles. A source is read either through a {@link RasterTileCache},
+ * as a {@link CachedRasterSource}, or in place, as a {@link MappedRasterSource}.
+ * Implementations must be safe to use from several threads at once.
+ */
+public interface RasterSource {
+	/**
+	 * Sampled at positions the raster has no value for.
+	 */
+	int MISSING = Integer.MIN_VALUE;
+
+	/**
+	 * @return A name no other source shares, which keys its tiles in a {@link RasterTileCache}.
+	 * A source whose data changes must change its name, so tiles of the old data are not reused.
+	 */
+	String getName();
+
+	/**
+	 * Find the pixel nearest each location.
+	 * @param latitudes The latitudes of the locations
+	 * @param longitudes The longitudes of the locations
+	 * @param count How many locations to place
+	 * @param tiles Filled with each location's tile, or -1 if it is outside the raster
+	 * @param columns Filled with each location's column within its tile
+	 * @param rows Filled with each location's row within its tile
+	 */
+	void locate(double[] latitudes, double[] longitudes, int count, int[] tiles, int[] columns, int[] rows);
+
+	/**
+	 * Find the four pixels around each location and their bilinear weights. Location i fills entries 4i to 4i + 3.
+	 * By default only the nearest pixel is given, with all of the weight.
+	 * @param latitudes The latitudes of the locations
+	 * @param longitudes The longitudes of the locations
+	 * @param count How many locations to place
+	 * @param tiles Filled with each pixel's tile, or -1 if it is outside the raster
+	 * @param columns Filled with each pixel's column within its tile
+	 * @param rows Filled with each pixel's row within its tile
+	 * @param weights Filled with each pixel's weight, the four of a location adding up to 1
+	 */
+	default void locateBilinear(double[] latitudes, double[] longitudes, int count, int[] tiles, int[] columns, int[] rows, double[] weights) {
+		int[] nearestTiles = new int[count];
+		int[] nearestColumns = new int[count];
+		int[] nearestRows = new int[count];
+		locate(latitudes, longitudes, count, nearestTiles, nearestColumns, nearestRows);
+		for (int i = 0; i < count; i++) {
+			for (int corner = 0; corner < 4; corner++) {
+				int j = 4 * i + corner;
+				tiles[j] = corner == 0 ? nearestTiles[i] : -1;
+				columns[j] = nearestColumns[i];
+				rows[j] = nearestRows[i];
+				weights[j] = corner == 0 ? 1.0 : 0.0;
+			}
+		}
+	}
+
+	/**
+	 * @param region A region about to be sampled
+	 * @return The tiles under the region, most wanted first. None by default.
+	 */
+	default int[] tilesIn(Envelope region) {
+		return new int[0];
+	}
+}
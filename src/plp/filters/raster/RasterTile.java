@@ -0,0 +1,51 @@
+package plp.filters.raster;
+
+/**
+ * One decoded tile of a raster, width x height values stored row by row.
+ */
+public class RasterTile {
+	private static final long OVERHEAD_BYTES = 64; // Object headers and fields, roughly
+
+	private final short[] values;
+	private final int width;
+	private final int height;
+
+	/**
+	 * @param values The values, row by row
+	 * @param width The number of columns
+	 * @param height The number of rows
+	 */
+	public RasterTile(short[] values, int width, int height) {
+		if (width < 0 || height < 0 || values.length != width * height) {
+			throw new IllegalArgumentException("A tile needs width x height values.");
+		}
+		this.values = values;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * @param column The column, from 0
+	 * @param row The row, from 0
+	 * @return The value, or {@link RasterSource#MISSING} if the position is outside the tile
+	 */
+	public int getValue(int column, int row) {
+		if (column < 0 || column >= width || row < 0 || row >= height) return RasterSource.MISSING;
+		return values[row * width + column];
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return The heap the tile takes, as counted against a {@link RasterTileCache}'s limit
+	 */
+	public long getBytes() {
+		return (long) values.length * Short.BYTES + OVERHEAD_BYTES;
+	}
+}
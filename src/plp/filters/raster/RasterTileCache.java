@@ -0,0 +1,290 @@
+package plp.filters.raster;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The decoded tiles of every {@link CachedRasterSource} in the process under one heap budget, so the memory goes to
+ * the area being queried whichever filters query it. A tile is decoded the first time it is asked for, and once the
+ * budget is spent the tile asked for least recently makes room.
+ *
+ * The first thread to miss on a tile decodes it, and any other that misses on it meanwhile waits for that decode.
+ * A failed decode is not remembered, the next request tries again. A hit takes no lock, and age is counted in decodes,
+ * so a hit only writes to a tile's entry when something has been decoded since the tile was last asked for.
+ * Layers read through a {@link View}, which finds the tiles they used recently by index without allocating or hashing.
+ */
+public class RasterTileCache {
+	private static final double SHARED_HEAP_FRACTION = 0.25;
+	private static final int PREFETCH_PARALLELISM = 8;
+	private static final RasterTile MISSING_TILE = new RasterTile(new short[0], 0, 0);
+	private static volatile RasterTileCache shared;
+
+	private final long maxBytes;
+	private final ConcurrentHashMap<Key, Entry> tiles = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Key, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+	private volatile long loadEpoch;
+	private long usedBytes;
+
+	/**
+	 * @param maxBytes The most heap to spend on decoded tiles. A single tile larger than this is still kept.
+	 */
+	public RasterTileCache(long maxBytes) {
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("The cache must be allowed some memory.");
+		}
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return The cache every raster filter shares, allowed a quarter of the maximum heap
+	 */
+	public static RasterTileCache shared() {
+		RasterTileCache current = shared;
+		if (current != null) return current;
+		synchronized (RasterTileCache.class) {
+			if (shared == null) {
+				shared = new RasterTileCache((long) (Runtime.getRuntime().maxMemory() * SHARED_HEAP_FRACTION));
+			}
+			return shared;
+		}
+	}
+
+	/**
+	 * @param source The source of the tile
+	 * @param tile The tile
+	 * @return The tile, loading it if needed, or null if the source has no such tile
+	 * @throws UncheckedIOException If the tile exists but cannot be read
+	 */
+	public RasterTile get(CachedRasterSource source, int tile) {
+		return tileOf(entry(source, tile));
+	}
+
+	/**
+	 * @param source A source
+	 * @return A view of the source's tiles for one reader, such as a {@link RasterLayer}
+	 */
+	public View view(CachedRasterSource source) {
+		return new View(source);
+	}
+
+	/**
+	 * Loads the tiles several at a time, sharing each load with any lookup that misses on the same tile meanwhile.
+	 * Returns once they are loaded or failed to, failures are left for {@link #get} to report.
+	 * Stops once the tiles loaded fill the cache, so a prefetch does not evict its own tiles.
+	 * @param source The source of the tiles
+	 * @param tileIndexes The tiles, most wanted first
+	 */
+	public void prefetch(CachedRasterSource source, int[] tileIndexes) {
+		Semaphore permits = new Semaphore(PREFETCH_PARALLELISM);
+		AtomicLong wanted = new AtomicLong(); // Bytes of the tiles of this prefetch so far
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (int tile : tileIndexes) {
+				Key key = new Key(source.getName(), tile);
+				Entry entry = tiles.get(key);
+				if (entry != null) {
+					wanted.addAndGet(bytesOf(entry.tile));
+					continue;
+				}
+				permits.acquireUninterruptibly();
+				if (wanted.get() >= maxBytes) { // Tile sizes are only known once loaded
+					permits.release();
+					break;
+				}
+				executor.execute(() -> {
+					try {
+						wanted.addAndGet(bytesOf(load(source, key).tile));
+					} catch (RuntimeException e) {
+						// Reported again by the lookup that needs the tile
+					} finally {
+						permits.release();
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Drop every tile of a source, such as one whose data has been replaced.
+	 * @param source The source
+	 */
+	public synchronized void evict(RasterSource source) {
+		String name = source.getName();
+		tiles.entrySet().removeIf(entry -> {
+			if (!entry.getKey().source.equals(name)) return false;
+			drop(entry.getValue());
+			return true;
+		});
+	}
+
+	/**
+	 * @return The heap currently spent on decoded tiles
+	 */
+	public synchronized long getUsedBytes() {
+		return usedBytes;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	private Entry entry(CachedRasterSource source, int tile) {
+		Key key = new Key(source.getName(), tile);
+		Entry entry = tiles.get(key);
+		if (entry == null) return load(source, key);
+		touch(entry);
+		return entry;
+	}
+
+	private void touch(Entry entry) {
+		long epoch = loadEpoch;
+		if (entry.lastUsed != epoch) entry.lastUsed = epoch;
+	}
+
+	private Entry load(CachedRasterSource source, Key key) {
+		CompletableFuture<Entry> created = new CompletableFuture<>();
+		CompletableFuture<Entry> existing = inFlight.putIfAbsent(key, created);
+		if (existing != null) {
+			try {
+				return existing.join();
+			} catch (CompletionException e) {
+				throw e.getCause() instanceof RuntimeException cause ? cause : e;
+			}
+		}
+
+		try {
+			Entry entry = tiles.get(key); // Another thread may have finished loading it in the meantime
+			if (entry == null) {
+				RasterTile tile = source.loadTile(key.tile);
+				entry = store(key, tile == null ? MISSING_TILE : tile);
+			}
+			created.complete(entry);
+			return entry;
+		} catch (IOException e) {
+			UncheckedIOException failure = new UncheckedIOException("Failed to load tile " + key.tile + " of " + key.source, e);
+			created.completeExceptionally(failure);
+			throw failure;
+		} catch (RuntimeException e) {
+			created.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, created);
+		}
+	}
+
+	/**
+	 * Add a loaded tile, evicting the least recently used ones to stay within the limit.
+	 */
+	private synchronized Entry store(Key key, RasterTile tile) {
+		long bytes = bytesOf(tile);
+		while (bytes > 0 && usedBytes + bytes > maxBytes && evictLeastRecentlyUsed()) {}
+		loadEpoch++;
+		Entry entry = new Entry(key.tile, tile, loadEpoch);
+		tiles.put(key, entry);
+		usedBytes += bytes;
+		return entry;
+	}
+
+	private boolean evictLeastRecentlyUsed() {
+		Map.Entry<Key, Entry> victim = null;
+		for (Map.Entry<Key, Entry> entry : tiles.entrySet()) {
+			if (entry.getValue().tile != MISSING_TILE && (victim == null || entry.getValue().lastUsed < victim.getValue().lastUsed)) {
+				victim = entry;
+			}
+		}
+		if (victim == null) return false;
+		tiles.remove(victim.getKey());
+		drop(victim.getValue());
+		return true;
+	}
+
+	private void drop(Entry entry) {
+		entry.evicted = true; // Views holding it look it up again
+		usedBytes -= bytesOf(entry.tile);
+	}
+
+	private static RasterTile tileOf(Entry entry) {
+		return entry.tile == MISSING_TILE ? null : entry.tile;
+	}
+
+	private static long bytesOf(RasterTile tile) {
+		return tile == MISSING_TILE ? 0 : tile.getBytes();
+	}
+
+	/**
+	 * The tiles of one source, remembering the last one used in each of a few slots chosen by tile index, so looking up
+	 * a tile used recently is an array read. A tile the cache has evicted since is looked up again.
+	 * Safe to use from several threads at once.
+	 */
+	public final class View {
+		private static final int SLOTS = 64; // A power of two
+
+		private final CachedRasterSource source;
+		private final Entry[] recent = new Entry[SLOTS];
+
+		private View(CachedRasterSource source) {
+			this.source = source;
+		}
+
+		public CachedRasterSource getSource() {
+			return source;
+		}
+
+		/**
+		 * @param tile The tile
+		 * @return The tile, loading it if needed, or null if the source has no such tile
+		 * @throws UncheckedIOException If the tile exists but cannot be read
+		 */
+		public RasterTile get(int tile) {
+			int slot = tile & (SLOTS - 1);
+			Entry entry = recent[slot];
+			if (entry != null && entry.index == tile && !entry.evicted) {
+				touch(entry);
+			} else {
+				entry = entry(source, tile);
+				recent[slot] = entry; // Entries are immutable but for their age, so any thread may see any of them
+			}
+			return tileOf(entry);
+		}
+	}
+
+	private static final class Key {
+		private final String source;
+		private final int tile;
+
+		Key(String source, int tile) {
+			this.source = source;
+			this.tile = tile;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Key key && key.tile == tile && key.source.equals(source);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * source.hashCode() + tile;
+		}
+	}
+
+	private static final class Entry {
+		private final int index;
+		private final RasterTile tile;
+		private volatile long lastUsed;
+		private volatile boolean evicted;
+
+		Entry(int index, RasterTile tile, long lastUsed) {
+			this.index = index;
+			this.tile = tile;
+			this.lastUsed = lastUsed;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package plp.location;
+
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+/**
+ * The cells of a region under one coarser ancestor, which can be counted and picked from by position without
+ * producing them all when the region holds every descendant of the ancestor.
+ * Used to sample a region too large to stream in a time budget.
+ */
+public class CellStratum {
+	private final long ancestor;
+	private final int resolution;
+	private final LongPredicate inside; // Null when every descendant is in the region
+	private long[] cells; // Of the region, ascending, once listed
+
+	private CellStratum(long ancestor, int resolution, LongPredicate inside, long[] cells) {
+		this.ancestor = ancestor;
+		this.resolution = resolution;
+		this.inside = inside;
+		this.cells = cells;
+	}
+
+	/**
+	 * @param ancestor An ancestor wholly inside the region
+	 * @param resolution The resolution of the region's cells
+	 * @return The stratum of every descendant of the ancestor
+	 */
+	public static CellStratum whole(long ancestor, int resolution) {
+		return new CellStratum(ancestor, resolution, null, null);
+	}
+
+	/**
+	 * @param ancestor An ancestor the edge of the region passes through
+	 * @param resolution The resolution of the region's cells
+	 * @param inside Whether one of the ancestor's descendants is in the region, asked of each the first time the stratum is counted
+	 * @return The stratum of the descendants inside
+	 */
+	public static CellStratum clipped(long ancestor, int resolution, LongPredicate inside) {
+		return new CellStratum(ancestor, resolution, inside, null);
+	}
+
+	/**
+	 * @param ancestor The ancestor
+	 * @param cells The region's cells under the ancestor
+	 * @return The stratum of those cells
+	 */
+	public static CellStratum of(long ancestor, long[] cells) {
+		long[] sorted = cells.clone();
+		Arrays.sort(sorted);
+		return new CellStratum(ancestor, -1, null, sorted);
+	}
+
+	public long getAncestor() {
+		return ancestor;
+	}
+
+	/**
+	 * @return Whether {@link #size()} would test each descendant of the ancestor
+	 */
+	public boolean isCounted() {
+		return cells != null || inside == null;
+	}
+
+	/**
+	 * @return How many cells of the region the stratum holds, testing each descendant the first time if it is clipped
+	 */
+	public long size() {
+		if (cells != null) return cells.length;
+		if (inside == null) return LocationUtils.getChildCount(ancestor, resolution);
+		cells = LocationUtils.getChildren(ancestor, resolution).stream().mapToLong(Long::longValue)
+				.filter(inside).sorted().toArray();
+		return cells.length;
+	}
+
+	/**
+	 * @return At most {@link #size()}, without testing any descendant
+	 */
+	public long getMaxSize() {
+		if (cells != null) return cells.length;
+		return LocationUtils.getChildCount(ancestor, resolution);
+	}
+
+	/**
+	 * @param position From 0 to {@link #size()} exclusive
+	 * @return The cell at the position
+	 */
+	public long get(long position) {
+		if (cells == null && inside == null) return LocationUtils.getChild(ancestor, position, resolution);
+		size();
+		return cells[(int) position];
+	}
+}
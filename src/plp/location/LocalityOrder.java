@@ -0,0 +1,92 @@
+package plp.location;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import com.uber.h3core.util.LatLng;
+
+/**
+ * Orders cells so that cells near each other on the map are near each other in the list.
+ *
+ * H3 indexes, and so the order polygonToCells returns cells in, follow the H3 hierarchy rather than latitude and longitude,
+ * so a filter sampling a raster for each cell in turn jumps between tiles and image rows. Sorting the cells by 5 degree block,
+ * then along a Hilbert curve within the block, makes those lookups walk through each tile and row in turn instead.
+ */
+public class LocalityOrder {
+	private static final double BLOCK_DEGREES = 5.0;
+	private static final int BLOCKS_X = (int) (360 / BLOCK_DEGREES);
+	private static final int CURVE_BITS = 10; // 1024 x 1024 steps per block, finer than any raster in use
+	private static final int CURVE_SIDE = 1 << CURVE_BITS;
+	private static final int INDEX_BITS = 31; // Any list index, leaving the 32 bit key clear of the sign bit
+
+	private LocalityOrder() {}
+
+	/**
+	 * @param cells The cells to order, which are not modified
+	 * @return The same cells, ordered by block and then along a Hilbert curve
+	 */
+	public static List<LocationCell> sort(List<LocationCell> cells) {
+		// The sort key and the cell's position share one long, so the sort is a primitive one.
+		// Blocks reach 12 bits and the curve 20, so a key shifted by 32 would turn negative north of about 52 degrees.
+		long[] keyed = new long[cells.size()];
+		for (int i = 0; i < keyed.length; i++) {
+			keyed[i] = (key(LocationUtils.getLatLng(cells.get(i))) << INDEX_BITS) | i;
+		}
+		Arrays.sort(keyed);
+
+		List<LocationCell> sorted = new ArrayList<>(keyed.length);
+		for (long k : keyed) {
+			sorted.add(cells.get((int) (k & ((1L << INDEX_BITS) - 1))));
+		}
+		return sorted;
+	}
+
+	/**
+	 * Put cells in ascending H3 index order, so a result does not depend on the order it was computed in.
+	 * @param cells The cells to order, which are not modified
+	 * @return The same cells in H3 index order
+	 */
+	public static List<LocationCell> canonicalize(List<LocationCell> cells) {
+		List<LocationCell> sorted = new ArrayList<>(cells);
+		sorted.sort(Comparator.comparingLong(LocationCell::getH3Index));
+		return sorted;
+	}
+
+	/**
+	 * @return The block of a location in the high bits and its position along the curve within the block in the low bits
+	 */
+	static long key(LatLng coords) {
+		double lng = Math.max(0.0, Math.min(360.0 - 1e-9, coords.lng + 180.0));
+		double lat = Math.max(0.0, Math.min(180.0 - 1e-9, coords.lat + 90.0));
+		int blockX = (int) (lng / BLOCK_DEGREES);
+		int blockY = (int) (lat / BLOCK_DEGREES);
+		int x = Math.min(CURVE_SIDE - 1, (int) ((lng - blockX * BLOCK_DEGREES) / BLOCK_DEGREES * CURVE_SIDE));
+		int y = Math.min(CURVE_SIDE - 1, (int) ((lat - blockY * BLOCK_DEGREES) / BLOCK_DEGREES * CURVE_SIDE));
+		long block = blockY * BLOCKS_X + blockX;
+		return (block << (2 * CURVE_BITS)) | hilbert(x, y);
+	}
+
+	/**
+	 * The distance along a Hilbert curve filling the CURVE_SIDE square of a point in it.
+	 */
+	private static int hilbert(int x, int y) {
+		int d = 0;
+		for (int s = CURVE_SIDE / 2; s > 0; s /= 2) {
+			int rx = (x & s) > 0 ? 1 : 0;
+			int ry = (y & s) > 0 ? 1 : 0;
+			d += s * s * ((3 * rx) ^ ry);
+			if (ry == 0) {
+				if (rx == 1) {
+					x = CURVE_SIDE - 1 - x;
+					y = CURVE_SIDE - 1 - y;
+				}
+				int swap = x;
+				x = y;
+				y = swap;
+			}
+		}
+		return d;
+	}
+}
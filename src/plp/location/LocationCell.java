@@ -1,7 +1,10 @@
 package plp.location;
 
+import com.uber.h3core.util.LatLng;
+
 public class LocationCell {
     private final Long h3Index;
+    private LatLng latLng; // Centre, filled in by LocationUtils on first use
     
     public LocationCell(Long h3Index) {
         this.h3Index = h3Index;
@@ -11,6 +14,14 @@ public class LocationCell {
         return h3Index;
     }
 
+    LatLng getCachedLatLng() {
+        return latLng;
+    }
+
+    void setCachedLatLng(LatLng latLng) {
+        this.latLng = latLng;
+    }
+
     @Override
     public String toString() {
         return String.valueOf(h3Index);
@@ -1,11 +1,17 @@
 package plp.location;
 
 import java.io.IOException;
+import java.util.List;
+
+import org.locationtech.jts.geom.Envelope;
 
 import com.uber.h3core.H3Core;
+import com.uber.h3core.LengthUnit;
 import com.uber.h3core.util.LatLng;
 
 public class LocationUtils {
+	private static final double EARTH_RADIUS_KM = 6371.007180918475; // H3's authalic radius
+	private static final double DESCENDANT_REACH = Math.sqrt(3) / (Math.sqrt(7) - 1); // See getDescendantBounds
 	private static H3Core h3;
 	
 	/**
@@ -21,12 +27,178 @@ public class LocationUtils {
     }
     
     /**
-     * Get the latitude and longitude of the center of a cell
+     * Get the latitude and longitude of the center of a cell.
+     * The result is kept on the cell, so every filter after the first reuses it.
      * @param LocationCell cell
      * @return The LatLng H3 object for the position of the cell
      */
     public static LatLng getLatLng(LocationCell cell) {
+    	LatLng cached = cell.getCachedLatLng();
+    	if (cached != null) return cached;
+    	if (h3 == null) initialize();
+    	LatLng coords = h3.cellToLatLng(cell.getH3Index());
+    	cell.setCachedLatLng(coords);
+    	return coords;
+    }
+    
+    /**
+     * Get the latitude and longitude of the center of a cell, without keeping it
+     * @param h3Index The cell's H3 index
+     * @return The LatLng H3 object for the position of the cell
+     */
+    public static LatLng getLatLng(long h3Index) {
+    	if (h3 == null) initialize();
+    	return h3.cellToLatLng(h3Index);
+    }
+    
+    /**
+     * Get the cells whose centres lie inside a polygon
+     * @param boundary The vertices of the polygon, in order
+     * @param resolution The resolution of the cells
+     * @return The H3 indexes of the cells
+     */
+    public static List<Long> getCellsInPolygon(List<LatLng> boundary, int resolution) {
+    	if (h3 == null) initialize();
+    	return h3.polygonToCells(boundary, null, resolution);
+    }
+    
+    /**
+     * Get the ancestor of a cell at a coarser resolution
+     * @param h3Index The cell's H3 index
+     * @param resolution The resolution of the ancestor, 0 for the base cell
+     * @return The H3 index of the ancestor
+     */
+    public static long getParent(long h3Index, int resolution) {
+    	if (h3 == null) initialize();
+    	return h3.cellToParent(h3Index, resolution);
+    }
+    
+    /**
+     * Get the descendants of a cell at a finer resolution
+     * @param h3Index The cell's H3 index
+     * @param resolution The resolution of the descendants
+     * @return The H3 indexes of every descendant
+     */
+    public static List<Long> getChildren(long h3Index, int resolution) {
+    	if (h3 == null) initialize();
+    	return h3.cellToChildren(h3Index, resolution);
+    }
+    
+    /**
+     * Get the number of descendants of a cell at a finer resolution, without producing them
+     * @param h3Index The cell's H3 index
+     * @param resolution The resolution of the descendants
+     * @return The number of descendants, fewer under a pentagon
+     */
+    public static long getChildCount(long h3Index, int resolution) {
+    	if (h3 == null) initialize();
+    	return h3.cellToChildrenSize(h3Index, resolution);
+    }
+    
+    /**
+     * Get one descendant of a cell by its position among them, in the order of {@link #getChildren(long, int)}
+     * @param h3Index The cell's H3 index
+     * @param position The position, from 0 to {@link #getChildCount(long, int)} exclusive
+     * @param resolution The resolution of the descendant
+     * @return The H3 index of the descendant
+     */
+    public static long getChild(long h3Index, long position, int resolution) {
     	if (h3 == null) initialize();
-    	return h3.cellToLatLng(cell.getH3Index());
+    	return h3.childPosToCell(position, h3Index, resolution);
+    }
+    
+    /**
+     * Get the bounds of a set of points
+     * @param points The points, such as the vertices of a polygon
+     * @return The bounds, longitude as x and latitude as y
+     */
+    public static Envelope getBounds(List<LatLng> points) {
+    	Envelope bounds = new Envelope();
+    	for (LatLng point : points) {
+    		bounds.expandToInclude(point.lng, point.lat);
+    	}
+    	return bounds;
+    }
+    
+    /**
+     * Get the corners of a cell
+     * @param h3Index The cell's H3 index
+     * @return The vertices of the cell's boundary, in order
+     */
+    public static List<LatLng> getBoundary(long h3Index) {
+    	if (h3 == null) initialize();
+    	return h3.cellToBoundary(h3Index);
+    }
+    
+    /**
+     * Get the bounds of the centres of every descendant of a cell, at any finer resolution. Descendants stick out of
+     * their ancestor's boundary, so the boundary alone does not bound them.
+     *
+     * A child's centre is its parent's centre or one of its neighbours', sqrt(3) of the child's edge length away, and
+     * edges shrink by sqrt(7) per resolution, so a descendant's centre is within sqrt(3) / (sqrt(7) - 1), about 1.05,
+     * times the cell's own circumradius of the cell's centre. The circumradius is measured on the cell's boundary,
+     * so the bound follows the cell's local size rather than the resolution's average.
+     * @param h3Index The cell's H3 index
+     * @return The bounds, longitude as x and latitude as y, or null if they reach a pole or cross the antimeridian
+     */
+    public static Envelope getDescendantBounds(long h3Index) {
+    	LatLng centre = getLatLng(h3Index);
+    	double circumradius = 0;
+    	for (LatLng vertex : getBoundary(h3Index)) {
+    		circumradius = Math.max(circumradius, getDistance(centre.lat, centre.lng, vertex.lat, vertex.lng));
+    	}
+    	double reach = circumradius * DESCENDANT_REACH / EARTH_RADIUS_KM; // Radians
+    	double latMargin = Math.toDegrees(reach);
+    	if (centre.lat - latMargin <= -90.0 || centre.lat + latMargin >= 90.0) return null;
+    	// The widest a spherical cap of that radius gets in longitude
+    	double lngMargin = Math.toDegrees(Math.asin(Math.sin(reach) / Math.cos(Math.toRadians(centre.lat))));
+    	if (centre.lng - lngMargin < -180.0 || centre.lng + lngMargin > 180.0) return null;
+    	return new Envelope(centre.lng - lngMargin, centre.lng + lngMargin, centre.lat - latMargin, centre.lat + latMargin);
+    }
+    
+    /**
+     * Get the cell a point falls in
+     * @param latitude The latitude of the point
+     * @param longitude The longitude of the point
+     * @param resolution The resolution of the cell
+     * @return The cell's H3 index
+     */
+    public static long getCell(double latitude, double longitude, int resolution) {
+    	if (h3 == null) initialize();
+    	return h3.latLngToCell(latitude, longitude, resolution);
+    }
+    
+    /**
+     * Get a cell and the cells around it
+     * @param h3Index The cell's H3 index
+     * @param rings How many rings of neighbours to include
+     * @return The H3 indexes of every cell at most that many steps away, the cell itself included
+     */
+    public static List<Long> getDisk(long h3Index, int rings) {
+    	if (h3 == null) initialize();
+    	return h3.gridDisk(h3Index, rings);
+    }
+    
+    /**
+     * Get the average edge length of the hexagons at a resolution
+     * @param resolution The resolution
+     * @return The edge length in kilometres
+     */
+    public static double getEdgeLength(int resolution) {
+    	if (h3 == null) initialize();
+    	return h3.getHexagonEdgeLengthAvg(resolution, LengthUnit.km);
+    }
+    
+    /**
+     * Get the great circle distance between two points, on the same sphere as H3's greatCircleDistance
+     * but without a native call, for hot loops
+     * @return The distance in kilometres
+     */
+    public static double getDistance(double latitudeA, double longitudeA, double latitudeB, double longitudeB) {
+    	double sinLatitude = Math.sin(Math.toRadians(latitudeB - latitudeA) / 2);
+    	double sinLongitude = Math.sin(Math.toRadians(longitudeB - longitudeA) / 2);
+    	double a = sinLatitude * sinLatitude
+    			+ Math.cos(Math.toRadians(latitudeA)) * Math.cos(Math.toRadians(latitudeB)) * sinLongitude * sinLongitude;
+    	return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1.0, Math.sqrt(a)));
     }
 }
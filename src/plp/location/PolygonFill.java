@@ -0,0 +1,142 @@
+package plp.location;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import org.locationtech.jts.geom.Envelope;
+
+import com.uber.h3core.util.LatLng;
+
+/**
+ * The cells whose centres lie inside a polygon, the same rule as H3's polygonToCells, produced a coarse cell at a time
+ * so that a region of any size can be streamed without holding all of its cells.
+ *
+ * The polygon is covered by cells FILL_DEPTH resolutions coarser: those whose centres are inside it, and every cell
+ * within NEAR_RINGS of one its boundary passes through. A fine cell's centre lies in its coarse ancestor or a neighbour
+ * of it, and a coarse cell the boundary clips is within one ring of one the boundary was sampled in, so the cover
+ * holds the ancestor of every fine cell inside. Coarse cells away from the boundary are emitted whole, the rest have
+ * each child's centre tested. The cells come out in ascending H3 index order.
+ * Edges are straight in latitude and longitude, and the polygon must not cross the antimeridian.
+ */
+public class PolygonFill implements Serializable {
+	private static final long serialVersionUID = 1L;
+	private static final int FILL_DEPTH = 4; // 7^4 = 2401 cells per coarse cell
+	private static final int NEAR_RINGS = 2; // One for the clipped cells the samples miss, one for descendants outside their ancestor
+	private static final double SAMPLES_PER_EDGE = 4; // Along the boundary, per coarse cell edge length
+	private static final double KM_PER_DEGREE = 111.195; // Of latitude, and of longitude at the equator
+
+	private final double[] latitudes;
+	private final double[] longitudes;
+
+	/**
+	 * @param boundary The vertices of the polygon, in order, at least 3
+	 */
+	public PolygonFill(List<LatLng> boundary) {
+		if (boundary.size() < 3) {
+			throw new IllegalArgumentException("A polygon needs at least 3 points.");
+		}
+		latitudes = new double[boundary.size()];
+		longitudes = new double[boundary.size()];
+		for (int i = 0; i < latitudes.length; i++) {
+			latitudes[i] = boundary.get(i).lat;
+			longitudes[i] = boundary.get(i).lng;
+		}
+	}
+
+	/**
+	 * @return The vertices of the polygon, in order
+	 */
+	public List<LatLng> getBoundary() {
+		List<LatLng> boundary = new ArrayList<>(latitudes.length);
+		for (int i = 0; i < latitudes.length; i++) {
+			boundary.add(new LatLng(latitudes[i], longitudes[i]));
+		}
+		return boundary;
+	}
+
+	/**
+	 * @return The bounds of the polygon, longitude as x and latitude as y
+	 */
+	public Envelope getBounds() {
+		return LocationUtils.getBounds(getBoundary());
+	}
+
+	/**
+	 * Whether a point is inside the polygon, by the even-odd rule.
+	 * @param point A cell centre
+	 */
+	public boolean contains(LatLng point) {
+		boolean inside = false;
+		for (int i = 0, j = latitudes.length - 1; i < latitudes.length; j = i++) {
+			if ((latitudes[i] > point.lat) != (latitudes[j] > point.lat)) {
+				double crossing = longitudes[i] + (point.lat - latitudes[i]) / (latitudes[j] - latitudes[i]) * (longitudes[j] - longitudes[i]);
+				if (point.lng < crossing) inside = !inside;
+			}
+		}
+		return inside;
+	}
+
+	/**
+	 * Stream the cells inside the polygon. Only the coarse cover is held, about one long per 2401 cells.
+	 * @param resolution The resolution of the cells
+	 * @return The H3 indexes of the cells inside, ascending
+	 */
+	public LongStream cells(int resolution) {
+		int coarseResolution = Math.max(0, resolution - FILL_DEPTH);
+		long[] near = nearBoundary(coarseResolution);
+		return LongStream.of(cover(coarseResolution, near)).flatMap(coarse -> {
+			LongStream children = LocationUtils.getChildren(coarse, resolution).stream().mapToLong(Long::longValue).sorted();
+			if (Arrays.binarySearch(near, coarse) < 0) return children; // Wholly inside
+			return children.filter(cell -> contains(LocationUtils.getLatLng(cell)));
+		});
+	}
+
+	/**
+	 * Split the cells inside the polygon by their ancestors, holding only the ancestors. Only those the boundary
+	 * passes near have their cells tested, and only once they are counted.
+	 * @param ancestorResolution The resolution of the ancestors, no finer than the cells'
+	 * @param resolution The resolution of the cells
+	 * @return The strata, in ascending order of ancestor
+	 */
+	public List<CellStratum> strata(int ancestorResolution, int resolution) {
+		long[] near = nearBoundary(ancestorResolution);
+		List<CellStratum> strata = new ArrayList<>();
+		for (long ancestor : cover(ancestorResolution, near)) {
+			strata.add(Arrays.binarySearch(near, ancestor) < 0 ? CellStratum.whole(ancestor, resolution)
+					: CellStratum.clipped(ancestor, resolution, cell -> contains(LocationUtils.getLatLng(cell))));
+		}
+		return strata;
+	}
+
+	/**
+	 * @return The coarse cells whose centres are inside the polygon or that are near its boundary, ascending
+	 */
+	private long[] cover(int coarseResolution, long[] near) {
+		return LongStream.concat(LocationUtils.getCellsInPolygon(getBoundary(), coarseResolution).stream().mapToLong(Long::longValue),
+				LongStream.of(near)).sorted().distinct().toArray();
+	}
+
+	/**
+	 * @return The coarse cells within NEAR_RINGS of the boundary, ascending
+	 */
+	private long[] nearBoundary(int coarseResolution) {
+		double spacing = LocationUtils.getEdgeLength(coarseResolution) / SAMPLES_PER_EDGE / KM_PER_DEGREE; // Degrees
+		List<Long> sampled = new ArrayList<>();
+		for (int i = 0; i < latitudes.length; i++) {
+			int j = (i + 1) % latitudes.length;
+			double length = Math.hypot(latitudes[j] - latitudes[i], longitudes[j] - longitudes[i]);
+			int steps = Math.max(1, (int) Math.ceil(length / spacing));
+			for (int step = 0; step < steps; step++) {
+				double t = (double) step / steps;
+				sampled.add(LocationUtils.getCell(latitudes[i] + t * (latitudes[j] - latitudes[i]),
+						longitudes[i] + t * (longitudes[j] - longitudes[i]), coarseResolution));
+			}
+		}
+		return sampled.stream().mapToLong(Long::longValue).distinct()
+				.flatMap(cell -> LocationUtils.getDisk(cell, NEAR_RINGS).stream().mapToLong(Long::longValue))
+				.sorted().distinct().toArray();
+	}
+}
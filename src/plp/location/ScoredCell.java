@@ -0,0 +1,36 @@
+package plp.location;
+
+/**
+ * A cell together with its combined score from a ranked query.
+ */
+public class ScoredCell implements Comparable<ScoredCell> {
+	private final LocationCell cell;
+	private final double score;
+
+	public ScoredCell(LocationCell cell, double score) {
+		this.cell = cell;
+		this.score = score;
+	}
+
+	public LocationCell getCell() {
+		return cell;
+	}
+
+	public double getScore() {
+		return score;
+	}
+
+	/**
+	 * Orders by score, then by H3 index so that ties rank the same way every run.
+	 */
+	@Override
+	public int compareTo(ScoredCell other) {
+		int byScore = Double.compare(score, other.score);
+		return byScore != 0 ? byScore : Long.compare(other.cell.getH3Index(), cell.getH3Index());
+	}
+
+	@Override
+	public String toString() {
+		return cell + "=" + score;
+	}
+}
@@ -0,0 +1,246 @@
+package plp.location;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.PriorityQueue;
+
+/**
+ * A set of H3 indexes that keeps at most {@code runSize} of them on the heap.
+ * Once the in-memory buffer fills up it is sorted and spilled as a run to a temporary file.
+ * Iterating merges every run (and the buffer) back together in ascending order, without duplicates.
+ */
+public class SpillingCellSet implements AutoCloseable {
+	private static final int IO_BUFFER_SIZE = 1 << 16;
+	private static final int INITIAL_BUFFER_SIZE = 1024;
+
+	private final int runSize;
+	private long[] buffer;
+	private int bufferSize;
+	private final List<Path> runs = new ArrayList<>();
+	private final List<RunReader> openReaders = new ArrayList<>();
+
+	/**
+	 * @param runSize The maximum number of indexes to keep in memory before spilling
+	 */
+	public SpillingCellSet(int runSize) {
+		if (runSize <= 0) {
+			throw new IllegalArgumentException("Run size must be positive: " + runSize);
+		}
+		this.runSize = runSize;
+		this.buffer = new long[Math.min(runSize, INITIAL_BUFFER_SIZE)];
+	}
+
+	public void add(long h3Index) {
+		if (bufferSize == buffer.length) {
+			if (bufferSize == runSize) {
+				spill();
+			} else {
+				buffer = Arrays.copyOf(buffer, (int) Math.min(runSize, 2L * buffer.length));
+			}
+		}
+		buffer[bufferSize++] = h3Index;
+	}
+
+	public void addAll(List<LocationCell> cells) {
+		for (LocationCell cell : cells) {
+			add(cell.getH3Index());
+		}
+	}
+
+	/**
+	 * @return Whether any run has been written to disk
+	 */
+	public boolean isSpilled() {
+		return !runs.isEmpty();
+	}
+
+	/**
+	 * Sorts the buffer and writes it out as a new run.
+	 */
+	private void spill() {
+		int size = sortUnique(buffer, bufferSize);
+		try {
+			Path run = Files.createTempFile("plp-run-", ".bin");
+			run.toFile().deleteOnExit();
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), IO_BUFFER_SIZE))) {
+				for (int i = 0; i < size; i++) {
+					out.writeLong(buffer[i]);
+				}
+			}
+			runs.add(run);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to spill cells to disk", e);
+		}
+		bufferSize = 0;
+	}
+
+	/**
+	 * Iterates every index in ascending order, merging the spilled runs with the in-memory buffer.
+	 * The set must not be modified while an iterator is in use.
+	 * @return An iterator over the distinct indexes
+	 */
+	public PrimitiveIterator.OfLong iterator() {
+		bufferSize = sortUnique(buffer, bufferSize);
+		PriorityQueue<RunReader> heads = new PriorityQueue<>((a, b) -> Long.compare(a.head, b.head));
+		RunReader memoryRun = new MemoryRunReader(buffer, bufferSize);
+		if (memoryRun.advance()) heads.add(memoryRun);
+		for (Path run : runs) {
+			RunReader reader = new FileRunReader(run);
+			openReaders.add(reader);
+			if (reader.advance()) heads.add(reader);
+		}
+
+		return new PrimitiveIterator.OfLong() {
+			private boolean hasLast;
+			private long last;
+
+			@Override
+			public boolean hasNext() {
+				while (!heads.isEmpty() && hasLast && heads.peek().head == last) {
+					pop();
+				}
+				return !heads.isEmpty();
+			}
+
+			@Override
+			public long nextLong() {
+				if (!hasNext()) throw new NoSuchElementException();
+				last = pop();
+				hasLast = true;
+				return last;
+			}
+
+			private long pop() {
+				RunReader reader = heads.poll();
+				long value = reader.head;
+				if (reader.advance()) heads.add(reader);
+				return value;
+			}
+		};
+	}
+
+	/**
+	 * Materializes the whole set. Only call this when the result is known to fit on the heap.
+	 * @return The {@link plp.location.LocationCell LocationCells}, ordered by H3 index
+	 */
+	public List<LocationCell> toList() {
+		List<LocationCell> cells = new ArrayList<>();
+		PrimitiveIterator.OfLong it = iterator();
+		while (it.hasNext()) {
+			cells.add(new LocationCell(it.nextLong()));
+		}
+		return cells;
+	}
+
+	/**
+	 * Deletes every spilled run.
+	 */
+	@Override
+	public void close() {
+		for (RunReader reader : openReaders) {
+			reader.close();
+		}
+		openReaders.clear();
+		for (Path run : runs) {
+			try {
+				Files.deleteIfExists(run);
+			} catch (IOException e) {
+				System.err.println("Failed to delete spilled run: " + run);
+			}
+		}
+		runs.clear();
+		bufferSize = 0;
+	}
+
+	/**
+	 * Sorts the first {@code size} values and removes duplicates.
+	 * @return The number of distinct values now at the front of the array
+	 */
+	private static int sortUnique(long[] values, int size) {
+		if (size == 0) return 0;
+		Arrays.sort(values, 0, size);
+		int unique = 1;
+		for (int i = 1; i < size; i++) {
+			if (values[i] != values[unique - 1]) {
+				values[unique++] = values[i];
+			}
+		}
+		return unique;
+	}
+
+	private static abstract class RunReader {
+		long head;
+
+		/**
+		 * Moves to the next value of the run.
+		 * @return false once the run is exhausted
+		 */
+		abstract boolean advance();
+
+		void close() {}
+	}
+
+	private static class MemoryRunReader extends RunReader {
+		private final long[] values;
+		private final int size;
+		private int position;
+
+		MemoryRunReader(long[] values, int size) {
+			this.values = values;
+			this.size = size;
+		}
+
+		@Override
+		boolean advance() {
+			if (position == size) return false;
+			head = values[position++];
+			return true;
+		}
+	}
+
+	private static class FileRunReader extends RunReader {
+		private final DataInputStream in;
+
+		FileRunReader(Path run) {
+			try {
+				in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), IO_BUFFER_SIZE));
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to open spilled run: " + run, e);
+			}
+		}
+
+		@Override
+		boolean advance() {
+			try {
+				head = in.readLong();
+				return true;
+			} catch (EOFException e) {
+				close();
+				return false;
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to read spilled run", e);
+			}
+		}
+
+		@Override
+		void close() {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// Nothing left to read from it either way
+			}
+		}
+	}
+}
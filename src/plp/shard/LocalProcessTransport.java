@@ -0,0 +1,62 @@
+package plp.shard;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs every shard in a fresh JVM on this machine, started with the coordinator's own classpath.
+ */
+public class LocalProcessTransport implements ShardTransport {
+	private final List<String> jvmOptions;
+
+	public LocalProcessTransport() {
+		this(List.of());
+	}
+
+	/**
+	 * @param jvmOptions Extra options for the worker JVMs, such as {@code -Xmx4g}
+	 */
+	public LocalProcessTransport(List<String> jvmOptions) {
+		this.jvmOptions = List.copyOf(jvmOptions);
+	}
+
+	@Override
+	public ShardResult execute(ShardRequest request) throws IOException {
+		List<String> command = new ArrayList<>();
+		command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+		command.addAll(jvmOptions);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(ShardWorker.class.getName());
+
+		Process process = new ProcessBuilder(command)
+				.directory(new File(System.getProperty("user.dir")))
+				.redirectError(ProcessBuilder.Redirect.INHERIT)
+				.start();
+
+		try {
+			try (OutputStream toWorker = process.getOutputStream()) {
+				ShardProtocol.writeRequest(request, toWorker);
+			}
+			ShardResult result;
+			try (InputStream fromWorker = process.getInputStream()) {
+				result = ShardProtocol.readResult(fromWorker);
+			}
+			int exitCode = process.waitFor();
+			if (exitCode != 0) {
+				throw new IOException("Shard worker for " + Long.toHexString(request.getShardId()) + " exited with code " + exitCode);
+			}
+			return result;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for shard worker", e);
+		} finally {
+			process.destroy();
+		}
+	}
+}
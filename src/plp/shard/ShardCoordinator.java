@@ -0,0 +1,149 @@
+package plp.shard;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import org.locationtech.jts.geom.Envelope;
+
+import plp.filter.Filter;
+import plp.filter.InitialFilter;
+import plp.filter.MemoryBudget;
+import plp.location.LocationUtils;
+
+/**
+ * Runs a pipeline over an {@link InitialFilter} region by splitting it into shards, one per coarse H3 ancestor.
+ * Each shard runs the same filters through a {@link ShardTransport}, and the results are handed out
+ * in shard order and then H3 index order, so the output is the same however the shards were scheduled.
+ * Shards are cut from the region as it streams, and only the shards running at once are held, with their results.
+ * A shard with more cells than the running shards may share of the memory budget is run in pieces, one after another.
+ */
+public class ShardCoordinator {
+	private final InitialFilter initialFilter;
+	private final ShardTransport transport;
+	private final List<Filter> filters = new ArrayList<>();
+	private int shardResolution = 0;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private MemoryBudget memoryBudget = MemoryBudget.fromHeap();
+
+	public ShardCoordinator(InitialFilter initialFilter, ShardTransport transport) {
+		this.initialFilter = initialFilter;
+		this.transport = transport;
+	}
+
+	public void addFilter(Filter filter) {
+		filters.add(filter);
+	}
+
+	/**
+	 * @param shardResolution The resolution of the ancestor cells that define the shards, 0 for the base cells
+	 */
+	public void setShardResolution(int shardResolution) {
+		if (shardResolution < 0 || shardResolution > 15) {
+			throw new IllegalArgumentException("Shard resolution must be between 0 and 15.");
+		}
+		this.shardResolution = shardResolution;
+	}
+
+	/**
+	 * @param parallelism The number of shards to run at the same time
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException("Parallelism must be positive.");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @param memoryBudget The budget the shards running at once share, {@link MemoryBudget#fromHeap()} by default
+	 */
+	public void setMemoryBudget(MemoryBudget memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * Run every shard, handing each one's result to the sink once it and every shard before it are done.
+	 * The filters first stage their data for the whole region, so that the workers only read it.
+	 * The region's cells must come in ascending H3 index order, as {@link InitialFilter#getValidCellIndexes()} gives them,
+	 * which puts the cells of each ancestor together.
+	 * @param sink Receives each shard's matching cells, in ascending order of shard and then H3 index,
+	 * the pieces of a shard that was split each on their own
+	 * @return The number of shards run, counting each piece of a split shard
+	 */
+	public int filterLocations(Consumer<ShardResult> sink) {
+		Envelope bounds = initialFilter.getBounds();
+		for (Filter filter : filters) {
+			if (bounds != null) filter.stage(bounds);
+		}
+		System.out.println("Running shards at resolution " + shardResolution + " with parallelism " + parallelism);
+
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		ArrayDeque<Future<ShardResult>> running = new ArrayDeque<>();
+		int shards = 0;
+		try {
+			PrimitiveIterator.OfLong cells = initialFilter.getValidCellIndexes().iterator();
+			int maxShardCells = Math.max(1, memoryBudget.getMaxCells() / parallelism);
+			long[] shardCells = new long[Math.min(maxShardCells, 1 << 16)];
+			int shardSize = 0;
+			long shardId = -1;
+			while (cells.hasNext()) {
+				long cell = cells.nextLong();
+				long parent = LocationUtils.getParent(cell, shardResolution);
+				if (shardId != -1 && parent < shardId) {
+					throw new IllegalStateException("The region's cells are not in ascending H3 index order.");
+				}
+				if (shardSize > 0 && (parent != shardId || shardSize == maxShardCells)) {
+					submit(executor, running, new ShardRequest(shardId, Arrays.copyOf(shardCells, shardSize), filters), sink);
+					shards++;
+					shardSize = 0;
+				}
+				shardId = parent;
+				if (shardSize == shardCells.length) {
+					shardCells = Arrays.copyOf(shardCells, Math.min(maxShardCells, shardSize * 2));
+				}
+				shardCells[shardSize++] = cell;
+			}
+			if (shardSize > 0) {
+				submit(executor, running, new ShardRequest(shardId, Arrays.copyOf(shardCells, shardSize), filters), sink);
+				shards++;
+			}
+			while (!running.isEmpty()) {
+				deliver(running.poll().get(), sink);
+			}
+			System.out.println("Ran " + shards + " shards");
+			return shards;
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Shard failed: " + e.getCause().getMessage(), e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for shards", e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Start a shard, first waiting for the oldest running one to finish and handing out its result if as many as
+	 * the parallelism are running.
+	 */
+	private void submit(ExecutorService executor, ArrayDeque<Future<ShardResult>> running, ShardRequest request,
+			Consumer<ShardResult> sink) throws InterruptedException, ExecutionException {
+		if (running.size() >= parallelism) {
+			deliver(running.poll().get(), sink);
+		}
+		running.add(executor.submit(() -> transport.execute(request)));
+	}
+
+	private static void deliver(ShardResult result, Consumer<ShardResult> sink) {
+		System.out.println("Shard " + Long.toHexString(result.getShardId()) + ": " + result.getCells().length);
+		sink.accept(result);
+	}
+}
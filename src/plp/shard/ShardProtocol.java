@@ -0,0 +1,61 @@
+package plp.shard;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * The wire format between a coordinator and its workers.
+ * Each message is a magic number, a protocol version and one serialized object, so it can travel over
+ * a process pipe today and a socket later.
+ */
+public class ShardProtocol {
+	private static final int MAGIC = 0x504C5053; // "PLPS"
+	private static final int VERSION = 1;
+
+	private ShardProtocol() {}
+
+	public static void writeRequest(ShardRequest request, OutputStream out) throws IOException {
+		write(request, out);
+	}
+
+	public static ShardRequest readRequest(InputStream in) throws IOException {
+		return read(ShardRequest.class, in);
+	}
+
+	public static void writeResult(ShardResult result, OutputStream out) throws IOException {
+		write(result, out);
+	}
+
+	public static ShardResult readResult(InputStream in) throws IOException {
+		return read(ShardResult.class, in);
+	}
+
+	private static void write(Object message, OutputStream out) throws IOException {
+		ObjectOutputStream objectOut = new ObjectOutputStream(new BufferedOutputStream(out));
+		objectOut.writeInt(MAGIC);
+		objectOut.writeInt(VERSION);
+		objectOut.writeObject(message);
+		objectOut.flush();
+	}
+
+	private static <T> T read(Class<T> type, InputStream in) throws IOException {
+		ObjectInputStream objectIn = new ObjectInputStream(new BufferedInputStream(in));
+		if (objectIn.readInt() != MAGIC) {
+			throw new IOException("Not a shard protocol message");
+		}
+		int version = objectIn.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported shard protocol version: " + version);
+		}
+		try {
+			return type.cast(objectIn.readObject());
+		} catch (ClassNotFoundException | ClassCastException e) {
+			throw new IOException("Unexpected shard message: " + e.getMessage(), e);
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package plp.shard;
+
+import java.io.Serializable;
+import java.util.List;
+
+import plp.filter.Filter;
+
+/**
+ * One shard of a sharded run: the cells under one coarse H3 ancestor and the pipeline to run over them.
+ */
+public class ShardRequest implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final long shardId;
+	private final long[] cells;
+	private final List<Filter> filters;
+
+	/**
+	 * @param shardId The H3 index of the ancestor cell that defines the shard
+	 * @param cells The H3 indexes of the shard's cells
+	 * @param filters The filters to apply, in order
+	 */
+	public ShardRequest(long shardId, long[] cells, List<Filter> filters) {
+		this.shardId = shardId;
+		this.cells = cells;
+		this.filters = filters;
+	}
+
+	public long getShardId() {
+		return shardId;
+	}
+
+	public long[] getCells() {
+		return cells;
+	}
+
+	public List<Filter> getFilters() {
+		return filters;
+	}
+}
@@ -0,0 +1,26 @@
+package plp.shard;
+
+import java.io.Serializable;
+
+/**
+ * The cells of one shard that passed every filter, in ascending H3 index order.
+ */
+public class ShardResult implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final long shardId;
+	private final long[] cells;
+
+	public ShardResult(long shardId, long[] cells) {
+		this.shardId = shardId;
+		this.cells = cells;
+	}
+
+	public long getShardId() {
+		return shardId;
+	}
+
+	public long[] getCells() {
+		return cells;
+	}
+}
@@ -0,0 +1,18 @@
+package plp.shard;
+
+import java.io.IOException;
+
+/**
+ * Carries a {@link ShardRequest} to wherever it is executed and brings back its {@link ShardResult}.
+ * Implementations must be safe to call from several coordinator threads at once.
+ */
+public interface ShardTransport {
+
+	/**
+	 * Run one shard to completion.
+	 * @param request The shard to run
+	 * @return The shard's matching cells
+	 * @throws IOException If the shard could not be delivered or its worker failed
+	 */
+	ShardResult execute(ShardRequest request) throws IOException;
+}
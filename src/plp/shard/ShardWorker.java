@@ -0,0 +1,57 @@
+package plp.shard;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.stream.LongStream;
+
+import plp.filter.Filter;
+import plp.filter.FilterManager;
+import plp.filter.MemoryBudget;
+
+/**
+ * Entry point of a shard worker process.
+ * Reads one {@link ShardRequest} from standard input, runs its pipeline and writes the {@link ShardResult} to standard output.
+ * Anything the filters print goes to standard error instead, so it cannot corrupt the result.
+ */
+public class ShardWorker {
+	private static final String WORKER_PROPERTY = "plp.shard.worker";
+
+	/**
+	 * @return Whether this JVM is a shard worker, whose coordinator has already staged the filters' data
+	 */
+	public static boolean isWorker() {
+		return Boolean.getBoolean(WORKER_PROPERTY);
+	}
+
+	public static void main(String[] args) {
+		System.setProperty(WORKER_PROPERTY, "true");
+		PrintStream resultOut = System.out;
+		System.setOut(System.err);
+		try {
+			ShardRequest request = ShardProtocol.readRequest(System.in);
+			ShardProtocol.writeResult(run(request), resultOut);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Runs a shard in this JVM, streaming its cells through the pipeline within this JVM's memory budget.
+	 * @param request The shard to run
+	 * @return The shard's matching cells
+	 */
+	public static ShardResult run(ShardRequest request) {
+		FilterManager filterManager = new FilterManager();
+		for (Filter filter : request.getFilters()) {
+			filterManager.addFilter(filter);
+		}
+
+		LongStream.Builder matching = LongStream.builder();
+		filterManager.applyFilters(Arrays.stream(request.getCells()).iterator(), MemoryBudget.fromHeap().getMaxCells(),
+				chunk -> chunk.forEach(cell -> matching.add(cell.getH3Index())));
+		long[] result = matching.build().sorted().distinct().toArray();
+		return new ShardResult(request.getShardId(), result);
+	}
+}
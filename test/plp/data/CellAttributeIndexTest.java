@@ -0,0 +1,126 @@
+package plp.data;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class CellAttributeIndexTest {
+	private static final int RESOLUTION = 3;
+	private static final int PARTITION_RESOLUTION = 1;
+	private static final short NONE = CellAttributeIndex.NO_VALUE;
+
+	/**
+	 * An H3 cell index from its base cell and digits, one digit per resolution.
+	 */
+	private static long cell(int baseCell, int... digits) {
+		long index = 1L << 59 | (long) digits.length << 52 | (long) baseCell << 45;
+		for (int r = 1; r <= 15; r++) {
+			long digit = r <= digits.length ? digits[r - 1] : 7;
+			index |= digit << (3 * (15 - r));
+		}
+		return index;
+	}
+
+	/**
+	 * The three digits of a cell, read as a number.
+	 */
+	private static short valueOf(long h3Index) {
+		return (short) ((h3Index >>> 36) & 0x1FF);
+	}
+
+	/**
+	 * Every descendant of partition (10, 2), and a sparse listing of partition (10, 3) as if it were mostly water.
+	 */
+	private static final Map<Long, long[]> CELLS = Map.of(
+			cell(10, 2), everyChildOf(10, 2),
+			cell(10, 3), new long[] {cell(10, 3, 6, 6), cell(10, 3, 0, 0), cell(10, 3, 4, 1)});
+
+	private static long[] everyChildOf(int baseCell, int digit) {
+		long[] cells = new long[49];
+		for (int i = 0; i < cells.length; i++) {
+			cells[cells.length - 1 - i] = cell(baseCell, digit, i / 7, i % 7); // Listed in descending order
+		}
+		return cells;
+	}
+
+	private static short[] lookup(CellAttributeIndex index, long... cells) {
+		long[] sorted = cells.clone();
+		Arrays.sort(sorted);
+		assertArrayEquals(cells, sorted, "Lookups take cells in ascending order");
+		short[] values = new short[cells.length];
+		index.lookup(cells, values);
+		return values;
+	}
+
+	@Test
+	void looksUpWhatWasBuilt() throws Exception {
+		CellAttributeIndex index = new CellAttributeIndex(Files.createTempDirectory("cells"), RESOLUTION, PARTITION_RESOLUTION, 1);
+		assertEquals(2, index.build(CELLS.keySet(), (partition, resolution) -> CELLS.get(partition), CellAttributeIndexTest::valueOf, 2));
+
+		long[] dense = Arrays.stream(everyChildOf(10, 2)).sorted().toArray();
+		short[] values = lookup(index, dense);
+		for (int i = 0; i < dense.length; i++) {
+			assertEquals(valueOf(dense[i]), values[i]);
+		}
+
+		long[] sparse = {cell(10, 2, 0, 3), cell(10, 2, 6, 6), cell(10, 3, 0, 0), cell(10, 3, 2, 2), cell(10, 3, 6, 6)};
+		assertArrayEquals(new short[] {valueOf(sparse[0]), valueOf(sparse[1]), valueOf(sparse[2]), NONE, valueOf(sparse[4])},
+				lookup(index, sparse));
+	}
+
+	@Test
+	void hasNoValueForCellsOutsideTheBuiltPartitions() throws Exception {
+		CellAttributeIndex index = new CellAttributeIndex(Files.createTempDirectory("cells"), RESOLUTION, PARTITION_RESOLUTION, 1);
+		index.build(List.of(cell(10, 2)), (partition, resolution) -> CELLS.get(partition), CellAttributeIndexTest::valueOf, 1);
+
+		assertTrue(index.hasPartition(cell(10, 2)));
+		assertFalse(index.hasPartition(cell(10, 3)));
+		assertArrayEquals(new short[] {valueOf(cell(10, 2, 1, 1)), NONE, NONE},
+				lookup(index, cell(10, 2, 1, 1), cell(10, 3, 0, 0), cell(20, 0, 0, 0)));
+	}
+
+	@Test
+	void ignoresPartitionsBuiltFromOtherData() throws Exception {
+		Path directory = Files.createTempDirectory("cells");
+		new CellAttributeIndex(directory, RESOLUTION, PARTITION_RESOLUTION, 1)
+				.build(CELLS.keySet(), (partition, resolution) -> CELLS.get(partition), CellAttributeIndexTest::valueOf, 1);
+
+		CellAttributeIndex stale = new CellAttributeIndex(directory, RESOLUTION, PARTITION_RESOLUTION, 2);
+		assertFalse(stale.hasPartition(cell(10, 2)));
+		assertArrayEquals(new short[] {NONE, NONE}, lookup(stale, cell(10, 2, 1, 1), cell(10, 3, 0, 0)));
+
+		assertEquals(2, stale.build(CELLS.keySet(), (partition, resolution) -> CELLS.get(partition), cell -> 7, 1));
+		assertArrayEquals(new short[] {7, 7}, lookup(stale, cell(10, 2, 1, 1), cell(10, 3, 0, 0)));
+	}
+
+	@Test
+	void resumesWithoutRebuildingFinishedPartitions() throws Exception {
+		Path directory = Files.createTempDirectory("cells");
+		AtomicInteger listed = new AtomicInteger();
+		CellAttributeIndex.PartitionCells counting = (partition, resolution) -> {
+			listed.incrementAndGet();
+			return CELLS.get(partition);
+		};
+		new CellAttributeIndex(directory, RESOLUTION, PARTITION_RESOLUTION, 1)
+				.build(List.of(cell(10, 2)), counting, CellAttributeIndexTest::valueOf, 1); // Then interrupted
+		assertEquals(1, listed.get());
+
+		CellAttributeIndex resumed = new CellAttributeIndex(directory, RESOLUTION, PARTITION_RESOLUTION, 1);
+		assertEquals(1, resumed.build(CELLS.keySet(), counting, CellAttributeIndexTest::valueOf, 2));
+		assertEquals(2, listed.get());
+		assertEquals(0, resumed.build(CELLS.keySet(), counting, CellAttributeIndexTest::valueOf, 2));
+		assertEquals(2, listed.get());
+		assertArrayEquals(new short[] {valueOf(cell(10, 2, 1, 1)), valueOf(cell(10, 3, 4, 1))},
+				lookup(resumed, cell(10, 2, 1, 1), cell(10, 3, 4, 1)));
+	}
+}
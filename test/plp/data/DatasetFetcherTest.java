@@ -0,0 +1,184 @@
+package plp.data;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+class DatasetFetcherTest {
+	private static final byte[] FIRST = "first tile".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] SECOND = "second tile".getBytes(StandardCharsets.UTF_8);
+
+	private static byte[] gzip(byte[] content) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+			out.write(content);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static String sha256(byte[] data) throws Exception {
+		return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+	}
+
+	/**
+	 * A mirror of two gzipped tiles in a local directory.
+	 */
+	private static Path mirror() throws IOException {
+		Path mirror = Files.createTempDirectory("mirror");
+		Files.write(mirror.resolve("a.gz"), gzip(FIRST));
+		Files.write(mirror.resolve("b.gz"), gzip(SECOND));
+		return mirror;
+	}
+
+	/**
+	 * Serves a directory, failing the first few requests for each file with a 503 and counting every request.
+	 */
+	private static class StandInServer implements AutoCloseable {
+		final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+		private final HttpServer server;
+
+		StandInServer(Path root, int failuresPerFile) throws IOException {
+			server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+			server.createContext("/", exchange -> {
+				String name = exchange.getRequestURI().getPath().substring(1);
+				int count = requests.computeIfAbsent(name, key -> new AtomicInteger()).incrementAndGet();
+				Path file = root.resolve(name);
+				if (count <= failuresPerFile) {
+					exchange.sendResponseHeaders(503, -1);
+				} else if (!Files.isRegularFile(file)) {
+					exchange.sendResponseHeaders(404, -1);
+				} else {
+					byte[] body = Files.readAllBytes(file);
+					exchange.sendResponseHeaders(200, body.length);
+					try (OutputStream out = exchange.getResponseBody()) {
+						out.write(body);
+					}
+				}
+				exchange.close();
+			});
+			server.start();
+		}
+
+		URI uri() {
+			return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+		}
+
+		int requestsFor(String name) {
+			AtomicInteger count = requests.get(name);
+			return count == null ? 0 : count.get();
+		}
+
+		@Override
+		public void close() {
+			server.stop(0);
+		}
+	}
+
+	private static boolean hasPartialFiles(Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.anyMatch(file -> file.getFileName().toString().endsWith(".part"));
+		}
+	}
+
+	@Test
+	void retriesAfterATransientFailure() throws Exception {
+		Path local = Files.createTempDirectory("local");
+		try (StandInServer server = new StandInServer(mirror(), 1)) {
+			DatasetFetcher fetcher = new DatasetFetcher(DatasetSource.of(server.uri()), local);
+			fetcher.setMaxAttempts(2);
+
+			assertArrayEquals(FIRST, fetcher.fetch("a.gz"));
+			assertEquals(2, server.requestsFor("a.gz"));
+		}
+		assertArrayEquals(gzip(FIRST), Files.readAllBytes(local.resolve("a.gz")));
+		assertFalse(hasPartialFiles(local));
+	}
+
+	@Test
+	void resumesAPartialSetOverHttp() throws Exception {
+		Path local = Files.createTempDirectory("local");
+		Files.write(local.resolve("a.gz"), gzip(FIRST)); // Left by an interrupted run
+		try (StandInServer server = new StandInServer(mirror(), 0)) {
+			DatasetFetcher fetcher = new DatasetFetcher(DatasetSource.of(server.uri()), local);
+			DatasetFetcher.Report report = fetcher.fetchAll(List.of("a.gz", "b.gz", "c.gz"), null);
+
+			assertEquals(1, report.getPresent());
+			assertEquals(1, report.getFetched());
+			assertEquals(1, report.getMissing());
+			assertTrue(report.getFailures().isEmpty());
+			assertEquals(0, server.requestsFor("a.gz"));
+			assertEquals(1, server.requestsFor("b.gz"));
+		}
+		assertArrayEquals(gzip(SECOND), Files.readAllBytes(local.resolve("b.gz")));
+		assertFalse(Files.exists(local.resolve("c.gz")));
+	}
+
+	@Test
+	void resumesAPartialSetFromAFileTree() throws Exception {
+		Path mirror = mirror();
+		Path local = Files.createTempDirectory("local");
+		byte[] kept = "kept locally".getBytes(StandardCharsets.UTF_8);
+		Files.write(local.resolve("a.gz"), gzip(kept)); // Differs from the mirror, so a fetch would replace it
+		DatasetFetcher fetcher = new DatasetFetcher(DatasetSource.of(mirror.toUri()), local);
+		Map<String, byte[]> contents = new ConcurrentHashMap<>();
+
+		DatasetFetcher.Report report = fetcher.fetchAll(List.of("a.gz", "b.gz"), contents::put);
+		assertEquals(1, report.getPresent());
+		assertEquals(1, report.getFetched());
+		assertArrayEquals(kept, contents.get("a.gz"));
+		assertArrayEquals(SECOND, contents.get("b.gz"));
+		assertArrayEquals(gzip(kept), Files.readAllBytes(local.resolve("a.gz")));
+	}
+
+	@Test
+	void rejectsAFileWithABadChecksum() throws Exception {
+		Path mirror = mirror();
+		Path local = Files.createTempDirectory("local");
+		DatasetFetcher fetcher = new DatasetFetcher(DatasetSource.of(mirror.toUri()), local);
+		fetcher.setMaxAttempts(1);
+		fetcher.setChecksums(Map.of(
+				"a.gz", sha256(gzip(FIRST)),
+				"b.gz", sha256("something else".getBytes(StandardCharsets.UTF_8))));
+
+		DatasetFetcher.Report report = fetcher.fetchAll(List.of("a.gz", "b.gz"), null);
+		assertEquals(1, report.getFetched());
+		assertEquals(List.of("b.gz"), List.copyOf(report.getFailures().keySet()));
+		assertTrue(Files.exists(local.resolve("a.gz")));
+		assertFalse(Files.exists(local.resolve("b.gz")));
+		assertFalse(hasPartialFiles(local));
+	}
+
+	@Test
+	void fetchesAgainALocalCopyThatFailsItsChecksum() throws Exception {
+		Path mirror = mirror();
+		Path local = Files.createTempDirectory("local");
+		Files.write(local.resolve("a.gz"), gzip("corrupted".getBytes(StandardCharsets.UTF_8)));
+		DatasetFetcher fetcher = new DatasetFetcher(DatasetSource.of(mirror.toUri()), local);
+		fetcher.setChecksums(Map.of("a.gz", sha256(gzip(FIRST))));
+
+		assertArrayEquals(FIRST, fetcher.fetch("a.gz"));
+		assertArrayEquals(gzip(FIRST), Files.readAllBytes(local.resolve("a.gz")));
+	}
+}
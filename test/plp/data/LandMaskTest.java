@@ -0,0 +1,80 @@
+package plp.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+class LandMaskTest {
+	private static final int RESOLUTION = 3;
+	private static final int PARTITION_RESOLUTION = 1;
+
+	/**
+	 * An H3 cell index from its base cell and digits, one digit per resolution.
+	 */
+	private static long cell(int baseCell, int... digits) {
+		long index = 1L << 59 | (long) digits.length << 52 | (long) baseCell << 45;
+		for (int r = 1; r <= 15; r++) {
+			long digit = r <= digits.length ? digits[r - 1] : 7;
+			index |= digit << (3 * (15 - r));
+		}
+		return index;
+	}
+
+	private static LandMask.Builder coast() {
+		LandMask.Builder builder = new LandMask.Builder(RESOLUTION, PARTITION_RESOLUTION);
+		builder.setPartition(cell(10, 2), true);
+		builder.setCells(cell(10, 3), new long[] {cell(10, 3, 0, 0), cell(10, 3, 6, 6)});
+		builder.setPartition(cell(20, 0), false);
+		return builder;
+	}
+
+	@Test
+	void readsEachCellsBitBack() throws Exception {
+		Path file = Files.createTempDirectory("landmask").resolve("r3.mask");
+		coast().write(file);
+		LandMask mask = LandMask.open(file);
+
+		assertEquals(LandMask.LAND, mask.lookup(cell(10, 2, 4, 5)));
+		assertEquals(LandMask.LAND, mask.lookup(cell(10, 3, 0, 0)));
+		assertEquals(LandMask.WATER, mask.lookup(cell(10, 3, 0, 1)));
+		assertEquals(LandMask.LAND, mask.lookup(cell(10, 3, 6, 6)));
+		assertEquals(LandMask.WATER, mask.lookup(cell(20, 0, 1, 1)));
+		assertEquals(LandMask.UNKNOWN, mask.lookup(cell(30, 1, 1, 1))); // Never built
+		assertEquals(LandMask.UNKNOWN, mask.lookup(cell(10, 3))); // Coarser than the mask
+		assertEquals(LandMask.LAND, mask.lookup(cell(10, 3, 6, 6, 2))); // Judged by its ancestor
+
+		long[] cells = {cell(10, 3, 0, 1), cell(10, 3, 0, 0)};
+		byte[] states = new byte[cells.length];
+		mask.lookup(cells, states);
+		assertEquals(LandMask.WATER, states[0]);
+		assertEquals(LandMask.LAND, states[1]);
+	}
+
+	@Test
+	void extendsAnExistingMask() throws Exception {
+		Path file = Files.createTempDirectory("landmask").resolve("r3.mask");
+		coast().write(file);
+		LandMask.Builder builder = LandMask.Builder.from(LandMask.open(file));
+		assertTrue(builder.hasPartition(cell(10, 3)));
+		builder.setCells(cell(40, 5), new long[] {cell(40, 5, 3, 3)});
+		builder.write(file);
+		LandMask mask = LandMask.open(file);
+
+		assertEquals(LandMask.LAND, mask.lookup(cell(10, 3, 6, 6)));
+		assertEquals(LandMask.WATER, mask.lookup(cell(10, 3, 6, 5)));
+		assertEquals(LandMask.LAND, mask.lookup(cell(40, 5, 3, 3)));
+		assertEquals(LandMask.WATER, mask.lookup(cell(40, 5, 3, 4)));
+	}
+
+	@Test
+	void refusesCellsOutsideThePartition() {
+		LandMask.Builder builder = new LandMask.Builder(RESOLUTION, PARTITION_RESOLUTION);
+		assertThrows(IllegalArgumentException.class, () -> builder.setCells(cell(10, 3), new long[] {cell(10, 4, 0, 0)}));
+		assertThrows(IllegalArgumentException.class, () -> builder.setCells(cell(10, 3), new long[] {cell(10, 3, 0)}));
+	}
+}
@@ -0,0 +1,61 @@
+package plp.data;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+class LightPollutionArchiveTest {
+	private static final int TILE = 5;
+
+	private static byte[] tileData() {
+		byte[] data = new byte[LightPollutionTiles.TILE_SIZE * LightPollutionTiles.TILE_SIZE + 1];
+		data[1] = 40; // The first pixel, then a gentle slope
+		for (int i = 2; i < data.length; i++) {
+			data[i] = (byte) (i % 3 - 1);
+		}
+		return data;
+	}
+
+	@Test
+	void readsTilesBackAfterAReaderIsInterrupted() throws Exception {
+		Path directory = Files.createTempDirectory("archive");
+		Path file = directory.resolve("atlas.plpa");
+		byte[] data = tileData();
+		LightPollutionArchive.importTiles(tileIndex -> tileIndex == TILE ? data : null, file);
+
+		try (LightPollutionArchive archive = LightPollutionArchive.open(file)) {
+			Thread.currentThread().interrupt();
+			try {
+				assertArrayEquals(data, archive.readTile(TILE));
+			} finally {
+				Thread.interrupted();
+			}
+			assertArrayEquals(data, archive.readTile(TILE)); // Still readable by everyone else
+			assertNull(archive.readTile(TILE + 1));
+		}
+		assertTrue(Files.exists(LightPollutionPyramid.pathFor(file)));
+	}
+
+	@Test
+	void leavesNothingBehindWhenAnImportFails() throws Exception {
+		Path directory = Files.createTempDirectory("archive");
+		Path file = directory.resolve("atlas.plpa");
+		byte[] data = tileData();
+
+		assertThrows(IOException.class, () -> LightPollutionArchive.importTiles(tileIndex -> {
+			if (tileIndex == TILE + 1) throw new IOException("Unreadable tile");
+			return tileIndex == TILE ? data : null;
+		}, file));
+		try (Stream<Path> left = Files.list(directory)) {
+			assertTrue(left.findAny().isEmpty());
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package plp.data;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs against the vectorised kernel when the build and JVM have jdk.incubator.vector (mvn -P vector), and is skipped otherwise.
+ */
+class LightPollutionKernelTest {
+	private static final int COUNT = 4099; // Not a multiple of any lane count, so the scalar tails run too
+
+	private static LightPollutionKernel vector() {
+		LightPollutionKernel kernel = LightPollutionKernel.best();
+		assumeFalse(kernel instanceof ScalarLightPollutionKernel, "jdk.incubator.vector is not loaded");
+		return kernel;
+	}
+
+	@Test
+	void locatesEveryLocationWhereTheScalarKernelDoes() {
+		LightPollutionKernel vector = vector();
+		Random random = new Random(7);
+		double[] latitudes = new double[COUNT];
+		double[] longitudes = new double[COUNT];
+		for (int i = 0; i < COUNT; i++) {
+			latitudes[i] = random.nextDouble() * 180.0 - 90.0; // Past both edges of the atlas
+			longitudes[i] = random.nextDouble() * 1080.0 - 540.0; // Wrapping more than once
+		}
+		// Tile edges, pixel edges and the date line, where rounding decides the answer
+		double[] edges = {-180.0, -175.0, 0.0, 180.0, 179.99999999, -65.0, 75.0, 1.0 / 240.0, 5.0 - 1.0 / 240.0, 360.0, -360.0, Double.NaN};
+		for (int i = 0; i < edges.length; i++) {
+			latitudes[i] = i % 2 == 0 ? edges[i] : 10.0;
+			longitudes[i] = edges[i];
+			latitudes[edges.length + i] = edges[i];
+			longitudes[edges.length + i] = 12.5;
+		}
+
+		int[] expectedTiles = new int[COUNT], expectedPixels = new int[COUNT];
+		int[] tiles = new int[COUNT], pixels = new int[COUNT];
+		new ScalarLightPollutionKernel().locate(latitudes, longitudes, COUNT, expectedTiles, expectedPixels);
+		vector.locate(latitudes, longitudes, COUNT, tiles, pixels);
+
+		assertArrayEquals(expectedTiles, tiles);
+		for (int i = 0; i < COUNT; i++) {
+			if (tiles[i] >= 0) assertEquals(expectedPixels[i], pixels[i], "pixel of location " + i); // Unset where there is no tile
+		}
+	}
+
+	@Test
+	void selectsTheSameBitsAsTheScalarKernel() {
+		LightPollutionKernel vector = vector();
+		Random random = new Random(11);
+		int[] compressed = new int[COUNT];
+		for (int i = 0; i < COUNT; i++) {
+			compressed[i] = random.nextInt(400) - 1;
+		}
+		long[] expected = new long[(COUNT + 63) >>> 6];
+		long[] mask = new long[expected.length];
+		Arrays.fill(expected, -1L); // Stale bits must be cleared
+		Arrays.fill(mask, -1L);
+		new ScalarLightPollutionKernel().select(compressed, COUNT, 200, expected);
+		vector.select(compressed, COUNT, 200, mask);
+
+		assertArrayEquals(expected, mask);
+	}
+}
@@ -0,0 +1,76 @@
+package plp.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+
+class SkyEphemerisTest {
+	private static double[] sunAt(String instant) {
+		double[] position = new double[2];
+		SkyEphemeris.sun(SkyEphemeris.julianDay(Instant.parse(instant)), position);
+		return new double[] {Math.toDegrees(position[0]), Math.toDegrees(position[1])};
+	}
+
+	/**
+	 * @return The difference between two angles in degrees, the short way round
+	 */
+	private static double separation(double a, double b) {
+		return Math.abs(Math.IEEEremainder(a - b, 360.0));
+	}
+
+	@Test
+	void countsJulianDaysFromTheEpoch() {
+		assertEquals(2451545.0, SkyEphemeris.julianDay(Instant.parse("2000-01-01T12:00:00Z")), 1e-9);
+		assertEquals(2440587.5, SkyEphemeris.julianDay(Instant.EPOCH), 1e-9);
+	}
+
+	@Test
+	void putsTheSunOnTheEquatorAtTheEquinoxes() {
+		double[] march = sunAt("2024-03-20T03:06:00Z");
+		assertEquals(0.0, march[1], 0.02);
+		assertEquals(0.0, separation(march[0], 0.0), 0.02);
+
+		double[] september = sunAt("2024-09-22T12:44:00Z");
+		assertEquals(0.0, september[1], 0.02);
+		assertEquals(0.0, separation(september[0], 180.0), 0.02);
+	}
+
+	@Test
+	void putsTheSunOnTheTropicsAtTheSolstices() {
+		double[] june = sunAt("2024-06-20T20:51:00Z");
+		assertEquals(23.44, june[1], 0.02);
+		assertEquals(0.0, separation(june[0], 90.0), 0.02);
+
+		double[] december = sunAt("2024-12-21T09:20:00Z");
+		assertEquals(-23.44, december[1], 0.02);
+		assertEquals(0.0, separation(december[0], 270.0), 0.02);
+	}
+
+	@Test
+	void matchesTheAlmanacSun() {
+		// Meeus, Astronomical Algorithms, example 25.a: 1992 October 13 at 0h TD
+		double[] sun = sunAt("1992-10-13T00:00:00Z");
+		assertEquals(0.0, separation(sun[0], 198.38083), 0.02);
+		assertEquals(-7.78507, sun[1], 0.02);
+	}
+
+	@Test
+	void matchesTheAlmanacMoon() {
+		// Meeus, Astronomical Algorithms, example 47.a: 1992 April 12 at 0h TD, a minute from 0h UT
+		double[] position = new double[3];
+		SkyEphemeris.moon(SkyEphemeris.julianDay(Instant.parse("1992-04-12T00:00:00Z")), position);
+
+		assertEquals(0.0, separation(Math.toDegrees(position[0]), 134.688470), 0.3);
+		assertEquals(13.768368, Math.toDegrees(position[1]), 0.3);
+		assertEquals(0.991990, Math.toDegrees(position[2]), 0.01);
+	}
+
+	@Test
+	void turnsTheSiderealClockOnceADayAndFourMinutesMore() {
+		double midnight = SkyEphemeris.julianDay(Instant.parse("2024-01-01T00:00:00Z"));
+		double gained = SkyEphemeris.greenwichSiderealTime(midnight + 1) - SkyEphemeris.greenwichSiderealTime(midnight);
+		assertEquals(0.98565, Math.toDegrees(Math.IEEEremainder(gained, 2 * Math.PI)), 1e-4);
+	}
+}
@@ -0,0 +1,88 @@
+package plp.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+
+class WeatherHistoryTest {
+	private static final int FIRST_COLUMN = 40;
+	private static final LocalDate MONDAY = LocalDate.of(2024, 6, 3);
+	private static final LocalDate TUESDAY = MONDAY.plusDays(1);
+
+	private static WeatherQualityMosaic.Zone zone(int left, int right) {
+		return new WeatherQualityMosaic.Zone(FIRST_COLUMN, 2, 1, new byte[] {(byte) left, (byte) right});
+	}
+
+	private static WeatherHistory twoDays() {
+		WeatherHistory history = WeatherHistory.empty(FIRST_COLUMN, 2, 1);
+		history.add(MONDAY, zone(35, 100));
+		history.add(TUESDAY, zone(10, 0));
+		return history;
+	}
+
+	@Test
+	void countsDaysAtOrAboveEachThreshold() {
+		WeatherHistory history = twoDays();
+
+		assertEquals(1.0, history.getFractionAtLeast(FIRST_COLUMN, 0, 0), 0);
+		assertEquals(1.0, history.getFractionAtLeast(FIRST_COLUMN, 0, 10), 0); // Met exactly on Tuesday
+		assertEquals(0.5, history.getFractionAtLeast(FIRST_COLUMN, 0, 30), 0);
+		assertEquals(0.0, history.getFractionAtLeast(FIRST_COLUMN, 0, 40), 0);
+		assertEquals(0.5, history.getFractionAtLeast(FIRST_COLUMN + 1, 0, 100), 0);
+		assertEquals(1.0, history.getFractionAtLeast(FIRST_COLUMN + 1, 0, 0), 0);
+		assertFalse(history.add(MONDAY, zone(100, 100)));
+		assertEquals(2, history.getDayCount());
+	}
+
+	@Test
+	void averagesEachPixelsQuality() {
+		WeatherHistory history = twoDays();
+
+		assertEquals(22.5, history.getMeanQuality(FIRST_COLUMN, 0), 0);
+		assertEquals(50.0, history.getMeanQuality(FIRST_COLUMN + 1, 0), 0);
+		assertEquals(0.0, WeatherHistory.empty(FIRST_COLUMN, 2, 1).getMeanQuality(FIRST_COLUMN, 0), 0);
+	}
+
+	@Test
+	void coversOnlyItsOwnPixels() {
+		WeatherHistory history = twoDays();
+
+		assertTrue(history.covers(FIRST_COLUMN, 0));
+		assertTrue(history.covers(FIRST_COLUMN + 1, 0));
+		assertFalse(history.covers(FIRST_COLUMN - 1, 0)); // The next timezone west
+		assertFalse(history.covers(FIRST_COLUMN + 2, 0));
+		assertFalse(history.covers(FIRST_COLUMN, -1)); // North of the image
+		assertFalse(history.covers(FIRST_COLUMN, 1));
+		assertThrows(ArrayIndexOutOfBoundsException.class, () -> history.getFractionAtLeast(FIRST_COLUMN, 1, 10));
+		assertThrows(ArrayIndexOutOfBoundsException.class, () -> history.getMeanQuality(FIRST_COLUMN + 2, 0));
+	}
+
+	@Test
+	void refusesThresholdsItDoesNotKeep() {
+		WeatherHistory history = twoDays();
+
+		assertThrows(IllegalArgumentException.class, () -> history.getFractionAtLeast(FIRST_COLUMN, 0, 35));
+		assertThrows(IllegalArgumentException.class, () -> history.getFractionAtLeast(FIRST_COLUMN, 0, 110));
+		assertThrows(IllegalArgumentException.class, () -> history.getFractionAtLeast(FIRST_COLUMN, 0, -10));
+	}
+
+	@Test
+	void readsBackWhatItWrote() throws Exception {
+		Path file = Files.createTempDirectory("history").resolve("sunset_pt.hist");
+		twoDays().write(file);
+
+		for (WeatherHistory history : new WeatherHistory[] {WeatherHistory.read(file), WeatherHistory.map(file)}) {
+			assertEquals(2, history.getDayCount());
+			assertEquals(0.5, history.getFractionAtLeast(FIRST_COLUMN, 0, 20), 0);
+			assertEquals(0.5, history.getFractionAtLeast(FIRST_COLUMN + 1, 0, 90), 0);
+			assertEquals(22.5, history.getMeanQuality(FIRST_COLUMN, 0), 0);
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package plp.filter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import plp.Config;
+import plp.filters.BoundingBoxFilter;
+import plp.location.LocationCell;
+import plp.location.LocationUtils;
+
+class SelectivityEstimatorTest {
+	private static final int STRATUM_RESOLUTION = 2;
+
+	/**
+	 * A fixed set of cells as the region.
+	 */
+	private static class FixedRegion implements InitialFilter {
+		private static final long serialVersionUID = 1L;
+		private final List<Long> cells;
+
+		FixedRegion(List<Long> cells) {
+			this.cells = cells;
+		}
+
+		@Override
+		public List<LocationCell> getValidCells() {
+			return cells.stream().map(LocationCell::new).toList();
+		}
+
+		@Override
+		public void setRequirements(Object requirements) {}
+
+		@Override
+		public String getRequirements() {
+			return "";
+		}
+
+		@Override
+		public void setLocations(List<LocationCell> locations) {}
+
+		@Override
+		public List<LocationCell> process() {
+			return getValidCells();
+		}
+	}
+
+	/**
+	 * Keeps the cells of a set, taking 40 ms of the test's clock per call, so a 60 ms budget only allows one round
+	 * however fast the machine is.
+	 */
+	private static class SlowMembership implements Filter {
+		private static final long serialVersionUID = 1L;
+		private static final long NANOS_PER_CALL = 40_000_000L;
+		private final Set<Long> kept;
+		private final AtomicLong clock;
+		private List<LocationCell> locations;
+
+		SlowMembership(Set<Long> kept, AtomicLong clock) {
+			this.kept = kept;
+			this.clock = clock;
+		}
+
+		@Override
+		public void setRequirements(Object requirements) {}
+
+		@Override
+		public String getRequirements() {
+			return "";
+		}
+
+		@Override
+		public void setLocations(List<LocationCell> locations) {
+			this.locations = locations;
+		}
+
+		@Override
+		public List<LocationCell> process() {
+			clock.addAndGet(NANOS_PER_CALL);
+			return locations.stream().filter(cell -> kept.contains(cell.getH3Index())).toList();
+		}
+	}
+
+	@Test
+	void weightsEachStratumByItsShareOfTheRegion() {
+		long large = LocationUtils.getCell(10.0, 10.0, STRATUM_RESOLUTION);
+		long small = LocationUtils.getCell(-30.0, 120.0, STRATUM_RESOLUTION);
+		List<Long> cells = new ArrayList<>(LocationUtils.getChildren(large, STRATUM_RESOLUTION + 6));
+		List<Long> smallCells = LocationUtils.getChildren(small, STRATUM_RESOLUTION + 6).subList(0, 5);
+		cells.addAll(smallCells);
+
+		// Only the small stratum passes, and its single sampled cell stands for all 5 of its cells
+		AtomicLong clock = new AtomicLong();
+		SelectivityEstimator estimator = new SelectivityEstimator(new FixedRegion(cells),
+				List.of(new SlowMembership(new HashSet<>(smallCells), clock)), 1);
+		estimator.setStratumResolution(STRATUM_RESOLUTION);
+		estimator.setClock(clock::get);
+		SelectivityEstimate estimate = estimator.estimate(Duration.ofMillis(60));
+
+		assertTrue(estimate.getSampledCells() < cells.size(), "The whole region was sampled");
+		assertEquals(5.0, estimate.getOutput().getEstimatedCount(), 1e-6);
+		assertEquals(5.0 / cells.size(), estimate.getStages().get(0).getSelectivity(), 1e-12);
+	}
+
+	@Test
+	void samplesNothingWithoutABudget() {
+		List<Long> cells = LocationUtils.getChildren(LocationUtils.getCell(10.0, 10.0, STRATUM_RESOLUTION), STRATUM_RESOLUTION + 2);
+		AtomicLong clock = new AtomicLong();
+		SelectivityEstimator estimator = new SelectivityEstimator(new FixedRegion(cells), List.of(new SlowMembership(Set.of(), clock)), 1);
+		estimator.setClock(clock::get);
+		SelectivityEstimate estimate = estimator.estimate(Duration.ZERO);
+		assertEquals(0, estimate.getSampledCells());
+		assertEquals(cells.size(), estimate.getOutput().getUpperCount(), 1e-9);
+	}
+
+	@Test
+	void anEmptyPipelineKeepsTheRegion() {
+		List<Long> cells = LocationUtils.getChildren(LocationUtils.getCell(10.0, 10.0, STRATUM_RESOLUTION), STRATUM_RESOLUTION + 1);
+		SelectivityEstimator estimator = new SelectivityEstimator(new FixedRegion(cells), List.of(), 1);
+		estimator.setClock(() -> 0);
+		SelectivityEstimate estimate = estimator.estimate(Duration.ofMillis(10));
+		assertEquals(cells.size(), estimate.getOutput().getEstimatedCount(), 1e-9);
+	}
+
+	@Test
+	void countsAPolygonRegionWithoutStreamingIt() {
+		BoundingBoxFilter region = new BoundingBoxFilter();
+		region.setRequirements(new double[] {10.0, 10.6, 20.0, 20.6});
+		Set<Long> kept = new HashSet<>();
+		region.getValidCellIndexes().filter(cell -> cell % 4 == 0).forEach(kept::add);
+		AtomicLong clock = new AtomicLong();
+		SelectivityEstimator estimator = new SelectivityEstimator(region, List.of(new SlowMembership(kept, clock)), 3);
+		estimator.setClock(clock::get);
+
+		// Enough budget to sample every cell, when the estimate is exact
+		SelectivityEstimate estimate = estimator.estimate(Duration.ofDays(1));
+		assertEquals(region.getValidCellIndexes().count(), estimate.getRegionCells());
+		assertEquals(estimate.getRegionCells(), estimate.getSampledCells());
+		assertEquals(kept.size(), estimate.getOutput().getEstimatedCount(), 1e-6);
+	}
+
+	@Test
+	void stopsDrawingOnceTheBudgetRunsOut() {
+		BoundingBoxFilter region = new BoundingBoxFilter();
+		region.setRequirements(new double[] {10.0, 10.6, 20.0, 20.6});
+		AtomicLong clock = new AtomicLong();
+		SelectivityEstimator estimator = new SelectivityEstimator(region, List.of(), 3);
+		estimator.setStratumResolution(Config.H3_RESOLUTION); // A stratum per cell, so the first round is the whole region
+		estimator.setClock(() -> clock.addAndGet(1_000_000L)); // Every look at the clock takes a millisecond
+
+		SelectivityEstimate estimate = estimator.estimate(Duration.ofMillis(50));
+		assertTrue(estimate.getSampledCells() < estimate.getRegionCells());
+		assertTrue(clock.get() < 100_000_000L); // Not the whole region, however large
+	}
+}
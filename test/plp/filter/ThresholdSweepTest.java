@@ -0,0 +1,57 @@
+package plp.filter;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.Test;
+
+import plp.location.LocationCell;
+
+class ThresholdSweepTest {
+
+	private static List<LocationCell> cells(int count) {
+		return LongStream.range(0, count).mapToObj(LocationCell::new).toList();
+	}
+
+	@Test
+	void countsTheCellsReachingEachThreshold() {
+		double[] values = {1, 5, 3, 9, 5, 0};
+		ThresholdSweep sweep = ThresholdSweep.compute(cells(values.length), values, 0, 10, 10, new double[]{5, 2}, false);
+		assertArrayEquals(new double[]{2, 5}, sweep.getThresholds());
+		assertArrayEquals(new long[]{4, 3}, sweep.getSurvivingCounts());
+		assertArrayEquals(new long[]{1, 1, 0, 1, 0, 2, 0, 0, 0, 1}, sweep.getHistogram());
+		assertEquals(6, sweep.getCumulativeCounts()[0]);
+	}
+
+	@Test
+	void resultsAreNestedPrefixesOfOneOrdering() {
+		double[] values = {1, 5, 3, 9, 5, 0};
+		List<LocationCell> cells = cells(values.length);
+		ThresholdSweep sweep = ThresholdSweep.compute(cells, values, 0, 10, 10, new double[]{2, 5, 8}, true);
+		assertEquals(List.of(cells.get(3)), sweep.getResults(2));
+		assertEquals(List.of(cells.get(3), cells.get(1), cells.get(4)), sweep.getResults(1));
+		assertEquals(List.of(cells.get(3), cells.get(1), cells.get(4), cells.get(2)), sweep.getResults(0));
+		assertThrows(UnsupportedOperationException.class, () -> sweep.getResults(0).clear());
+	}
+
+	@Test
+	void leavesCellsWithoutValuesOutOfEveryCount() {
+		double[] values = {Double.NaN, 5, Double.NaN, 0};
+		List<LocationCell> cells = cells(values.length);
+		ThresholdSweep sweep = ThresholdSweep.compute(cells, values, 0, 10, 10, new double[]{0, 5}, true);
+		assertArrayEquals(new long[]{1, 0, 0, 0, 0, 1, 0, 0, 0, 0}, sweep.getHistogram());
+		assertEquals(2, sweep.getCumulativeCounts()[0]);
+		assertArrayEquals(new long[]{2, 1}, sweep.getSurvivingCounts());
+		assertEquals(List.of(cells.get(1), cells.get(3)), sweep.getResults(0));
+	}
+
+	@Test
+	void refusesResultsItDidNotCollect() {
+		ThresholdSweep sweep = ThresholdSweep.compute(cells(1), new double[]{1}, 0, 10, 10, new double[]{0}, false);
+		assertThrows(IllegalStateException.class, () -> sweep.getResults(0));
+	}
+}
@@ -0,0 +1,86 @@
+package plp.filter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import plp.Config;
+import plp.location.LocationCell;
+import plp.location.LocationUtils;
+import plp.location.ScoredCell;
+
+class TopKQueryTest {
+
+	/**
+	 * Scores cells from a table, without any data.
+	 */
+	private static class TableScore implements ScoredFilter {
+		private static final long serialVersionUID = 1L;
+		private final Map<Long, Double> scores;
+
+		TableScore(Map<Long, Double> scores) {
+			this.scores = scores;
+		}
+
+		@Override
+		public double getScore(LocationCell cell) {
+			return scores.get(cell.getH3Index());
+		}
+
+		@Override
+		public void setRequirements(Object requirements) {}
+
+		@Override
+		public String getRequirements() {
+			return "";
+		}
+
+		@Override
+		public void setLocations(List<LocationCell> locations) {}
+
+		@Override
+		public List<LocationCell> process() {
+			return List.of();
+		}
+	}
+
+	@Test
+	void tiesWithTheKthScoreGoToTheLowestIndexWhateverTheArrivalOrder() {
+		Map<Long, Double> scores = new HashMap<>();
+		List<LocationCell> cells = new ArrayList<>();
+		for (int i = 0; i < 40; i++) {
+			long cell = LocationUtils.getCell(10.0 + i * 0.05, 20.0 + (i % 7) * 0.05, Config.H3_RESOLUTION);
+			scores.put(cell, i < 3 ? 0.9 : 0.5); // Three clear winners, then a tie across the rest
+			cells.add(new LocationCell(cell));
+		}
+
+		List<ScoredCell> expected = null;
+		for (long seed = 0; seed < 5; seed++) {
+			List<LocationCell> shuffled = new ArrayList<>(cells);
+			Collections.shuffle(shuffled, new Random(seed));
+			TopKQuery query = new TopKQuery(6);
+			query.addScore(new TableScore(scores), 1.0);
+			query.offer(shuffled.subList(0, 15)); // In two chunks, so the bound is raised before the rest arrive
+			query.offer(shuffled.subList(15, shuffled.size()));
+
+			List<ScoredCell> results = query.getResults();
+			assertEquals(6, results.size());
+			if (expected == null) {
+				expected = results;
+				List<Long> tied = cells.stream().map(LocationCell::getH3Index).filter(cell -> scores.get(cell) == 0.5).sorted().toList();
+				assertEquals(tied.subList(0, 3), results.subList(3, 6).stream().map(scored -> scored.getCell().getH3Index()).toList());
+			} else {
+				for (int i = 0; i < results.size(); i++) {
+					assertEquals(expected.get(i).getCell().getH3Index(), results.get(i).getCell().getH3Index());
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package plp.filters;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+
+import plp.filters.raster.RasterLayer;
+import plp.filters.raster.RasterSampling;
+import plp.filters.raster.RasterTileCache;
+
+class AstronomicalDarknessFilterTest {
+	private static final double STEP_HOURS = 10 / 60.0;
+	private static final int STEPS_PER_DAY = 144;
+	private static final LocalDate JUNE_SOLSTICE = LocalDate.of(2024, 6, 20);
+	private static final LocalDate DECEMBER_SOLSTICE = LocalDate.of(2024, 12, 21);
+
+	private static double darkHours(AstronomicalDarknessFilter.Sky sky, double latitude, double longitude, int nights, boolean moonDown) {
+		return sky.darkSteps(Math.toRadians(latitude), longitude, nights, moonDown) * STEP_HOURS / nights;
+	}
+
+	/**
+	 * Hours the Sun spends more than 18 degrees down, from its declination alone.
+	 */
+	private static double expectedDarkHours(double latitude, double declination) {
+		double phi = Math.toRadians(latitude), delta = Math.toRadians(declination);
+		double cosHourAngle = (Math.sin(Math.toRadians(-18.0)) - Math.sin(phi) * Math.sin(delta)) / (Math.cos(phi) * Math.cos(delta));
+		return 24.0 - 2 * Math.toDegrees(Math.acos(cosHourAngle)) / 15.0;
+	}
+
+	@Test
+	void isDarkAllDayInThePolarNight() {
+		AstronomicalDarknessFilter.Sky sky = new AstronomicalDarknessFilter.Sky(DECEMBER_SOLSTICE, 1);
+
+		assertEquals(STEPS_PER_DAY, sky.darkSteps(Math.toRadians(88.0), 0.0, 1, false));
+		assertEquals(0, sky.darkSteps(Math.toRadians(-88.0), 0.0, 1, false)); // The midnight sun
+		assertTrue(sky.darkSteps(Math.toRadians(88.0), 0.0, 1, true) < STEPS_PER_DAY); // The Moon rises some time that day
+	}
+
+	@Test
+	void followsTheSunAtMidLatitudesInSummer() {
+		AstronomicalDarknessFilter.Sky sky = new AstronomicalDarknessFilter.Sky(JUNE_SOLSTICE, 3);
+
+		assertEquals(expectedDarkHours(40.0, 23.44), darkHours(sky, 40.0, -3.7, 3, false), 2 * STEP_HOURS);
+		assertEquals(0.0, darkHours(sky, 52.0, 0.0, 3, false), 0); // Twilight all night
+		assertEquals(expectedDarkHours(-40.0, 23.44), darkHours(sky, -40.0, 145.0, 3, false), 2 * STEP_HOURS); // Southern winter
+		assertTrue(darkHours(sky, 40.0, -3.7, 3, true) <= darkHours(sky, 40.0, -3.7, 3, false));
+	}
+
+	@Test
+	void reachesTheEndsOfTheSkyAtTheDateLine() {
+		for (int nights : new int[] {1, 3}) {
+			AstronomicalDarknessFilter.Sky sky = new AstronomicalDarknessFilter.Sky(LocalDate.of(2024, 3, 18), nights);
+			double east = darkHours(sky, 0.0, 180.0, nights, false); // Its nights start first, at the first step
+			double west = darkHours(sky, 0.0, -180.0, nights, false); // Its last night ends at the last step
+			double expected = expectedDarkHours(0.0, 0.0);
+
+			assertEquals(expected, east, 2 * STEP_HOURS);
+			assertEquals(expected, west, 2 * STEP_HOURS);
+			assertEquals(darkHours(sky, 0.0, 179.9, nights, false), east, STEP_HOURS);
+			assertEquals(darkHours(sky, 0.0, -179.9, nights, false), west, STEP_HOURS);
+		}
+	}
+
+	@Test
+	void interpolatesBetweenNodes() {
+		AstronomicalDarknessFilter.DarknessRaster raster = new AstronomicalDarknessFilter.DarknessRaster(JUNE_SOLSTICE, 2, false);
+		RasterTileCache cache = new RasterTileCache(1 << 20);
+		RasterLayer bilinear = new RasterLayer(raster, cache, RasterSampling.BILINEAR);
+		RasterLayer nearest = new RasterLayer(raster, cache, RasterSampling.NEAREST);
+
+		// Nodes every quarter degree, where darkness changes fastest with latitude
+		for (double latitude = 40.0; latitude < 48.0; latitude += 0.25) {
+			for (double longitude : new double[] {-180.0, -0.25, 10.0, 179.75}) {
+				double below = nearest.sample(latitude, longitude);
+				double above = nearest.sample(latitude + 0.25, longitude);
+				assertEquals(below, bilinear.sample(latitude, longitude), 1e-9);
+
+				double between = bilinear.sample(latitude + 0.1, longitude);
+				assertTrue(between >= Math.min(below, above) - 1e-9 && between <= Math.max(below, above) + 1e-9);
+				assertEquals(below + 0.4 * (above - below), between, 1e-6);
+			}
+		}
+
+		// Across the date line, between the last column of nodes and the first
+		double west = nearest.sample(45.0, 179.75), east = nearest.sample(45.0, -180.0);
+		assertEquals((west + east) / 2, bilinear.sample(45.0, 179.875), 1e-6);
+	}
+}
@@ -0,0 +1,103 @@
+package plp.filters;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.uber.h3core.util.LatLng;
+
+import plp.Config;
+import plp.location.LocationCell;
+import plp.location.LocationUtils;
+
+class FeatureDistanceFilterTest {
+	private static final double DISTANCE_KM = 5.0; // Expanded at the cells' own resolution
+	private static final double[][] FEATURES = {
+			{0.20, 0.20}, {0.30, 0.35},
+			{0.52, 0.25}, // Outside the region, but within the distance of its northern edge
+			{5.0, 5.0}}; // Far from it
+
+	private static List<LocationCell> region() {
+		BoundingBoxFilter box = new BoundingBoxFilter();
+		box.setRequirements(new double[] {0.0, 0.5, 0.0, 0.5});
+		return box.getValidCells();
+	}
+
+	private static Path write(double[][] features) throws Exception {
+		StringBuilder csv = new StringBuilder("lat,lng\n");
+		for (double[] feature : features) {
+			csv.append(feature[0]).append(',').append(feature[1]).append('\n');
+		}
+		Path file = Files.createTempDirectory("features").resolve("features.csv");
+		Files.writeString(file, csv);
+		return file;
+	}
+
+	private static List<LocationCell> filter(Path features, String mode, List<LocationCell> cells) {
+		FeatureDistanceFilter filter = new FeatureDistanceFilter();
+		filter.setRequirements(features + "," + DISTANCE_KM + "," + mode);
+		filter.setLocations(cells);
+		return filter.process();
+	}
+
+	private static double nearest(LocationCell cell, double[][] features) {
+		LatLng centre = LocationUtils.getLatLng(cell);
+		double nearest = Double.MAX_VALUE;
+		for (double[] feature : features) {
+			nearest = Math.min(nearest, LocationUtils.getDistance(centre.lat, centre.lng, feature[0], feature[1]));
+		}
+		return nearest;
+	}
+
+	@Test
+	void keepsTheCellsTheRingsReachWithinTheDistance() throws Exception {
+		List<LocationCell> cells = region();
+		Set<Long> kept = new HashSet<>();
+		filter(write(FEATURES), "Within", cells).forEach(cell -> kept.add(cell.getH3Index()));
+
+		// A cell can be measured against a feature about as near as its nearest, up to about a cell off
+		double tolerance = LocationUtils.getEdgeLength(Config.H3_RESOLUTION);
+		int checked = 0;
+		for (LocationCell cell : cells) {
+			double distance = nearest(cell, FEATURES);
+			if (Math.abs(distance - DISTANCE_KM) <= tolerance) continue;
+			assertEquals(distance < DISTANCE_KM, kept.contains(cell.getH3Index()), "cell " + Long.toHexString(cell.getH3Index()));
+			checked++;
+		}
+		assertTrue(checked > cells.size() / 2);
+		LocationCell edge = cells.stream().min(Comparator.comparingDouble(cell -> nearest(cell, new double[][] {FEATURES[2]}))).get();
+		assertTrue(nearest(edge, new double[][] {FEATURES[2]}) < DISTANCE_KM); // And no other feature is near it
+		assertTrue(kept.contains(edge.getH3Index())); // Reached only from the feature outside the region
+	}
+
+	@Test
+	void keepsTheRestBeyondTheDistance() throws Exception {
+		List<LocationCell> cells = region();
+		Path features = write(FEATURES);
+		Set<Long> within = new HashSet<>();
+		filter(features, "Within", cells).forEach(cell -> within.add(cell.getH3Index()));
+		List<LocationCell> beyond = filter(features, "Beyond", cells);
+
+		assertEquals(cells.size(), within.size() + beyond.size());
+		for (LocationCell cell : beyond) {
+			assertFalse(within.contains(cell.getH3Index()));
+		}
+	}
+
+	@Test
+	void keepsNothingWithinOfFarFeatures() throws Exception {
+		List<LocationCell> cells = region();
+
+		assertTrue(filter(write(new double[][] {{5.0, 5.0}, {-3.0, 0.25}}), "Within", cells).isEmpty());
+		assertEquals(cells.size(), filter(write(new double[][] {{5.0, 5.0}}), "Beyond", cells).size());
+	}
+}
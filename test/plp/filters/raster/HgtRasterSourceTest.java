@@ -0,0 +1,42 @@
+package plp.filters.raster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+class HgtRasterSourceTest {
+
+	private static void writeTile(Path directory, int samples, short height) throws Exception {
+		ByteBuffer heights = ByteBuffer.allocate(samples * samples * Short.BYTES); // Big-endian
+		for (int i = 0; i < samples * samples; i++) {
+			heights.putShort(height);
+		}
+		Files.write(directory.resolve(HgtRasterSource.fileName(37, -122)), heights.array());
+	}
+
+	private static int sample(HgtRasterSource source) {
+		int[] tiles = new int[1], columns = new int[1], rows = new int[1];
+		source.locate(new double[]{37.5}, new double[]{-121.5}, 1, tiles, columns, rows);
+		return source.getValue(tiles[0], columns[0], rows[0]);
+	}
+
+	@Test
+	void readsThreeArcSecondTiles() throws Exception {
+		Path directory = Files.createTempDirectory("hgt");
+		writeTile(directory, 1201, (short) 1234);
+		assertEquals(1234, sample(new HgtRasterSource(directory)));
+	}
+
+	@Test
+	void refusesSquaresOfOtherSizes() throws Exception {
+		Path directory = Files.createTempDirectory("hgt");
+		writeTile(directory, 100, (short) 1234);
+		assertThrows(UncheckedIOException.class, () -> sample(new HgtRasterSource(directory)));
+	}
+}
@@ -0,0 +1,134 @@
+package plp.filters.raster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class RasterTileCacheTest {
+	private static final int TILE_SIZE = 10;
+
+	/**
+	 * Tiles of one value each, the tile's index, with only tiles from 0 to 99.
+	 */
+	private static class CountingSource implements CachedRasterSource {
+		final AtomicInteger loads = new AtomicInteger();
+		volatile CountDownLatch gate; // Holds every load until it opens, if set
+		volatile int failuresLeft;
+
+		@Override
+		public String getName() {
+			return "counting";
+		}
+
+		@Override
+		public void locate(double[] latitudes, double[] longitudes, int count, int[] tiles, int[] columns, int[] rows) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public RasterTile loadTile(int tile) throws IOException {
+			loads.incrementAndGet();
+			CountDownLatch waitFor = gate;
+			if (waitFor != null) {
+				try {
+					waitFor.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+			}
+			if (failuresLeft > 0) {
+				failuresLeft--;
+				throw new IOException("Unreadable");
+			}
+			if (tile < 0 || tile >= 100) return null;
+			short[] values = new short[TILE_SIZE * TILE_SIZE];
+			Arrays.fill(values, (short) tile);
+			return new RasterTile(values, TILE_SIZE, TILE_SIZE);
+		}
+	}
+
+	private static long tileBytes() {
+		return new RasterTile(new short[TILE_SIZE * TILE_SIZE], TILE_SIZE, TILE_SIZE).getBytes();
+	}
+
+	@Test
+	void threadsMissingOnOneTileShareOneLoad() throws Exception {
+		RasterTileCache cache = new RasterTileCache(1 << 20);
+		CountingSource source = new CountingSource();
+		source.gate = new CountDownLatch(1);
+		int threads = 8;
+		CountDownLatch started = new CountDownLatch(threads);
+		List<Future<RasterTile>> results = new ArrayList<>();
+		try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+			for (int i = 0; i < threads; i++) {
+				results.add(executor.submit(() -> {
+					started.countDown();
+					return cache.get(source, 7);
+				}));
+			}
+			started.await();
+			Thread.sleep(100); // Lets the other threads reach the load in progress
+			source.gate.countDown();
+			RasterTile first = results.get(0).get();
+			for (Future<RasterTile> result : results) {
+				assertSame(first, result.get());
+			}
+		}
+		assertEquals(1, source.loads.get());
+		assertEquals(7, cache.get(source, 7).getValue(0, 0));
+		assertEquals(1, source.loads.get());
+	}
+
+	@Test
+	void forgetsAFailedLoad() {
+		RasterTileCache cache = new RasterTileCache(1 << 20);
+		CountingSource source = new CountingSource();
+		source.failuresLeft = 1;
+
+		assertThrows(UncheckedIOException.class, () -> cache.get(source, 3));
+		assertEquals(3, cache.get(source, 3).getValue(1, 1));
+		assertEquals(2, source.loads.get());
+	}
+
+	@Test
+	void remembersMissingTiles() {
+		RasterTileCache cache = new RasterTileCache(1 << 20);
+		CountingSource source = new CountingSource();
+
+		assertNull(cache.get(source, 500));
+		assertNull(cache.view(source).get(500));
+		assertEquals(1, source.loads.get());
+	}
+
+	@Test
+	void viewsReloadTilesTheCacheEvicted() {
+		RasterTileCache cache = new RasterTileCache(2 * tileBytes()); // Room for two tiles
+		CountingSource source = new CountingSource();
+		RasterTileCache.View view = cache.view(source);
+
+		assertEquals(1, view.get(1).getValue(0, 0));
+		assertEquals(1, view.get(1).getValue(0, 0)); // From the view
+		assertEquals(1, source.loads.get());
+		view.get(2);
+		view.get(3); // Evicts tile 1
+		assertTrue(cache.getUsedBytes() <= cache.getMaxBytes());
+		assertEquals(1, view.get(1).getValue(0, 0));
+		assertEquals(4, source.loads.get());
+	}
+}
@@ -0,0 +1,31 @@
+package plp.location;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import plp.Config;
+
+class LocalityOrderTest {
+
+	@Test
+	void keepsEveryCellAndOrdersBlocksSouthToNorth() {
+		// Far enough north that the block number uses the key's top bit
+		List<LocationCell> cells = new ArrayList<>();
+		double[] latitudes = {70.1, 10.1, 55.1, -40.1, 85.1, 52.6};
+		for (double latitude : latitudes) {
+			cells.add(new LocationCell(LocationUtils.getCell(latitude, 3.1, Config.H3_RESOLUTION)));
+		}
+		List<LocationCell> sorted = LocalityOrder.sort(cells);
+		assertEquals(cells.size(), sorted.size());
+		assertTrue(sorted.containsAll(cells));
+		for (int i = 1; i < sorted.size(); i++) {
+			assertTrue(LocationUtils.getLatLng(sorted.get(i - 1)).lat < LocationUtils.getLatLng(sorted.get(i)).lat,
+					"Cells in one column of blocks should sort south to north");
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package plp.location;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Envelope;
+
+import com.uber.h3core.util.LatLng;
+
+class LocationUtilsTest {
+
+	@Test
+	void descendantBoundsHoldEveryDescendantCentre() {
+		double[][] points = {{0.0, 0.0}, {33.7, -116.2}, {61.0, 25.0}, {-45.0, 170.0}, {70.0, -150.0}};
+		for (double[] point : points) {
+			for (int resolution = 3; resolution <= 5; resolution++) {
+				long cell = LocationUtils.getCell(point[0], point[1], resolution);
+				Envelope bounds = LocationUtils.getDescendantBounds(cell);
+				assertNotNull(bounds);
+				for (long descendant : LocationUtils.getChildren(cell, resolution + 4)) {
+					LatLng centre = LocationUtils.getLatLng(descendant);
+					assertTrue(bounds.contains(centre.lng, centre.lat), "A descendant of " + Long.toHexString(cell) + " is outside its bounds");
+				}
+			}
+		}
+	}
+
+	@Test
+	void descendantBoundsGiveUpAtThePolesAndTheAntimeridian() {
+		assertNull(LocationUtils.getDescendantBounds(LocationUtils.getCell(89.9, 0.0, 1)));
+		assertNull(LocationUtils.getDescendantBounds(LocationUtils.getCell(0.0, 179.99, 2)));
+	}
+
+	@Test
+	void distanceMatchesAQuarterOfTheEquator() {
+		assertEquals(Math.PI / 2 * 6371.007180918475, LocationUtils.getDistance(0, 0, 0, 90), 1e-6);
+	}
+}
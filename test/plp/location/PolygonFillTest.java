@@ -0,0 +1,53 @@
+package plp.location;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.uber.h3core.util.LatLng;
+
+class PolygonFillTest {
+
+	private static void assertSameAsPolygonToCells(List<LatLng> boundary, int resolution) {
+		long[] expected = LocationUtils.getCellsInPolygon(boundary, resolution).stream().mapToLong(Long::longValue).sorted().toArray();
+		long[] filled = new PolygonFill(boundary).cells(resolution).toArray();
+		assertArrayEquals(expected, filled, "The fill differs from polygonToCells");
+	}
+
+	@Test
+	void matchesPolygonToCellsForABox() {
+		assertSameAsPolygonToCells(List.of(new LatLng(33.5, -116.5), new LatLng(33.5, -116.0),
+				new LatLng(33.9, -116.0), new LatLng(33.9, -116.5)), 9);
+	}
+
+	@Test
+	void matchesPolygonToCellsForAThinSliver() {
+		// Narrower than a coarse cell, so its cells come from the boundary cover alone
+		assertSameAsPolygonToCells(List.of(new LatLng(40.0, -105.0), new LatLng(40.01, -104.0), new LatLng(40.02, -105.0)), 9);
+	}
+
+	@Test
+	void matchesPolygonToCellsForAPolygonSmallerThanACell() {
+		assertSameAsPolygonToCells(List.of(new LatLng(10.0, 10.0), new LatLng(10.0001, 10.0001), new LatLng(10.0002, 10.0)), 9);
+	}
+
+	@Test
+	void streamsInAscendingOrder() {
+		long[] cells = new PolygonFill(List.of(new LatLng(-1.0, 35.0), new LatLng(-1.0, 35.3), new LatLng(-0.7, 35.1))).cells(8).toArray();
+		assertTrue(cells.length > 0);
+		for (int i = 1; i < cells.length; i++) {
+			assertTrue(cells[i - 1] < cells[i]);
+		}
+	}
+
+	@Test
+	void containsUsesTheEvenOddRule() {
+		PolygonFill square = new PolygonFill(List.of(new LatLng(0, 0), new LatLng(0, 2), new LatLng(2, 2), new LatLng(2, 0)));
+		assertTrue(square.contains(new LatLng(1, 1)));
+		assertEquals(false, square.contains(new LatLng(3, 1)));
+	}
+}
@@ -0,0 +1,63 @@
+package plp.location;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.Test;
+
+class SpillingCellSetTest {
+
+	private static long[] drain(SpillingCellSet set) {
+		LongStream.Builder values = LongStream.builder();
+		PrimitiveIterator.OfLong it = set.iterator();
+		while (it.hasNext()) {
+			values.add(it.nextLong());
+		}
+		return values.build().toArray();
+	}
+
+	@Test
+	void keepsSmallSetsInMemory() {
+		try (SpillingCellSet set = new SpillingCellSet(100)) {
+			set.add(3);
+			set.add(1);
+			set.add(3);
+			assertFalse(set.isSpilled());
+			assertArrayEquals(new long[]{1, 3}, drain(set));
+		}
+	}
+
+	@Test
+	void mergesSpilledRunsInOrderWithoutDuplicates() {
+		Random random = new Random(7);
+		TreeSet<Long> expected = new TreeSet<>();
+		try (SpillingCellSet set = new SpillingCellSet(64)) {
+			for (int i = 0; i < 5000; i++) {
+				long value = random.nextInt(2000); // Many repeats, across runs and within them
+				set.add(value);
+				expected.add(value);
+			}
+			assertTrue(set.isSpilled());
+			assertArrayEquals(expected.stream().mapToLong(Long::longValue).toArray(), drain(set));
+		}
+	}
+
+	@Test
+	void toListWrapsEveryIndex() {
+		try (SpillingCellSet set = new SpillingCellSet(2)) {
+			set.addAll(List.of(new LocationCell(5L), new LocationCell(2L), new LocationCell(9L), new LocationCell(2L)));
+			List<LocationCell> cells = set.toList();
+			assertEquals(3, cells.size());
+			assertEquals(2L, (long) cells.get(0).getH3Index());
+			assertEquals(9L, (long) cells.get(2).getH3Index());
+		}
+	}
+}
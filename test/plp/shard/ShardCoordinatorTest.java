@@ -0,0 +1,121 @@
+package plp.shard;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.Test;
+
+import plp.Config;
+import plp.filter.Filter;
+import plp.filter.MemoryBudget;
+import plp.filters.BoundingBoxFilter;
+import plp.location.LocationCell;
+
+class ShardCoordinatorTest {
+
+	/**
+	 * Keeps the cells whose index is not a multiple of three, a filter with no data to stage.
+	 */
+	private static class SomeCells implements Filter {
+		private static final long serialVersionUID = 1L;
+		private transient List<LocationCell> locations;
+
+		static boolean keeps(long cell) {
+			return cell % 3 != 0;
+		}
+
+		@Override
+		public void setRequirements(Object requirements) {}
+
+		@Override
+		public String getRequirements() {
+			return "Some cells";
+		}
+
+		@Override
+		public void setLocations(List<LocationCell> locations) {
+			this.locations = locations;
+		}
+
+		@Override
+		public List<LocationCell> process() {
+			return locations.stream().filter(cell -> keeps(cell.getH3Index())).toList();
+		}
+	}
+
+	/**
+	 * Runs each shard in this JVM, through the wire format as a worker process would receive it.
+	 */
+	private static class InProcessTransport implements ShardTransport {
+		final AtomicInteger largestShard = new AtomicInteger();
+
+		@Override
+		public ShardResult execute(ShardRequest request) throws IOException {
+			largestShard.accumulateAndGet(request.getCells().length, Math::max);
+			ByteArrayOutputStream requestBytes = new ByteArrayOutputStream();
+			ShardProtocol.writeRequest(request, requestBytes);
+			ShardResult result = ShardWorker.run(ShardProtocol.readRequest(new ByteArrayInputStream(requestBytes.toByteArray())));
+			ByteArrayOutputStream resultBytes = new ByteArrayOutputStream();
+			ShardProtocol.writeResult(result, resultBytes);
+			return ShardProtocol.readResult(new ByteArrayInputStream(resultBytes.toByteArray()));
+		}
+	}
+
+	private static BoundingBoxFilter region() {
+		BoundingBoxFilter box = new BoundingBoxFilter();
+		box.setRequirements(new double[] {0.0, 0.3, 0.0, 0.3});
+		return box;
+	}
+
+	private static long[] run(ShardCoordinator coordinator, List<Long> shardIds) {
+		LongStream.Builder merged = LongStream.builder();
+		coordinator.filterLocations(result -> {
+			shardIds.add(result.getShardId());
+			LongStream.of(result.getCells()).forEach(merged::add);
+		});
+		return merged.build().toArray();
+	}
+
+	@Test
+	void mergesTheShardsInIndexOrder() {
+		BoundingBoxFilter region = region();
+		long[] expected = region.getValidCellIndexes().sorted().filter(SomeCells::keeps).toArray();
+		ShardCoordinator coordinator = new ShardCoordinator(region, new InProcessTransport());
+		coordinator.addFilter(new SomeCells());
+		coordinator.setShardResolution(Config.H3_RESOLUTION - 2);
+		coordinator.setParallelism(3);
+		List<Long> shardIds = new ArrayList<>();
+
+		assertArrayEquals(expected, run(coordinator, shardIds));
+		assertTrue(shardIds.size() > 1);
+		for (int i = 1; i < shardIds.size(); i++) {
+			assertTrue(shardIds.get(i - 1) < shardIds.get(i));
+		}
+	}
+
+	@Test
+	void splitsShardsOverTheMemoryBudget() {
+		BoundingBoxFilter region = region();
+		long[] expected = region.getValidCellIndexes().sorted().filter(SomeCells::keeps).toArray();
+		InProcessTransport transport = new InProcessTransport();
+		ShardCoordinator coordinator = new ShardCoordinator(region, transport);
+		coordinator.addFilter(new SomeCells());
+		coordinator.setParallelism(2);
+		coordinator.setMemoryBudget(MemoryBudget.ofCells(10)); // Shards of at most 5 cells
+		List<Long> shardIds = new ArrayList<>();
+
+		assertArrayEquals(expected, run(coordinator, shardIds));
+		assertTrue(transport.largestShard.get() <= 5);
+		for (int i = 1; i < shardIds.size(); i++) {
+			assertTrue(shardIds.get(i - 1) <= shardIds.get(i)); // Pieces of a shard share its id
+		}
+	}
+}
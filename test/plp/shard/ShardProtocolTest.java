@@ -0,0 +1,46 @@
+package plp.shard;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import plp.filters.BoundingBoxFilter;
+
+class ShardProtocolTest {
+
+	@Test
+	void carriesARequestAndItsResult() throws IOException {
+		BoundingBoxFilter box = new BoundingBoxFilter();
+		box.setRequirements(new double[] {10.0, 11.0, 20.0, 21.0});
+		ByteArrayOutputStream requestBytes = new ByteArrayOutputStream();
+		ShardProtocol.writeRequest(new ShardRequest(0x81f3fffffffffffL, new long[] {3, 5, 8}, List.of(box)), requestBytes);
+		ShardRequest request = ShardProtocol.readRequest(new ByteArrayInputStream(requestBytes.toByteArray()));
+
+		assertEquals(0x81f3fffffffffffL, request.getShardId());
+		assertArrayEquals(new long[] {3, 5, 8}, request.getCells());
+		assertEquals(box.getRequirements(), request.getFilters().get(0).getRequirements());
+
+		ByteArrayOutputStream resultBytes = new ByteArrayOutputStream();
+		ShardProtocol.writeResult(new ShardResult(request.getShardId(), new long[] {5}), resultBytes);
+		ShardResult result = ShardProtocol.readResult(new ByteArrayInputStream(resultBytes.toByteArray()));
+
+		assertEquals(0x81f3fffffffffffL, result.getShardId());
+		assertArrayEquals(new long[] {5}, result.getCells());
+	}
+
+	@Test
+	void refusesOtherMessages() throws IOException {
+		ByteArrayOutputStream resultBytes = new ByteArrayOutputStream();
+		ShardProtocol.writeResult(new ShardResult(1, new long[0]), resultBytes);
+
+		assertThrows(IOException.class, () -> ShardProtocol.readRequest(new ByteArrayInputStream(resultBytes.toByteArray())));
+		assertThrows(IOException.class, () -> ShardProtocol.readResult(new ByteArrayInputStream(new byte[] {1, 2, 3, 4})));
+	}
+}